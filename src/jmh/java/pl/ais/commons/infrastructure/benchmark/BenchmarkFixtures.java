@@ -0,0 +1,76 @@
+package pl.ais.commons.infrastructure.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * Fixtures shared by the benchmarks.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class BenchmarkFixtures {
+
+    /**
+     * Distinct types usable as feature classes, or transformer return types.
+     */
+    static final Class<?>[] TYPES = {java.io.Closeable.class, java.io.Flushable.class, java.io.Serializable.class,
+        java.io.Externalizable.class, java.io.DataInput.class, java.io.DataOutput.class, java.io.ObjectInput.class,
+        java.io.ObjectOutput.class, java.io.FileFilter.class, java.io.FilenameFilter.class,
+        java.lang.Appendable.class, java.lang.AutoCloseable.class, java.lang.CharSequence.class,
+        java.lang.Cloneable.class, java.lang.Comparable.class, java.lang.Iterable.class, java.lang.Readable.class,
+        java.lang.Runnable.class, java.util.Collection.class, java.util.Comparator.class, java.util.Deque.class,
+        java.util.Enumeration.class, java.util.EventListener.class, java.util.Formattable.class,
+        java.util.Iterator.class, java.util.List.class, java.util.ListIterator.class, java.util.Map.class,
+        java.util.NavigableMap.class, java.util.NavigableSet.class, java.util.Observer.class, java.util.Queue.class,
+        java.util.RandomAccess.class, java.util.Set.class, java.util.SortedMap.class, java.util.SortedSet.class,
+        java.util.concurrent.BlockingDeque.class, java.util.concurrent.BlockingQueue.class,
+        java.util.concurrent.Callable.class, java.util.concurrent.CompletionService.class,
+        java.util.concurrent.ConcurrentMap.class, java.util.concurrent.ConcurrentNavigableMap.class,
+        java.util.concurrent.Delayed.class, java.util.concurrent.Executor.class,
+        java.util.concurrent.ExecutorService.class, java.util.concurrent.Future.class,
+        java.util.concurrent.RejectedExecutionHandler.class, java.util.concurrent.RunnableFuture.class,
+        java.util.concurrent.RunnableScheduledFuture.class, java.util.concurrent.ScheduledExecutorService.class,
+        java.util.concurrent.ScheduledFuture.class, java.util.concurrent.ThreadFactory.class,
+        java.util.concurrent.TransferQueue.class, java.util.concurrent.locks.Condition.class,
+        java.util.concurrent.locks.Lock.class, java.util.concurrent.locks.ReadWriteLock.class,
+        java.nio.channels.ByteChannel.class, java.nio.channels.Channel.class,
+        java.nio.channels.GatheringByteChannel.class, java.nio.channels.InterruptibleChannel.class,
+        java.nio.channels.ReadableByteChannel.class, java.nio.channels.ScatteringByteChannel.class,
+        java.nio.channels.WritableByteChannel.class, java.nio.file.Path.class};
+
+    /**
+     * Creates the authorities named {@code ROLE_0 ... ROLE_(count - 1)}.
+     *
+     * @param count the number of authorities to create
+     * @return created authorities
+     */
+    static List<GrantedAuthority> authorities(final int count) {
+        final List<GrantedAuthority> result = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            result.add(new SimpleGrantedAuthority("ROLE_" + index));
+        }
+        return result;
+    }
+
+    /**
+     * Creates the authentication having given authorities.
+     *
+     * @param name the principal name
+     * @param authorities the authorities
+     * @return created authentication
+     */
+    static Authentication authentication(final String name, final List<GrantedAuthority> authorities) {
+        return new TestingAuthenticationToken(name, null, authorities);
+    }
+
+    private BenchmarkFixtures() {
+        super();
+    }
+
+}
@@ -0,0 +1,96 @@
+package pl.ais.commons.infrastructure.benchmark;
+
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.ais.commons.application.service.PrincipalTransformer;
+import pl.ais.commons.infrastructure.service.DefaultPrincipalService;
+
+/**
+ * Measures {@link DefaultPrincipalService#unwrap(Principal, Class)} with varying number of registered transformers.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class DefaultPrincipalServiceBenchmark {
+
+    /**
+     * Transformer returning the principal itself, declaring given return type.
+     */
+    private static final class IdentityTransformer implements PrincipalTransformer<Object> {
+
+        private final Class<?> returnType;
+
+        IdentityTransformer(final Class<?> returnType) {
+            this.returnType = returnType;
+        }
+
+        @Override
+        public Object apply(@Nullable final Principal principal) {
+            return principal;
+        }
+
+        @Override
+        public Class<?> getReturnType() {
+            return returnType;
+        }
+
+    }
+
+    private Principal principal;
+
+    private Class<?> requested;
+
+    private DefaultPrincipalService service;
+
+    @Param({"1", "8", "32"})
+    private int transformerCount;
+
+    /**
+     * Prepares the service.
+     */
+    @Setup
+    public void setUp() {
+        final Map<Class<?>, PrincipalTransformer<?>> transformers = new HashMap<>();
+        for (int index = 0; index < transformerCount; index++) {
+            transformers.put(BenchmarkFixtures.TYPES[index], new IdentityTransformer(BenchmarkFixtures.TYPES[index]));
+        }
+        service = new DefaultPrincipalService();
+        service.setTransformers(transformers);
+        requested = BenchmarkFixtures.TYPES[transformerCount - 1];
+        principal = BenchmarkFixtures.authentication("john", BenchmarkFixtures.authorities(4));
+    }
+
+    /**
+     * Measures unwrapping of the principal.
+     *
+     * @return the unwrapping result
+     */
+    @Benchmark
+    public Object unwrap() {
+        return service.unwrap(principal, requested);
+    }
+
+}
@@ -0,0 +1,147 @@
+package pl.ais.commons.infrastructure.benchmark;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.core.Authentication;
+
+import pl.ais.commons.infrastructure.security.permission.evaluators.AbstractChainedPermissionEvaluator;
+import pl.ais.commons.infrastructure.security.permission.evaluators.CompiledPermissionEvaluator;
+import pl.ais.commons.infrastructure.security.permission.evaluators.DenyAllChainedPermissionEvaluator;
+
+/**
+ * Measures the permission checks walking through the chain of evaluators of varying length, ending with
+ * {@link DenyAllChainedPermissionEvaluator}, both as plain chain, and {@link CompiledPermissionEvaluator compiled}
+ * one.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class PermissionEvaluatorChainBenchmark {
+
+    /**
+     * Evaluator granting all permissions for the targets of single type.
+     */
+    private static final class SingleTypeEvaluator extends AbstractChainedPermissionEvaluator {
+
+        private final String type;
+
+        SingleTypeEvaluator(final String type) {
+            this.type = type;
+        }
+
+        @Override
+        protected boolean isPermissionGranted(
+            final Authentication authentication, final Object target, final Object permission) {
+            return true;
+        }
+
+        @Override
+        protected boolean isPermissionGranted(
+            final Authentication authentication, final Serializable targetId, final String targetType,
+            final Object permission) {
+            return true;
+        }
+
+        @Override
+        protected boolean supportsTarget(
+            final Authentication authentication, final Object target, final Object permission) {
+            return type.equals(target);
+        }
+
+        @Override
+        protected boolean supportsTargetType(
+            final Authentication authentication, final Serializable targetId, final String targetType,
+            final Object permission) {
+            return type.equals(targetType);
+        }
+
+    }
+
+    private Authentication authentication;
+
+    @Param({"1", "5", "15"})
+    private int chainLength;
+
+    private PermissionEvaluator chain;
+
+    private PermissionEvaluator compiled;
+
+    private String lastType;
+
+    /**
+     * Measures the check falling through the whole chain (denied by the tail).
+     *
+     * @return the decision
+     */
+    @Benchmark
+    public boolean chainDeniedByTail() {
+        return chain.hasPermission(authentication, 1L, "unknown", "read");
+    }
+
+    /**
+     * Measures the check decided by the last evaluator before the tail.
+     *
+     * @return the decision
+     */
+    @Benchmark
+    public boolean chainGrantedByLast() {
+        return chain.hasPermission(authentication, 1L, lastType, "read");
+    }
+
+    /**
+     * Measures the check falling through the whole compiled chain (denied by the tail).
+     *
+     * @return the decision
+     */
+    @Benchmark
+    public boolean compiledDeniedByTail() {
+        return compiled.hasPermission(authentication, 1L, "unknown", "read");
+    }
+
+    /**
+     * Measures the check decided by the last evaluator before the tail, using compiled chain.
+     *
+     * @return the decision
+     */
+    @Benchmark
+    public boolean compiledGrantedByLast() {
+        return compiled.hasPermission(authentication, 1L, lastType, "read");
+    }
+
+    /**
+     * Prepares the chain.
+     */
+    @Setup
+    public void setUp() {
+        AbstractChainedPermissionEvaluator next = new DenyAllChainedPermissionEvaluator();
+        for (int index = 0; index < chainLength; index++) {
+            final SingleTypeEvaluator evaluator = new SingleTypeEvaluator("type" + index);
+            evaluator.setNextEvaluator(next);
+            next = evaluator;
+        }
+        chain = next;
+        compiled = new CompiledPermissionEvaluator(chain);
+        lastType = "type0";
+        authentication = BenchmarkFixtures.authentication("john", BenchmarkFixtures.authorities(4));
+    }
+
+}
@@ -0,0 +1,106 @@
+package pl.ais.commons.infrastructure.benchmark;
+
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import pl.ais.commons.application.feature.FeaturesHolder;
+import pl.ais.commons.infrastructure.principal.unwrapping.PrincipalToFeaturesHolderTransformer;
+
+/**
+ * Measures {@link PrincipalToFeaturesHolderTransformer#apply(Principal)} for anonymous and authenticated principals,
+ * with varying authority / feature fan-out.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class PrincipalToFeaturesHolderTransformerBenchmark {
+
+    private static final GrantedAuthority ANONYMOUS = new SimpleGrantedAuthority("ROLE_ANONYMOUS");
+
+    @Param({"1", "4", "16"})
+    private int authorityCount;
+
+    private Principal authenticated;
+
+    @Param({"0", "256"})
+    private long cacheMaximumSize;
+
+    @Param({"8", "32", "64"})
+    private int featureCount;
+
+    private PrincipalToFeaturesHolderTransformer transformer;
+
+    /**
+     * Measures unwrapping of anonymous principal.
+     *
+     * @return the unwrapping result
+     */
+    @Benchmark
+    public FeaturesHolder anonymous() {
+        return transformer.apply(null);
+    }
+
+    /**
+     * Measures unwrapping of authenticated principal.
+     *
+     * @return the unwrapping result
+     */
+    @Benchmark
+    public FeaturesHolder authenticated() {
+        return transformer.apply(authenticated);
+    }
+
+    /**
+     * Prepares the transformer, each authority gets half of the features (overlapping with the other authorities).
+     */
+    @Setup
+    public void setUp() {
+        final List<GrantedAuthority> authorities = BenchmarkFixtures.authorities(authorityCount);
+        final Map<GrantedAuthority, Set<Class<?>>> featuresMap = new HashMap<>();
+        final List<Class<?>> features = Arrays.asList(BenchmarkFixtures.TYPES).subList(0, featureCount);
+        for (int index = 0; index < authorityCount; index++) {
+            final Set<Class<?>> authorityFeatures = new HashSet<>();
+            for (int offset = 0; offset < featureCount / 2; offset++) {
+                authorityFeatures.add(features.get((index + offset) % featureCount));
+            }
+            featuresMap.put(authorities.get(index), authorityFeatures);
+        }
+        featuresMap.put(ANONYMOUS, new HashSet<>(features.subList(0, 1)));
+
+        transformer = new PrincipalToFeaturesHolderTransformer();
+        transformer.setAnonymousAuthority(ANONYMOUS);
+        transformer.setApplicationContext(new StaticApplicationContext());
+        transformer.setCacheMaximumSize(cacheMaximumSize);
+        transformer.setFeaturesMap(featuresMap);
+        transformer.afterPropertiesSet();
+        authenticated = BenchmarkFixtures.authentication("john", authorities);
+    }
+
+}
@@ -0,0 +1,24 @@
+package pl.ais.commons.infrastructure.cache;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the principal transformer which result depends solely on the authorities granted to the principal, so the
+ * infrastructure can share single result between the principals having the same authorities (unless the transformer
+ * reports it otherwise, see {@link ShareableResults}).
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface AuthoritiesOnly {
+
+}
@@ -0,0 +1,23 @@
+package pl.ais.commons.infrastructure.cache;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the component which results should never be cached by the infrastructure, for example the principal
+ * transformer which result depends on the data changing independently of the principal.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface NonCacheable {
+
+}
@@ -0,0 +1,22 @@
+package pl.ais.commons.infrastructure.cache;
+
+/**
+ * Implemented by the principal transformer annotated with {@link AuthoritiesOnly}, which results can be shared between
+ * the principals having the same authorities only under some conditions, so the infrastructure shares single result
+ * only if the transformer reports it as shareable.
+ *
+ * @param <T> the type of results
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public interface ShareableResults<T> {
+
+    /**
+     * Verifies if given result can be shared between the principals having the same authorities.
+     *
+     * @param result the result provided by the transformer
+     * @return {@code true} if given result can be shared, {@code false} otherwise
+     */
+    boolean isShareable(T result);
+
+}
@@ -0,0 +1,371 @@
+package pl.ais.commons.infrastructure.cache;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import pl.ais.commons.infrastructure.principal.unwrapping.PrincipalToFeaturesHolderTransformer;
+import pl.ais.commons.infrastructure.security.permission.cache.PermissionDecisionCache;
+
+/**
+ * Keeps the snapshot of the features holders memoized by {@link PrincipalToFeaturesHolderTransformer} and the
+ * decisions cached by {@link PermissionDecisionCache} in the file, so the node restarts with warm caches.
+ *
+ * <p>
+ * Snapshot is loaded in the background once this bean is initialized, so it never delays the application readiness
+ * (requests served in the meantime simply miss the caches), and saved periodically (see {@link #setSavePeriod(long)})
+ * and on shutdown. Snapshot file is replaced atomically (where supported by the file system), so the node crashing
+ * while saving it never leaves the partially written one.
+ * </p>
+ * <p>
+ * Snapshot consists of the header (magic number, format version, creation time), followed by the sections (identifier,
+ * length, content) written by each cache. Snapshot which is truncated (or declares the section longer than the file)
+ * is ignored as a whole, so the node starts with cold caches. Sections not known or not readable are skipped, and each
+ * cache discards the content which became stale: the features holders written using different features mapping, and
+ * the decisions written using different policy version or older than their time to live.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class WarmStartSnapshot implements DisposableBean, InitializingBean {
+
+    private static final byte DECISIONS_SECTION = 'D';
+
+    private static final byte FEATURES_SECTION = 'F';
+
+    private static final Logger LOG = LoggerFactory.getLogger(WarmStartSnapshot.class);
+
+    private static final int MAGIC = 0x57534e50;
+
+    private static final short VERSION = 2;
+
+    private transient PermissionDecisionCache decisionCache;
+
+    private transient volatile boolean loaded;
+
+    private transient volatile int loadedDecisionCount;
+
+    private transient volatile int loadedHolderCount;
+
+    private transient File location;
+
+    private transient boolean saveOnShutdown = true;
+
+    private transient long savePeriod;
+
+    private transient ScheduledExecutorService scheduler;
+
+    private transient PrincipalToFeaturesHolderTransformer transformer;
+
+    private static byte[] toBytes(final SectionWriter writer) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(result)) {
+            writer.write(out);
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet() throws BeanInitializationException {
+        if (null == location) {
+            throw new BeanInitializationException("Please, provide the location of snapshot file.");
+        }
+        if (null == transformer && null == decisionCache) {
+            throw new BeanInitializationException("Please, provide the transformer or decision cache to snapshot.");
+        }
+
+        // Load the snapshot in the background, ...
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread result = new Thread(runnable, "warm-start-snapshot");
+                result.setDaemon(true);
+                return result;
+            }
+
+        });
+        scheduler.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                load();
+            }
+
+        });
+
+        // ... and save it periodically (if requested).
+        if (0 < savePeriod) {
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    save();
+                }
+
+            }, savePeriod, savePeriod, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops saving the snapshot periodically, and saves it (if requested).
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        if (null != scheduler) {
+            scheduler.shutdownNow();
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            scheduler = null;
+        }
+        if (saveOnShutdown) {
+            save();
+        }
+    }
+
+    /**
+     * @return the number of decisions restored from the snapshot
+     */
+    public int getLoadedDecisionCount() {
+        return loadedDecisionCount;
+    }
+
+    /**
+     * @return the number of features holders restored from the snapshot
+     */
+    public int getLoadedHolderCount() {
+        return loadedHolderCount;
+    }
+
+    /**
+     * @return {@code true} if loading of the snapshot has finished (even if there was no snapshot to load),
+     *         {@code false} otherwise
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Loads the snapshot file (if exists) into the caches.
+     *
+     * @return {@code true} if the snapshot has been loaded, {@code false} otherwise
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    public boolean load() {
+        boolean result = false;
+        if (location.isFile()) {
+            final long start = System.nanoTime();
+            try (InputStream input = Files.newInputStream(location.toPath())) {
+                result = read(new DataInputStream(input), location.length());
+                if (result) {
+                    LOG.info("Warm-start snapshot loaded from " + location + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms, features holders: "
+                        + loadedHolderCount + ", decisions: " + loadedDecisionCount + '.');
+                }
+            } catch (final IOException | RuntimeException | OutOfMemoryError exception) {
+                LOG.warn("Unable to load warm-start snapshot from: " + location + ", starting with cold caches.",
+                    exception);
+            }
+        }
+        loaded = true;
+        return result;
+    }
+
+    private boolean read(final DataInputStream in, final long length) throws IOException {
+        boolean result = false;
+        if (MAGIC != in.readInt() || VERSION != in.readShort()) {
+            LOG.warn("Ignoring warm-start snapshot: " + location + ", it has unsupported format.");
+        } else {
+            final long age = System.currentTimeMillis() - in.readLong();
+
+            // Read all the sections (verifying their lengths against the file length) before restoring any, ...
+            final List<Byte> ids = new ArrayList<>();
+            final List<byte[]> contents = new ArrayList<>();
+            long remaining = length - (Integer.SIZE + Short.SIZE + Long.SIZE) / Byte.SIZE;
+            for (int id = in.read(); -1 != id; id = in.read()) {
+                final int size = in.readInt();
+                remaining -= 1 + Integer.SIZE / Byte.SIZE;
+                if (0 > size || remaining < size) {
+                    throw new IOException("Warm-start snapshot: " + location + " is corrupted, section: " + (char) id
+                        + " is " + size + " bytes long, while only " + remaining + " bytes remain.");
+                }
+                final byte[] content = new byte[size];
+                in.readFully(content);
+                remaining -= size;
+                ids.add((byte) id);
+                contents.add(content);
+            }
+
+            // ... and restore them.
+            for (int index = 0; index < ids.size(); index++) {
+                readSection(ids.get(index), new DataInputStream(new ByteArrayInputStream(contents.get(index))), age);
+            }
+            result = true;
+        }
+        return result;
+    }
+
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    private void readSection(final byte id, final DataInputStream in, final long age) {
+        try {
+            if (FEATURES_SECTION == id) {
+                if (null != transformer) {
+                    loadedHolderCount = transformer.readSnapshot(in);
+                }
+            } else if (DECISIONS_SECTION == id) {
+                if (null != decisionCache) {
+                    loadedDecisionCount = decisionCache.readSnapshot(in, age);
+                }
+            } else {
+                LOG.warn("Skipping unknown section: " + (char) id + " of warm-start snapshot: " + location);
+            }
+        } catch (final IOException | RuntimeException exception) {
+            LOG.warn("Skipping corrupted section: " + (char) id + " of warm-start snapshot: " + location, exception);
+        }
+    }
+
+    /**
+     * Saves the snapshot of the caches into the snapshot file, replacing previous one.
+     *
+     * @return {@code true} if the snapshot has been saved, {@code false} otherwise
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    public synchronized boolean save() {
+        boolean result = false;
+        final Path target = location.getAbsoluteFile().toPath();
+        final Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(target.getParent());
+
+            // Write the snapshot into the temporary file, ...
+            try (OutputStream output = Files.newOutputStream(temporary)) {
+                final DataOutputStream out = new DataOutputStream(output);
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeLong(System.currentTimeMillis());
+                if (null != transformer) {
+                    writeSection(out, FEATURES_SECTION, toBytes(new SectionWriter() {
+
+                        @Override
+                        public void write(final DataOutputStream section) throws IOException {
+                            transformer.writeSnapshot(section);
+                        }
+
+                    }));
+                }
+                if (null != decisionCache) {
+                    writeSection(out, DECISIONS_SECTION, toBytes(new SectionWriter() {
+
+                        @Override
+                        public void write(final DataOutputStream section) throws IOException {
+                            decisionCache.writeSnapshot(section);
+                        }
+
+                    }));
+                }
+                out.flush();
+            }
+
+            // ... and replace the snapshot file with it.
+            try {
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (final AtomicMoveNotSupportedException exception) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            result = true;
+        } catch (final IOException | RuntimeException exception) {
+            LOG.warn("Unable to save warm-start snapshot into: " + location, exception);
+        }
+        return result;
+    }
+
+    /**
+     * @param decisionCache the permission decision cache to snapshot
+     */
+    public void setDecisionCache(final PermissionDecisionCache decisionCache) {
+        this.decisionCache = decisionCache;
+    }
+
+    /**
+     * @param location the location of snapshot file to set
+     */
+    public void setLocation(final File location) {
+        this.location = location;
+    }
+
+    /**
+     * Determines if the snapshot should be saved when this bean is destroyed (default: {@code true}).
+     *
+     * @param saveOnShutdown the value to set
+     */
+    public void setSaveOnShutdown(final boolean saveOnShutdown) {
+        this.saveOnShutdown = saveOnShutdown;
+    }
+
+    /**
+     * Defines the time between subsequent saves of the snapshot.
+     *
+     * @param savePeriod the time (in milliseconds) to set, non-positive value disables periodic saves
+     */
+    public void setSavePeriod(final long savePeriod) {
+        this.savePeriod = savePeriod;
+    }
+
+    /**
+     * @param transformer the features holders transformer to snapshot
+     */
+    public void setTransformer(final PrincipalToFeaturesHolderTransformer transformer) {
+        this.transformer = transformer;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("location", location).add("savePeriod", savePeriod)
+            .add("saveOnShutdown", saveOnShutdown).add("loaded", loaded).toString();
+    }
+
+    private void writeSection(final DataOutputStream out, final byte id, final byte[] content) throws IOException {
+        out.writeByte(id);
+        out.writeInt(content.length);
+        out.write(content);
+    }
+
+    /**
+     * Writes the content of single snapshot section.
+     */
+    private interface SectionWriter {
+
+        void write(DataOutputStream section) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,129 @@
+package pl.ais.commons.infrastructure.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link Probe} counting the events in fixed, logarithmic latency buckets.
+ *
+ * <p>
+ * Bucket {@code n} counts the events lasting less than 2<sup>n</sup> nanoseconds (and at least 2<sup>n - 1</sup>
+ * nanoseconds). Counters are striped by thread, so concurrent recording rarely touches the same memory, and recording
+ * doesn't allocate. Histograms recorded separately (by each thread driving the load, for example) can be merged
+ * (see {@link #merge(LatencyHistogram)}).
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public final class LatencyHistogram implements Probe {
+
+    private static final int BUCKETS = Long.SIZE;
+
+    private static final int STRIPES = 8;
+
+    /**
+     * Counters of each stripe: buckets, followed by the sum of durations.
+     */
+    private static final int STRIPE_WIDTH = BUCKETS + 1;
+
+    private final AtomicLongArray counters = new AtomicLongArray(STRIPES * STRIPE_WIDTH);
+
+    /**
+     * Provides the number of events recorded in each bucket.
+     *
+     * @return the number of events recorded in each bucket
+     */
+    public long[] getBuckets() {
+        final long[] result = new long[BUCKETS];
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                result[bucket] += counters.get(stripe * STRIPE_WIDTH + bucket);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of recorded events
+     */
+    public long getCount() {
+        long result = 0;
+        for (final long count : getBuckets()) {
+            result += count;
+        }
+        return result;
+    }
+
+    /**
+     * @return the mean duration (in nanoseconds) of recorded events
+     */
+    public double getMean() {
+        long sum = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            sum += counters.get(stripe * STRIPE_WIDTH + BUCKETS);
+        }
+        final long count = getCount();
+        return (0 == count) ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Provides the (upper bound of) duration not exceeded by given fraction of recorded events.
+     *
+     * @param fraction the fraction (from {@code 0.0} to {@code 1.0}, {@code 0.99} for 99th percentile for example)
+     * @return the duration (in nanoseconds)
+     */
+    public long getPercentile(final double fraction) {
+        final long[] buckets = getBuckets();
+        long total = 0;
+        for (final long count : buckets) {
+            total += count;
+        }
+        final long threshold = (long) Math.ceil(fraction * total);
+        long result = 0;
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += buckets[bucket];
+            if (0 < buckets[bucket] && seen >= threshold) {
+                result = (BUCKETS - 1 == bucket) ? Long.MAX_VALUE : (1L << bucket);
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the events recorded by given histogram to this one.
+     *
+     * @param other the histogram to merge
+     */
+    public void merge(final LatencyHistogram other) {
+        for (int index = 0; index < counters.length(); index++) {
+            final long value = other.counters.get(index);
+            if (0 != value) {
+                counters.addAndGet(index, value);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void record(final long nanos) {
+        final long duration = Math.max(0, nanos);
+        final int bucket = Math.min(BUCKETS - 1, BUCKETS - Long.numberOfLeadingZeros(duration));
+        final int offset = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * STRIPE_WIDTH;
+        counters.incrementAndGet(offset + bucket);
+        counters.addAndGet(offset + BUCKETS, duration);
+    }
+
+    /**
+     * Discards all recorded events.
+     */
+    public void reset() {
+        for (int index = 0; index < counters.length(); index++) {
+            counters.set(index, 0);
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package pl.ais.commons.infrastructure.metrics;
+
+/**
+ * Provides the {@linkplain Probe probes} used by instrumented components for recording the measured events.
+ *
+ * <p>
+ * Instrumentation is disabled (and costs nothing more than single {@code null} check) unless the sink is provided to
+ * the instrumented component.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public interface MetricsSink {
+
+    /**
+     * Name of the probe recording the denials caused by falling through the whole evaluators chain.
+     */
+    String DENIED_BY_FALLTHROUGH = "permission.denied.fallthrough";
+
+    /**
+     * Name of the probe recording the reloads of features mapping.
+     */
+    String FEATURES_RELOAD = "features.reload";
+
+    /**
+     * Prefix of the names of probes recording the creation of pooled feature handlers.
+     */
+    String HANDLER_CREATION_PREFIX = "features.handler.creation.";
+
+    /**
+     * Prefix of the names of probes recording the permission decisions.
+     */
+    String PERMISSION_PREFIX = "permission.";
+
+    /**
+     * Name of the probe recording the time spent waiting for identical principal unwrapping in flight.
+     */
+    String UNWRAP_COALESCED = "unwrap.coalesced";
+
+    /**
+     * Prefix of the names of probes recording the principal unwrapping.
+     */
+    String UNWRAP_PREFIX = "unwrap.";
+
+    /**
+     * Provides the probe having given name.
+     *
+     * @param name the probe name
+     * @return the probe (the same instance for the same name)
+     */
+    Probe probe(String name);
+
+}
@@ -0,0 +1,23 @@
+package pl.ais.commons.infrastructure.metrics;
+
+/**
+ * Records the occurrences (and durations) of single measured event.
+ *
+ * <p>
+ * Probes are obtained from {@link MetricsSink} once, when the instrumented component is configured, so recording the
+ * event is a single call, which shouldn't allocate any memory.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public interface Probe {
+
+    /**
+     * Records single occurrence of the event.
+     *
+     * @param nanos the event duration (in nanoseconds), {@code 0} if the event has no duration
+     */
+    void record(long nanos);
+
+}
@@ -0,0 +1,157 @@
+package pl.ais.commons.infrastructure.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Default {@link MetricsSink}, keeping {@link LatencyHistogram} per probe name, and exposing them via JMX.
+ *
+ * <p>
+ * If the object name is provided (see {@link #setObjectName(String)}), the metrics register itself within platform
+ * MBean server when initialized, and unregister when destroyed.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class SecurityMetrics implements DisposableBean, InitializingBean, MetricsSink, SecurityMetricsMBean {
+
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private transient ObjectName objectName;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet() throws BeanInitializationException {
+        if (null != objectName) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            } catch (final JMException exception) {
+                throw new BeanInitializationException("Unable to register metrics as: " + objectName, exception);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy() throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (null != objectName && server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCount(final String name) {
+        return histogram(name).getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMean(final String name) {
+        return histogram(name).getMean();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getPercentile(final String name, final double fraction) {
+        return histogram(name).getPercentile(fraction);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] getProbeNames() {
+        final TreeSet<String> names = new TreeSet<>(histograms.keySet());
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] getSummary() {
+        final List<String> result = new ArrayList<>();
+        for (final String name : getProbeNames()) {
+            final LatencyHistogram histogram = histogram(name);
+            result.add(name + ": count=" + histogram.getCount() + ", mean=" + (long) histogram.getMean() + "ns, p50<"
+                + histogram.getPercentile(0.5) + "ns, p99<" + histogram.getPercentile(0.99) + "ns, p999<"
+                + histogram.getPercentile(0.999) + "ns");
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Provides the histogram of given probe.
+     *
+     * @param name the probe name
+     * @return the histogram of given probe (new, empty one, not registered within this metrics, if there is no such
+     *         probe)
+     */
+    public LatencyHistogram histogram(final String name) {
+        final LatencyHistogram result = histograms.get(name);
+        return (null == result) ? new LatencyHistogram() : result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Probe probe(final String name) {
+        LatencyHistogram result = histograms.get(name);
+        if (null == result) {
+            final LatencyHistogram created = new LatencyHistogram();
+            result = histograms.putIfAbsent(name, created);
+            if (null == result) {
+                result = created;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        for (final Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            entry.getValue().reset();
+        }
+    }
+
+    /**
+     * Defines the name under which metrics should be registered within platform MBean server.
+     *
+     * @param objectName the object name to set
+     * @throws JMException if given name is malformed
+     */
+    public void setObjectName(final String objectName) throws JMException {
+        this.objectName = new ObjectName(objectName);
+    }
+
+}
@@ -0,0 +1,45 @@
+package pl.ais.commons.infrastructure.metrics;
+
+/**
+ * Management interface of {@link SecurityMetrics}.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public interface SecurityMetricsMBean {
+
+    /**
+     * @param name the probe name
+     * @return the number of events recorded by given probe
+     */
+    long getCount(String name);
+
+    /**
+     * @param name the probe name
+     * @return the mean duration (in nanoseconds) of events recorded by given probe
+     */
+    double getMean(String name);
+
+    /**
+     * @param name the probe name
+     * @param fraction the fraction of events (from {@code 0.0} to {@code 1.0})
+     * @return the duration (in nanoseconds) not exceeded by given fraction of events recorded by given probe
+     */
+    long getPercentile(String name, double fraction);
+
+    /**
+     * @return the names of all the probes
+     */
+    String[] getProbeNames();
+
+    /**
+     * @return the summary (count, mean, 50th, 99th and 99.9th percentile) of each probe
+     */
+    String[] getSummary();
+
+    /**
+     * Discards all recorded events.
+     */
+    void reset();
+
+}
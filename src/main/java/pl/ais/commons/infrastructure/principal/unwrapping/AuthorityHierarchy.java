@@ -0,0 +1,185 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Immutable hierarchy of authorities, along with its precomputed transitive closure.
+ *
+ * <p>
+ * Hierarchy is defined the same way as for Spring Security {@code RoleHierarchyImpl}: each line contains the chain of
+ * authorities separated by {@code >}, where each authority includes all the authorities following it, for example:
+ * </p>
+ *
+ * <pre>
+ * ROLE_ADMIN > ROLE_MANAGER > ROLE_USER
+ * ROLE_AUDITOR > ROLE_USER
+ * </pre>
+ *
+ * <p>
+ * Authority names cannot contain whitespace, so the authorities not separated by {@code >} start separate chains,
+ * which allows defining the whole hierarchy in single line ({@code ROLE_A > ROLE_B ROLE_B > ROLE_C}).
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class AuthorityHierarchy {
+
+    /**
+     * Hierarchy without any relations between authorities.
+     */
+    static final AuthorityHierarchy EMPTY = new AuthorityHierarchy("", ImmutableMap
+        .<String, ImmutableSet<String>> of());
+
+    /**
+     * Pattern matching the authority name, or the {@code >} separator.
+     */
+    private static final Pattern TOKEN = Pattern.compile(">|[^\\s>]+");
+
+    /**
+     * Splits given hierarchy definition line into the chains of authorities, starting new chain at each authority
+     * not preceded by {@code >}.
+     */
+    private static List<List<String>> chainsOf(final String line) {
+        final List<List<String>> result = new ArrayList<>();
+        List<String> chain = null;
+        boolean pending = false;
+        final Matcher matcher = TOKEN.matcher(line);
+        while (matcher.find()) {
+            final String token = matcher.group();
+            if (">".equals(token)) {
+                if ((null == chain) || pending) {
+                    throw new IllegalArgumentException("Malformed authority hierarchy line: " + line);
+                }
+                pending = true;
+            } else if (pending) {
+                chain.add(token);
+                pending = false;
+            } else {
+                chain = new ArrayList<>();
+                chain.add(token);
+                result.add(chain);
+            }
+        }
+        if (pending) {
+            throw new IllegalArgumentException("Malformed authority hierarchy line: " + line);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the authorities reachable from given one, detecting the cycles.
+     */
+    private static ImmutableSet<String> close(final String authority, final Map<String, Set<String>> included,
+        final Map<String, ImmutableSet<String>> closure, final List<String> path) {
+        ImmutableSet<String> result = closure.get(authority);
+        if (null == result) {
+            if (path.contains(authority)) {
+                path.add(authority);
+                throw new IllegalArgumentException("Cycle in authority hierarchy: "
+                    + Joiner.on(" > ").join(path.subList(path.indexOf(authority), path.size())));
+            }
+            path.add(authority);
+            final ImmutableSet.Builder<String> reachable = ImmutableSet.builder();
+            reachable.add(authority);
+            final Set<String> children = included.get(authority);
+            if (null != children) {
+                for (final String child : children) {
+                    reachable.addAll(close(child, included, closure, path));
+                }
+            }
+            path.remove(path.size() - 1);
+            result = reachable.build();
+            closure.put(authority, result);
+        }
+        return result;
+    }
+
+    /**
+     * Parses given hierarchy definition, and computes its transitive closure.
+     *
+     * @param definition the hierarchy definition
+     * @return the hierarchy
+     * @throws IllegalArgumentException if the definition is malformed, or contains a cycle
+     */
+    static AuthorityHierarchy parse(final String definition) {
+
+        // Collect the authorities directly included by each authority, ...
+        final Map<String, Set<String>> included = new LinkedHashMap<>();
+        for (final String line : definition.split("\\r?\\n")) {
+            if (!line.trim().isEmpty()) {
+                for (final List<String> chain : chainsOf(line)) {
+                    if (2 > chain.size()) {
+                        throw new IllegalArgumentException("Authority hierarchy line should relate at least two "
+                            + "authorities: " + line);
+                    }
+                    for (int index = 0; index < chain.size() - 1; index++) {
+                        if (!included.containsKey(chain.get(index))) {
+                            included.put(chain.get(index), new LinkedHashSet<String>());
+                        }
+                        included.get(chain.get(index)).add(chain.get(index + 1));
+                    }
+                }
+            }
+        }
+
+        // ... and compute the authorities reachable from each of them.
+        final Map<String, ImmutableSet<String>> closure = new HashMap<>();
+        final ImmutableMap.Builder<String, ImmutableSet<String>> reachable = ImmutableMap.builder();
+        for (final String authority : included.keySet()) {
+            reachable.put(authority, close(authority, included, closure, new ArrayList<String>()));
+        }
+        return new AuthorityHierarchy(definition, reachable.build());
+    }
+
+    private final String definition;
+
+    private final ImmutableMap<String, ImmutableSet<String>> reachable;
+
+    private AuthorityHierarchy(final String definition, final ImmutableMap<String, ImmutableSet<String>> reachable) {
+        super();
+        this.definition = definition;
+        this.reachable = reachable;
+    }
+
+    /**
+     * @return the authorities including any other authorities
+     */
+    ImmutableSet<String> authorities() {
+        return reachable.keySet();
+    }
+
+    /**
+     * Provides the authorities reachable from given one.
+     *
+     * @param authority the authority
+     * @return the authorities reachable from given one (including itself)
+     */
+    ImmutableSet<String> reachableFrom(final String authority) {
+        final ImmutableSet<String> result = reachable.get(authority);
+        return (null == result) ? ImmutableSet.of(authority) : result;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("definition", definition).toString();
+    }
+
+}
@@ -0,0 +1,177 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.util.Map;
+
+import org.springframework.context.ApplicationContext;
+
+import pl.ais.commons.application.feature.FeaturesManager;
+import pl.ais.commons.infrastructure.metrics.MetricsSink;
+import pl.ais.commons.infrastructure.registry.PrincipalRegistry;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Immutable table of handlers for application features, resolved once from the application context.
+ *
+ * <p>
+ * Singleton handlers are kept as instances, non-singleton handlers are kept by bean name (so each features holder gets
+ * its own instance), features without any handler are treated as virtual ones. If pooling is enabled, non-singleton
+ * handlers are kept as {@linkplain HandlerPool pools} of instances instead, and each features holder leases its own
+ * instances from them (see {@link HandlerLease}). Pools are filled lazily, and can be taken over from the previous
+ * handlers table, so resolving the handlers again doesn't create any instances.
+ * </p>
+ * <p>
+ * Handlers listed in the {@link PrincipalRegistry} are looked up by name, the application context is scanned for the
+ * handlers of the other features.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class FeatureHandlers {
+
+    /**
+     * Provides the name of the handler bean of given feature.
+     *
+     * @return the handler bean name, or {@code null} if there is no handler
+     */
+    private static String handlerOf(final ApplicationContext context, final Class<?> feature,
+        final PrincipalRegistry registry) {
+        String result = null;
+        for (final String name : registry.getHandlerNames(feature)) {
+            if (null == result && context.containsBean(name) && context.isTypeMatch(name, feature)) {
+                result = name;
+            }
+        }
+        if (null == result) {
+            final String[] names = context.getBeanNamesForType(feature);
+            result = (0 < names.length) ? names[0] : null;
+        }
+        return result;
+    }
+
+    /**
+     * Resolves the handlers for given features.
+     *
+     * @param context the application context to look for handlers in
+     * @param features the (distinct) features to resolve handlers for
+     * @param registry the registry of feature handlers
+     * @param poolSize the maximum number of idle instances pooled per non-singleton handler ({@code 0} disables
+     *        pooling)
+     * @param metricsSink the metrics sink used for recording the creation of pooled instances (may be {@code null})
+     * @param previous the handlers table to take the pools of the same handlers over from (may be {@code null})
+     * @return resolved feature handlers table
+     */
+    static FeatureHandlers resolve(final ApplicationContext context, final Iterable<Class<?>> features,
+        final PrincipalRegistry registry, final int poolSize, final MetricsSink metricsSink,
+        final FeatureHandlers previous) {
+        final ImmutableMap.Builder<Class<?>, String> handlerNames = ImmutableMap.builder();
+        final ImmutableMap.Builder<Class<?>, HandlerPool> pools = ImmutableMap.builder();
+        final ImmutableMap.Builder<Class<?>, Object> singletons = ImmutableMap.builder();
+        for (final Class<?> feature : features) {
+            final String name = handlerOf(context, feature, registry);
+            if (null != name) {
+                if (context.isSingleton(name)) {
+                    singletons.put(feature, context.getBean(name));
+                } else if (0 < poolSize) {
+                    final HandlerPool pool = (null == previous) ? null : previous.pools.get(feature);
+                    if (null != pool && pool.isPoolOf(context, name, poolSize)) {
+                        pools.put(feature, pool);
+                    } else {
+                        pools.put(feature, new HandlerPool(context, name, poolSize, (null == metricsSink) ? null
+                            : metricsSink.probe(MetricsSink.HANDLER_CREATION_PREFIX + feature.getName())));
+                    }
+                } else {
+                    handlerNames.put(feature, name);
+                }
+            }
+        }
+        return new FeatureHandlers(context, singletons.build(), handlerNames.build(), pools.build());
+    }
+
+    private final ApplicationContext context;
+
+    private final ImmutableMap<Class<?>, HandlerPool> pools;
+
+    private final ImmutableMap<Class<?>, String> prototypes;
+
+    private final ImmutableMap<Class<?>, Object> singletons;
+
+    private FeatureHandlers(final ApplicationContext context, final ImmutableMap<Class<?>, Object> singletons,
+        final ImmutableMap<Class<?>, String> prototypes, final ImmutableMap<Class<?>, HandlerPool> pools) {
+        super();
+        this.context = context;
+        this.singletons = singletons;
+        this.prototypes = prototypes;
+        this.pools = pools;
+    }
+
+    /**
+     * Adds the feature (along with its handler, if any) to given manager.
+     *
+     * @param manager the features manager
+     * @param feature the feature to add
+     * @param lease the lease of pooled handler instances ({@code null} if there are no pools)
+     * @return {@code true} if the feature handler may be shared between features holders, {@code false} otherwise
+     */
+    boolean addFeature(final FeaturesManager manager, final Class<?> feature, final HandlerLease lease) {
+        boolean shareable = true;
+        final Object singleton = singletons.get(feature);
+        if (null != singleton) {
+            manager.addFeature(feature, singleton);
+        } else {
+            final HandlerPool pool = pools.get(feature);
+            final String handlerName = prototypes.get(feature);
+            if (null != pool) {
+                manager.addFeature(feature, lease.acquire(pool));
+                shareable = false;
+            } else if (null == handlerName) {
+                manager.addVirtualFeature(feature);
+            } else {
+                manager.addFeature(feature, context.getBean(handlerName));
+                shareable = false;
+            }
+        }
+        return shareable;
+    }
+
+    /**
+     * Verifies if the handler of given feature may be shared between features holders.
+     *
+     * @param feature the feature
+     * @return {@code true} if the feature has singleton handler or no handler at all, {@code false} otherwise
+     */
+    boolean isShareable(final Class<?> feature) {
+        return singletons.containsKey(feature) || !(pools.containsKey(feature) || prototypes.containsKey(feature));
+    }
+
+    /**
+     * @return {@code true} if any of the handlers is pooled, {@code false} otherwise
+     */
+    boolean isPooling() {
+        return !pools.isEmpty();
+    }
+
+    /**
+     * @return the statistics of handler pools, by feature
+     */
+    ImmutableMap<Class<?>, HandlerPoolStats> poolStats() {
+        final ImmutableMap.Builder<Class<?>, HandlerPoolStats> result = ImmutableMap.builder();
+        for (final Map.Entry<Class<?>, HandlerPool> entry : pools.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().stats());
+        }
+        return result.build();
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("singletons", singletons.keySet()).add("prototypes", prototypes)
+            .add("pools", pools.keySet()).toString();
+    }
+
+}
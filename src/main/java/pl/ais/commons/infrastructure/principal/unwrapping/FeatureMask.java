@@ -0,0 +1,96 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of features, encoded as bit mask of feature identifiers assigned by {@linkplain FeaturesIndex}.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class FeatureMask {
+
+    private static final int ADDRESS_BITS_PER_WORD = 6;
+
+    private final int hash;
+
+    private final long[] words;
+
+    /**
+     * Constructs new instance.
+     *
+     * @param words the bit mask words (not copied, caller should not modify them afterwards)
+     */
+    FeatureMask(final long[] words) {
+        super();
+        this.words = words;
+        this.hash = Arrays.hashCode(words);
+    }
+
+    /**
+     * Verifies if feature having given identifier belongs to this set.
+     *
+     * @param featureId the feature identifier
+     * @return {@code true} if feature belongs to this set, {@code false} otherwise
+     */
+    boolean contains(final int featureId) {
+        final int wordIndex = featureId >>> ADDRESS_BITS_PER_WORD;
+        return (0 <= featureId) && (wordIndex < words.length) && (0 != (words[wordIndex] & (1L << featureId)));
+    }
+
+    /**
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(final Object object) {
+        return (this == object)
+            || ((object instanceof FeatureMask) && (hash == ((FeatureMask) object).hash) && Arrays.equals(words,
+                ((FeatureMask) object).words));
+    }
+
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Provides the identifier of the first feature belonging to this set, having identifier greater or equal to given
+     * one.
+     *
+     * @param fromId the identifier to start looking from (inclusive)
+     * @return feature identifier, or {@code -1} if there is no such feature
+     */
+    int nextFeature(final int fromId) {
+        int result = -1;
+        int wordIndex = fromId >>> ADDRESS_BITS_PER_WORD;
+        if (wordIndex < words.length) {
+            long word = words[wordIndex] & (-1L << fromId);
+            while (0 == word && ++wordIndex < words.length) {
+                word = words[wordIndex];
+            }
+            if (0 != word) {
+                result = (wordIndex << ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return copy of the bit mask words
+     */
+    long[] toLongArray() {
+        return words.clone();
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return Arrays.toString(words);
+    }
+
+}
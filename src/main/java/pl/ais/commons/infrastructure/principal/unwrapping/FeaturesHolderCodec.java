@@ -0,0 +1,142 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+
+import pl.ais.commons.application.feature.FeaturesHolder;
+
+/**
+ * Compact, versioned binary representation of the {@linkplain FeaturesHolder features holders} provided by
+ * {@link PrincipalToFeaturesHolderTransformer}.
+ *
+ * <p>
+ * Holder is encoded as the format version, the fingerprint of features mapping it was built from, and the mask of
+ * feature identifiers (trailing empty words omitted), which takes 18 bytes for up to 64 mapped features. Decoding
+ * re-resolves the holder (along with feature handlers) using the transformer currently running with the same
+ * features mapping, so the decoded holder is shared with the other principals having the same features, just like
+ * the ones provided by the transformer itself.
+ * </p>
+ * <p>
+ * Java serialization of the holders uses this representation automatically, codec can be used directly by custom
+ * session serializers.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public final class FeaturesHolderCodec {
+
+    /**
+     * Current format version.
+     */
+    public static final byte VERSION = 1;
+
+    private FeaturesHolderCodec() {
+        super();
+    }
+
+    /**
+     * Decodes the features holder.
+     *
+     * @param bytes the encoded features holder
+     * @return decoded features holder
+     * @throws InvalidObjectException if given bytes are malformed, or there is no transformer running with the
+     *         features mapping the holder was built from
+     */
+    public static FeaturesHolder decode(final byte[] bytes) throws InvalidObjectException {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return read(input);
+        } catch (final InvalidObjectException exception) {
+            throw exception;
+        } catch (final IOException exception) {
+            final InvalidObjectException invalid = new InvalidObjectException("Malformed features holder.");
+            invalid.initCause(exception);
+            throw invalid;
+        }
+    }
+
+    /**
+     * Encodes given features holder.
+     *
+     * @param holder the features holder to encode
+     * @return the encoded features holder
+     * @throws IllegalArgumentException if given holder has not been provided by
+     *         {@link PrincipalToFeaturesHolderTransformer}
+     */
+    public static byte[] encode(final FeaturesHolder holder) {
+        if (!(holder instanceof IndexedFeaturesHolder)) {
+            throw new IllegalArgumentException("Only the features holders provided by "
+                + "PrincipalToFeaturesHolderTransformer can be encoded, got: " + holder);
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            write((IndexedFeaturesHolder) holder, output);
+        } catch (final IOException exception) {
+            throw new IllegalStateException("Writing into memory should never fail.", exception);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the features holder.
+     *
+     * @param input the input to read from
+     * @return the features holder
+     * @throws IOException if the holder cannot be read
+     */
+    static IndexedFeaturesHolder read(final DataInput input) throws IOException {
+        final byte version = input.readByte();
+        if (VERSION != version) {
+            throw new InvalidObjectException("Unsupported features holder format version: " + version);
+        }
+        final long fingerprint = input.readLong();
+        final int length = input.readUnsignedByte();
+        final long[] words = new long[length];
+        for (int index = 0; index < length; index++) {
+            words[index] = input.readLong();
+        }
+
+        // Re-resolve the holder using the resolver having the same feature identifiers assignment.
+        final FeaturesResolver resolver = FeaturesRegistry.lookup(fingerprint);
+        if (null == resolver) {
+            throw new InvalidObjectException("There is no transformer running with features mapping having "
+                + "fingerprint: " + Long.toHexString(fingerprint) + ", features mapping has probably changed.");
+        }
+        final IndexedFeaturesHolder result = resolver.resolve(words);
+        if (null == result) {
+            throw new InvalidObjectException("Features holder refers to unknown features.");
+        }
+        return result;
+    }
+
+    /**
+     * Writes given features holder.
+     *
+     * @param holder the features holder to write
+     * @param output the output to write into
+     * @throws IOException if the holder cannot be written
+     */
+    static void write(final IndexedFeaturesHolder holder, final DataOutput output) throws IOException {
+        final long[] words = holder.getMask().toLongArray();
+        int length = words.length;
+        while (0 < length && 0 == words[length - 1]) {
+            length--;
+        }
+        if (0xFF < length) {
+            throw new InvalidObjectException("Features holder exceeds " + 0xFF * Long.SIZE + " features.");
+        }
+        output.writeByte(VERSION);
+        output.writeLong(holder.getFingerprint());
+        output.writeByte(length);
+        for (int index = 0; index < length; index++) {
+            output.writeLong(words[index]);
+        }
+    }
+
+}
@@ -0,0 +1,241 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Compiled, immutable representation of the mapping between authority and features.
+ *
+ * <p>
+ * Each feature gets dense identifier (assigned in the order of feature class names, so it is stable as long as the
+ * set of mapped features doesn't change), and each authority is mapped to the bit mask of its features. Features
+ * available for given set of authorities are the bitwise sum of their masks, which makes the resolution independent
+ * of the number of features shared between authorities. Authority hierarchy is applied when the mapping is compiled,
+ * each authority mask includes the features of all the authorities reachable from it, so the resolution doesn't need
+ * to expand the authorities. Authorities are matched by their {@linkplain GrantedAuthority#getAuthority() names}, so
+ * any {@link GrantedAuthority} implementation can be used.
+ * </p>
+ * <p>
+ * Feature identifiers assignment is summarized by the fingerprint, equal fingerprints (on different nodes, for
+ * example) mean that the same identifiers denote the same features.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class FeaturesIndex {
+
+    private static final Comparator<Class<?>> BY_NAME = new Comparator<Class<?>>() {
+
+        @Override
+        public int compare(final Class<?> first, final Class<?> second) {
+            return first.getName().compareTo(second.getName());
+        }
+
+    };
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Compiles given mapping between authority and features.
+     *
+     * @param featuresMap the mapping to compile
+     * @param hierarchy the authority hierarchy, each authority gets the features of all the authorities it includes
+     * @return compiled mapping
+     */
+    static FeaturesIndex compile(final Map<GrantedAuthority, ? extends Collection<Class<?>>> featuresMap,
+        final AuthorityHierarchy hierarchy) {
+
+        // Assign dense identifiers to the features, ...
+        final Set<Class<?>> sorted = new TreeSet<>(BY_NAME);
+        for (final Collection<Class<?>> features : featuresMap.values()) {
+            sorted.addAll(features);
+        }
+        final ImmutableList<Class<?>> features = ImmutableList.copyOf(sorted);
+        final ImmutableMap.Builder<Class<?>, Integer> identifiers = ImmutableMap.builder();
+        for (int index = 0; index < features.size(); index++) {
+            identifiers.put(features.get(index), index);
+        }
+        final ImmutableMap<Class<?>, Integer> featureIds = identifiers.build();
+
+        // ... calculate the mask of features directly granted to each authority, ...
+        final int words = Math.max(1, (features.size() + Long.SIZE - 1) / Long.SIZE);
+        final Map<String, long[]> direct = new HashMap<>();
+        for (final Map.Entry<GrantedAuthority, ? extends Collection<Class<?>>> entry : featuresMap.entrySet()) {
+            long[] mask = direct.get(entry.getKey().getAuthority());
+            if (null == mask) {
+                mask = new long[words];
+                direct.put(entry.getKey().getAuthority(), mask);
+            }
+            for (final Class<?> feature : entry.getValue()) {
+                final int featureId = featureIds.get(feature);
+                mask[featureId / Long.SIZE] |= 1L << featureId;
+            }
+        }
+
+        // ... and expand it with the features of included authorities (once, so the resolution doesn't have to).
+        final ImmutableMap.Builder<String, long[]> masks = ImmutableMap.builder();
+        final Set<String> authorities = new LinkedHashSet<>(direct.keySet());
+        authorities.addAll(hierarchy.authorities());
+        for (final String authority : authorities) {
+            masks.put(authority, expand(authority, direct, hierarchy, words));
+        }
+        return new FeaturesIndex(features, featureIds, masks.build(), words);
+    }
+
+    /**
+     * Calculates the mask of features granted to given authority, and all the authorities it includes.
+     */
+    private static long[] expand(final String authority, final Map<String, long[]> direct,
+        final AuthorityHierarchy hierarchy, final int words) {
+        final long[] result = new long[words];
+        for (final String reachable : hierarchy.reachableFrom(authority)) {
+            final long[] mask = direct.get(reachable);
+            if (null != mask) {
+                for (int index = 0; index < words; index++) {
+                    result[index] |= mask[index];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the fingerprint (64-bit FNV-1a hash of feature class names) of given features.
+     */
+    private static long fingerprintOf(final Iterable<Class<?>> features) {
+        long result = FNV_OFFSET_BASIS;
+        for (final Class<?> feature : features) {
+            final String name = feature.getName();
+            for (int index = 0; index < name.length(); index++) {
+                result = (result ^ name.charAt(index)) * FNV_PRIME;
+            }
+            result = (result ^ '\n') * FNV_PRIME;
+        }
+        return result;
+    }
+
+    private final ImmutableMap<Class<?>, Integer> featureIds;
+
+    private final ImmutableList<Class<?>> features;
+
+    private final long fingerprint;
+
+    private final long[] known;
+
+    private final ImmutableMap<String, long[]> masks;
+
+    private final int words;
+
+    private FeaturesIndex(final ImmutableList<Class<?>> features, final ImmutableMap<Class<?>, Integer> featureIds,
+        final ImmutableMap<String, long[]> masks, final int words) {
+        super();
+        this.featureIds = featureIds;
+        this.features = features;
+        this.fingerprint = fingerprintOf(features);
+        this.masks = masks;
+        this.words = words;
+        this.known = new long[words];
+        for (int featureId = 0; featureId < features.size(); featureId++) {
+            known[featureId / Long.SIZE] |= 1L << featureId;
+        }
+    }
+
+    /**
+     * Provides the feature having given identifier.
+     *
+     * @param featureId the feature identifier
+     * @return the feature
+     */
+    Class<?> featureOf(final int featureId) {
+        return features.get(featureId);
+    }
+
+    /**
+     * @return all the indexed features, ordered by their identifiers
+     */
+    ImmutableList<Class<?>> features() {
+        return features;
+    }
+
+    /**
+     * @return the fingerprint of feature identifiers assignment
+     */
+    long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Provides the identifier of given feature.
+     *
+     * @param feature the feature
+     * @return feature identifier, or {@code -1} if the feature is not indexed
+     */
+    int idOf(final Class<?> feature) {
+        final Integer featureId = featureIds.get(feature);
+        return (null == featureId) ? -1 : featureId;
+    }
+
+    /**
+     * Calculates the mask of features available for given authorities.
+     *
+     * @param authorities the authorities
+     * @return mask of features available for given authorities
+     */
+    FeatureMask maskOf(final Collection<? extends GrantedAuthority> authorities) {
+        final long[] result = new long[words];
+        for (final GrantedAuthority authority : authorities) {
+            final long[] mask = (null == authority.getAuthority()) ? null : masks.get(authority.getAuthority());
+            if (null != mask) {
+                for (int index = 0; index < words; index++) {
+                    result[index] |= mask[index];
+                }
+            }
+        }
+        return new FeatureMask(result);
+    }
+
+    /**
+     * Creates the mask of features from given words, padding it to the size used by this index.
+     *
+     * @param source the bit mask words
+     * @return the mask of features, or {@code null} if given words denote features not known to this index
+     */
+    FeatureMask maskOf(final long[] source) {
+        FeatureMask result = null;
+        if (source.length <= words) {
+            final long[] mask = Arrays.copyOf(source, words);
+            boolean valid = true;
+            for (int index = 0; index < words; index++) {
+                valid &= 0 == (mask[index] & ~known[index]);
+            }
+            result = valid ? new FeatureMask(mask) : null;
+        }
+        return result;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("features", features).add("authorities", masks.keySet())
+            .add("fingerprint", Long.toHexString(fingerprint)).toString();
+    }
+
+}
@@ -0,0 +1,316 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import pl.ais.commons.infrastructure.metrics.MetricsSink;
+import pl.ais.commons.infrastructure.metrics.Probe;
+import pl.ais.commons.infrastructure.service.DefaultPrincipalService;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Loads the mapping between authority and features from the external file, applies it to the
+ * {@link PrincipalToFeaturesHolderTransformer}, and re-applies it each time the file changes.
+ *
+ * <p>
+ * Mapping file is the properties file, mapping the authority to comma separated names of feature classes, for
+ * example:
+ * </p>
+ *
+ * <pre>
+ * ROLE_USER = com.example.feature.Browsing
+ * ROLE_ADMIN = com.example.feature.Browsing, com.example.feature.Administration
+ * </pre>
+ *
+ * <p>
+ * File is watched using {@link WatchService}, and parsed and validated by the background thread, so the principals
+ * being transformed are never affected by the reload. Invalid mapping is reported and ignored (the transformer keeps
+ * using the previous one), valid mapping is published by the transformer atomically, along with fresh features holders
+ * cache. If the {@link DefaultPrincipalService} is provided (see
+ * {@link #setPrincipalService(DefaultPrincipalService)}), its unwrapping results are discarded once the mapping is
+ * applied, so the features holders it cached are not served anymore. Each applied mapping gets next version number
+ * (see {@link #getVersion()}), and the reload duration is logged, and recorded if the {@link MetricsSink} is provided.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class FeaturesMapWatcher implements DisposableBean, InitializingBean {
+
+    /**
+     * Time (in milliseconds) for which the watcher waits for subsequent changes of the file before reloading it.
+     */
+    private static final long QUIET_PERIOD = 200;
+
+    private static final Logger LOG = LoggerFactory.getLogger(FeaturesMapWatcher.class);
+
+    private ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+
+    private ImmutableMap<GrantedAuthority, Set<Class<?>>> current;
+
+    private volatile long lastReloadDuration;
+
+    private File location;
+
+    private DefaultPrincipalService principalService;
+
+    private Probe reloadProbe;
+
+    private PrincipalToFeaturesHolderTransformer transformer;
+
+    private volatile long version;
+
+    private WatchService watchService;
+
+    private Thread watcher;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet() throws BeanInitializationException {
+        if (null == location) {
+            throw new BeanInitializationException("Please, provide the location of features mapping file.");
+        }
+        if (null == transformer) {
+            throw new BeanInitializationException("Please, provide the transformer to apply the mapping to.");
+        }
+        try {
+            reload();
+        } catch (final IOException | IllegalArgumentException exception) {
+            throw new BeanInitializationException("Unable to load features mapping from: " + location, exception);
+        }
+
+        // Start watching the directory containing the mapping file.
+        final Path directory = location.getAbsoluteFile().toPath().getParent();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (final IOException exception) {
+            throw new BeanInitializationException("Unable to watch the directory: " + directory, exception);
+        }
+        watcher = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                watch();
+            }
+
+        }, "features-map-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Stops watching the mapping file.
+     */
+    @Override
+    public void destroy() throws IOException, InterruptedException {
+        if (null != watchService) {
+            watchService.close();
+        }
+        if (null != watcher) {
+            watcher.join();
+            watcher = null;
+        }
+    }
+
+    /**
+     * @return the duration (in milliseconds) of the last reload which applied the mapping
+     */
+    public long getLastReloadDuration() {
+        return lastReloadDuration;
+    }
+
+    /**
+     * @return the version of currently applied mapping, incremented each time the changed mapping is applied
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Verifies if given watch key reports the change of the mapping file.
+     */
+    private boolean isChanged(final WatchKey key) {
+        boolean result = false;
+        final Path fileName = location.toPath().getFileName();
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            result |= fileName.equals(event.context());
+        }
+        key.reset();
+        return result;
+    }
+
+    /**
+     * Parses the mapping file.
+     *
+     * @return the features mapping
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file contains invalid mapping
+     */
+    private ImmutableMap<GrantedAuthority, Set<Class<?>>> parse() throws IOException {
+        final Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(location.toPath())) {
+            properties.load(input);
+        }
+        final ImmutableMap.Builder<GrantedAuthority, Set<Class<?>>> result = ImmutableMap.builder();
+        for (final String authority : properties.stringPropertyNames()) {
+            if (!StringUtils.hasText(authority)) {
+                throw new IllegalArgumentException("Authority cannot be blank.");
+            }
+            final Set<Class<?>> features = new LinkedHashSet<>();
+            for (final String featureName : StringUtils.commaDelimitedListToStringArray(properties
+                .getProperty(authority))) {
+                if (StringUtils.hasText(featureName)) {
+                    try {
+                        features.add(ClassUtils.forName(featureName.trim(), classLoader));
+                    } catch (final ClassNotFoundException | LinkageError error) {
+                        throw new IllegalArgumentException("Unable to load feature: " + featureName.trim()
+                            + " mapped to authority: " + authority, error);
+                    }
+                }
+            }
+            result.put(new SimpleGrantedAuthority(authority.trim()), ImmutableSet.copyOf(features));
+        }
+        return result.build();
+    }
+
+    /**
+     * Loads the mapping file, and applies it to the transformer, unless it didn't change since last reload.
+     *
+     * @return {@code true} if the changed mapping has been applied, {@code false} otherwise
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file contains invalid mapping
+     */
+    public synchronized boolean reload() throws IOException {
+        final long start = System.nanoTime();
+        final ImmutableMap<GrantedAuthority, Set<Class<?>>> mapping = parse();
+        final boolean result = !mapping.equals(current);
+        if (result) {
+            transformer.setFeaturesMap(mapping);
+            if (null != principalService) {
+                principalService.invalidate();
+            }
+            current = mapping;
+            version++;
+            final long duration = System.nanoTime() - start;
+            lastReloadDuration = TimeUnit.NANOSECONDS.toMillis(duration);
+            if (null != reloadProbe) {
+                reloadProbe.record(duration);
+            }
+            LOG.info("Features mapping version " + version + " loaded from " + location + " in " + lastReloadDuration
+                + " ms.");
+        }
+        return result;
+    }
+
+    /**
+     * @param classLoader the class loader used for loading the feature classes
+     */
+    public void setClassLoader(final ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * @param location the location of features mapping file to set
+     */
+    public void setLocation(final File location) {
+        this.location = location;
+    }
+
+    /**
+     * Instruments this watcher using given sink (reload durations are recorded then), or disables the instrumentation
+     * if {@code null} is given.
+     *
+     * @param metricsSink the metrics sink to use
+     */
+    public void setMetricsSink(final MetricsSink metricsSink) {
+        this.reloadProbe = (null == metricsSink) ? null : metricsSink.probe(MetricsSink.FEATURES_RELOAD);
+    }
+
+    /**
+     * @param principalService the principal service which cached unwrapping results should be discarded when the
+     *        mapping is applied
+     */
+    public void setPrincipalService(final DefaultPrincipalService principalService) {
+        this.principalService = principalService;
+    }
+
+    /**
+     * @param transformer the transformer to apply the mapping to
+     */
+    public void setTransformer(final PrincipalToFeaturesHolderTransformer transformer) {
+        this.transformer = transformer;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("location", location).add("version", version).toString();
+    }
+
+    /**
+     * Waits for the changes of the mapping file, and reloads it (once the changes settle) until the watcher is
+     * destroyed.
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    void watch() {
+        try {
+            while (true) {
+                boolean changed = isChanged(watchService.take());
+
+                // Editors tend to write the file in several steps, so wait until it stops changing, ...
+                WatchKey key = watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS);
+                while (null != key) {
+                    changed |= isChanged(key);
+                    key = watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS);
+                }
+
+                // ... and reload it, keeping the previous mapping if the new one is invalid.
+                if (changed) {
+                    try {
+                        reload();
+                    } catch (final IOException | RuntimeException exception) {
+                        LOG.error("Unable to reload features mapping from: " + location
+                            + ", keeping the mapping version " + version + '.', exception);
+                    }
+                }
+            }
+        } catch (final ClosedWatchServiceException | InterruptedException exception) {
+            LOG.debug("Stopped watching features mapping file: " + location);
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Registry of the {@linkplain FeaturesResolver features resolvers} currently in use, keyed by the fingerprint of their
+ * feature identifiers assignment.
+ *
+ * <p>
+ * Used for re-resolving the features holders after deserialization. Resolvers are held weakly, so the registry never
+ * prevents replaced resolvers from being garbage collected. If there is more than one transformer using the same
+ * features mapping, the most recently registered resolver is used.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class FeaturesRegistry {
+
+    private static final Cache<Long, FeaturesResolver> RESOLVERS = CacheBuilder.newBuilder().weakValues().build();
+
+    private FeaturesRegistry() {
+        super();
+    }
+
+    /**
+     * Provides the resolver using feature identifiers assignment having given fingerprint.
+     *
+     * @param fingerprint the fingerprint
+     * @return the resolver, or {@code null} if there is no such resolver
+     */
+    static FeaturesResolver lookup(final long fingerprint) {
+        return RESOLVERS.getIfPresent(fingerprint);
+    }
+
+    /**
+     * Registers given resolver.
+     *
+     * @param resolver the resolver to register
+     */
+    static void register(final FeaturesResolver resolver) {
+        RESOLVERS.put(resolver.fingerprint(), resolver);
+    }
+
+}
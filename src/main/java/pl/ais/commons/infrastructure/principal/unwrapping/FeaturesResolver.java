@@ -0,0 +1,179 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import pl.ais.commons.application.feature.FeaturesHolder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Resolves the features available for given authorities, memoizing the results per distinct set of features.
+ *
+ * <p>
+ * Instances are bound to single version of the features mapping and handlers table, they are replaced as a whole
+ * whenever any of them changes, so the memoized features holders never outlive the state they were built from.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class FeaturesResolver {
+
+    private final Cache<FeatureMask, IndexedFeaturesHolder> cache;
+
+    private final FeatureHandlers handlers;
+
+    private final FeaturesIndex index;
+
+    /**
+     * Constructs new instance.
+     *
+     * @param index the compiled mapping between authority and features
+     * @param handlers the feature handlers table
+     * @param cacheMaximumSize maximum number of distinct feature sets to memoize features holders for
+     */
+    FeaturesResolver(final FeaturesIndex index, final FeatureHandlers handlers, final long cacheMaximumSize) {
+        super();
+        this.cache = CacheBuilder.newBuilder().maximumSize(cacheMaximumSize).recordStats().build();
+        this.handlers = handlers;
+        this.index = index;
+    }
+
+    /**
+     * @return the fingerprint of feature identifiers assignment used by this resolver
+     */
+    long fingerprint() {
+        return index.fingerprint();
+    }
+
+    /**
+     * @return the feature handlers table
+     */
+    FeatureHandlers handlers() {
+        return handlers;
+    }
+
+    /**
+     * @return the statistics of feature handler pools, by feature
+     */
+    ImmutableMap<Class<?>, HandlerPoolStats> handlerPoolStats() {
+        return handlers.poolStats();
+    }
+
+    /**
+     * @return the masks of memoized features holders
+     */
+    List<FeatureMask> hotMasks() {
+        return new ArrayList<>(cache.asMap().keySet());
+    }
+
+    /**
+     * Discards all memoized features holders.
+     */
+    void invalidate() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Resolves the features available for given authorities.
+     *
+     * @param authorities the authorities
+     * @return features holder containing features available for given authorities
+     */
+    FeaturesHolder resolve(final Collection<? extends GrantedAuthority> authorities) {
+        return resolve(index.maskOf(authorities));
+    }
+
+    /**
+     * Resolves the features held by given mask.
+     *
+     * @param mask the features mask
+     * @return features holder containing features held by given mask
+     */
+    IndexedFeaturesHolder resolve(final FeatureMask mask) {
+        IndexedFeaturesHolder result = cache.getIfPresent(mask);
+        if (null == result) {
+            result = new IndexedFeaturesHolder(mask, index);
+            if (handlers.isPooling()) {
+
+                // Discard the instances leased by unreachable holders, and lease the ones for this holder.
+                HandlerLease.expunge();
+                final HandlerLease lease = new HandlerLease(result);
+                result.setShareable(toFeaturesHolder(result, lease));
+                lease.activate();
+                result.setLease(lease);
+            } else {
+                result.setShareable(toFeaturesHolder(result, null));
+            }
+            if (result.isShareable()) {
+                cache.put(mask, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resolves the features held by the mask consisting of given words.
+     *
+     * @param words the features mask words
+     * @return features holder containing features held by given mask, or {@code null} if given words denote features
+     *         not known to this resolver
+     */
+    IndexedFeaturesHolder resolve(final long[] words) {
+        final FeatureMask mask = index.maskOf(words);
+        return (null == mask) ? null : resolve(mask);
+    }
+
+    /**
+     * Memoizes the features holder for the mask consisting of given words, unless it is memoized already, or any of
+     * its handlers cannot be shared between features holders (so the holder wouldn't be memoized anyway).
+     *
+     * @param words the features mask words
+     * @return {@code true} if the features holder has been memoized, {@code false} otherwise
+     */
+    boolean memoize(final long[] words) {
+        boolean result = false;
+        final FeatureMask mask = index.maskOf(words);
+        if (null != mask && !cache.asMap().containsKey(mask)) {
+            boolean shareable = true;
+            for (int featureId = mask.nextFeature(0); shareable && featureId >= 0; featureId = mask
+                .nextFeature(featureId + 1)) {
+                shareable = handlers.isShareable(index.featureOf(featureId));
+            }
+            if (shareable) {
+                resolve(mask);
+                result = cache.asMap().containsKey(mask);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the statistics of features holders cache
+     */
+    CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Fills given holder with the features held by its mask.
+     *
+     * @return {@code true} if the holder may be shared between principals, {@code false} otherwise
+     */
+    private boolean toFeaturesHolder(final IndexedFeaturesHolder holder, final HandlerLease lease) {
+        boolean shareable = true;
+        final FeatureMask mask = holder.getMask();
+        for (int featureId = mask.nextFeature(0); featureId >= 0; featureId = mask.nextFeature(featureId + 1)) {
+            shareable &= handlers.addFeature(holder, index.featureOf(featureId), lease);
+        }
+        return shareable;
+    }
+
+}
@@ -0,0 +1,109 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pooled handler instances leased by single features holder, returned to their pools when the holder is released
+ * explicitly, or discarded when it becomes unreachable (whichever comes first).
+ *
+ * <p>
+ * Leases of unreachable holders are collected by the {@link ReferenceQueue}, which is drained whenever new lease is
+ * taken (see {@link #expunge()}), so there is no background thread involved. Their instances are never returned to the
+ * pools, as the callers may still use the handlers obtained from the holder (which may even become unreachable while
+ * its handler is in use), so only the explicit release proves the instances are no longer used.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class HandlerLease extends PhantomReference<IndexedFeaturesHolder> {
+
+    /**
+     * Leases not released yet (so they stay reachable until their holders are discarded).
+     */
+    private static final Set<HandlerLease> ACTIVE = Collections
+        .newSetFromMap(new ConcurrentHashMap<HandlerLease, Boolean>());
+
+    private static final ReferenceQueue<IndexedFeaturesHolder> QUEUE = new ReferenceQueue<>();
+
+    private final List<Object> instances = new ArrayList<>(2);
+
+    private final List<HandlerPool> pools = new ArrayList<>(2);
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * Constructs new instance.
+     *
+     * @param holder the features holder leasing the handler instances
+     */
+    HandlerLease(final IndexedFeaturesHolder holder) {
+        super(holder, QUEUE);
+    }
+
+    /**
+     * Discards the instances leased by the holders which became unreachable.
+     */
+    static void expunge() {
+        for (Reference<?> lease = QUEUE.poll(); null != lease; lease = QUEUE.poll()) {
+            ((HandlerLease) lease).end(false);
+        }
+    }
+
+    /**
+     * Takes the handler instance from given pool.
+     *
+     * @param pool the pool to take the instance from
+     * @return the handler instance
+     */
+    Object acquire(final HandlerPool pool) {
+        final Object result = pool.acquire();
+        pools.add(pool);
+        instances.add(result);
+        return result;
+    }
+
+    /**
+     * Starts tracking the holder, if it has leased any instances.
+     */
+    void activate() {
+        if (instances.isEmpty()) {
+            clear();
+        } else {
+            ACTIVE.add(this);
+        }
+    }
+
+    /**
+     * Ends the lease (only once), returning the leased instances to their pools, or discarding them.
+     */
+    private void end(final boolean recycle) {
+        if (released.compareAndSet(false, true)) {
+            ACTIVE.remove(this);
+            clear();
+            for (int index = 0; index < instances.size(); index++) {
+                if (recycle) {
+                    pools.get(index).recycle(instances.get(index));
+                } else {
+                    pools.get(index).discard(instances.get(index));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the leased instances to their pools (only once).
+     */
+    void release() {
+        end(true);
+    }
+
+}
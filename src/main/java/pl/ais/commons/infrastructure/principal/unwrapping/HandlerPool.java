@@ -0,0 +1,167 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+
+import pl.ais.commons.infrastructure.metrics.Probe;
+
+/**
+ * Bounded, thread-safe pool of the instances of non-singleton feature handler.
+ *
+ * <p>
+ * Pool is filled lazily: instances are taken from the pool if available (and created otherwise), and returned to it
+ * once the features holder using them is released (see {@link HandlerLease}). Only the instances implementing
+ * {@link RecyclableHandler} are pooled, they are reset before they are returned to the pool. Other instances, the ones
+ * returned to the full pool, and the ones which failed to reset, are discarded.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class HandlerPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HandlerPool.class);
+
+    private final ApplicationContext context;
+
+    private final Probe creationProbe;
+
+    private final AtomicLong createdCount = new AtomicLong();
+
+    private final AtomicLong discardedCount = new AtomicLong();
+
+    private final String handlerName;
+
+    private final BlockingQueue<Object> idle;
+
+    private final int maximumSize;
+
+    private final AtomicLong recycledCount = new AtomicLong();
+
+    private final AtomicLong reusedCount = new AtomicLong();
+
+    /**
+     * Constructs new (empty) instance.
+     *
+     * @param context the application context to create the instances in
+     * @param handlerName the name of the handler bean
+     * @param maximumSize the maximum number of idle instances kept by the pool
+     * @param creationProbe the probe recording the creation of instances (may be {@code null})
+     */
+    HandlerPool(final ApplicationContext context, final String handlerName, final int maximumSize,
+        final Probe creationProbe) {
+        super();
+        this.context = context;
+        this.handlerName = handlerName;
+        this.maximumSize = maximumSize;
+        this.creationProbe = creationProbe;
+        this.idle = new ArrayBlockingQueue<>(maximumSize);
+    }
+
+    /**
+     * Provides the handler instance, taken from the pool if available.
+     *
+     * @return the handler instance
+     */
+    Object acquire() {
+        Object result = idle.poll();
+        if (null == result) {
+            result = create();
+        } else {
+            reusedCount.incrementAndGet();
+        }
+        return result;
+    }
+
+    private Object create() {
+        final Object result;
+        if (null == creationProbe) {
+            result = context.getBean(handlerName);
+        } else {
+            final long start = System.nanoTime();
+            result = context.getBean(handlerName);
+            creationProbe.record(System.nanoTime() - start);
+        }
+        createdCount.incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Discards given handler instance, instead of returning it to the pool.
+     *
+     * @param instance the handler instance
+     */
+    void discard(final Object instance) {
+        discardedCount.incrementAndGet();
+    }
+
+    /**
+     * Verifies if this pool holds the instances of given handler, and keeps up to given number of them.
+     *
+     * @param context the application context
+     * @param handlerName the name of the handler bean
+     * @param maximumSize the maximum number of idle instances
+     * @return {@code true} if this pool can be used for given handler, {@code false} otherwise
+     */
+    boolean isPoolOf(final ApplicationContext context, final String handlerName, final int maximumSize) {
+        return (this.context == context) && this.handlerName.equals(handlerName) && (this.maximumSize == maximumSize);
+    }
+
+    /**
+     * Returns given handler instance to the pool (resetting it first), discarding it if the pool is full, or the
+     * instance is not recyclable, or fails to reset.
+     *
+     * @param instance the handler instance
+     */
+    void recycle(final Object instance) {
+        if (0 < idle.remainingCapacity() && reset(instance) && idle.offer(instance)) {
+            recycledCount.incrementAndGet();
+        } else {
+            discardedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Resets given handler instance, if it is {@linkplain RecyclableHandler recyclable}.
+     *
+     * @return {@code true} if the instance can be reused, {@code false} otherwise (including the instances which are
+     *         not recyclable)
+     */
+    private boolean reset(final Object instance) {
+        boolean result = false;
+        if (instance instanceof RecyclableHandler) {
+            try {
+                result = ((RecyclableHandler) instance).recycle();
+            } catch (final RuntimeException exception) {
+                LOG.warn("Unable to recycle the instance of feature handler '" + handlerName + "', discarding it.",
+                    exception);
+                result = false;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the statistics of this pool
+     */
+    HandlerPoolStats stats() {
+        return new HandlerPoolStats(maximumSize, idle.size(), createdCount.get(), reusedCount.get(),
+            recycledCount.get(), discardedCount.get());
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("handlerName", handlerName).add("stats", stats()).toString();
+    }
+
+}
@@ -0,0 +1,98 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+/**
+ * Immutable statistics of the pool of feature handler instances.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public final class HandlerPoolStats {
+
+    private final long createdCount;
+
+    private final long discardedCount;
+
+    private final int idleCount;
+
+    private final int maximumSize;
+
+    private final long recycledCount;
+
+    private final long reusedCount;
+
+    /**
+     * Constructs new instance.
+     *
+     * @param maximumSize the maximum number of idle instances kept by the pool
+     * @param idleCount the number of idle instances
+     * @param createdCount the number of instances created
+     * @param reusedCount the number of instances taken from the pool
+     * @param recycledCount the number of instances returned to the pool
+     * @param discardedCount the number of instances discarded, because the pool was full or they failed to reset
+     */
+    HandlerPoolStats(final int maximumSize, final int idleCount, final long createdCount, final long reusedCount,
+        final long recycledCount, final long discardedCount) {
+        super();
+        this.maximumSize = maximumSize;
+        this.idleCount = idleCount;
+        this.createdCount = createdCount;
+        this.reusedCount = reusedCount;
+        this.recycledCount = recycledCount;
+        this.discardedCount = discardedCount;
+    }
+
+    /**
+     * @return the number of instances created
+     */
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    /**
+     * @return the number of instances discarded, because the pool was full or they failed to reset
+     */
+    public long getDiscardedCount() {
+        return discardedCount;
+    }
+
+    /**
+     * @return the number of idle instances
+     */
+    public int getIdleCount() {
+        return idleCount;
+    }
+
+    /**
+     * @return the maximum number of idle instances kept by the pool
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return the number of instances returned to the pool
+     */
+    public long getRecycledCount() {
+        return recycledCount;
+    }
+
+    /**
+     * @return the number of instances taken from the pool
+     */
+    public long getReusedCount() {
+        return reusedCount;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("maximumSize", maximumSize).add("idleCount", idleCount)
+            .add("createdCount", createdCount).add("reusedCount", reusedCount).add("recycledCount", recycledCount)
+            .add("discardedCount", discardedCount).toString();
+    }
+
+}
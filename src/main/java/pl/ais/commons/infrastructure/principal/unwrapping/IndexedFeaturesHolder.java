@@ -0,0 +1,111 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+import pl.ais.commons.application.feature.FeaturesManager;
+
+/**
+ * Features holder remembering the {@linkplain FeatureMask mask} of features it was built from.
+ *
+ * <p>
+ * Feature availability is verified against the mask (by the feature identifier assigned by {@link FeaturesIndex}),
+ * the handlers are kept by the {@link FeaturesManager} only for the sake of being looked up.
+ * </p>
+ * <p>
+ * Holder is serialized in compact form (see {@link FeaturesHolderCodec}), consisting of the mask and the fingerprint
+ * of features mapping it was built from, feature handlers are re-resolved after deserialization.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class IndexedFeaturesHolder extends FeaturesManager implements Serializable {
+
+    private static final long serialVersionUID = 6119624180591522349L;
+
+    private final transient FeaturesIndex index;
+
+    private transient HandlerLease lease;
+
+    private final transient FeatureMask mask;
+
+    private transient boolean shareable;
+
+    /**
+     * Constructs new instance.
+     *
+     * @param mask the mask of features held by this instance
+     * @param index the features index which assigned the feature identifiers used by the mask
+     */
+    IndexedFeaturesHolder(final FeatureMask mask, final FeaturesIndex index) {
+        super();
+        this.index = index;
+        this.mask = mask;
+    }
+
+    /**
+     * @return the fingerprint of feature identifiers assignment used by the mask
+     */
+    long getFingerprint() {
+        return index.fingerprint();
+    }
+
+    /**
+     * @return the mask of features held by this instance
+     */
+    FeatureMask getMask() {
+        return mask;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasFeature(final Class<?> feature) {
+        return mask.contains(index.idOf(feature));
+    }
+
+    /**
+     * @return {@code true} if this instance may be shared between principals (holds singleton handlers only),
+     *         {@code false} otherwise
+     */
+    boolean isShareable() {
+        return shareable;
+    }
+
+    /**
+     * Returns the pooled handler instances leased by this instance (if any) to their pools, this instance shouldn't be
+     * used afterwards.
+     */
+    void release() {
+        if (null != lease) {
+            lease.release();
+        }
+    }
+
+    /**
+     * @param lease the lease of pooled handler instances used by this instance
+     */
+    void setLease(final HandlerLease lease) {
+        this.lease = lease;
+    }
+
+    /**
+     * @param shareable determines if this instance may be shared between principals
+     */
+    void setShareable(final boolean shareable) {
+        this.shareable = shareable;
+    }
+
+    /**
+     * Replaces this instance with its compact form when serializing.
+     *
+     * @return compact form of this instance
+     * @throws ObjectStreamException never
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return new SerializedFeaturesHolder(this);
+    }
+
+}
@@ -2,8 +2,14 @@ package pl.ais.commons.infrastructure.principal.unwrapping;
 
 import static com.google.common.base.Objects.toStringHelper;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -16,41 +22,95 @@ import org.springframework.beans.factory.BeanInitializationException;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 
 import pl.ais.commons.application.feature.FeaturesHolder;
-import pl.ais.commons.application.feature.FeaturesManager;
 import pl.ais.commons.application.service.PrincipalTransformer;
+import pl.ais.commons.infrastructure.cache.AuthoritiesOnly;
+import pl.ais.commons.infrastructure.cache.ShareableResults;
+import pl.ais.commons.infrastructure.metrics.MetricsSink;
+import pl.ais.commons.infrastructure.registry.PrincipalRegistry;
 
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 /**
  * {@linkplain Principal} to {@linkplain FeaturesHolder} transformer.
  *
+ * <p>
+ * The mapping between authority and features is compiled into bit masks, and features holders are memoized per
+ * distinct set of features, so principals sharing the same features share the same {@linkplain FeaturesHolder}
+ * instance, which should be treated as immutable by the callers. Holders containing handlers which are not singletons
+ * are never memoized, nor shared between the principals by the infrastructure (see
+ * {@link #isShareable(FeaturesHolder)}).
+ * </p>
+ * <p>
+ * Feature handlers are resolved once, when the transformer is initialized, and re-resolved each time the owning
+ * application context is refreshed. The new handlers table (along with fresh features holders cache) is published
+ * atomically, so the transformer never uses partially resolved handlers. Features holders memoized before are rebuilt
+ * using the new handlers (as long as the features are identified the same way), so the cache stays warm. The same
+ * applies when the features mapping is changed at runtime (see {@link #setFeaturesMap(Map)} and
+ * {@link FeaturesMapWatcher}): new mapping is compiled and its handlers are resolved aside, and published along with
+ * fresh features holders cache only if all of that succeeds. Authority hierarchy (see
+ * {@link #setRoleHierarchy(String)}) is applied to the mapping when it is compiled, so the authorities don't have to be
+ * expanded when the principals are transformed. Handlers listed in the {@link PrincipalRegistry} generated at compile
+ * time are looked up by name, instead of scanning the context.
+ * </p>
+ * <p>
+ * Non-singleton feature handlers implementing {@link RecyclableHandler} can be pooled (see
+ * {@link #setHandlerPoolSize(int)}), each features holder leases its handler instances from the pools then, and
+ * returns them once released (see {@link #release(FeaturesHolder)}), so pooled handlers must reset any state specific
+ * to the holder, and must not be referenced after the holder is released. Instances leased by the holders which are
+ * garbage collected without being released are discarded, as they may still be in use.
+ * </p>
+ * <p>
+ * Provided features holders are serializable in compact form (see {@link FeaturesHolderCodec}), so they can be safely
+ * stored within replicated HTTP sessions. Memoized features holders can be written into (and restored from) the
+ * snapshot (see {@link #writeSnapshot(DataOutput)} and {@link #readSnapshot(DataInput)}), so the node restarts with
+ * warm cache.
+ * </p>
+ *
  * @author Warlock, AIS.PL
  * @since 1.0
  */
-public class PrincipalToFeaturesHolderTransformer implements ApplicationContextAware, InitializingBean,
-    PrincipalTransformer<FeaturesHolder> {
+@AuthoritiesOnly
+public class PrincipalToFeaturesHolderTransformer implements ApplicationContextAware,
+    ApplicationListener<ContextRefreshedEvent>, InitializingBean, PrincipalTransformer<FeaturesHolder>,
+    ShareableResults<FeaturesHolder> {
+
+    /**
+     * Default maximum number of distinct feature sets for which features holders are memoized.
+     */
+    public static final long DEFAULT_CACHE_MAXIMUM_SIZE = 256;
 
     private static final Logger LOG = LoggerFactory.getLogger(PrincipalToFeaturesHolderTransformer.class);
 
-    private transient GrantedAuthority anonymous;
+    private transient ImmutableList<GrantedAuthority> anonymous;
+
+    private transient long cacheMaximumSize = DEFAULT_CACHE_MAXIMUM_SIZE;
 
     private transient ApplicationContext context;
 
     private transient ImmutableMap<GrantedAuthority, Set<Class<?>>> featuresMap = ImmutableMap.of();
 
-    private void addFeature(final FeaturesManager manager, final Class<?> feature) {
-        final Map<String, ?> handlersMap = context.getBeansOfType(feature);
-        if (handlersMap.isEmpty()) {
-            manager.addVirtualFeature(feature);
-        } else {
-            manager.addFeature(feature, handlersMap.values().iterator().next());
-        }
-    }
+    private transient int handlerPoolSize;
+
+    private transient AuthorityHierarchy hierarchy = AuthorityHierarchy.EMPTY;
+
+    private transient MetricsSink metricsSink;
+
+    private transient PrincipalRegistry registry;
+
+    private transient volatile FeaturesResolver resolver;
+
+    private transient CacheStats retiredStats = new CacheStats(0, 0, 0, 0, 0, 0);
+
+    private transient Collection<? extends Collection<? extends GrantedAuthority>> warmUpAuthorities = Collections
+        .emptySet();
 
     /**
      * {@inheritDoc}
@@ -63,6 +123,14 @@ public class PrincipalToFeaturesHolderTransformer implements ApplicationContextA
         if (null == context) {
             throw new BeanInitializationException("Please, provide the application context.");
         }
+        if (0 > cacheMaximumSize) {
+            throw new BeanInitializationException("Cache maximum size cannot be negative.");
+        }
+        if (0 > handlerPoolSize) {
+            throw new BeanInitializationException("Handler pool size cannot be negative.");
+        }
+        registry = PrincipalRegistry.load(context.getClassLoader());
+        refresh(featuresMap, false);
         if (LOG.isDebugEnabled()) {
             LOG.debug("Principal -> FeaturesHolder transformer initialized as: " + this);
         }
@@ -75,13 +143,33 @@ public class PrincipalToFeaturesHolderTransformer implements ApplicationContextA
     public FeaturesHolder apply(@Nullable final Principal principal) {
         final FeaturesHolder result;
         if (principal instanceof Authentication) {
-            result = toFeaturesHolder(((Authentication) principal).getAuthorities());
+            result = resolver.resolve(((Authentication) principal).getAuthorities());
         } else {
-            result = toFeaturesHolder(ImmutableList.of(anonymous));
+            result = resolver.resolve(anonymous);
         }
         return result;
     }
 
+    /**
+     * Provides the statistics (hits, misses, evictions) of features holders cache.
+     *
+     * @return features holders cache statistics
+     */
+    public synchronized CacheStats getCacheStats() {
+        return (null == resolver) ? retiredStats : retiredStats.plus(resolver.stats());
+    }
+
+    /**
+     * Provides the statistics (number of idle instances, instances created, reused, recycled and discarded) of feature
+     * handler pools.
+     *
+     * @return the statistics of feature handler pools, by feature (empty if pooling is disabled)
+     */
+    public Map<Class<?>, HandlerPoolStats> getHandlerPoolStats() {
+        final FeaturesResolver current = resolver;
+        return (null == current) ? ImmutableMap.<Class<?>, HandlerPoolStats> of() : current.handlerPoolStats();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -90,13 +178,133 @@ public class PrincipalToFeaturesHolderTransformer implements ApplicationContextA
         return FeaturesHolder.class;
     }
 
+    /**
+     * Discards all memoized features holders.
+     */
+    public void invalidateCache() {
+        final FeaturesResolver current = resolver;
+        if (null != current) {
+            current.invalidate();
+        }
+    }
+
+    /**
+     * Verifies if given features holder can be shared between the principals having the same authorities, which is not
+     * the case if it holds non-singleton (prototype or pooled) handlers, as each principal should get its own instances
+     * of them then.
+     *
+     * @param holder the features holder provided by this transformer
+     * @return {@code true} if given features holder can be shared, {@code false} otherwise
+     */
+    @Override
+    public boolean isShareable(final FeaturesHolder holder) {
+        return (holder instanceof IndexedFeaturesHolder) && ((IndexedFeaturesHolder) holder).isShareable();
+    }
+
+    /**
+     * Re-resolves the feature handlers whenever the application context we are running in gets refreshed.
+     *
+     * @param event the event to respond to
+     */
+    @Override
+    public void onApplicationEvent(final ContextRefreshedEvent event) {
+        if (context == event.getApplicationContext()) {
+            synchronized (this) {
+                if (null != resolver) {
+                    refresh(featuresMap, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolves feature handlers for given features mapping, warms the features holders cache up, and publishes the
+     * result (along with the mapping itself) at once.
+     *
+     * @param mapping the features mapping to use
+     * @param reusePools determines if the pools of the same handlers should be taken over from current handlers
+     *        (which is not the case if the application context was refreshed, and the handler beans could change)
+     */
+    private synchronized void refresh(final ImmutableMap<GrantedAuthority, Set<Class<?>>> mapping,
+        final boolean reusePools) {
+        final FeaturesIndex index = FeaturesIndex.compile(mapping, hierarchy);
+        final FeaturesResolver refreshed = new FeaturesResolver(index, FeatureHandlers.resolve(context,
+            index.features(), registry, handlerPoolSize, metricsSink, (reusePools && null != resolver) ? resolver
+                .handlers() : null), cacheMaximumSize);
+        refreshed.resolve(anonymous);
+        for (final Collection<? extends GrantedAuthority> authorities : warmUpAuthorities) {
+            refreshed.resolve(authorities);
+        }
+        if (null != resolver) {
+
+            // Rebuild the features holders memoized so far (restored from the snapshot, for example), unless the
+            // features are identified differently now.
+            if (resolver.fingerprint() == refreshed.fingerprint()) {
+                for (final FeatureMask mask : resolver.hotMasks()) {
+                    refreshed.memoize(mask.toLongArray());
+                }
+            }
+            retiredStats = retiredStats.plus(resolver.stats());
+        }
+        featuresMap = mapping;
+        resolver = refreshed;
+        FeaturesRegistry.register(refreshed);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Feature handlers resolved as: " + refreshed);
+        }
+    }
+
+    /**
+     * Reads the masks of features holders written by {@link #writeSnapshot(DataOutput)}, and memoizes the features
+     * holders for them, unless the snapshot is stale (was written using different features mapping). Holders having
+     * handlers which cannot be shared between principals are skipped, as they are never memoized. Snapshot is read
+     * exclusively with re-resolving the handlers, so the restored holders are carried over to the new handlers.
+     *
+     * @param in the input to read the snapshot from
+     * @return the number of features holders memoized from the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    public synchronized int readSnapshot(final DataInput in) throws IOException {
+        final long fingerprint = in.readLong();
+        final List<long[]> masks = new ArrayList<>();
+        for (int count = in.readInt(); 0 < count; count--) {
+            final long[] words = new long[in.readInt()];
+            for (int index = 0; index < words.length; index++) {
+                words[index] = in.readLong();
+            }
+            masks.add(words);
+        }
+        int result = 0;
+        final FeaturesResolver current = resolver;
+        if (null != current && current.fingerprint() == fingerprint) {
+            for (final long[] words : masks) {
+                result += current.memoize(words) ? 1 : 0;
+            }
+        } else if (LOG.isInfoEnabled()) {
+            LOG.info("Features holders snapshot discarded, it was written using different features mapping.");
+        }
+        return result;
+    }
+
+    /**
+     * Returns the pooled handler instances used by given features holder to their pools (they are discarded if the
+     * holder is garbage collected instead). Neither the holder, nor its handlers should be used afterwards.
+     *
+     * @param holder the features holder provided by this transformer
+     */
+    public void release(final FeaturesHolder holder) {
+        if (holder instanceof IndexedFeaturesHolder) {
+            ((IndexedFeaturesHolder) holder).release();
+        }
+    }
+
     /**
      * Defines the authority granted for anonymous user.
      *
      * @param authority the authority to use
      */
     public void setAnonymousAuthority(final GrantedAuthority authority) {
-        this.anonymous = authority;
+        this.anonymous = (null == authority) ? null : ImmutableList.of(authority);
     }
 
     /**
@@ -108,28 +316,103 @@ public class PrincipalToFeaturesHolderTransformer implements ApplicationContextA
     }
 
     /**
-     * Defines the mapping between authority and features.
+     * Defines the maximum number of distinct feature sets for which features holders will be memoized.
+     *
+     * @param cacheMaximumSize the maximum size to set ({@code 0} disables memoization)
+     */
+    public void setCacheMaximumSize(final long cacheMaximumSize) {
+        this.cacheMaximumSize = cacheMaximumSize;
+    }
+
+    /**
+     * Defines the mapping between authority and features, if the transformer is already initialized, the mapping is
+     * applied immediately (and memoized features holders are discarded).
      *
      * @param featuresMap the mapping to set
      */
     public void setFeaturesMap(final Map<GrantedAuthority, Set<Class<?>>> featuresMap) {
-        this.featuresMap = ImmutableMap.copyOf(featuresMap);
-    }
-
-    private FeaturesHolder toFeaturesHolder(final Collection<? extends GrantedAuthority> authorities) {
-        final FeaturesManager result = new FeaturesManager();
-        for (final GrantedAuthority authority : authorities) {
-            final Collection<Class<?>> features = featuresMap.get(authority);
-            if (null != features) {
-                for (final Class<?> feature : features) {
-                    if (result.hasFeature(feature)) {
-                        continue;
-                    }
-                    addFeature(result, feature);
-                }
+        final ImmutableMap<GrantedAuthority, Set<Class<?>>> mapping = ImmutableMap.copyOf(featuresMap);
+        synchronized (this) {
+            if (null == resolver) {
+                this.featuresMap = mapping;
+            } else {
+                refresh(mapping, true);
+            }
+        }
+    }
+
+    /**
+     * Defines the maximum number of idle instances pooled per non-singleton feature handler, the pools are filled
+     * lazily (with the instances released by the features holders), and kept when the features mapping changes.
+     * Only the handlers implementing {@link RecyclableHandler} are returned to the pool (reset first), and only once
+     * the holder is released explicitly, other instances are discarded. Pooling is disabled by default ({@code 0}), so
+     * each features holder gets freshly created handler instances.
+     *
+     * @param handlerPoolSize the pool size to set
+     */
+    public void setHandlerPoolSize(final int handlerPoolSize) {
+        this.handlerPoolSize = handlerPoolSize;
+    }
+
+    /**
+     * Defines the authority hierarchy (in the format used by Spring Security {@code RoleHierarchyImpl}, for example:
+     * {@code ROLE_ADMIN > ROLE_MANAGER > ROLE_USER}, one chain per line), each authority gets the features of all the
+     * authorities it includes. If the transformer is already initialized, the hierarchy is applied immediately.
+     *
+     * @param hierarchy the hierarchy definition to set
+     * @throws IllegalArgumentException if the definition is malformed, or contains a cycle
+     */
+    public void setRoleHierarchy(final String hierarchy) {
+        final AuthorityHierarchy parsed = AuthorityHierarchy.parse(hierarchy);
+        synchronized (this) {
+            this.hierarchy = parsed;
+            if (null != resolver) {
+                refresh(featuresMap, true);
+            }
+        }
+    }
+
+    /**
+     * Instruments this transformer using given sink (the creation of pooled handler instances is recorded), or
+     * disables the instrumentation if {@code null} is given. Applies to the handlers resolved afterwards.
+     *
+     * @param metricsSink the metrics sink to use
+     */
+    public void setMetricsSink(final MetricsSink metricsSink) {
+        this.metricsSink = metricsSink;
+    }
+
+    /**
+     * Defines the authority combinations for which features holders should be created (and memoized) during
+     * initialization, before the first request arrives.
+     *
+     * @param warmUpAuthorities the authority combinations to set
+     */
+    public void setWarmUpAuthorities(
+        final Collection<? extends Collection<? extends GrantedAuthority>> warmUpAuthorities) {
+        this.warmUpAuthorities = ImmutableList.copyOf(warmUpAuthorities);
+    }
+
+    /**
+     * Writes the masks of currently memoized features holders, along with the fingerprint of features mapping, so the
+     * holders can be restored by {@link #readSnapshot(DataInput)} (after restart, for example).
+     *
+     * @param out the output to write the snapshot to
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void writeSnapshot(final DataOutput out) throws IOException {
+        final FeaturesResolver current = resolver;
+        final List<FeatureMask> masks = (null == current) ? Collections.<FeatureMask> emptyList() : current
+            .hotMasks();
+        out.writeLong((null == current) ? 0 : current.fingerprint());
+        out.writeInt(masks.size());
+        for (final FeatureMask mask : masks) {
+            final long[] words = mask.toLongArray();
+            out.writeInt(words.length);
+            for (final long word : words) {
+                out.writeLong(word);
             }
         }
-        return result;
     }
 
     /**
@@ -137,7 +420,9 @@ public class PrincipalToFeaturesHolderTransformer implements ApplicationContextA
      */
     @Override
     public String toString() {
-        return toStringHelper(this).add("anonymous", anonymous).add("featuresMap", featuresMap).toString();
+        return toStringHelper(this).add("anonymous", anonymous).add("cacheMaximumSize", cacheMaximumSize)
+            .add("featuresMap", featuresMap).add("handlerPoolSize", handlerPoolSize).add("hierarchy", hierarchy)
+            .toString();
     }
 
 }
@@ -0,0 +1,25 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+/**
+ * Pooled feature handler which resets its state before it is returned to the pool (see
+ * {@link PrincipalToFeaturesHolderTransformer#setHandlerPoolSize(int)}), instances of other non-singleton handlers are
+ * never reused.
+ *
+ * <p>
+ * Handler which fails to reset (returns {@code false}, or throws an exception) is discarded instead of being returned
+ * to the pool, so it is never leased by another features holder.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public interface RecyclableHandler {
+
+    /**
+     * Resets the state of this handler, so it can be leased by another features holder.
+     *
+     * @return {@code true} if this handler can be reused, {@code false} if it should be discarded
+     */
+    boolean recycle();
+
+}
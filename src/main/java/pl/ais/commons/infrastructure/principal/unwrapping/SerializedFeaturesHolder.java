@@ -0,0 +1,64 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+
+/**
+ * Serialized form of {@link IndexedFeaturesHolder}, written and read using {@link FeaturesHolderCodec}.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class SerializedFeaturesHolder implements Externalizable {
+
+    private static final long serialVersionUID = -2481769236158617457L;
+
+    private transient IndexedFeaturesHolder holder;
+
+    /**
+     * Constructs new instance, used by deserialization only.
+     */
+    public SerializedFeaturesHolder() {
+        super();
+    }
+
+    /**
+     * Constructs new instance.
+     *
+     * @param holder the features holder being serialized
+     */
+    SerializedFeaturesHolder(final IndexedFeaturesHolder holder) {
+        super();
+        this.holder = holder;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readExternal(final ObjectInput input) throws IOException {
+        holder = FeaturesHolderCodec.read(input);
+    }
+
+    /**
+     * Replaces this instance with the features holder after deserialization.
+     *
+     * @return deserialized features holder
+     * @throws ObjectStreamException never
+     */
+    private Object readResolve() throws ObjectStreamException {
+        return holder;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeExternal(final ObjectOutput output) throws IOException {
+        FeaturesHolderCodec.write(holder, output);
+    }
+
+}
@@ -0,0 +1,155 @@
+package pl.ais.commons.infrastructure.registry;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Registry of principal transformers and application feature handlers, generated at compile time by
+ * {@link PrincipalRegistryProcessor}.
+ *
+ * <p>
+ * Registry allows finding the transformer and feature handler beans by name, instead of scanning (and instantiating)
+ * all the beans of given type. Registries of all the modules available on the classpath are merged together. Registry
+ * is a hint only, components using it fall back to scanning whenever registered bean is not present in the
+ * application context.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public final class PrincipalRegistry {
+
+    /**
+     * Prefix of the keys describing the handlers of application features.
+     */
+    public static final String FEATURE_PREFIX = "feature.";
+
+    /**
+     * Location of the registry within each module.
+     */
+    public static final String LOCATION = "META-INF/ais-commons/principal-registry.properties";
+
+    /**
+     * Prefix of the keys describing the principal transformers.
+     */
+    public static final String TRANSFORMER_PREFIX = "transformer.";
+
+    private static final Logger LOG = LoggerFactory.getLogger(PrincipalRegistry.class);
+
+    /**
+     * Loads the registries of all the modules available to given class loader.
+     *
+     * @param classLoader the class loader to use
+     * @return merged registry (empty one, if there are no registries available)
+     */
+    public static PrincipalRegistry load(final ClassLoader classLoader) {
+        final Map<String, Set<String>> handlers = new LinkedHashMap<>();
+        final List<RegisteredTransformer> transformers = new ArrayList<>();
+        try {
+            final Enumeration<URL> resources = (null == classLoader) ? ClassLoader.getSystemResources(LOCATION)
+                : classLoader.getResources(LOCATION);
+            while (resources.hasMoreElements()) {
+                read(resources.nextElement(), handlers, transformers);
+            }
+        } catch (final IOException exception) {
+            LOG.warn("Unable to load principal registry, scanning will be used instead.", exception);
+            handlers.clear();
+            transformers.clear();
+        }
+        final ImmutableMap.Builder<String, ImmutableList<String>> featureHandlers = ImmutableMap.builder();
+        for (final Map.Entry<String, Set<String>> entry : handlers.entrySet()) {
+            featureHandlers.put(entry.getKey(), ImmutableList.copyOf(entry.getValue()));
+        }
+        return new PrincipalRegistry(featureHandlers.build(), ImmutableList.copyOf(transformers));
+    }
+
+    /**
+     * Reads single registry, adding its contents to given handlers and transformers.
+     */
+    private static void read(final URL resource, final Map<String, Set<String>> handlers,
+        final List<RegisteredTransformer> transformers) throws IOException {
+        final Properties properties = new Properties();
+        try (InputStream input = resource.openStream()) {
+            properties.load(input);
+        }
+        for (final String key : properties.stringPropertyNames()) {
+            final String[] values = StringUtils.commaDelimitedListToStringArray(properties.getProperty(key));
+            if (key.startsWith(FEATURE_PREFIX)) {
+                final String feature = key.substring(FEATURE_PREFIX.length());
+                if (!handlers.containsKey(feature)) {
+                    handlers.put(feature, new LinkedHashSet<String>());
+                }
+                for (final String value : values) {
+                    handlers.get(feature).add(value.trim());
+                }
+            } else if (key.startsWith(TRANSFORMER_PREFIX) && 2 == values.length) {
+                transformers.add(new RegisteredTransformer(key.substring(TRANSFORMER_PREFIX.length()), values[0]
+                    .trim(), values[1].trim()));
+            }
+        }
+    }
+
+    private final ImmutableMap<String, ImmutableList<String>> featureHandlers;
+
+    private final ImmutableList<RegisteredTransformer> transformers;
+
+    private PrincipalRegistry(final ImmutableMap<String, ImmutableList<String>> featureHandlers,
+        final ImmutableList<RegisteredTransformer> transformers) {
+        super();
+        this.featureHandlers = featureHandlers;
+        this.transformers = transformers;
+    }
+
+    /**
+     * Provides the names of beans registered as handlers of given feature.
+     *
+     * @param feature the feature
+     * @return the names of handler beans (empty list if there are no registered handlers)
+     */
+    public ImmutableList<String> getHandlerNames(final Class<?> feature) {
+        final ImmutableList<String> result = featureHandlers.get(feature.getName());
+        return (null == result) ? ImmutableList.<String> of() : result;
+    }
+
+    /**
+     * @return registered principal transformers
+     */
+    public ImmutableList<RegisteredTransformer> getTransformers() {
+        return transformers;
+    }
+
+    /**
+     * @return {@code true} if there are no registered transformers and feature handlers, {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return featureHandlers.isEmpty() && transformers.isEmpty();
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("featureHandlers", featureHandlers).add("transformers", transformers)
+            .toString();
+    }
+
+}
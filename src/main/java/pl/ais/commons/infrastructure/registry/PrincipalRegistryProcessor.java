@@ -0,0 +1,230 @@
+package pl.ais.commons.infrastructure.registry;
+
+import java.beans.Introspector;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor generating the {@link PrincipalRegistry} of the module being compiled.
+ *
+ * <p>
+ * Each concrete class implementing {@code PrincipalTransformer} is registered as transformer, and each concrete class
+ * implementing an interface annotated with {@code ApplicationFeature} is registered as the handler of this feature.
+ * Bean names are taken from the stereotype annotations ({@code Component} and alike, or {@code Named}), and default to
+ * the decapitalized class name (as assigned by Spring annotation-driven configuration).
+ * </p>
+ * <p>
+ * Processor is discovered by the compiler automatically, once this library is on the compilation classpath.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+@SupportedAnnotationTypes("*")
+public class PrincipalRegistryProcessor extends AbstractProcessor {
+
+    private static final String APPLICATION_FEATURE = "pl.ais.commons.application.feature.ApplicationFeature";
+
+    private static final String COMPONENT = "org.springframework.stereotype.Component";
+
+    private static final String NAMED = "javax.inject.Named";
+
+    private static final String PRINCIPAL_TRANSFORMER = "pl.ais.commons.application.service.PrincipalTransformer";
+
+    private final Map<String, Set<String>> features = new TreeMap<>();
+
+    private final Map<String, String> transformers = new TreeMap<>();
+
+    private static boolean isAnnotatedWith(final Element element, final String annotationName) {
+        boolean result = false;
+        for (final AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            result |= ((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(
+                annotationName);
+        }
+        return result;
+    }
+
+    /**
+     * Verifies if given annotation is the stereotype defining the bean name (directly, or by meta-annotation).
+     */
+    private static boolean isStereotype(final TypeElement annotation, final Set<String> visited) {
+        final String name = annotation.getQualifiedName().toString();
+        boolean result = COMPONENT.equals(name) || NAMED.equals(name);
+        if (!result && visited.add(name)) {
+            for (final AnnotationMirror meta : annotation.getAnnotationMirrors()) {
+                result |= isStereotype((TypeElement) meta.getAnnotationType().asElement(), visited);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Determines the bean name of given class.
+     */
+    private String beanNameOf(final TypeElement type) {
+        String result = null;
+        for (final AnnotationMirror annotation : type.getAnnotationMirrors()) {
+            if (isStereotype((TypeElement) annotation.getAnnotationType().asElement(), new HashSet<String>())) {
+                for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation
+                    .getElementValues().entrySet()) {
+                    final Object value = entry.getValue().getValue();
+                    if ("value".contentEquals(entry.getKey().getSimpleName()) && value instanceof String
+                        && !((String) value).isEmpty()) {
+                        result = (String) value;
+                    }
+                }
+            }
+        }
+        if (null == result) {
+            final String binaryName = binaryNameOf(type);
+            final String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName()
+                .toString();
+            final String shortName = packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length()
+                + 1);
+            result = Introspector.decapitalize(shortName.replace('$', '.'));
+        }
+        return result;
+    }
+
+    private String binaryNameOf(final TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    /**
+     * Collects all the supertypes of given type (including the type itself).
+     */
+    private void collectSupertypes(final TypeMirror type, final List<DeclaredType> supertypes) {
+        if (TypeKind.DECLARED == type.getKind()) {
+            supertypes.add((DeclaredType) type);
+            for (final TypeMirror supertype : processingEnv.getTypeUtils().directSupertypes(type)) {
+                collectSupertypes(supertype, supertypes);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            if (!transformers.isEmpty() || !features.isEmpty()) {
+                write();
+            }
+        } else {
+            for (final Element element : roundEnv.getRootElements()) {
+                if (element.getKind().isClass() || element.getKind().isInterface()) {
+                    register((TypeElement) element);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Registers given type (and its nested types) as transformer and/or feature handler, if applicable.
+     */
+    private void register(final TypeElement type) {
+        if (ElementKind.CLASS == type.getKind() && !type.getModifiers().contains(Modifier.ABSTRACT)) {
+            final List<DeclaredType> supertypes = new ArrayList<>();
+            collectSupertypes(type.asType(), supertypes);
+            final String beanName = beanNameOf(type);
+            for (final DeclaredType supertype : supertypes) {
+                final TypeElement element = (TypeElement) supertype.asElement();
+                if (element.getQualifiedName().contentEquals(PRINCIPAL_TRANSFORMER)
+                    && 1 == supertype.getTypeArguments().size()
+                    && TypeKind.DECLARED == supertype.getTypeArguments().get(0).getKind()) {
+                    final TypeElement returnType = (TypeElement) ((DeclaredType) supertype.getTypeArguments().get(0))
+                        .asElement();
+                    transformers.put(beanName, binaryNameOf(type) + ',' + binaryNameOf(returnType));
+                } else if (isAnnotatedWith(element, APPLICATION_FEATURE)) {
+                    final String feature = binaryNameOf(element);
+                    if (!features.containsKey(feature)) {
+                        features.put(feature, new TreeSet<String>());
+                    }
+                    features.get(feature).add(beanName);
+                }
+            }
+        }
+        for (final Element enclosed : type.getEnclosedElements()) {
+            if ((enclosed.getKind().isClass() || enclosed.getKind().isInterface())
+                && enclosed.getModifiers().contains(Modifier.STATIC)) {
+                register((TypeElement) enclosed);
+            }
+        }
+    }
+
+    /**
+     * Writes the registry (sorted, so the output doesn't change unless the registered classes change).
+     */
+    private void write() {
+        final Properties properties = new Properties();
+        for (final Map.Entry<String, String> entry : transformers.entrySet()) {
+            properties.setProperty(PrincipalRegistry.TRANSFORMER_PREFIX + entry.getKey(), entry.getValue());
+        }
+        for (final Map.Entry<String, Set<String>> entry : features.entrySet()) {
+            final StringBuilder handlers = new StringBuilder();
+            for (final String handler : entry.getValue()) {
+                handlers.append(0 == handlers.length() ? "" : ",").append(handler);
+            }
+            properties.setProperty(PrincipalRegistry.FEATURE_PREFIX + entry.getKey(), handlers.toString());
+        }
+        try {
+            final StringWriter buffer = new StringWriter();
+            properties.store(buffer, null);
+            final List<String> lines = new ArrayList<>();
+            for (final String line : buffer.toString().split("\\r?\\n")) {
+                if (!line.startsWith("#")) {
+                    lines.add(line);
+                }
+            }
+            Collections.sort(lines);
+            try (Writer writer = processingEnv.getFiler()
+                .createResource(StandardLocation.CLASS_OUTPUT, "", PrincipalRegistry.LOCATION).openWriter()) {
+                writer.write("# Generated by " + getClass().getName() + ", do not edit.\n");
+                for (final String line : lines) {
+                    writer.write(line + '\n');
+                }
+            }
+        } catch (final IOException exception) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                "Unable to write principal registry: " + exception);
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package pl.ais.commons.infrastructure.registry;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+/**
+ * Principal transformer bean recorded in the {@link PrincipalRegistry}.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public final class RegisteredTransformer {
+
+    private final String beanName;
+
+    private final String returnTypeName;
+
+    private final String transformerClassName;
+
+    /**
+     * Constructs new instance.
+     *
+     * @param beanName the transformer bean name
+     * @param transformerClassName the transformer class name
+     * @param returnTypeName the name of type to which the transformer converts the principal
+     */
+    public RegisteredTransformer(final String beanName, final String transformerClassName,
+        final String returnTypeName) {
+        super();
+        this.beanName = beanName;
+        this.returnTypeName = returnTypeName;
+        this.transformerClassName = transformerClassName;
+    }
+
+    /**
+     * @return the transformer bean name
+     */
+    public String getBeanName() {
+        return beanName;
+    }
+
+    /**
+     * @return the name of type to which the transformer converts the principal
+     */
+    public String getReturnTypeName() {
+        return returnTypeName;
+    }
+
+    /**
+     * @return the transformer class name
+     */
+    public String getTransformerClassName() {
+        return transformerClassName;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("beanName", beanName).add("transformerClassName", transformerClassName)
+            .add("returnTypeName", returnTypeName).toString();
+    }
+
+}
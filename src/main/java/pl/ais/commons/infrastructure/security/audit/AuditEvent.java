@@ -0,0 +1,57 @@
+package pl.ais.commons.infrastructure.security.audit;
+
+/**
+ * Mutable holder of the recorded permission decision, preallocated within {@link AuditRingBuffer}.
+ *
+ * <p>
+ * Event references the principal name, the target type and identifier, and the permission, they are formatted later,
+ * by the journal writer. Neither authentication, nor target object is referenced, so they're never pinned by the
+ * buffer, nor touched by the writer thread.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class AuditEvent {
+
+    Class<?> evaluator;
+
+    boolean granted;
+
+    Object permission;
+
+    String principal;
+
+    Object target;
+
+    String targetType;
+
+    long timestamp;
+
+    /**
+     * Releases the references held by this event.
+     */
+    void clear() {
+        evaluator = null;
+        permission = null;
+        principal = null;
+        target = null;
+        targetType = null;
+    }
+
+    /**
+     * Copies given event into this one.
+     *
+     * @param source the event to copy
+     */
+    void copyOf(final AuditEvent source) {
+        evaluator = source.evaluator;
+        granted = source.granted;
+        permission = source.permission;
+        principal = source.principal;
+        target = source.target;
+        targetType = source.targetType;
+        timestamp = source.timestamp;
+    }
+
+}
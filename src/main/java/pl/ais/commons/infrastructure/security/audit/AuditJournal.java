@@ -0,0 +1,410 @@
+package pl.ais.commons.infrastructure.security.audit;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.BufferOverflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.security.core.Authentication;
+
+/**
+ * {@link AuditSink} writing the permission decisions into compact, binary, memory-mapped journal.
+ *
+ * <p>
+ * Decisions are published into lock-free ring buffer, and drained in batches by the background writer, which formats
+ * them and appends them to the current journal segment. Producers never block: if the buffer is full, the decision is
+ * dropped and counted (see {@link #getDroppedCount()}). Only denials are recorded, unless auditing of grants is enabled
+ * (see {@link #setAuditingGrants(boolean)}).
+ * </p>
+ * <p>
+ * Target objects are recorded as their class name and identifier (provided by public {@code getId()} method, if there
+ * is any), taken on the calling thread, so neither the target objects (JPA entities, for example), nor the
+ * authentications are referenced by the buffer, or touched by the writer. Decisions which cannot be written are
+ * counted as dropped, and the failure is logged once, until the journal becomes writable again.
+ * </p>
+ * <p>
+ * Journal consists of fixed size segments named {@code <prefix>-<sequence>.journal}, memory-mapped one at a time. When
+ * the current segment is full, the writer rolls over to the next one, removing the oldest segments above the retention
+ * limit (see {@link #setMaxSegments(int)}). Segments can be decoded using {@link AuditJournalReader}.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class AuditJournal implements AuditSink, DisposableBean, InitializingBean {
+
+    /**
+     * Default capacity of the buffer for decisions waiting to be written.
+     */
+    public static final int DEFAULT_BUFFER_CAPACITY = 8192;
+
+    /**
+     * Default maximum number of retained journal segments.
+     */
+    public static final int DEFAULT_MAX_SEGMENTS = 8;
+
+    /**
+     * Default size (in bytes) of single journal segment.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Suffix of the journal segment file names.
+     */
+    static final String SEGMENT_SUFFIX = ".journal";
+
+    private static final int BATCH_SIZE = 256;
+
+    private static final ClassValue<Method> ID_GETTERS = new ClassValue<Method>() {
+
+        @Override
+        protected Method computeValue(final Class<?> type) {
+            Method result;
+            try {
+                result = type.getMethod("getId");
+                if (void.class == result.getReturnType() || Modifier.isStatic(result.getModifiers())) {
+                    result = null;
+                }
+            } catch (final NoSuchMethodException exception) {
+                result = null;
+            }
+            return result;
+        }
+
+    };
+
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final Logger LOG = LoggerFactory.getLogger(AuditJournal.class);
+
+    private transient boolean auditingGrants;
+
+    private transient AuditRingBuffer buffer;
+
+    private transient int bufferCapacity = DEFAULT_BUFFER_CAPACITY;
+
+    private transient File directory;
+
+    private transient int maxSegments = DEFAULT_MAX_SEGMENTS;
+
+    private transient String prefix = "audit";
+
+    private transient volatile boolean running;
+
+    private transient MappedByteBuffer segment;
+
+    private transient long segmentSequence;
+
+    private transient int segmentSize = DEFAULT_SEGMENT_SIZE;
+
+    private transient final AtomicLong unwritable = new AtomicLong();
+
+    private transient final AtomicLong written = new AtomicLong();
+
+    private transient Thread writer;
+
+    /**
+     * Provides the identifier of given target object: the object itself if it is a value (string, number, or enum),
+     * the result of its public {@code getId()} method, or {@code null} if there is no such method.
+     */
+    private static Object identifierOf(final Object target) {
+        Object result = null;
+        if (target instanceof String || target instanceof Number || target instanceof Enum) {
+            result = target;
+        } else if (null != target) {
+            final Method getter = ID_GETTERS.get(target.getClass());
+            if (null != getter) {
+                try {
+                    result = getter.invoke(target);
+                } catch (final IllegalAccessException | InvocationTargetException exception) {
+                    result = null;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Extracts the sequence number from given segment file name.
+     *
+     * @param name the segment file name
+     * @return the sequence number, or {@code -1} if given name is malformed
+     */
+    static long sequenceOf(final String name) {
+        long result = -1;
+        final int start = name.lastIndexOf('-') + 1;
+        final int end = name.length() - SEGMENT_SUFFIX.length();
+        if (0 < start && start < end) {
+            try {
+                result = Long.parseLong(name.substring(start, end));
+            } catch (final NumberFormatException exception) {
+                result = -1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet() throws BeanInitializationException {
+        if (null == directory) {
+            throw new BeanInitializationException("Please, provide the journal directory.");
+        }
+        if (0 >= maxSegments) {
+            throw new BeanInitializationException("Maximum number of segments should be positive.");
+        }
+        if (JournalFormat.HEADER_SIZE + JournalFormat.MAX_RECORD_SIZE > segmentSize) {
+            throw new BeanInitializationException("Segment size should be at least "
+                + (JournalFormat.HEADER_SIZE + JournalFormat.MAX_RECORD_SIZE) + " bytes.");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new BeanInitializationException("Unable to create the journal directory: " + directory);
+        }
+        buffer = new AuditRingBuffer(bufferCapacity);
+
+        // Continue the sequence of segments already present in the directory, ...
+        for (final File file : segmentFiles()) {
+            segmentSequence = Math.max(segmentSequence, sequenceOf(file.getName()));
+        }
+        try {
+            roll();
+        } catch (final IOException exception) {
+            throw new BeanInitializationException("Unable to create the journal segment in: " + directory, exception);
+        }
+
+        // ... and start the background writer.
+        running = true;
+        writer = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                drain();
+            }
+
+        }, "audit-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stops the background writer, after writing all the pending decisions.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        if (null != writer) {
+            LockSupport.unpark(writer);
+            writer.join();
+            writer = null;
+        }
+    }
+
+    /**
+     * Drains the buffer until the journal is destroyed, parking the writer when there is nothing to write. Failure to
+     * write is logged once, along with the number of decisions lost meanwhile when the journal becomes writable again.
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    void drain() {
+        final AuditEvent event = new AuditEvent();
+        long failedAt = -1;
+        while (running || !buffer.isEmpty()) {
+            int count = 0;
+            try {
+                while (BATCH_SIZE > count && buffer.poll(event)) {
+                    write(event);
+                    event.clear();
+                    count++;
+                    if (0 <= failedAt) {
+                        LOG.warn("Audit journal is writable again, " + (unwritable.get() - failedAt)
+                            + " decision(s) have been lost meanwhile.");
+                        failedAt = -1;
+                    }
+                }
+            } catch (final IOException | RuntimeException exception) {
+                event.clear();
+                if (0 > failedAt) {
+                    LOG.error("Unable to write the audit journal, decisions will be lost until it becomes writable.",
+                        exception);
+                    failedAt = unwritable.get();
+                }
+                unwritable.incrementAndGet();
+            }
+            if (0 == count && running) {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        }
+        segment.force();
+    }
+
+    /**
+     * @return the journal directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the number of decisions lost because the buffer was full, or because they couldn't be written
+     */
+    public long getDroppedCount() {
+        return ((null == buffer) ? 0 : buffer.getDroppedCount()) + unwritable.get();
+    }
+
+    /**
+     * @return the number of decisions written into the journal
+     */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void recordDecision(final Class<?> evaluator, final Authentication authentication, final Object target,
+        final String targetType, final Object permission, final boolean granted) {
+        if (running && (auditingGrants || !granted)) {
+
+            // Capture the identity of the participants, so the writer doesn't need to touch them.
+            final String principal = (null == authentication) ? null : authentication.getName();
+            if (null == targetType) {
+                buffer.offer(evaluator, principal, identifierOf(target), (null == target) ? null : target.getClass()
+                    .getName(), permission, granted);
+            } else {
+                buffer.offer(evaluator, principal, target, targetType, permission, granted);
+            }
+        }
+    }
+
+    /**
+     * Maps the next journal segment, and removes the oldest segments above the retention limit.
+     */
+    private void roll() throws IOException {
+        if (null != segment) {
+            segment.force();
+        }
+        segmentSequence++;
+        final File file = new File(directory, String.format("%s-%016d%s", prefix, segmentSequence, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        JournalFormat.writeHeader(segment);
+
+        final File[] files = segmentFiles();
+        for (int index = 0; index < files.length - maxSegments; index++) {
+            if (!files[index].delete()) {
+                LOG.warn("Unable to remove the audit journal segment: " + files[index]);
+            }
+        }
+    }
+
+    private File[] segmentFiles() {
+        final String start = prefix + '-';
+        final File[] result = directory.listFiles(new FilenameFilter() {
+
+            @Override
+            public boolean accept(final File dir, final String name) {
+                return name.startsWith(start) && name.endsWith(SEGMENT_SUFFIX) && 0 <= sequenceOf(name);
+            }
+
+        });
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Enables or disables auditing of grants (only the denials are audited by default).
+     *
+     * @param auditingGrants {@code true} if grants should be audited, {@code false} otherwise
+     */
+    public void setAuditingGrants(final boolean auditingGrants) {
+        this.auditingGrants = auditingGrants;
+    }
+
+    /**
+     * Defines the capacity of the buffer for decisions waiting to be written (rounded up to the power of two).
+     *
+     * @param bufferCapacity the capacity to set
+     */
+    public void setBufferCapacity(final int bufferCapacity) {
+        this.bufferCapacity = bufferCapacity;
+    }
+
+    /**
+     * @param directory the journal directory to set
+     */
+    public void setDirectory(final File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param maxSegments the maximum number of retained journal segments to set
+     */
+    public void setMaxSegments(final int maxSegments) {
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * @param prefix the prefix of journal segment file names to set
+     */
+    public void setPrefix(final String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * @param segmentSize the size (in bytes) of single journal segment to set
+     */
+    public void setSegmentSize(final int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("directory", directory).add("prefix", prefix).add("segmentSize", segmentSize)
+            .add("maxSegments", maxSegments).add("auditingGrants", auditingGrants).toString();
+    }
+
+    /**
+     * Appends given event to the current segment, rolling over to the next one if needed.
+     */
+    private void write(final AuditEvent event) throws IOException {
+        final byte[][] fields = {
+            JournalFormat.encode((null == event.evaluator) ? null : event.evaluator.getName()),
+            JournalFormat.encode(event.principal), JournalFormat.encode(event.targetType),
+            JournalFormat.encode((null == event.target) ? null : event.target.toString()),
+            JournalFormat.encode((null == event.permission) ? null : event.permission.toString())};
+        if (JournalFormat.recordSize(fields) > segment.remaining()) {
+            roll();
+        }
+        try {
+            JournalFormat.writeRecord(segment, event.timestamp, event.granted, fields);
+        } catch (final BufferOverflowException exception) {
+            throw new IOException("Record exceeds the segment size.", exception);
+        }
+        written.incrementAndGet();
+    }
+
+}
@@ -0,0 +1,139 @@
+package pl.ais.commons.infrastructure.security.audit;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Decodes the journal segments written by {@link AuditJournal}.
+ *
+ * <p>
+ * Can be run from the command line, given the segment files or journal directories, prints the decisions they contain
+ * (one per line, tab separated) to the standard output:
+ * </p>
+ *
+ * <pre>
+ * java pl.ais.commons.infrastructure.security.audit.AuditJournalReader /var/log/audit
+ * </pre>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public final class AuditJournalReader {
+
+    private AuditJournalReader() {
+        super();
+    }
+
+    private static String decode(final ByteBuffer segment) {
+        final int length = segment.getShort() & 0xFFFF;
+        final String result;
+        if (0 == length) {
+            result = null;
+        } else {
+            final byte[] bytes = new byte[length];
+            segment.get(bytes);
+            result = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
+    /**
+     * Prints the decisions contained in given segment files (or journal directories) to the standard output, or the
+     * usage (exiting with non-zero status) if none is given.
+     *
+     * @param args the segment files or journal directories
+     * @throws IOException if any of the segments cannot be read
+     */
+    public static void main(final String... args) throws IOException {
+        if (0 == args.length) {
+            System.err.println("Usage: AuditJournalReader <segment file or journal directory>...");
+            System.exit(2);
+        }
+        final PrintStream out = System.out;
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+        for (final String arg : args) {
+            for (final File file : segmentsOf(new File(arg))) {
+                for (final AuditRecord record : read(file)) {
+                    out.println(format.format(new Date(record.getTimestamp())) + '\t'
+                        + (record.isGranted() ? "GRANTED" : "DENIED") + '\t' + record.getPrincipal() + '\t'
+                        + record.getPermission() + '\t' + record.getTargetType() + '\t' + record.getTarget() + '\t'
+                        + record.getEvaluator());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the decisions contained in given segment.
+     *
+     * @param file the segment file
+     * @return the decisions, in the order they have been written
+     * @throws IOException if the segment cannot be read, or it is not an audit journal segment
+     */
+    public static List<AuditRecord> read(final File file) throws IOException {
+        final MappedByteBuffer segment;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (JournalFormat.HEADER_SIZE > segment.remaining() || JournalFormat.MAGIC != segment.getInt()) {
+            throw new IOException(file + " is not an audit journal segment.");
+        }
+        final short version = segment.getShort();
+        if (JournalFormat.VERSION != version) {
+            throw new IOException(file + " has unsupported format version: " + version);
+        }
+        segment.getShort();
+
+        final List<AuditRecord> result = new ArrayList<>();
+        while (4 <= segment.remaining()) {
+            final int length = segment.getInt();
+            if (0 >= length || length > segment.remaining()) {
+                break;
+            }
+            final long timestamp = segment.getLong();
+            final boolean granted = 0 != (segment.get() & JournalFormat.GRANTED);
+            result.add(new AuditRecord(timestamp, granted, decode(segment), decode(segment), decode(segment),
+                decode(segment), decode(segment)));
+        }
+        return result;
+    }
+
+    /**
+     * Lists the segment files represented by given file: the file itself, or the segments contained in it, if it is
+     * the journal directory.
+     *
+     * @param file the segment file or journal directory
+     * @return the segment files, ordered by their names
+     */
+    public static List<File> segmentsOf(final File file) {
+        final List<File> result = new ArrayList<>();
+        if (file.isDirectory()) {
+            final File[] files = file.listFiles(new FilenameFilter() {
+
+                @Override
+                public boolean accept(final File dir, final String name) {
+                    return name.endsWith(AuditJournal.SEGMENT_SUFFIX);
+                }
+
+            });
+            Arrays.sort(files);
+            result.addAll(Arrays.asList(files));
+        } else {
+            result.add(file);
+        }
+        return result;
+    }
+
+}
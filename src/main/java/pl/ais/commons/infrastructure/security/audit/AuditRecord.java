@@ -0,0 +1,101 @@
+package pl.ais.commons.infrastructure.security.audit;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.io.Serializable;
+
+/**
+ * Permission decision read from the audit journal.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public final class AuditRecord implements Serializable {
+
+    private static final long serialVersionUID = -3790186658244127436L;
+
+    private final String evaluator;
+
+    private final boolean granted;
+
+    private final String permission;
+
+    private final String principal;
+
+    private final String target;
+
+    private final String targetType;
+
+    private final long timestamp;
+
+    AuditRecord(final long timestamp, final boolean granted, final String evaluator, final String principal,
+        final String targetType, final String target, final String permission) {
+        this.timestamp = timestamp;
+        this.granted = granted;
+        this.evaluator = evaluator;
+        this.principal = principal;
+        this.targetType = targetType;
+        this.target = target;
+        this.permission = permission;
+    }
+
+    /**
+     * @return the name of evaluator class which made the decision
+     */
+    public String getEvaluator() {
+        return evaluator;
+    }
+
+    /**
+     * @return the permission
+     */
+    public String getPermission() {
+        return permission;
+    }
+
+    /**
+     * @return the principal name
+     */
+    public String getPrincipal() {
+        return principal;
+    }
+
+    /**
+     * @return the target (or target identifier)
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * @return the target type
+     */
+    public String getTargetType() {
+        return targetType;
+    }
+
+    /**
+     * @return the decision timestamp (in milliseconds since the epoch)
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return {@code true} if the permission has been granted, {@code false} otherwise
+     */
+    public boolean isGranted() {
+        return granted;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("timestamp", timestamp).add("granted", granted).add("evaluator", evaluator)
+            .add("principal", principal).add("targetType", targetType).add("target", target)
+            .add("permission", permission).toString();
+    }
+
+}
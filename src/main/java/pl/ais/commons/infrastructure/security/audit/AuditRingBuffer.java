@@ -0,0 +1,125 @@
+package pl.ais.commons.infrastructure.security.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, lock-free ring buffer of {@link AuditEvent}s, accepting events from multiple producers and handing them
+ * over to single consumer.
+ *
+ * <p>
+ * Slots are preallocated, and each of them carries the sequence number telling whether it is ready to be written
+ * (sequence equal to the producer position) or read (sequence equal to the consumer position plus one). Producers
+ * never block, if there is no free slot, the event is dropped and counted.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class AuditRingBuffer {
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private long head;
+
+    private final int mask;
+
+    private final AtomicLongArray sequences;
+
+    private final AuditEvent[] slots;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Constructs new instance.
+     *
+     * @param capacity the buffer capacity (will be rounded up to the power of two)
+     */
+    AuditRingBuffer(final int capacity) {
+        if (0 >= capacity || (1 << 30) < capacity) {
+            throw new IllegalArgumentException("Capacity should be positive, and not greater than 2^30.");
+        }
+        final int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = Math.max(size, 1) - 1;
+        this.slots = new AuditEvent[mask + 1];
+        this.sequences = new AtomicLongArray(mask + 1);
+        for (int index = 0; index <= mask; index++) {
+            slots[index] = new AuditEvent();
+            sequences.set(index, index);
+        }
+    }
+
+    /**
+     * @return the number of events dropped because the buffer was full
+     */
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Verifies if there are events waiting to be consumed (should be called by the consumer only).
+     *
+     * @return {@code true} if there are no events waiting to be consumed, {@code false} otherwise
+     */
+    boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    /**
+     * Publishes the event, unless the buffer is full.
+     *
+     * @return {@code true} if the event has been published, {@code false} if it has been dropped
+     */
+    boolean offer(final Class<?> evaluator, final String principal, final Object target,
+        final String targetType, final Object permission, final boolean granted) {
+        boolean result = false;
+        while (true) {
+            final long position = tail.get();
+            final int index = (int) position & mask;
+            final long available = sequences.get(index) - position;
+            if (0 == available) {
+
+                // Slot is free, claim it, fill it in, and make it available to the consumer, ...
+                if (tail.compareAndSet(position, position + 1)) {
+                    final AuditEvent event = slots[index];
+                    event.timestamp = System.currentTimeMillis();
+                    event.evaluator = evaluator;
+                    event.principal = principal;
+                    event.target = target;
+                    event.targetType = targetType;
+                    event.permission = permission;
+                    event.granted = granted;
+                    sequences.lazySet(index, position + 1);
+                    result = true;
+                    break;
+                }
+            } else if (0 > available) {
+
+                // ... or drop the event, if the consumer hasn't released the slot yet.
+                dropped.incrementAndGet();
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Moves the oldest event into given one, and releases its slot (should be called by the consumer only).
+     *
+     * @param target the event to fill in
+     * @return {@code true} if there was an event to consume, {@code false} otherwise
+     */
+    boolean poll(final AuditEvent target) {
+        final int index = (int) head & mask;
+        final boolean result = sequences.get(index) == head + 1;
+        if (result) {
+            final AuditEvent event = slots[index];
+            target.copyOf(event);
+            event.clear();
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,31 @@
+package pl.ais.commons.infrastructure.security.audit;
+
+import org.springframework.security.core.Authentication;
+
+/**
+ * Records the permission decisions made by the evaluators.
+ *
+ * <p>
+ * Implementations are called on the request processing threads, so they should never block, and should defer any
+ * expensive processing (formatting the targets, for example) to the background.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public interface AuditSink {
+
+    /**
+     * Records the permission decision.
+     *
+     * @param evaluator the class of evaluator which made the decision
+     * @param authentication the authentication
+     * @param target the target (or target identifier, if target type is given)
+     * @param targetType the target type, or {@code null} if the decision regards target object
+     * @param permission the permission
+     * @param granted {@code true} if the permission has been granted, {@code false} otherwise
+     */
+    void recordDecision(Class<?> evaluator, Authentication authentication, Object target, String targetType,
+        Object permission, boolean granted);
+
+}
@@ -0,0 +1,137 @@
+package pl.ais.commons.infrastructure.security.audit;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Binary layout of the audit journal segments.
+ *
+ * <p>
+ * Segment starts with the header (magic number and format version), followed by the records. Each record consists of
+ * its length, the timestamp, the decision flags, and the fields (evaluator, principal, target type, target and
+ * permission) encoded as UTF-8, each preceded by its length. Zero length marks the end of the records, record length
+ * is written last, so the readers never see partially written records.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class JournalFormat {
+
+    /**
+     * Number of fields in each record.
+     */
+    static final int FIELDS = 5;
+
+    /**
+     * Flag set for the granted permissions.
+     */
+    static final byte GRANTED = 1;
+
+    /**
+     * Size (in bytes) of the segment header.
+     */
+    static final int HEADER_SIZE = 8;
+
+    /**
+     * Magic number identifying the journal segments.
+     */
+    static final int MAGIC = 0x4A524E4C;
+
+    /**
+     * Maximum length (in bytes) of single field, longer fields are truncated.
+     */
+    static final int MAX_FIELD_LENGTH = 1024;
+
+    /**
+     * Size (in bytes) of the record header: length, timestamp and flags.
+     */
+    static final int RECORD_HEADER_SIZE = 4 + 8 + 1;
+
+    /**
+     * Maximum size (in bytes) of single record.
+     */
+    static final int MAX_RECORD_SIZE = RECORD_HEADER_SIZE + FIELDS * (2 + MAX_FIELD_LENGTH);
+
+    /**
+     * Format version.
+     */
+    static final short VERSION = 1;
+
+    private static final byte[] ABSENT = new byte[0];
+
+    private JournalFormat() {
+        super();
+    }
+
+    /**
+     * Encodes given field value.
+     *
+     * @param value the value to encode
+     * @return the value encoded as UTF-8, truncated (on the character boundary) to {@link #MAX_FIELD_LENGTH} bytes
+     */
+    static byte[] encode(final String value) {
+        byte[] result = ABSENT;
+        if (null != value) {
+            result = value.getBytes(StandardCharsets.UTF_8);
+            if (MAX_FIELD_LENGTH < result.length) {
+
+                // Don't split multi-byte character: step back over its continuation bytes (10xxxxxx), if needed.
+                int length = MAX_FIELD_LENGTH;
+                while (0 < length && 0x80 == (result[length] & 0xC0)) {
+                    length--;
+                }
+                result = Arrays.copyOf(result, length);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the size of record consisting of given fields.
+     *
+     * @param fields the encoded fields
+     * @return the record size (in bytes)
+     */
+    static int recordSize(final byte[]... fields) {
+        int result = RECORD_HEADER_SIZE;
+        for (final byte[] field : fields) {
+            result += 2 + field.length;
+        }
+        return result;
+    }
+
+    /**
+     * Writes the segment header.
+     *
+     * @param segment the segment to write into
+     */
+    static void writeHeader(final ByteBuffer segment) {
+        segment.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+    }
+
+    /**
+     * Writes single record.
+     *
+     * @param segment the segment to write into
+     * @param timestamp the decision timestamp
+     * @param granted {@code true} if the permission has been granted, {@code false} otherwise
+     * @param fields the encoded fields
+     */
+    static void writeRecord(final ByteBuffer segment, final long timestamp, final boolean granted,
+        final byte[]... fields) {
+        final int start = segment.position();
+
+        // Write the record contents, ...
+        segment.position(start + 4);
+        segment.putLong(timestamp).put(granted ? GRANTED : 0);
+        for (final byte[] field : fields) {
+            segment.putShort((short) field.length).put(field);
+        }
+
+        // ... and then its length, so the reader never sees partially written record.
+        segment.putInt(start, segment.position() - start - 4);
+    }
+
+}
@@ -0,0 +1,21 @@
+package pl.ais.commons.infrastructure.security.permission.acl;
+
+/**
+ * Target object identifiable within the access control lists.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public interface AclIdentifiable {
+
+    /**
+     * @return the identifier of this object (unique among the objects of the same type)
+     */
+    long getAclId();
+
+    /**
+     * @return the type of this object, as used by the access control lists
+     */
+    String getAclType();
+
+}
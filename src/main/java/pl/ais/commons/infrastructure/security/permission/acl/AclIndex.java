@@ -0,0 +1,580 @@
+package pl.ais.commons.infrastructure.security.permission.acl;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Immutable index of access control lists, mapping the target (type and identifier) and authority to the mask of
+ * permissions granted for this authority.
+ *
+ * <p>
+ * Target types and authorities are interned to dense integers (using open-addressing tables of names), targets are kept
+ * in open-addressing table of primitive arrays, pointing to the flat array of (authority, mask) pairs, sorted by the
+ * authority, so the permission checks neither box nor allocate. Index can be saved to (and loaded from) memory-mapped
+ * snapshot file, along with the names of permissions it was built with, so the snapshot is never interpreted using
+ * different {@link PermissionRegistry}. Loading fills the primitive arrays straight from the mapped snapshot.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public final class AclIndex {
+
+    /**
+     * Builds the {@link AclIndex}.
+     */
+    public static final class Builder {
+
+        private final Map<String, Integer> authorities = new LinkedHashMap<>();
+
+        private final PermissionRegistry permissions;
+
+        private final Map<Target, Map<Integer, Integer>> targets = new LinkedHashMap<>();
+
+        private final Map<String, Integer> types = new LinkedHashMap<>();
+
+        Builder(final PermissionRegistry permissions) {
+            super();
+            this.permissions = permissions;
+        }
+
+        private static int intern(final Map<String, Integer> names, final String name) {
+            Integer result = names.get(name);
+            if (null == result) {
+                result = names.size();
+                names.put(name, result);
+            }
+            return result;
+        }
+
+        /**
+         * Builds the index.
+         *
+         * @return the index
+         */
+        public AclIndex build() {
+            final int capacity = capacityOf(targets.size());
+            final int[] slotTypes = new int[capacity];
+            final long[] slotIds = new long[capacity];
+            final int[] slotStarts = new int[capacity];
+            final int[] slotEnds = new int[capacity];
+            final List<Integer> entries = new ArrayList<>();
+            for (final Map.Entry<Target, Map<Integer, Integer>> target : targets.entrySet()) {
+                final int slot = place(slotTypes, slotIds, target.getKey().typeId, target.getKey().targetId);
+                slotStarts[slot] = entries.size();
+                for (final Map.Entry<Integer, Integer> entry : target.getValue().entrySet()) {
+                    entries.add(entry.getKey());
+                    entries.add(entry.getValue());
+                }
+                slotEnds[slot] = entries.size();
+            }
+            final int[] flatEntries = new int[entries.size()];
+            for (int index = 0; index < flatEntries.length; index++) {
+                flatEntries[index] = entries.get(index);
+            }
+            return new AclIndex(ImmutableList.copyOf(types.keySet()), ImmutableList.copyOf(authorities.keySet()),
+                permissions.getNames(), slotTypes, slotIds, slotStarts, slotEnds, flatEntries, targets.size());
+        }
+
+        /**
+         * Grants given permission to given authority, for given target.
+         *
+         * @param targetType the target type
+         * @param targetId the target identifier
+         * @param authority the authority
+         * @param permission the permission name, or mask
+         * @return this builder (for method invocation chaining)
+         * @throws IllegalArgumentException if given permission is unknown
+         */
+        public Builder grant(final String targetType, final long targetId, final String authority,
+            final Object permission) {
+            final int mask = permissions.maskOf(permission);
+            if (0 == mask) {
+                throw new IllegalArgumentException("Unknown permission: " + permission);
+            }
+            return grant(intern(types, targetType), targetId, intern(authorities, authority), mask);
+        }
+
+        private Builder grant(final int typeId, final long targetId, final int authorityId, final int mask) {
+            final Target target = new Target(typeId, targetId);
+            Map<Integer, Integer> granted = targets.get(target);
+            if (null == granted) {
+                granted = new TreeMap<>();
+                targets.put(target, granted);
+            }
+            final Integer current = granted.get(authorityId);
+            granted.put(authorityId, (null == current) ? mask : current | mask);
+            return this;
+        }
+
+    }
+
+    /**
+     * Key of the target used while building the index.
+     */
+    private static final class Target {
+
+        private final long targetId;
+
+        private final int typeId;
+
+        Target(final int typeId, final long targetId) {
+            this.typeId = typeId;
+            this.targetId = targetId;
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            return (object instanceof Target) && (typeId == ((Target) object).typeId)
+                && (targetId == ((Target) object).targetId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash(typeId, targetId);
+        }
+
+    }
+
+    /**
+     * Open-addressing table mapping the names to their identifiers (positions on the list of names).
+     */
+    private static final class Names {
+
+        private final int[] ids;
+
+        private final String[] keys;
+
+        private final int mask;
+
+        Names(final List<String> names) {
+            final int capacity = capacityOf(names.size());
+            this.ids = new int[capacity];
+            this.keys = new String[capacity];
+            this.mask = capacity - 1;
+            for (int index = 0; index < names.size(); index++) {
+                int slot = spread(names.get(index).hashCode()) & mask;
+                while (null != keys[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                ids[slot] = index;
+                keys[slot] = names.get(index);
+            }
+        }
+
+        private static int spread(final int hash) {
+            final int result = hash * 0x9E3779B9;
+            return result ^ (result >>> 16);
+        }
+
+        /**
+         * Provides the identifier of given name, or {@code -1} if there is no such name.
+         */
+        int idOf(final String name) {
+            int result = -1;
+            if (null != name) {
+                int slot = spread(name.hashCode()) & mask;
+                while (null != keys[slot]) {
+                    if (name.equals(keys[slot])) {
+                        result = ids[slot];
+                        break;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+            }
+            return result;
+        }
+
+    }
+
+    private static final int MAGIC = 0x41434C49;
+
+    private static final short VERSION = 1;
+
+    /**
+     * Creates the builder of the index.
+     *
+     * @param permissions the registry of permissions used by the index
+     * @return the builder
+     */
+    public static Builder builder(final PermissionRegistry permissions) {
+        return new Builder(permissions);
+    }
+
+    /**
+     * Calculates the capacity of open-addressing table holding given number of keys (so it is at most half full).
+     */
+    static int capacityOf(final int size) {
+        return Integer.highestOneBit(Math.max(2, size * 2 - 1)) << 1;
+    }
+
+    private static String decode(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void encode(final ByteBuffer buffer, final List<byte[]> names) {
+        buffer.putInt(names.size());
+        for (final byte[] name : names) {
+            buffer.putShort((short) name.length).put(name);
+        }
+    }
+
+    private static List<byte[]> encode(final List<String> names) {
+        final List<byte[]> result = new ArrayList<>(names.size());
+        for (final String name : names) {
+            final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            if (0xFFFF < bytes.length) {
+                throw new IllegalArgumentException("Name is too long: " + name);
+            }
+            result.add(bytes);
+        }
+        return result;
+    }
+
+    private static int encodedSize(final List<byte[]> names) {
+        int result = 4;
+        for (final byte[] name : names) {
+            result += 2 + name.length;
+        }
+        return result;
+    }
+
+    /**
+     * Mixes the bits of given target type and identifier.
+     */
+    static int hash(final int typeId, final long targetId) {
+        long hash = (targetId ^ ((long) typeId << 48)) * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return (int) hash;
+    }
+
+    /**
+     * Inserts the (authority, mask) pair into the entries of the target (starting at given position, and sorted by the
+     * authority), merging it with the pair of the same authority, if there is any.
+     *
+     * @return the end of the target entries
+     */
+    private static int insert(final int[] entries, final int start, final int end, final int authorityId,
+        final int granted) {
+        int result = end;
+        int entry = end;
+        while (start < entry && authorityId < entries[entry - 2]) {
+            entry -= 2;
+        }
+        if (start < entry && authorityId == entries[entry - 2]) {
+            entries[entry - 1] |= granted;
+        } else {
+            System.arraycopy(entries, entry, entries, entry + 2, end - entry);
+            entries[entry] = authorityId;
+            entries[entry + 1] = granted;
+            result += 2;
+        }
+        return result;
+    }
+
+    /**
+     * Loads the index from given snapshot file.
+     *
+     * @param file the snapshot file
+     * @param permissions the registry of permissions used by the index
+     * @return the index
+     * @throws IOException if the file cannot be read, or is not the snapshot built with given permissions
+     */
+    public static AclIndex load(final File file, final PermissionRegistry permissions) throws IOException {
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (8 > buffer.remaining() || MAGIC != buffer.getInt() || VERSION != buffer.getShort()) {
+            throw new IOException(file + " is not an ACL snapshot, or has unsupported version.");
+        }
+        buffer.getShort();
+        try {
+            final List<String> permissionNames = readNames(buffer);
+            if (!permissionNames.equals(permissions.getNames())) {
+                throw new IOException(file + " has been built with permissions: " + permissionNames + ", while "
+                    + permissions.getNames() + " are registered.");
+            }
+            final ImmutableList<String> types = ImmutableList.copyOf(readNames(buffer));
+            final ImmutableList<String> authorities = ImmutableList.copyOf(readNames(buffer));
+
+            // Size the arrays using the snapshot size, ...
+            final int targetCount = buffer.getInt();
+            final long entriesSize = buffer.remaining() - 16L * targetCount;
+            if (0 > targetCount || 0 > entriesSize || 0 != entriesSize % 8) {
+                throw new IOException(file + " is corrupted.");
+            }
+            final int capacity = capacityOf(targetCount);
+            final int[] slotTypes = new int[capacity];
+            final long[] slotIds = new long[capacity];
+            final int[] slotStarts = new int[capacity];
+            final int[] slotEnds = new int[capacity];
+            final int[] entries = new int[(int) (entriesSize / 4)];
+
+            // ... and fill them in straight from the snapshot.
+            int end = 0;
+            for (int target = 0; target < targetCount; target++) {
+                final int typeId = buffer.getInt();
+                final long targetId = buffer.getLong();
+                final int entryCount = buffer.getInt();
+                if (0 > typeId || types.size() <= typeId || 0 > entryCount
+                    || (entries.length - end) / 2 < entryCount || 0 <= slotOf(slotTypes, slotIds, typeId, targetId)) {
+                    throw new IOException(file + " is corrupted.");
+                }
+                final int slot = place(slotTypes, slotIds, typeId, targetId);
+                slotStarts[slot] = end;
+                for (int entry = 0; entry < entryCount; entry++) {
+                    final int authorityId = buffer.getInt();
+                    if (0 > authorityId || authorities.size() <= authorityId) {
+                        throw new IOException(file + " is corrupted.");
+                    }
+                    end = insert(entries, slotStarts[slot], end, authorityId, buffer.getInt());
+                }
+                slotEnds[slot] = end;
+            }
+            return new AclIndex(types, authorities, permissions.getNames(), slotTypes, slotIds, slotStarts, slotEnds,
+                (end == entries.length) ? entries : Arrays.copyOf(entries, end), targetCount);
+        } catch (final BufferUnderflowException exception) {
+            throw new IOException(file + " is truncated.", exception);
+        }
+    }
+
+    /**
+     * Places the target of given type and identifier in the open-addressing table.
+     *
+     * @return the slot assigned to the target
+     */
+    private static int place(final int[] slotTypes, final long[] slotIds, final int typeId, final long targetId) {
+        final int mask = slotTypes.length - 1;
+        int result = hash(typeId, targetId) & mask;
+        while (0 != slotTypes[result]) {
+            result = (result + 1) & mask;
+        }
+        slotTypes[result] = typeId + 1;
+        slotIds[result] = targetId;
+        return result;
+    }
+
+    private static List<String> readNames(final ByteBuffer buffer) {
+        final int count = buffer.getInt();
+        if (0 > count || buffer.remaining() / 2 < count) {
+            throw new BufferUnderflowException();
+        }
+        final List<String> result = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            result.add(decode(buffer));
+        }
+        return result;
+    }
+
+    /**
+     * Finds the slot of the target of given type and identifier in the open-addressing table.
+     *
+     * @return the slot of the target, or {@code -1} if there is no such target
+     */
+    private static int slotOf(final int[] slotTypes, final long[] slotIds, final int typeId, final long targetId) {
+        int result = -1;
+        if (0 <= typeId) {
+            final int mask = slotTypes.length - 1;
+            int slot = hash(typeId, targetId) & mask;
+            while (0 != slotTypes[slot]) {
+                if (typeId + 1 == slotTypes[slot] && targetId == slotIds[slot]) {
+                    result = slot;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        return result;
+    }
+
+    private final Names authorityIds;
+
+    private final ImmutableList<String> authorityNames;
+
+    private final int[] entries;
+
+    private final int mask;
+
+    private final ImmutableList<String> permissionNames;
+
+    private final int size;
+
+    private final int[] slotEnds;
+
+    private final long[] slotIds;
+
+    private final int[] slotStarts;
+
+    private final int[] slotTypes;
+
+    private final Names typeIds;
+
+    private final ImmutableList<String> typeNames;
+
+    private AclIndex(final ImmutableList<String> typeNames, final ImmutableList<String> authorityNames,
+        final ImmutableList<String> permissionNames, final int[] slotTypes, final long[] slotIds,
+        final int[] slotStarts, final int[] slotEnds, final int[] entries, final int size) {
+        super();
+        this.authorityIds = new Names(authorityNames);
+        this.authorityNames = authorityNames;
+        this.entries = entries;
+        this.mask = slotTypes.length - 1;
+        this.permissionNames = permissionNames;
+        this.size = size;
+        this.slotEnds = slotEnds;
+        this.slotIds = slotIds;
+        this.slotStarts = slotStarts;
+        this.slotTypes = slotTypes;
+        this.typeIds = new Names(typeNames);
+        this.typeNames = typeNames;
+    }
+
+    /**
+     * Calculates the mask of permissions granted for given authorities, regarding given target.
+     *
+     * @param typeId the target type identifier (see {@link #typeId(String)})
+     * @param targetId the target identifier
+     * @param authorities the authorities
+     * @return the mask of granted permissions
+     */
+    public int grantedMask(final int typeId, final long targetId,
+        final Collection<? extends GrantedAuthority> authorities) {
+        int result = 0;
+        final int slot = slotOf(typeId, targetId);
+        if (0 <= slot) {
+            final int start = slotStarts[slot];
+            final int end = slotEnds[slot];
+            for (final GrantedAuthority authority : authorities) {
+                final int authorityId = authorityIds.idOf(authority.getAuthority());
+                if (0 <= authorityId) {
+
+                    // Entries of the target are sorted by the authority, so binary search them.
+                    int low = 0;
+                    int high = (end - start) / 2 - 1;
+                    while (low <= high) {
+                        final int middle = (low + high) >>> 1;
+                        final int entry = start + 2 * middle;
+                        if (entries[entry] < authorityId) {
+                            low = middle + 1;
+                        } else if (entries[entry] > authorityId) {
+                            high = middle - 1;
+                        } else {
+                            result |= entries[entry + 1];
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Saves this index into given snapshot file (replacing its contents). Snapshot is written into temporary file
+     * first, and moved over given one once complete, so the file is never left partially written.
+     *
+     * @param file the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(final File file) throws IOException {
+        final List<byte[]> permissions = encode(permissionNames);
+        final List<byte[]> types = encode(typeNames);
+        final List<byte[]> authorities = encode(authorityNames);
+        long length = 8L + encodedSize(permissions) + encodedSize(types) + encodedSize(authorities) + 4;
+        for (int slot = 0; slot <= mask; slot++) {
+            if (0 != slotTypes[slot]) {
+                length += 16 + 4L * (slotEnds[slot] - slotStarts[slot]);
+            }
+        }
+        if (Integer.MAX_VALUE < length) {
+            throw new IOException("Snapshot exceeds " + Integer.MAX_VALUE + " bytes.");
+        }
+        final Path target = file.getAbsoluteFile().toPath();
+        final Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+
+        // Write the snapshot into the temporary file, ...
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+            encode(buffer, permissions);
+            encode(buffer, types);
+            encode(buffer, authorities);
+            buffer.putInt(size);
+            for (int slot = 0; slot <= mask; slot++) {
+                if (0 != slotTypes[slot]) {
+                    buffer.putInt(slotTypes[slot] - 1).putLong(slotIds[slot]).putInt(
+                        (slotEnds[slot] - slotStarts[slot]) / 2);
+                    for (int entry = slotStarts[slot]; entry < slotEnds[slot]; entry++) {
+                        buffer.putInt(entries[entry]);
+                    }
+                }
+            }
+            buffer.force();
+        }
+
+        // ... and replace the snapshot file with it.
+        try {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException exception) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return the number of targets having any permissions granted
+     */
+    public int size() {
+        return size;
+    }
+
+    private int slotOf(final int typeId, final long targetId) {
+        return slotOf(slotTypes, slotIds, typeId, targetId);
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("types", typeNames).add("authorities", authorityNames.size())
+            .add("targets", size).add("permissions", permissionNames).toString();
+    }
+
+    /**
+     * Provides the identifier of given target type.
+     *
+     * @param targetType the target type
+     * @return the target type identifier, or {@code -1} if there are no targets of given type
+     */
+    public int typeId(final String targetType) {
+        return typeIds.idOf(targetType);
+    }
+
+}
@@ -0,0 +1,168 @@
+package pl.ais.commons.infrastructure.security.permission.acl;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.security.core.Authentication;
+
+import pl.ais.commons.infrastructure.security.permission.evaluators.AbstractChainedPermissionEvaluator;
+
+/**
+ * Chained permission evaluator answering the permission checks using the {@link AclIndex}.
+ *
+ * <p>
+ * Evaluator supports the targets of types present in the index: target objects implementing {@link AclIdentifiable},
+ * and target identifiers being numbers. Permission arguments are resolved to permission masks using
+ * {@link PermissionRegistry}, permission is granted if the authorities of the principal have been granted all the
+ * permissions from the mask. Permission checks neither box nor allocate.
+ * </p>
+ * <p>
+ * Index can be loaded from the snapshot file when the evaluator is initialized (see {@link #setSnapshot(File)}), and
+ * replaced at any time (see {@link #setIndex(AclIndex)}), the replacement is published at once, and the decisions
+ * cached according to the previous index are discarded.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class AclPermissionEvaluator extends AbstractChainedPermissionEvaluator implements InitializingBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AclPermissionEvaluator.class);
+
+    private transient volatile AclIndex index;
+
+    private transient PermissionRegistry permissionRegistry;
+
+    private transient File snapshot;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet() throws BeanInitializationException {
+        if (null == permissionRegistry) {
+            throw new BeanInitializationException("Please, provide the permission registry.");
+        }
+        if (null != snapshot && snapshot.isFile()) {
+            try {
+                index = AclIndex.load(snapshot, permissionRegistry);
+            } catch (final IOException exception) {
+                throw new BeanInitializationException("Unable to load ACL snapshot: " + snapshot, exception);
+            }
+            if (LOG.isInfoEnabled()) {
+                LOG.info("ACL index loaded from " + snapshot + ": " + index);
+            }
+        }
+        if (null == index) {
+            index = AclIndex.builder(permissionRegistry).build();
+        }
+    }
+
+    /**
+     * @return the index currently used by this evaluator
+     */
+    public AclIndex getIndex() {
+        return index;
+    }
+
+    private boolean isGranted(final Authentication authentication, final String targetType, final long targetId,
+        final Object permission) {
+        final int required = permissionRegistry.maskOf(permission);
+        final AclIndex current = index;
+        return (0 != required)
+            && (required == (required & current.grantedMask(current.typeId(targetType), targetId, authentication
+                .getAuthorities())));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isPermissionGranted(final Authentication authentication, final Object target,
+        final Object permission) {
+        final AclIdentifiable identifiable = (AclIdentifiable) target;
+        return isGranted(authentication, identifiable.getAclType(), identifiable.getAclId(), permission);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isPermissionGranted(final Authentication authentication, final Serializable targetId,
+        final String targetType, final Object permission) {
+        return isGranted(authentication, targetType, ((Number) targetId).longValue(), permission);
+    }
+
+    /**
+     * Saves the index currently used by this evaluator into the snapshot file.
+     *
+     * @throws IOException if the snapshot cannot be written
+     * @throws IllegalStateException if there is no snapshot file defined
+     */
+    public void saveSnapshot() throws IOException {
+        if (null == snapshot) {
+            throw new IllegalStateException("Please, provide the snapshot file first.");
+        }
+        index.save(snapshot);
+    }
+
+    /**
+     * Replaces the index used by this evaluator, discarding the cached decisions (if there are any).
+     *
+     * @param index the index to use
+     */
+    public void setIndex(final AclIndex index) {
+        this.index = index;
+        if (null != getDecisionCache()) {
+            getDecisionCache().invalidateAll();
+        }
+    }
+
+    /**
+     * @param permissionRegistry the registry of permissions to use
+     */
+    public void setPermissionRegistry(final PermissionRegistry permissionRegistry) {
+        this.permissionRegistry = permissionRegistry;
+    }
+
+    /**
+     * @param snapshot the snapshot file to load the index from (if it exists), and save the index into
+     */
+    public void setSnapshot(final File snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean supportsTarget(final Authentication authentication, final Object target,
+        final Object permission) {
+        return (target instanceof AclIdentifiable) && 0 <= index.typeId(((AclIdentifiable) target).getAclType());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean supportsTargetType(final Authentication authentication, final Serializable targetId,
+        final String targetType, final Object permission) {
+        return (targetId instanceof Number) && 0 <= index.typeId(targetType);
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("index", index).add("snapshot", snapshot).toString();
+    }
+
+}
@@ -0,0 +1,97 @@
+package pl.ais.commons.infrastructure.security.permission.acl;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Interns the permissions to the bits of permission masks used by {@link AclIndex}.
+ *
+ * <p>
+ * Permissions are registered by name, each of them gets the next bit (up to 32 permissions). Permission arguments are
+ * resolved to masks as follows: names are resolved to the bits of registered permissions, numbers are treated as masks
+ * (so the permission checks may require several permissions at once), anything else resolves to empty mask (which is
+ * never granted).
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class PermissionRegistry {
+
+    private static final int MAX_PERMISSIONS = Integer.SIZE;
+
+    private final ConcurrentMap<String, Integer> masks = new ConcurrentHashMap<>();
+
+    private final List<String> names = new CopyOnWriteArrayList<>();
+
+    /**
+     * @return the names of registered permissions, ordered by their bits
+     */
+    public ImmutableList<String> getNames() {
+        return ImmutableList.copyOf(names);
+    }
+
+    /**
+     * Resolves given permission argument to the permission mask.
+     *
+     * @param permission the permission name, or mask
+     * @return the permission mask, or {@code 0} if given permission is unknown
+     */
+    public int maskOf(final Object permission) {
+        int result = 0;
+        if (permission instanceof String) {
+            final Integer mask = masks.get(permission);
+            result = (null == mask) ? 0 : mask;
+        } else if (permission instanceof Number) {
+            result = ((Number) permission).intValue();
+        }
+        return result;
+    }
+
+    /**
+     * Registers the permission having given name, unless it is already registered.
+     *
+     * @param name the permission name
+     * @return the permission mask
+     * @throws IllegalArgumentException if the registry is full
+     */
+    public synchronized int register(final String name) {
+        Integer result = masks.get(name);
+        if (null == result) {
+            if (MAX_PERMISSIONS == names.size()) {
+                throw new IllegalArgumentException("Unable to register permission: " + name + ", at most "
+                    + MAX_PERMISSIONS + " permissions can be registered.");
+            }
+            result = 1 << names.size();
+            names.add(name);
+            masks.put(name, result);
+        }
+        return result;
+    }
+
+    /**
+     * Registers the permissions having given names (bits are assigned in given order).
+     *
+     * @param permissions the permission names
+     */
+    public void setPermissions(final List<String> permissions) {
+        for (final String permission : permissions) {
+            register(permission);
+        }
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("names", names).toString();
+    }
+
+}
@@ -0,0 +1,213 @@
+package pl.ais.commons.infrastructure.security.permission.async;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.core.Authentication;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Non-blocking companion of {@link PermissionEvaluator}, running the permission checks on provided {@link Executor}.
+ *
+ * <p>
+ * Any executor can be used, including the one creating virtual thread per task on Java runtimes supporting them (see
+ * {@link pl.ais.commons.infrastructure.service.ThreadPerTaskExecutor#virtualIfSupported(String)}), which makes it
+ * cheap to run independent permission checks (for single page, for example) concurrently. Each check can be given the
+ * deadline (see {@link #setTimeout(long)}), check which doesn't finish before the deadline, fails, or cannot be
+ * scheduled at all, results in default decision, which is denial unless configured otherwise.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class AsyncPermissionEvaluator implements InitializingBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncPermissionEvaluator.class);
+
+    private transient boolean defaultDecision;
+
+    private transient PermissionEvaluator evaluator;
+
+    private transient Executor executor;
+
+    private transient ScheduledExecutorService scheduler;
+
+    private transient long timeout;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet() throws BeanInitializationException {
+        if (null == evaluator) {
+            throw new BeanInitializationException("Please, provide the permission evaluator.");
+        }
+        if (null == executor) {
+            throw new BeanInitializationException("Please, provide the executor.");
+        }
+        if (0 < timeout && null == scheduler) {
+            throw new BeanInitializationException("Please, provide the scheduler used for enforcing the timeout.");
+        }
+    }
+
+    /**
+     * Verifies asynchronously if given permission is granted for given target.
+     *
+     * @param authentication the authentication
+     * @param target the target
+     * @param permission the permission
+     * @return future decision
+     */
+    public ListenableFuture<Boolean> hasPermission(
+        final Authentication authentication, final Object target, final Object permission) {
+        return submit(authentication, PermissionCheck.of(target, permission));
+    }
+
+    /**
+     * Verifies asynchronously if given permission is granted for the target of given type, having given identifier.
+     *
+     * @param authentication the authentication
+     * @param targetId the target identifier
+     * @param targetType the target type
+     * @param permission the permission
+     * @return future decision
+     */
+    public ListenableFuture<Boolean> hasPermission(
+        final Authentication authentication, final Serializable targetId, final String targetType,
+        final Object permission) {
+        return submit(authentication, PermissionCheck.of(targetId, targetType, permission));
+    }
+
+    /**
+     * Runs given permission checks concurrently.
+     *
+     * @param authentication the authentication
+     * @param checks the permission checks
+     * @return future decisions, in the order of given checks
+     */
+    public ListenableFuture<List<Boolean>> hasPermissions(
+        final Authentication authentication, final List<PermissionCheck> checks) {
+        final List<ListenableFuture<Boolean>> decisions = new ArrayList<>(checks.size());
+        for (final PermissionCheck check : checks) {
+            decisions.add(submit(authentication, check));
+        }
+        return Futures.allAsList(decisions);
+    }
+
+    /**
+     * Defines the decision used when permission check times out, fails, or cannot be scheduled.
+     *
+     * @param defaultDecision the decision to set ({@code false} - deny - by default)
+     */
+    public void setDefaultDecision(final boolean defaultDecision) {
+        this.defaultDecision = defaultDecision;
+    }
+
+    /**
+     * @param evaluator the permission evaluator to be used for running the checks
+     */
+    public void setEvaluator(final PermissionEvaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * @param executor the executor to be used for running the checks
+     */
+    public void setExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param scheduler the scheduler to be used for enforcing the timeout
+     */
+    public void setScheduler(final ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Defines the time after which unfinished permission check results in default decision.
+     *
+     * @param timeout the time (in milliseconds) to set, non-positive value means no timeout
+     */
+    public void setTimeout(final long timeout) {
+        this.timeout = timeout;
+    }
+
+    private ListenableFuture<Boolean> submit(final Authentication authentication, final PermissionCheck check) {
+        final SettableFuture<Boolean> result = SettableFuture.create();
+
+        // Enforce the deadline (if any), ...
+        if (0 < timeout) {
+            final ScheduledFuture<?> deadline = scheduler.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (result.set(defaultDecision)) {
+                        LOG.warn("Permission check " + check + " timed out, using default decision: "
+                            + defaultDecision);
+                    }
+                }
+
+            }, timeout, TimeUnit.MILLISECONDS);
+            result.addListener(new Runnable() {
+
+                @Override
+                public void run() {
+                    deadline.cancel(false);
+                }
+
+            }, MoreExecutors.sameThreadExecutor());
+        }
+
+        // ... and run the check.
+        try {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (!result.isDone()) {
+                        try {
+                            result.set(check.evaluate(evaluator, authentication));
+                        } catch (final RuntimeException exception) {
+                            LOG.warn("Permission check " + check + " failed, using default decision: "
+                                + defaultDecision, exception);
+                            result.set(defaultDecision);
+                        }
+                    }
+                }
+
+            });
+        } catch (final RejectedExecutionException exception) {
+            LOG.warn("Permission check " + check + " rejected, using default decision: " + defaultDecision, exception);
+            result.set(defaultDecision);
+        }
+        return result;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("evaluator", evaluator).add("timeout", timeout)
+            .add("defaultDecision", defaultDecision).toString();
+    }
+
+}
@@ -0,0 +1,104 @@
+package pl.ais.commons.infrastructure.security.permission.async;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.io.Serializable;
+
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Single permission check, regarding either target object, or target identified by its type and identifier.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public final class PermissionCheck {
+
+    /**
+     * Creates the check of given permission for given target object.
+     *
+     * @param target the target object
+     * @param permission the permission
+     * @return the permission check
+     */
+    public static PermissionCheck of(final Object target, final Object permission) {
+        return new PermissionCheck(target, null, permission);
+    }
+
+    /**
+     * Creates the check of given permission for target of given type, having given identifier.
+     *
+     * @param targetId the target identifier
+     * @param targetType the target type
+     * @param permission the permission
+     * @return the permission check
+     */
+    public static PermissionCheck of(final Serializable targetId, final String targetType, final Object permission) {
+        if (null == targetType) {
+            throw new IllegalArgumentException("Target type cannot be null");
+        }
+        return new PermissionCheck(targetId, targetType, permission);
+    }
+
+    private final Object permission;
+
+    private final Object target;
+
+    private final String targetType;
+
+    private PermissionCheck(final Object target, final String targetType, final Object permission) {
+        super();
+        this.target = target;
+        this.targetType = targetType;
+        this.permission = permission;
+    }
+
+    /**
+     * Runs this check using given evaluator.
+     *
+     * @param evaluator the permission evaluator
+     * @param authentication the authentication
+     * @return {@code true} if permission is granted, {@code false} otherwise
+     */
+    boolean evaluate(final PermissionEvaluator evaluator, final Authentication authentication) {
+        final boolean result;
+        if (null == targetType) {
+            result = evaluator.hasPermission(authentication, target, permission);
+        } else {
+            result = evaluator.hasPermission(authentication, (Serializable) target, targetType, permission);
+        }
+        return result;
+    }
+
+    /**
+     * @return the permission
+     */
+    public Object getPermission() {
+        return permission;
+    }
+
+    /**
+     * @return the target object, or target identifier (if target type is defined)
+     */
+    public Object getTarget() {
+        return target;
+    }
+
+    /**
+     * @return the target type, or {@code null} if this check regards target object
+     */
+    public String getTargetType() {
+        return targetType;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("target", target).add("targetType", targetType).add("permission", permission)
+            .toString();
+    }
+
+}
@@ -0,0 +1,116 @@
+package pl.ais.commons.infrastructure.security.permission.cache;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.util.Set;
+
+import com.google.common.base.Objects;
+
+/**
+ * Identifies the permission decision: who (user and / or authorities) asked for which permission to which target.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public final class DecisionKey {
+
+    private final Set<String> authorities;
+
+    private final int hash;
+
+    private final Object permission;
+
+    private final Object target;
+
+    private final String targetType;
+
+    private final String user;
+
+    /**
+     * Constructs new instance.
+     *
+     * @param user the user name (may be {@code null} if decisions are not user specific)
+     * @param authorities the names of authorities granted to the user
+     * @param targetType the target type
+     * @param target the target identifier or the target itself
+     * @param permission the permission
+     */
+    DecisionKey(final String user, final Set<String> authorities, final String targetType, final Object target,
+        final Object permission) {
+        super();
+        this.user = user;
+        this.authorities = authorities;
+        this.targetType = targetType;
+        this.target = target;
+        this.permission = permission;
+        this.hash = Objects.hashCode(user, authorities, targetType, target, permission);
+    }
+
+    /**
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(final Object object) {
+        boolean result = (this == object);
+        if (!result && object instanceof DecisionKey) {
+            final DecisionKey other = (DecisionKey) object;
+            result = (hash == other.hash) && Objects.equal(user, other.user)
+                && Objects.equal(targetType, other.targetType) && Objects.equal(target, other.target)
+                && Objects.equal(permission, other.permission) && Objects.equal(authorities, other.authorities);
+        }
+        return result;
+    }
+
+    /**
+     * @return the names of authorities granted to the user
+     */
+    public Set<String> getAuthorities() {
+        return authorities;
+    }
+
+    /**
+     * @return the permission
+     */
+    public Object getPermission() {
+        return permission;
+    }
+
+    /**
+     * @return the target identifier or the target itself
+     */
+    public Object getTarget() {
+        return target;
+    }
+
+    /**
+     * @return the target type
+     */
+    public String getTargetType() {
+        return targetType;
+    }
+
+    /**
+     * @return the user name, or {@code null} if decisions are not user specific
+     */
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("user", user).add("authorities", authorities).add("targetType", targetType)
+            .add("target", target).add("permission", permission).toString();
+    }
+
+}
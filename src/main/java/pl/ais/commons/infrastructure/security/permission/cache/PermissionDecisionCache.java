@@ -0,0 +1,662 @@
+package pl.ais.commons.infrastructure.security.permission.cache;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Cache of permission decisions, usable by the chained permission evaluators.
+ *
+ * <p>
+ * Grants and denials are kept in separate, bounded caches (segmented, LRU-like eviction), so they can expire after
+ * different periods of time. By default decisions are user specific (the key contains user name along with granted
+ * authorities), and only the decisions regarding targets identified by type and identifier are cached, caching of
+ * decisions regarding target objects has to be enabled explicitly, and requires target objects having proper
+ * {@code equals} and {@code hashCode} implementations.
+ * </p>
+ * <p>
+ * Invalidation doesn't scan the cached decisions, it advances the generation of the cache, and remembers the generation
+ * at which given scope (user, target, target type, or the whole cache) has been invalidated. Each decision is cached
+ * along with the generation read before it was made (see {@link #getGeneration()} and
+ * {@link #put(DecisionKey, boolean, long)}), and is ignored if any of its scopes has been invalidated since, so the
+ * decision made concurrently with the invalidation is never served afterwards. Decision found current isn't verified
+ * again until another invalidation completes, and the authority part of the key is built once per authentication.
+ * </p>
+ * <p>
+ * Decisions regarding the targets identified by type and identifier can be written into (and restored from) the
+ * snapshot (see {@link #writeSnapshot(DataOutput)} and {@link #readSnapshot(DataInput, long)}), so the node restarts
+ * with warm cache.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class PermissionDecisionCache implements InitializingBean {
+
+    /**
+     * Default time (in milliseconds) after which cached denials expire.
+     */
+    public static final long DEFAULT_DENIAL_TIME_TO_LIVE = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Default time (in milliseconds) after which cached grants expire.
+     */
+    public static final long DEFAULT_GRANT_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Default maximum number of grants, and denials (each) being cached.
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    private static final byte TAG_INTEGER = 'I';
+
+    private static final byte TAG_LONG = 'L';
+
+    private static final byte TAG_STRING = 'S';
+
+    private transient Cache<Authentication, Set<String>> authorityKeys;
+
+    private transient boolean cachingObjectTargets;
+
+    private transient Cache<DecisionKey, Decision> denials;
+
+    private transient long denialTimeToLive = DEFAULT_DENIAL_TIME_TO_LIVE;
+
+    private transient long grantTimeToLive = DEFAULT_GRANT_TIME_TO_LIVE;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private transient Cache<DecisionKey, Decision> grants;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    private transient Cache<Scope, Long> invalidations;
+
+    private transient long maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    private transient String policyVersion = "";
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private transient boolean userScoped = true;
+
+    private static boolean isWritable(final Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof String;
+    }
+
+    private static Object readValue(final DataInput in) throws IOException {
+        final Object result;
+        final byte tag = in.readByte();
+        switch (tag) {
+            case TAG_INTEGER:
+                result = in.readInt();
+                break;
+            case TAG_LONG:
+                result = in.readLong();
+                break;
+            case TAG_STRING:
+                result = in.readUTF();
+                break;
+            default:
+                throw new IOException("Unknown value tag: " + tag);
+        }
+        return result;
+    }
+
+    private static void writeValue(final DataOutput out, final Object value) throws IOException {
+        if (value instanceof Integer) {
+            out.writeByte(TAG_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            out.writeLong((Long) value);
+        } else {
+            out.writeByte(TAG_STRING);
+            out.writeUTF((String) value);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet() throws BeanInitializationException {
+        if (0 > maximumSize) {
+            throw new BeanInitializationException("Maximum size cannot be negative.");
+        }
+        if (0 >= grantTimeToLive || 0 >= denialTimeToLive) {
+            throw new BeanInitializationException("Time to live has to be positive.");
+        }
+        grants = CacheBuilder.newBuilder().maximumSize(maximumSize)
+            .expireAfterWrite(grantTimeToLive, TimeUnit.MILLISECONDS).recordStats().build();
+        denials = CacheBuilder.newBuilder().maximumSize(maximumSize)
+            .expireAfterWrite(denialTimeToLive, TimeUnit.MILLISECONDS).recordStats().build();
+
+        // Authority part of the decision key is built once per authentication, ...
+        authorityKeys = CacheBuilder.newBuilder().weakKeys().maximumSize(maximumSize).build();
+
+        // ... and invalidations have to be remembered as long as the decisions made before them might be cached.
+        invalidations = CacheBuilder.newBuilder()
+            .expireAfterWrite(Math.max(grantTimeToLive, denialTimeToLive), TimeUnit.MILLISECONDS).build();
+    }
+
+    /**
+     * Provides the authorities granted by given authentication, as the part of the decision key.
+     */
+    private Set<String> authoritiesOf(final Authentication authentication) {
+        Set<String> result = (null == authorityKeys) ? null : authorityKeys.getIfPresent(authentication);
+        if (null == result) {
+            final ImmutableSet.Builder<String> authorities = ImmutableSet.builder();
+            for (final GrantedAuthority authority : authentication.getAuthorities()) {
+                authorities.add(String.valueOf(authority.getAuthority()));
+            }
+            result = authorities.build();
+            if (null != authorityKeys) {
+                authorityKeys.put(authentication, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Provides the cached decision, if it is still current (none of its scopes has been invalidated since it was made,
+     * and it is younger than given time to live), discarding it otherwise.
+     */
+    private Decision currentDecision(final Cache<DecisionKey, Decision> cache, final DecisionKey key,
+        final long timeToLive) {
+        Decision result = cache.getIfPresent(key);
+        if (null != result && (!isCurrent(result)
+            || timeToLive <= System.currentTimeMillis() - result.decidedAt)) {
+            cache.asMap().remove(key, result);
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Provides the cached decision.
+     *
+     * @param key the decision key
+     * @return {@code TRUE} if permission was granted, {@code FALSE} if it was denied, or {@code null} if there is no
+     *         cached decision for given key
+     */
+    public Boolean get(final DecisionKey key) {
+        Boolean result = null;
+        if (null != currentDecision(grants, key, grantTimeToLive)) {
+            result = Boolean.TRUE;
+        } else if (null != currentDecision(denials, key, denialTimeToLive)) {
+            result = Boolean.FALSE;
+        }
+        if (null == result) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Provides current generation of the cache, advanced by each invalidation. Generation should be read before making
+     * the decision, and passed to {@link #put(DecisionKey, boolean, long)} along with it.
+     *
+     * @return current generation of the cache
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Provides the ratio of the lookups which found cached decision.
+     *
+     * @return the hit ratio ({@code 1.0} if there were no lookups at all)
+     */
+    public double getHitRatio() {
+        return getStats().hitRate();
+    }
+
+    /**
+     * Provides the cache statistics (hits, misses, and evictions).
+     *
+     * @return the cache statistics
+     */
+    public CacheStats getStats() {
+        final long evictionCount = (null == grants) ? 0
+            : (grants.stats().evictionCount() + denials.stats().evictionCount());
+        return new CacheStats(hitCount.get(), missCount.get(), 0, 0, 0, evictionCount);
+    }
+
+    /**
+     * Discards all cached decisions.
+     */
+    public void invalidateAll() {
+        invalidate(Scope.ALL);
+        grants.invalidateAll();
+        denials.invalidateAll();
+    }
+
+    /**
+     * Advances the generation, and remembers it as the generation at which given scope has been invalidated.
+     */
+    private void invalidate(final Scope scope) {
+        final long invalidated = generation.incrementAndGet();
+        final ConcurrentMap<Scope, Long> map = invalidations.asMap();
+        Long previous = map.putIfAbsent(scope, invalidated);
+        while (null != previous && previous < invalidated && !map.replace(scope, previous, invalidated)) {
+            previous = map.putIfAbsent(scope, invalidated);
+        }
+        invalidationCount.incrementAndGet();
+    }
+
+    /**
+     * Discards all cached decisions regarding given target object.
+     *
+     * @param target the target object
+     */
+    public void invalidateTarget(final Object target) {
+        if (null == target) {
+            invalidateAll();
+        } else {
+            invalidate(new Scope(Scope.TARGET, null, target));
+        }
+    }
+
+    /**
+     * Discards all cached decisions regarding the target of given type, and having given identifier.
+     *
+     * @param targetType the target type
+     * @param targetId the target identifier
+     */
+    public void invalidateTarget(final String targetType, final Serializable targetId) {
+        if (null == targetId) {
+            invalidateTargetType(targetType);
+        } else {
+            invalidate(new Scope(Scope.TARGET, targetType, targetId));
+        }
+    }
+
+    /**
+     * Discards all cached decisions regarding the targets of given type.
+     *
+     * @param targetType the target type
+     */
+    public void invalidateTargetType(final String targetType) {
+        if (null == targetType) {
+            invalidateAll();
+        } else {
+            invalidate(new Scope(Scope.TARGET_TYPE, targetType, null));
+        }
+    }
+
+    /**
+     * Discards all cached decisions regarding given user (all cached decisions are discarded if the decisions are not
+     * user specific).
+     *
+     * @param user the user name
+     */
+    public void invalidateUser(final String user) {
+        if (userScoped && null != user) {
+            invalidate(new Scope(Scope.USER, user, null));
+        } else {
+            invalidateAll();
+        }
+    }
+
+    /**
+     * Provides the generation at which given scope has been invalidated.
+     */
+    private long invalidatedAt(final Scope scope) {
+        final Long result = invalidations.getIfPresent(scope);
+        return (null == result) ? 0 : result;
+    }
+
+    /**
+     * Verifies if decisions regarding target objects (as opposed to targets identified by type and identifier) are
+     * being cached.
+     *
+     * @return {@code true} if decisions regarding target objects are cached, {@code false} otherwise
+     */
+    public boolean isCachingObjectTargets() {
+        return cachingObjectTargets;
+    }
+
+    /**
+     * Verifies if given decision is still current, none of its scopes has been invalidated since it was made. Scopes
+     * are verified only if there was an invalidation completed since the decision was verified last time.
+     */
+    private boolean isCurrent(final Decision decision) {
+        final long completed = invalidationCount.get();
+        boolean result = (completed == decision.verifiedAt) || (generation.get() == decision.generation);
+        if (!result) {
+            result = decision.generation >= invalidatedAt(Scope.ALL);
+            for (int index = 0; result && index < decision.scopes.length; index++) {
+                result = decision.generation >= invalidatedAt(decision.scopes[index]);
+            }
+            if (result) {
+                decision.verifiedAt = completed;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates the key of the decision regarding given target.
+     *
+     * @param authentication the authentication
+     * @param targetType the target type
+     * @param target the target identifier or the target itself
+     * @param permission the permission
+     * @return the decision key
+     */
+    public DecisionKey keyFor(final Authentication authentication, final String targetType, final Object target,
+        final Object permission) {
+        String user = null;
+        Set<String> authorities = ImmutableSet.of();
+        if (null != authentication) {
+            if (userScoped) {
+                user = authentication.getName();
+            }
+            authorities = authoritiesOf(authentication);
+        }
+        return new DecisionKey(user, authorities, targetType, target, permission);
+    }
+
+    /**
+     * Creates the key of the decision regarding given target, made for the same user and authorities as the decision
+     * identified by given key (so the principal part of the key is built once for the batch of targets).
+     *
+     * @param principalKey the key of any decision made for the principal
+     * @param targetType the target type
+     * @param target the target identifier or the target itself
+     * @param permission the permission
+     * @return the decision key
+     */
+    public DecisionKey keyFor(final DecisionKey principalKey, final String targetType, final Object target,
+        final Object permission) {
+        return new DecisionKey(principalKey.getUser(), principalKey.getAuthorities(), targetType, target, permission);
+    }
+
+    /**
+     * Caches given decision, as made at current generation.
+     *
+     * @param key the decision key
+     * @param granted {@code true} if permission was granted, {@code false} otherwise
+     * @see #put(DecisionKey, boolean, long)
+     */
+    public void put(final DecisionKey key, final boolean granted) {
+        put(key, granted, generation.get());
+    }
+
+    /**
+     * Caches given decision, unless the cache has been invalidated since given generation (the decision might be
+     * stale then).
+     *
+     * @param key the decision key
+     * @param granted {@code true} if permission was granted, {@code false} otherwise
+     * @param decided the generation of the cache read before the decision was made (see {@link #getGeneration()})
+     */
+    public void put(final DecisionKey key, final boolean granted, final long decided) {
+        if (generation.get() == decided) {
+            final Cache<DecisionKey, Decision> cache = granted ? grants : denials;
+            final Decision value = new Decision(key, decided, System.currentTimeMillis());
+            cache.put(key, value);
+
+            // Invalidation might have started meanwhile (without taking the decision into account), discard it then.
+            if (generation.get() != decided) {
+                cache.asMap().remove(key, value);
+            }
+        }
+    }
+
+    /**
+     * Reads the decisions written by {@link #writeSnapshot(DataOutput)}, and caches them (unless there are fresher
+     * decisions cached already). Snapshot written using different policy version (see
+     * {@link #setPolicyVersion(String)}) or scope is discarded as a whole, grants (and denials) older than their time
+     * to live are discarded too. Restored decisions expire once their time to live (counted from the moment they were
+     * made, not restored) elapses.
+     *
+     * @param in the input to read the snapshot from
+     * @param age the age (in milliseconds) of the snapshot
+     * @return the number of decisions restored from the snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    public int readSnapshot(final DataInput in, final long age) throws IOException {
+        final boolean current = policyVersion.equals(in.readUTF()) & (userScoped == in.readBoolean());
+        final long now = System.currentTimeMillis();
+        int result = 0;
+        for (int count = in.readInt(); 0 < count; count--) {
+            final boolean granted = in.readBoolean();
+            final long decisionAge = age + in.readLong();
+            final String user = in.readBoolean() ? in.readUTF() : null;
+            final ImmutableSet.Builder<String> authorities = ImmutableSet.builder();
+            for (int remaining = in.readInt(); 0 < remaining; remaining--) {
+                authorities.add(in.readUTF());
+            }
+            final String targetType = in.readUTF();
+            final Object target = readValue(in);
+            final Object permission = readValue(in);
+            if (current && 0 <= age && decisionAge < (granted ? grantTimeToLive : denialTimeToLive)) {
+
+                // Restored decisions were made before any invalidation, so they are treated as the initial generation.
+                final DecisionKey key = new DecisionKey(user, authorities.build(), targetType, target, permission);
+                if (null == (granted ? grants : denials).asMap().putIfAbsent(key, new Decision(key, 0, now
+                    - decisionAge))) {
+                    result++;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Determines if decisions regarding target objects should be cached (disabled by default).
+     *
+     * @param cachingObjectTargets {@code true} if decisions regarding target objects should be cached
+     */
+    public void setCachingObjectTargets(final boolean cachingObjectTargets) {
+        this.cachingObjectTargets = cachingObjectTargets;
+    }
+
+    /**
+     * Defines the time after which cached denials expire.
+     *
+     * @param denialTimeToLive the time (in milliseconds) to set
+     */
+    public void setDenialTimeToLive(final long denialTimeToLive) {
+        this.denialTimeToLive = denialTimeToLive;
+    }
+
+    /**
+     * Defines the time after which cached grants expire.
+     *
+     * @param grantTimeToLive the time (in milliseconds) to set
+     */
+    public void setGrantTimeToLive(final long grantTimeToLive) {
+        this.grantTimeToLive = grantTimeToLive;
+    }
+
+    /**
+     * Defines the maximum number of grants, and denials (each) being cached.
+     *
+     * @param maximumSize the maximum size to set
+     */
+    public void setMaximumSize(final long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Defines the version of the permission policy (rules, ACLs) the decisions are made according to, decisions
+     * restored from the snapshot written for different version are discarded.
+     *
+     * @param policyVersion the policy version to set
+     */
+    public void setPolicyVersion(final String policyVersion) {
+        this.policyVersion = String.valueOf(policyVersion);
+    }
+
+    /**
+     * Determines if cached decisions are user specific (default), or depend on granted authorities only.
+     *
+     * @param userScoped {@code true} if cached decisions should be user specific
+     */
+    public void setUserScoped(final boolean userScoped) {
+        this.userScoped = userScoped;
+    }
+
+    /**
+     * Writes currently cached decisions regarding the targets identified by type and identifier (being a number or
+     * string), along with their age and the policy version, so they can be restored by
+     * {@link #readSnapshot(DataInput, long)} (after restart, for example).
+     *
+     * @param out the output to write the snapshot to
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void writeSnapshot(final DataOutput out) throws IOException {
+
+        // Collect the decisions which can be written, ...
+        final long now = System.currentTimeMillis();
+        final List<DecisionKey> decisions = new ArrayList<>();
+        final List<Long> ages = new ArrayList<>();
+        final BitSet granted = new BitSet();
+        for (final Cache<DecisionKey, Decision> cache : Arrays.asList(grants, denials)) {
+            for (final Map.Entry<DecisionKey, Decision> entry : cache.asMap().entrySet()) {
+                final DecisionKey key = entry.getKey();
+                final Decision decision = entry.getValue();
+                if (null != key.getTargetType() && isWritable(key.getTarget()) && isWritable(key.getPermission())
+                    && isCurrent(decision)) {
+                    granted.set(decisions.size(), grants == cache);
+                    decisions.add(key);
+                    ages.add(Math.max(0, now - decision.decidedAt));
+                }
+            }
+        }
+
+        // ... and write them.
+        out.writeUTF(policyVersion);
+        out.writeBoolean(userScoped);
+        out.writeInt(decisions.size());
+        for (int index = 0; index < decisions.size(); index++) {
+            final DecisionKey key = decisions.get(index);
+            out.writeBoolean(granted.get(index));
+            out.writeLong(ages.get(index));
+            out.writeBoolean(null != key.getUser());
+            if (null != key.getUser()) {
+                out.writeUTF(key.getUser());
+            }
+            out.writeInt(key.getAuthorities().size());
+            for (final String authority : key.getAuthorities()) {
+                out.writeUTF(authority);
+            }
+            out.writeUTF(key.getTargetType());
+            writeValue(out, key.getTarget());
+            writeValue(out, key.getPermission());
+        }
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("maximumSize", maximumSize).add("grantTimeToLive", grantTimeToLive)
+            .add("denialTimeToLive", denialTimeToLive).add("userScoped", userScoped)
+            .add("cachingObjectTargets", cachingObjectTargets).add("policyVersion", policyVersion).toString();
+    }
+
+    /**
+     * Cached decision: the generation of the cache read before it was made, the time it was made at, and the scopes
+     * which invalidate it (created once, so verifying the decision doesn't allocate anything).
+     */
+    private static final class Decision {
+
+        final long decidedAt;
+
+        final long generation;
+
+        final Scope[] scopes;
+
+        volatile long verifiedAt = -1;
+
+        Decision(final DecisionKey key, final long generation, final long decidedAt) {
+            this.generation = generation;
+            this.decidedAt = decidedAt;
+            final Scope targetType = new Scope(Scope.TARGET_TYPE, key.getTargetType(), null);
+            final Scope target = new Scope(Scope.TARGET, null, key.getTarget());
+            final Scope typedTarget = new Scope(Scope.TARGET, key.getTargetType(), key.getTarget());
+            this.scopes = (null == key.getUser()) ? new Scope[] {targetType, target, typedTarget}
+                : new Scope[] {new Scope(Scope.USER, key.getUser(), null), targetType, target, typedTarget};
+        }
+
+    }
+
+    /**
+     * Scope of the invalidation: user, target type, target (of given type, or of any type), or the whole cache.
+     */
+    private static final class Scope {
+
+        static final Scope ALL = new Scope('*', null, null);
+
+        static final char TARGET = 'T';
+
+        static final char TARGET_TYPE = 'Y';
+
+        static final char USER = 'U';
+
+        private final int hash;
+
+        private final char kind;
+
+        private final String name;
+
+        private final Object target;
+
+        Scope(final char kind, final String name, final Object target) {
+            this.kind = kind;
+            this.name = name;
+            this.target = target;
+            this.hash = Objects.hashCode(kind, name, target);
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            boolean result = (this == object);
+            if (!result && object instanceof Scope) {
+                final Scope other = (Scope) object;
+                result = (hash == other.hash) && (kind == other.kind) && Objects.equal(name, other.name)
+                    && Objects.equal(target, other.target);
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+}
@@ -1,22 +1,300 @@
 package pl.ais.commons.infrastructure.security.permission.evaluators;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
 
 import org.springframework.security.access.PermissionEvaluator;
 import org.springframework.security.core.Authentication;
 import org.springframework.util.Assert;
 
+import pl.ais.commons.infrastructure.cache.NonCacheable;
+import pl.ais.commons.infrastructure.metrics.MetricsSink;
+import pl.ais.commons.infrastructure.metrics.Probe;
+import pl.ais.commons.infrastructure.security.audit.AuditSink;
+import pl.ais.commons.infrastructure.security.permission.cache.DecisionKey;
+import pl.ais.commons.infrastructure.security.permission.cache.PermissionDecisionCache;
+
 /**
  * Base class for permission evaluators which can be chained together.
  *
+ * <p>
+ * Decisions made by the evaluator can be cached by {@link PermissionDecisionCache} (see
+ * {@link #setDecisionCache(PermissionDecisionCache)}), unless the evaluator is annotated with {@link NonCacheable}, or
+ * it declares particular decisions as non-cacheable (see {@link #isDecisionCacheable(Authentication, Object, Object)}
+ * and {@link #isDecisionCacheable(Authentication, Serializable, String, Object)}).
+ * </p>
+ * <p>
+ * Evaluators handling statically known target classes and types may declare them using {@link SupportedTargets}, which
+ * allows {@link CompiledPermissionEvaluator} to dispatch permission checks to them without walking the chain.
+ * </p>
+ * <p>
+ * Collections of targets can be verified at once (see {@link #hasPermissions(Authentication, Collection, Object)} and
+ * {@link #hasPermissions(Authentication, Collection, String, Object)}), the targets are grouped by the evaluator
+ * supporting them, and each evaluator verifies its group using single call of the batch hook, which can be overridden
+ * to answer using single query (for example).
+ * </p>
+ * <p>
+ * Evaluator can be instrumented by providing the {@link MetricsSink} (see {@link #setMetricsSink(MetricsSink)}), the
+ * duration of decisions made by the evaluator is recorded then (separately for grants and denials, each decision
+ * made in batch as its share of the batch duration), along with the denials caused by falling through the whole
+ * chain.
+ * </p>
+ * <p>
+ * Decisions made by the evaluator can be audited by providing the {@link AuditSink} (see
+ * {@link #setAuditSink(AuditSink)}).
+ * </p>
+ *
  * @author Warlock, AIS.PL
  * @since 1.0
  * @see <a href="http://en.wikipedia.org/wiki/Chain-of-responsibility_pattern">Chain-of-responsibility pattern</a>
  */
 public abstract class AbstractChainedPermissionEvaluator implements PermissionEvaluator {
 
+    private static final ClassValue<Boolean> CACHEABLE = new ClassValue<Boolean>() {
+
+        @Override
+        protected Boolean computeValue(final Class<?> type) {
+            return !type.isAnnotationPresent(NonCacheable.class);
+        }
+
+    };
+
+    private transient AuditSink auditSink;
+
+    private transient PermissionDecisionCache decisionCache;
+
     private transient PermissionEvaluator nextEvaluator;
 
+    private transient volatile Probes probes;
+
+    /**
+     * Records given batch of decisions, each of them as lasting its share of the batch duration.
+     */
+    private static void record(final Probes probes, final BitSet decided, final int count, final long nanos) {
+        final long share = nanos / count;
+        for (int index = 0; index < count; index++) {
+            (decided.get(index) ? probes.granted : probes.denied).record(share);
+        }
+    }
+
+    private static void scatter(final BitSet source, final int[] indexes, final BitSet target) {
+        for (int index = source.nextSetBit(0); index >= 0; index = source.nextSetBit(index + 1)) {
+            target.set(indexes[index]);
+        }
+    }
+
+    /**
+     * Records given decisions regarding supported targets, if the evaluator is audited.
+     */
+    private void audit(final Authentication authentication, final List<?> targets, final String targetType,
+        final Object permission, final BitSet decided) {
+        if (null != auditSink) {
+            for (int index = 0; index < targets.size(); index++) {
+                auditSink.recordDecision(getClass(), authentication, targets.get(index), targetType, permission,
+                    decided.get(index));
+            }
+        }
+    }
+
+    /**
+     * Makes the decision regarding supported target, recording it if the evaluator is instrumented.
+     */
+    boolean decide(final Authentication authentication, final Object target, final Object permission) {
+        final boolean result;
+        final Probes current = probes;
+        if (null == current) {
+            result = decideCached(authentication, target, permission);
+        } else {
+            final long start = System.nanoTime();
+            result = decideCached(authentication, target, permission);
+            (result ? current.granted : current.denied).record(System.nanoTime() - start);
+        }
+        if (null != auditSink) {
+            auditSink.recordDecision(getClass(), authentication, target, null, permission, result);
+        }
+        return result;
+    }
+
+    /**
+     * Makes the decision regarding supported target type, recording it if the evaluator is instrumented.
+     */
+    boolean decide(final Authentication authentication, final Serializable targetId, final String targetType,
+        final Object permission) {
+        final boolean result;
+        final Probes current = probes;
+        if (null == current) {
+            result = decideCached(authentication, targetId, targetType, permission);
+        } else {
+            final long start = System.nanoTime();
+            result = decideCached(authentication, targetId, targetType, permission);
+            (result ? current.granted : current.denied).record(System.nanoTime() - start);
+        }
+        if (null != auditSink) {
+            auditSink.recordDecision(getClass(), authentication, targetId, targetType, permission, result);
+        }
+        return result;
+    }
+
+    /**
+     * Makes the decision regarding supported target, consulting the decision cache if there is any.
+     */
+    private boolean decideCached(final Authentication authentication, final Object target, final Object permission) {
+        final boolean result;
+        if (null != decisionCache && decisionCache.isCachingObjectTargets()
+            && isDecisionCacheable(authentication, target, permission)) {
+            final String targetType = (null == target) ? null : target.getClass().getName();
+            final DecisionKey key = decisionCache.keyFor(authentication, targetType, target, permission);
+            final long generation = decisionCache.getGeneration();
+            final Boolean cached = decisionCache.get(key);
+            if (null == cached) {
+                result = isPermissionGranted(authentication, target, permission);
+                decisionCache.put(key, result, generation);
+            } else {
+                result = cached;
+            }
+        } else {
+            result = isPermissionGranted(authentication, target, permission);
+        }
+        return result;
+    }
+
+    /**
+     * Makes the decision regarding supported target type, consulting the decision cache if there is any.
+     */
+    private boolean decideCached(final Authentication authentication, final Serializable targetId,
+        final String targetType, final Object permission) {
+        final boolean result;
+        if (null != decisionCache && isDecisionCacheable(authentication, targetId, targetType, permission)) {
+            final DecisionKey key = decisionCache.keyFor(authentication, targetType, targetId, permission);
+            final long generation = decisionCache.getGeneration();
+            final Boolean cached = decisionCache.get(key);
+            if (null == cached) {
+                result = isPermissionGranted(authentication, targetId, targetType, permission);
+                decisionCache.put(key, result, generation);
+            } else {
+                result = cached;
+            }
+        } else {
+            result = isPermissionGranted(authentication, targetId, targetType, permission);
+        }
+        return result;
+    }
+
+    /**
+     * Makes the decisions regarding supported targets, consulting the decision cache if there is any.
+     */
+    private BitSet decideInBatch(final Authentication authentication, final List<?> targets, final Object permission) {
+        final BitSet result;
+        if (null != decisionCache && decisionCache.isCachingObjectTargets()) {
+            result = new BitSet(targets.size());
+            final long generation = decisionCache.getGeneration();
+
+            // Collect the decisions available in the cache, ...
+            final List<Object> missing = new ArrayList<>();
+            final List<DecisionKey> keys = new ArrayList<>();
+            final int[] missingIndexes = new int[targets.size()];
+            final DecisionKey principalKey = decisionCache.keyFor(authentication, null, null, permission);
+            for (int index = 0; index < targets.size(); index++) {
+                final Object target = targets.get(index);
+                DecisionKey key = null;
+                Boolean cached = null;
+                if (isDecisionCacheable(authentication, target, permission)) {
+                    final String targetType = (null == target) ? null : target.getClass().getName();
+                    key = decisionCache.keyFor(principalKey, targetType, target, permission);
+                    cached = decisionCache.get(key);
+                }
+                if (null == cached) {
+                    missingIndexes[missing.size()] = index;
+                    missing.add(target);
+                    keys.add(key);
+                } else if (cached) {
+                    result.set(index);
+                }
+            }
+
+            // ... make the missing decisions, and cache them.
+            if (!missing.isEmpty()) {
+                final BitSet decided = isPermissionGrantedInBatch(authentication, missing, permission);
+                for (int index = 0; index < missing.size(); index++) {
+                    final boolean granted = decided.get(index);
+                    if (null != keys.get(index)) {
+                        decisionCache.put(keys.get(index), granted, generation);
+                    }
+                }
+                scatter(decided, missingIndexes, result);
+            }
+        } else {
+            result = isPermissionGrantedInBatch(authentication, targets, permission);
+        }
+        return result;
+    }
+
+    /**
+     * Makes the decisions regarding supported target type, consulting the decision cache if there is any.
+     */
+    private BitSet decideInBatch(final Authentication authentication, final List<? extends Serializable> targetIds,
+        final String targetType, final Object permission) {
+        final BitSet result;
+        if (null != decisionCache) {
+            result = new BitSet(targetIds.size());
+            final long generation = decisionCache.getGeneration();
+
+            // Collect the decisions available in the cache, ...
+            final List<Serializable> missing = new ArrayList<>();
+            final List<DecisionKey> keys = new ArrayList<>();
+            final int[] missingIndexes = new int[targetIds.size()];
+            final DecisionKey principalKey = decisionCache.keyFor(authentication, null, null, permission);
+            for (int index = 0; index < targetIds.size(); index++) {
+                final Serializable targetId = targetIds.get(index);
+                DecisionKey key = null;
+                Boolean cached = null;
+                if (isDecisionCacheable(authentication, targetId, targetType, permission)) {
+                    key = decisionCache.keyFor(principalKey, targetType, targetId, permission);
+                    cached = decisionCache.get(key);
+                }
+                if (null == cached) {
+                    missingIndexes[missing.size()] = index;
+                    missing.add(targetId);
+                    keys.add(key);
+                } else if (cached) {
+                    result.set(index);
+                }
+            }
+
+            // ... make the missing decisions, and cache them.
+            if (!missing.isEmpty()) {
+                final BitSet decided = isPermissionGrantedInBatch(authentication, missing, targetType, permission);
+                for (int index = 0; index < missing.size(); index++) {
+                    final boolean granted = decided.get(index);
+                    if (null != keys.get(index)) {
+                        decisionCache.put(keys.get(index), granted, generation);
+                    }
+                }
+                scatter(decided, missingIndexes, result);
+            }
+        } else {
+            result = isPermissionGrantedInBatch(authentication, targetIds, targetType, permission);
+        }
+        return result;
+    }
+
+    /**
+     * @return the cache of decisions made by this evaluator (if any)
+     */
+    protected PermissionDecisionCache getDecisionCache() {
+        return decisionCache;
+    }
+
+    /**
+     * @return the next evaluator in the chain (if any)
+     */
+    PermissionEvaluator getNextEvaluator() {
+        return nextEvaluator;
+    }
+
     /**
      * @see org.springframework.security.access.PermissionEvaluator#hasPermission(org.springframework.security.core.Authentication, java.lang.Object, java.lang.Object)
      */
@@ -24,9 +302,11 @@ public abstract class AbstractChainedPermissionEvaluator implements PermissionEv
     public final boolean hasPermission(final Authentication authentication, final Object target, final Object permission) {
         boolean result = false;
         if (supportsTarget(authentication, target, permission)) {
-            result = isPermissionGranted(authentication, target, permission);
+            result = decide(authentication, target, permission);
         } else if (null != nextEvaluator) {
             result = nextEvaluator.hasPermission(authentication, target, permission);
+        } else {
+            recordFallthrough();
         }
         return result;
     }
@@ -40,13 +320,172 @@ public abstract class AbstractChainedPermissionEvaluator implements PermissionEv
         final Object permission) {
         boolean result = false;
         if (supportsTargetType(authentication, targetId, targetType, permission)) {
-            result = isPermissionGranted(authentication, targetId, targetType, permission);
+            result = decide(authentication, targetId, targetType, permission);
         } else if (null != nextEvaluator) {
             result = nextEvaluator.hasPermission(authentication, targetId, targetType, permission);
+        } else {
+            recordFallthrough();
         }
         return result;
     }
 
+    /**
+     * Verifies if given permission is granted for each of given targets.
+     *
+     * @param authentication the authentication
+     * @param targets the targets
+     * @param permission the permission
+     * @return set of indexes (in iteration order of given targets) of the targets for which permission is granted
+     */
+    public final BitSet hasPermissions(
+        final Authentication authentication, final Collection<?> targets, final Object permission) {
+        final BitSet result = new BitSet(targets.size());
+
+        // Split the targets into supported and not supported ones, ...
+        final List<Object> supported = new ArrayList<>();
+        final List<Object> unsupported = new ArrayList<>();
+        final int[] supportedIndexes = new int[targets.size()];
+        final int[] unsupportedIndexes = new int[targets.size()];
+        int index = 0;
+        for (final Object target : targets) {
+            if (supportsTarget(authentication, target, permission)) {
+                supportedIndexes[supported.size()] = index;
+                supported.add(target);
+            } else {
+                unsupportedIndexes[unsupported.size()] = index;
+                unsupported.add(target);
+            }
+            index++;
+        }
+
+        // ... decide about the supported ones, and delegate the other ones to the next evaluator.
+        if (!supported.isEmpty()) {
+            final Probes current = probes;
+            final long start = (null == current) ? 0 : System.nanoTime();
+            final BitSet decided = decideInBatch(authentication, supported, permission);
+            if (null != current) {
+                record(current, decided, supported.size(), System.nanoTime() - start);
+            }
+            audit(authentication, supported, null, permission, decided);
+            scatter(decided, supportedIndexes, result);
+        }
+        if (!unsupported.isEmpty() && null == nextEvaluator) {
+            for (int position = 0; position < unsupported.size(); position++) {
+                recordFallthrough();
+            }
+        } else if (!unsupported.isEmpty()) {
+            final BitSet delegated;
+            if (nextEvaluator instanceof AbstractChainedPermissionEvaluator) {
+                delegated = ((AbstractChainedPermissionEvaluator) nextEvaluator).hasPermissions(authentication,
+                    unsupported, permission);
+            } else {
+                delegated = new BitSet(unsupported.size());
+                for (int position = 0; position < unsupported.size(); position++) {
+                    if (nextEvaluator.hasPermission(authentication, unsupported.get(position), permission)) {
+                        delegated.set(position);
+                    }
+                }
+            }
+            scatter(delegated, unsupportedIndexes, result);
+        }
+        return result;
+    }
+
+    /**
+     * Verifies if given permission is granted for each of the targets of given type, having given identifiers.
+     *
+     * @param authentication the authentication
+     * @param targetIds the target identifiers
+     * @param targetType the target type
+     * @param permission the permission
+     * @return set of indexes (in iteration order of given identifiers) of the targets for which permission is granted
+     */
+    public final BitSet hasPermissions(
+        final Authentication authentication, final Collection<? extends Serializable> targetIds,
+        final String targetType, final Object permission) {
+        final BitSet result = new BitSet(targetIds.size());
+
+        // Split the targets into supported and not supported ones, ...
+        final List<Serializable> supported = new ArrayList<>();
+        final List<Serializable> unsupported = new ArrayList<>();
+        final int[] supportedIndexes = new int[targetIds.size()];
+        final int[] unsupportedIndexes = new int[targetIds.size()];
+        int index = 0;
+        for (final Serializable targetId : targetIds) {
+            if (supportsTargetType(authentication, targetId, targetType, permission)) {
+                supportedIndexes[supported.size()] = index;
+                supported.add(targetId);
+            } else {
+                unsupportedIndexes[unsupported.size()] = index;
+                unsupported.add(targetId);
+            }
+            index++;
+        }
+
+        // ... decide about the supported ones, and delegate the other ones to the next evaluator.
+        if (!supported.isEmpty()) {
+            final Probes current = probes;
+            final long start = (null == current) ? 0 : System.nanoTime();
+            final BitSet decided = decideInBatch(authentication, supported, targetType, permission);
+            if (null != current) {
+                record(current, decided, supported.size(), System.nanoTime() - start);
+            }
+            audit(authentication, supported, targetType, permission, decided);
+            scatter(decided, supportedIndexes, result);
+        }
+        if (!unsupported.isEmpty() && null == nextEvaluator) {
+            for (int position = 0; position < unsupported.size(); position++) {
+                recordFallthrough();
+            }
+        } else if (!unsupported.isEmpty()) {
+            final BitSet delegated;
+            if (nextEvaluator instanceof AbstractChainedPermissionEvaluator) {
+                delegated = ((AbstractChainedPermissionEvaluator) nextEvaluator).hasPermissions(authentication,
+                    unsupported, targetType, permission);
+            } else {
+                delegated = new BitSet(unsupported.size());
+                for (int position = 0; position < unsupported.size(); position++) {
+                    if (nextEvaluator.hasPermission(authentication, unsupported.get(position), targetType,
+                        permission)) {
+                        delegated.set(position);
+                    }
+                }
+            }
+            scatter(delegated, unsupportedIndexes, result);
+        }
+        return result;
+    }
+
+    /**
+     * Verifies if the decision regarding given target can be cached, by default all the decisions made by evaluators
+     * not annotated with {@link NonCacheable} can be cached.
+     *
+     * @param authentication the authentication
+     * @param target the target
+     * @param permission the permission
+     * @return {@code true} if the decision can be cached, {@code false} otherwise
+     */
+    protected boolean isDecisionCacheable(
+        final Authentication authentication, final Object target, final Object permission) {
+        return CACHEABLE.get(getClass());
+    }
+
+    /**
+     * Verifies if the decision regarding given target can be cached, by default all the decisions made by evaluators
+     * not annotated with {@link NonCacheable} can be cached.
+     *
+     * @param authentication the authentication
+     * @param targetId the target identifier
+     * @param targetType the target type
+     * @param permission the permission
+     * @return {@code true} if the decision can be cached, {@code false} otherwise
+     */
+    protected boolean isDecisionCacheable(
+        final Authentication authentication, final Serializable targetId, final String targetType,
+        final Object permission) {
+        return CACHEABLE.get(getClass());
+    }
+
     protected abstract boolean isPermissionGranted(
         final Authentication authentication, final Object target, final Object permission);
 
@@ -54,6 +493,90 @@ public abstract class AbstractChainedPermissionEvaluator implements PermissionEv
         final Authentication authentication, final Serializable targetId, final String targetType,
         final Object permission);
 
+    /**
+     * Verifies if given permission is granted for each of given (supported) targets.
+     *
+     * <p>
+     * Default implementation verifies the targets one by one, evaluators able to verify multiple targets at once (using
+     * single query, for example) should override it.
+     * </p>
+     *
+     * @param authentication the authentication
+     * @param targets the targets
+     * @param permission the permission
+     * @return set of indexes of the targets for which permission is granted
+     */
+    protected BitSet isPermissionGrantedInBatch(
+        final Authentication authentication, final List<?> targets, final Object permission) {
+        final BitSet result = new BitSet(targets.size());
+        for (int index = 0; index < targets.size(); index++) {
+            if (isPermissionGranted(authentication, targets.get(index), permission)) {
+                result.set(index);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Verifies if given permission is granted for each of the (supported) targets of given type, having given
+     * identifiers.
+     *
+     * <p>
+     * Default implementation verifies the targets one by one, evaluators able to verify multiple targets at once (using
+     * single query, for example) should override it.
+     * </p>
+     *
+     * @param authentication the authentication
+     * @param targetIds the target identifiers
+     * @param targetType the target type
+     * @param permission the permission
+     * @return set of indexes of the targets for which permission is granted
+     */
+    protected BitSet isPermissionGrantedInBatch(
+        final Authentication authentication, final List<? extends Serializable> targetIds, final String targetType,
+        final Object permission) {
+        final BitSet result = new BitSet(targetIds.size());
+        for (int index = 0; index < targetIds.size(); index++) {
+            if (isPermissionGranted(authentication, targetIds.get(index), targetType, permission)) {
+                result.set(index);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records the denial caused by falling through the whole chain, if the evaluator is instrumented.
+     */
+    protected void recordFallthrough() {
+        final Probes current = probes;
+        if (null != current) {
+            current.fallthrough.record(0);
+        }
+    }
+
+    /**
+     * @param auditSink the sink recording decisions made by this evaluator
+     */
+    public void setAuditSink(final AuditSink auditSink) {
+        this.auditSink = auditSink;
+    }
+
+    /**
+     * @param decisionCache the cache of decisions made by this evaluator
+     */
+    public void setDecisionCache(final PermissionDecisionCache decisionCache) {
+        this.decisionCache = decisionCache;
+    }
+
+    /**
+     * Instruments this evaluator using given sink, or disables the instrumentation if {@code null} is given.
+     *
+     * @param metricsSink the metrics sink to use
+     */
+    public void setMetricsSink(final MetricsSink metricsSink) {
+        probes = (null == metricsSink) ? null : new Probes(metricsSink, getClass());
+    }
+
     /**
      * @param nextEvaluator the nextEvaluator to set
      */
@@ -67,4 +590,25 @@ public abstract class AbstractChainedPermissionEvaluator implements PermissionEv
     protected abstract boolean supportsTargetType(
         Authentication authentication, Serializable targetId, String targetType, Object permission);
 
+    /**
+     * Probes used for instrumenting the evaluator, published together, so the decision is always recorded using the
+     * probes coming from the same sink.
+     */
+    private static final class Probes {
+
+        final Probe denied;
+
+        final Probe fallthrough;
+
+        final Probe granted;
+
+        Probes(final MetricsSink metricsSink, final Class<?> evaluatorClass) {
+            final String prefix = MetricsSink.PERMISSION_PREFIX + evaluatorClass.getName();
+            this.denied = metricsSink.probe(prefix + ".denied");
+            this.fallthrough = metricsSink.probe(MetricsSink.DENIED_BY_FALLTHROUGH);
+            this.granted = metricsSink.probe(prefix + ".granted");
+        }
+
+    }
+
 }
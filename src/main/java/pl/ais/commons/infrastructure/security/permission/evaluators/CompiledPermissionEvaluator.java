@@ -0,0 +1,239 @@
+package pl.ais.commons.infrastructure.security.permission.evaluators;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.core.Authentication;
+import org.springframework.util.Assert;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * {@link PermissionEvaluator} dispatching permission checks to the chain of evaluators using precomputed dispatch
+ * tables instead of asking each evaluator in the chain if it supports the target.
+ *
+ * <p>
+ * Evaluators annotated with {@link SupportedTargets} are dispatched to directly, the other ones (as well as the
+ * evaluators not being {@link AbstractChainedPermissionEvaluator chained ones}) are asked about support in the chain
+ * order, as the chain would do. Dispatch table is computed once per concrete target class, and contains only the
+ * evaluators which may support it, up to the first one which surely does. Dispatch tables for target types are
+ * computed when this evaluator is created: one for each type declared by any evaluator, and single one shared by all
+ * the other types (including missing one), so the tables never grow with the types provided by the callers. The chain
+ * is captured when this evaluator is created, changes made to the chain afterwards are not reflected.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class CompiledPermissionEvaluator implements PermissionEvaluator {
+
+    /**
+     * Single link of the compiled chain.
+     */
+    private static final class Link {
+
+        private final PermissionEvaluator evaluator;
+
+        private final SupportedTargets supported;
+
+        Link(final PermissionEvaluator evaluator) {
+            this.evaluator = evaluator;
+            this.supported = evaluator.getClass().getAnnotation(SupportedTargets.class);
+        }
+
+        boolean isDynamic() {
+            return null == supported;
+        }
+
+        boolean isStaticFor(final Class<?> targetClass) {
+            boolean result = false;
+            if (null != supported) {
+                for (final Class<?> supportedClass : supported.classes()) {
+                    result |= supportedClass.isAssignableFrom(targetClass);
+                }
+            }
+            return result;
+        }
+
+        boolean isStaticFor(final String targetType) {
+            boolean result = false;
+            if (null != supported) {
+                for (final String supportedType : supported.types()) {
+                    result |= SupportedTargets.ANY_TYPE.equals(supportedType) || supportedType.equals(targetType);
+                }
+            }
+            return result;
+        }
+
+        boolean isTerminal() {
+            return !(evaluator instanceof AbstractChainedPermissionEvaluator);
+        }
+
+        @Override
+        public String toString() {
+            return evaluator.getClass().getSimpleName() + (isDynamic() ? "(dynamic)" : "(static)");
+        }
+
+    }
+
+    private final ClassValue<Link[]> classDispatch = new ClassValue<Link[]>() {
+
+        @Override
+        protected Link[] computeValue(final Class<?> targetClass) {
+            final List<Link> result = new ArrayList<>();
+            for (final Link link : links) {
+                if (link.isTerminal() || link.isStaticFor(targetClass)) {
+                    result.add(link);
+                    break;
+                } else if (link.isDynamic()) {
+                    result.add(link);
+                }
+            }
+            return result.toArray(new Link[result.size()]);
+        }
+
+    };
+
+    /**
+     * Last evaluator of the chain, recording the denials caused by falling through the whole chain (if it is the
+     * chained one).
+     */
+    private final AbstractChainedPermissionEvaluator last;
+
+    private final ImmutableList<Link> links;
+
+    private final Link[] otherTypeDispatch;
+
+    private final ImmutableMap<String, Link[]> typeDispatch;
+
+    /**
+     * Constructs new instance.
+     *
+     * @param chain the first evaluator of the chain to be compiled
+     */
+    public CompiledPermissionEvaluator(final PermissionEvaluator chain) {
+        super();
+        Assert.notNull(chain, "Given evaluator cannot be null");
+        final ImmutableList.Builder<Link> builder = ImmutableList.builder();
+        PermissionEvaluator evaluator = chain;
+        while (null != evaluator) {
+            builder.add(new Link(evaluator));
+            evaluator = (evaluator instanceof AbstractChainedPermissionEvaluator)
+                ? ((AbstractChainedPermissionEvaluator) evaluator).getNextEvaluator() : null;
+        }
+        this.links = builder.build();
+        final Link lastLink = links.get(links.size() - 1);
+        this.last = lastLink.isTerminal() ? null : (AbstractChainedPermissionEvaluator) lastLink.evaluator;
+
+        // Compute the dispatch tables for the types declared by the evaluators, and for all the other types.
+        final Set<String> declaredTypes = new HashSet<>();
+        for (final Link link : links) {
+            if (!link.isDynamic()) {
+                declaredTypes.addAll(Arrays.asList(link.supported.types()));
+            }
+        }
+        declaredTypes.remove(SupportedTargets.ANY_TYPE);
+        final ImmutableMap.Builder<String, Link[]> dispatch = ImmutableMap.builder();
+        for (final String declaredType : declaredTypes) {
+            dispatch.put(declaredType, compile(declaredType));
+        }
+        this.otherTypeDispatch = compile(null);
+        this.typeDispatch = dispatch.build();
+    }
+
+    /**
+     * Computes the dispatch table for given target type (or for the types not declared by any evaluator, if
+     * {@code null} is given).
+     */
+    private Link[] compile(final String targetType) {
+        final List<Link> result = new ArrayList<>();
+        for (final Link link : links) {
+            if (link.isTerminal() || link.isStaticFor(targetType)) {
+                result.add(link);
+                break;
+            } else if (link.isDynamic()) {
+                result.add(link);
+            }
+        }
+        return result.toArray(new Link[result.size()]);
+    }
+
+    /**
+     * Records the denial caused by falling through the whole chain.
+     */
+    private boolean fallthrough() {
+        if (null != last) {
+            last.recordFallthrough();
+        }
+        return false;
+    }
+
+    private Link[] dispatchFor(final String targetType) {
+        final Link[] result = (null == targetType) ? null : typeDispatch.get(targetType);
+        return (null == result) ? otherTypeDispatch : result;
+    }
+
+    /**
+     * @see org.springframework.security.access.PermissionEvaluator#hasPermission(org.springframework.security.core.Authentication, java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public boolean hasPermission(final Authentication authentication, final Object target, final Object permission) {
+        Boolean result = null;
+        if (null == target) {
+            result = links.get(0).evaluator.hasPermission(authentication, target, permission);
+        } else {
+            for (final Link link : classDispatch.get(target.getClass())) {
+                if (link.isTerminal()) {
+                    result = link.evaluator.hasPermission(authentication, target, permission);
+                    break;
+                }
+                final AbstractChainedPermissionEvaluator evaluator =
+                    (AbstractChainedPermissionEvaluator) link.evaluator;
+                if (!link.isDynamic() || evaluator.supportsTarget(authentication, target, permission)) {
+                    result = evaluator.decide(authentication, target, permission);
+                    break;
+                }
+            }
+        }
+        return (null == result) ? fallthrough() : result;
+    }
+
+    /**
+     * @see org.springframework.security.access.PermissionEvaluator#hasPermission(org.springframework.security.core.Authentication, java.io.Serializable, java.lang.String, java.lang.Object)
+     */
+    @Override
+    public boolean hasPermission(
+        final Authentication authentication, final Serializable targetId, final String targetType,
+        final Object permission) {
+        Boolean result = null;
+        for (final Link link : dispatchFor(targetType)) {
+            if (link.isTerminal()) {
+                result = link.evaluator.hasPermission(authentication, targetId, targetType, permission);
+                break;
+            }
+            final AbstractChainedPermissionEvaluator evaluator = (AbstractChainedPermissionEvaluator) link.evaluator;
+            if (!link.isDynamic() || evaluator.supportsTargetType(authentication, targetId, targetType, permission)) {
+                result = evaluator.decide(authentication, targetId, targetType, permission);
+                break;
+            }
+        }
+        return (null == result) ? fallthrough() : result;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("links", links).toString();
+    }
+
+}
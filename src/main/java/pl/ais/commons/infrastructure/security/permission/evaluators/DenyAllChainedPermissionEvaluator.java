@@ -7,12 +7,16 @@ import org.slf4j.LoggerFactory;
 import org.springframework.security.access.PermissionEvaluator;
 import org.springframework.security.core.Authentication;
 
+import pl.ais.commons.infrastructure.cache.NonCacheable;
+
 /**
  * Chained {@link PermissionEvaluator} which denies all access.
  *
  * @author Warlock, AIS.PL
  * @version $Revision:$
  */
+@NonCacheable
+@SupportedTargets(classes = Object.class, types = SupportedTargets.ANY_TYPE)
 public class DenyAllChainedPermissionEvaluator extends AbstractChainedPermissionEvaluator {
 
     private static final Logger LOG = LoggerFactory.getLogger(DenyAllChainedPermissionEvaluator.class.getName());
@@ -26,6 +30,7 @@ public class DenyAllChainedPermissionEvaluator extends AbstractChainedPermission
         if (LOG.isDebugEnabled()) {
             LOG.debug("Denying access for " + authentication + " to " + target + "(permission: " + permission + ")");
         }
+        recordFallthrough();
         return false;
     }
 
@@ -40,6 +45,7 @@ public class DenyAllChainedPermissionEvaluator extends AbstractChainedPermission
             LOG.debug("Denying access for " + authentication + " to " + targetType + " having id: " + targetId
                 + "(permission: " + permission + ")");
         }
+        recordFallthrough();
         return false;
     }
 
@@ -0,0 +1,44 @@
+package pl.ais.commons.infrastructure.security.permission.evaluators;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Statically declares the targets supported by chained permission evaluator.
+ *
+ * <p>
+ * Evaluator annotated this way is expected to support all the targets being instances of declared classes, and all the
+ * targets of declared types (and only them), which allows {@link CompiledPermissionEvaluator} to dispatch the
+ * permission checks directly to it, without asking it about support. Evaluators which have to inspect the arguments to
+ * determine if they support the target shouldn't be annotated.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+@Documented
+@Inherited
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface SupportedTargets {
+
+    /**
+     * Target type matching any type.
+     */
+    String ANY_TYPE = "*";
+
+    /**
+     * @return the classes (including subclasses and implementations) of supported target objects
+     */
+    Class<?>[] classes() default {};
+
+    /**
+     * @return the supported target types (or {@link #ANY_TYPE})
+     */
+    String[] types() default {};
+
+}
@@ -0,0 +1,90 @@
+package pl.ais.commons.infrastructure.security.permission.rules;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Single rule read from the rules file, granting the permission on the targets of given type to the principals having
+ * any of required authorities, provided that the target attributes match the conditions.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class PermissionRule {
+
+    private final ImmutableSet<String> authorities;
+
+    private final ImmutableMap<String, String> conditions;
+
+    private final int line;
+
+    private final String permission;
+
+    private final String targetType;
+
+    /**
+     * Constructs new instance.
+     *
+     * @param line the number of the line the rule was read from
+     * @param targetType the target type
+     * @param permission the permission
+     * @param authorities the authorities, any of which is required
+     * @param conditions the expected values of target attributes, by attribute name
+     */
+    PermissionRule(final int line, final String targetType, final String permission,
+        final ImmutableSet<String> authorities, final ImmutableMap<String, String> conditions) {
+        super();
+        this.line = line;
+        this.targetType = targetType;
+        this.permission = permission;
+        this.authorities = authorities;
+        this.conditions = conditions;
+    }
+
+    /**
+     * @return the authorities, any of which is required
+     */
+    ImmutableSet<String> getAuthorities() {
+        return authorities;
+    }
+
+    /**
+     * @return the expected values of target attributes, by attribute name
+     */
+    ImmutableMap<String, String> getConditions() {
+        return conditions;
+    }
+
+    /**
+     * @return the number of the line the rule was read from
+     */
+    int getLine() {
+        return line;
+    }
+
+    /**
+     * @return the permission
+     */
+    String getPermission() {
+        return permission;
+    }
+
+    /**
+     * @return the target type
+     */
+    String getTargetType() {
+        return targetType;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("line", line).add("targetType", targetType).add("permission", permission)
+            .add("authorities", authorities).add("conditions", conditions).toString();
+    }
+
+}
@@ -0,0 +1,476 @@
+package pl.ais.commons.infrastructure.security.permission.rules;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.beans.PropertyDescriptor;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.util.ClassUtils;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Set of permission rules compiled into the decision tree indexed by target type, permission and authority.
+ *
+ * <p>
+ * Rules are read from the text file, each line contains single rule: the target type, the permission, the authorities
+ * (any of which is required), and optionally the conditions (expected values of target attributes, all of which have
+ * to match), separated by colons, for example:
+ * </p>
+ *
+ * <pre>
+ * # target type : permission : authorities : conditions
+ * com.example.Invoice : read : ROLE_ACCOUNTANT, ROLE_AUDITOR
+ * com.example.Invoice : approve : ROLE_MANAGER : status=DRAFT, archived=false
+ * </pre>
+ *
+ * <p>
+ * The permission is granted if any of the rules matches, so the decision costs one lookup per authority of the
+ * principal, regardless of the number of rules. Target objects are matched by their class name and the names of all
+ * their supertypes (the rules for the class and its supertypes are merged), attribute values are read using bean
+ * getters, and compared with expected values as strings. Rules having conditions never match the targets identified by
+ * type name and identifier only. Rules are validated when compiled: the rule which would never change the decision,
+ * because it overlaps with another rule granting the same permission on the same target type to the same authority
+ * under the same (or fewer) conditions, is rejected.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public final class PermissionRules {
+
+    private static final Splitter LIST_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    private static final Splitter PART_SPLITTER = Splitter.on(':').trimResults();
+
+    private static final Splitter VALUE_SPLITTER = Splitter.on('=').trimResults().limit(2);
+
+    private final ClassValue<ImmutableMap<String, ImmutableMap<String, Condition[][]>>> byClass =
+        new ClassValue<ImmutableMap<String, ImmutableMap<String, Condition[][]>>>() {
+
+            @Override
+            protected ImmutableMap<String, ImmutableMap<String, Condition[][]>> computeValue(final Class<?> type) {
+                return lookup(type);
+            }
+
+        };
+
+    private final int size;
+
+    private final ImmutableMap<String, ImmutableMap<String, ImmutableMap<String, Condition[][]>>> tree;
+
+    private PermissionRules(
+        final ImmutableMap<String, ImmutableMap<String, ImmutableMap<String, Condition[][]>>> tree, final int size) {
+        super();
+        this.tree = tree;
+        this.size = size;
+    }
+
+    /**
+     * Compiles given rules into the decision tree.
+     *
+     * @param rules the rules to compile
+     * @param classLoader the class loader used for resolving the target types of the rules having conditions
+     * @return compiled rules
+     * @throws IllegalArgumentException if any of the rules overlaps with another one, or its conditions refer to
+     *         unknown target type or attribute
+     */
+    static PermissionRules compile(final List<PermissionRule> rules, final ClassLoader classLoader) {
+
+        // Collect the alternative conditions per target type, permission and authority, rejecting overlapping
+        // rules, ...
+        final Map<String, Map<String, Map<String, List<PermissionRule>>>> collected = new LinkedHashMap<>();
+        for (final PermissionRule rule : rules) {
+            Map<String, Map<String, List<PermissionRule>>> byPermission = collected.get(rule.getTargetType());
+            if (null == byPermission) {
+                byPermission = new LinkedHashMap<>();
+                collected.put(rule.getTargetType(), byPermission);
+            }
+            Map<String, List<PermissionRule>> byAuthority = byPermission.get(rule.getPermission());
+            if (null == byAuthority) {
+                byAuthority = new LinkedHashMap<>();
+                byPermission.put(rule.getPermission(), byAuthority);
+            }
+            for (final String authority : rule.getAuthorities()) {
+                List<PermissionRule> alternatives = byAuthority.get(authority);
+                if (null == alternatives) {
+                    alternatives = new ArrayList<>();
+                    byAuthority.put(authority, alternatives);
+                }
+                verifyReachable(rule, authority, alternatives);
+                alternatives.add(rule);
+            }
+        }
+
+        // ... and compile the conditions.
+        final Map<Integer, Condition[]> compiled = new HashMap<>();
+        final ImmutableMap.Builder<String, ImmutableMap<String, ImmutableMap<String, Condition[][]>>> tree =
+            ImmutableMap.builder();
+        for (final Map.Entry<String, Map<String, Map<String, List<PermissionRule>>>> type : collected.entrySet()) {
+            final ImmutableMap.Builder<String, ImmutableMap<String, Condition[][]>> byPermission =
+                ImmutableMap.builder();
+            for (final Map.Entry<String, Map<String, List<PermissionRule>>> permission : type.getValue().entrySet()) {
+                final ImmutableMap.Builder<String, Condition[][]> byAuthority = ImmutableMap.builder();
+                for (final Map.Entry<String, List<PermissionRule>> authority : permission.getValue().entrySet()) {
+                    final Condition[][] alternatives = new Condition[authority.getValue().size()][];
+                    for (int index = 0; index < alternatives.length; index++) {
+                        final PermissionRule rule = authority.getValue().get(index);
+                        Condition[] conditions = compiled.get(rule.getLine());
+                        if (null == conditions) {
+                            conditions = Condition.compile(rule, classLoader);
+                            compiled.put(rule.getLine(), conditions);
+                        }
+                        alternatives[index] = conditions;
+                    }
+                    byAuthority.put(authority.getKey(), alternatives);
+                }
+                byPermission.put(permission.getKey(), byAuthority.build());
+            }
+            tree.put(type.getKey(), byPermission.build());
+        }
+        return new PermissionRules(tree.build(), rules.size());
+    }
+
+    /**
+     * Loads the rules from given file (encoded using UTF-8).
+     *
+     * @param file the file to load the rules from
+     * @param classLoader the class loader used for resolving the target types of the rules having conditions
+     * @return compiled rules
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if any of the rules is malformed or overlaps with another one
+     */
+    public static PermissionRules load(final File file, final ClassLoader classLoader) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            return parse(reader, classLoader);
+        }
+    }
+
+    /**
+     * Reads the rules from given reader.
+     *
+     * @param reader the reader to read the rules from
+     * @param classLoader the class loader used for resolving the target types of the rules having conditions
+     * @return compiled rules
+     * @throws IOException if the rules cannot be read
+     * @throws IllegalArgumentException if any of the rules is malformed or overlaps with another one
+     */
+    public static PermissionRules parse(final Reader reader, final ClassLoader classLoader) throws IOException {
+        final List<PermissionRule> rules = new ArrayList<>();
+        final BufferedReader lines = new BufferedReader(reader);
+        int number = 0;
+        for (String line = lines.readLine(); null != line; line = lines.readLine()) {
+            number++;
+            final String rule = line.trim();
+            if (!rule.isEmpty() && '#' != rule.charAt(0)) {
+                rules.add(parseRule(number, rule));
+            }
+        }
+        return compile(rules, classLoader);
+    }
+
+    private static PermissionRule parseRule(final int number, final String rule) {
+        final List<String> parts = ImmutableList.copyOf(PART_SPLITTER.split(rule));
+        if (3 > parts.size() || 4 < parts.size() || parts.get(0).isEmpty() || parts.get(1).isEmpty()) {
+            throw new IllegalArgumentException("Malformed rule at line " + number + ": " + rule);
+        }
+        final ImmutableSet<String> authorities = ImmutableSet.copyOf(LIST_SPLITTER.split(parts.get(2)));
+        if (authorities.isEmpty()) {
+            throw new IllegalArgumentException("Rule at line " + number + " doesn't require any authority: " + rule);
+        }
+        final Map<String, String> conditions = new LinkedHashMap<>();
+        if (4 == parts.size()) {
+            for (final String condition : LIST_SPLITTER.split(parts.get(3))) {
+                final List<String> pair = ImmutableList.copyOf(VALUE_SPLITTER.split(condition));
+                if (2 != pair.size() || pair.get(0).isEmpty() || null != conditions.put(pair.get(0), pair.get(1))) {
+                    throw new IllegalArgumentException("Malformed condition '" + condition + "' at line " + number
+                        + ": " + rule);
+                }
+            }
+        }
+        return new PermissionRule(number, parts.get(0), parts.get(1), authorities, ImmutableMap.copyOf(conditions));
+    }
+
+    /**
+     * Verifies that given rule doesn't overlap with any of the alternatives already collected for given authority.
+     */
+    private static void verifyReachable(final PermissionRule rule, final String authority,
+        final List<PermissionRule> alternatives) {
+        for (final PermissionRule alternative : alternatives) {
+            final Map<String, String> conditions = rule.getConditions();
+            final Map<String, String> other = alternative.getConditions();
+            final boolean shadowed = conditions.entrySet().containsAll(other.entrySet());
+            if (shadowed || other.entrySet().containsAll(conditions.entrySet())) {
+                final PermissionRule unreachable = shadowed ? rule : alternative;
+                final PermissionRule overlapping = shadowed ? alternative : rule;
+                throw new IllegalArgumentException("Rule at line " + unreachable.getLine()
+                    + " is unreachable, rule at line " + overlapping.getLine() + " already grants '"
+                    + rule.getPermission() + "' on '" + rule.getTargetType() + "' to '" + authority + "'"
+                    + (other.equals(conditions) ? " under the same conditions." : " under fewer conditions."));
+            }
+        }
+    }
+
+    /**
+     * Verifies if any of the rules for given permission on the targets of given class has conditions, so the decision
+     * depends on the state of the target.
+     *
+     * @param type the target class
+     * @param permission the permission
+     * @return {@code true} if any of the rules for given permission has conditions, {@code false} otherwise
+     */
+    public boolean isConditional(final Class<?> type, final Object permission) {
+        boolean result = false;
+        final ImmutableMap<String, Condition[][]> byAuthority = byClass.get(type).get(String.valueOf(permission));
+        if (null != byAuthority) {
+            for (final Condition[][] alternatives : byAuthority.values()) {
+                for (int index = 0; !result && index < alternatives.length; index++) {
+                    result = (0 < alternatives[index].length);
+                }
+                if (result) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Verifies if given permission on given target is granted to any of given authorities.
+     *
+     * @param authorities the authorities
+     * @param target the target
+     * @param permission the permission
+     * @return {@code true} if any of the rules grants the permission, {@code false} otherwise
+     */
+    public boolean isGranted(final Collection<? extends GrantedAuthority> authorities, final Object target,
+        final Object permission) {
+        boolean result = false;
+        final ImmutableMap<String, Condition[][]> byAuthority = (null == target) ? null : byClass.get(
+            target.getClass()).get(String.valueOf(permission));
+        if (null != byAuthority) {
+            for (final GrantedAuthority authority : authorities) {
+                final Condition[][] alternatives = byAuthority.get(authority.getAuthority());
+                for (int index = 0; !result && null != alternatives && index < alternatives.length; index++) {
+                    result = Condition.matchAll(alternatives[index], target);
+                }
+                if (result) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Verifies if given permission on the targets of given type is granted to any of given authorities
+     * unconditionally.
+     *
+     * @param authorities the authorities
+     * @param targetType the target type
+     * @param permission the permission
+     * @return {@code true} if any of the rules not having conditions grants the permission, {@code false} otherwise
+     */
+    public boolean isGranted(final Collection<? extends GrantedAuthority> authorities, final String targetType,
+        final Object permission) {
+        boolean result = false;
+        final ImmutableMap<String, ImmutableMap<String, Condition[][]>> byPermission = tree.get(targetType);
+        final ImmutableMap<String, Condition[][]> byAuthority = (null == byPermission) ? null : byPermission.get(String
+            .valueOf(permission));
+        if (null != byAuthority) {
+            for (final GrantedAuthority authority : authorities) {
+                final Condition[][] alternatives = byAuthority.get(authority.getAuthority());
+                for (int index = 0; !result && null != alternatives && index < alternatives.length; index++) {
+                    result = (0 == alternatives[index].length);
+                }
+                if (result) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the rules applicable to given class, merging the rules for the class itself with the rules for all its
+     * supertypes.
+     */
+    private ImmutableMap<String, ImmutableMap<String, Condition[][]>> lookup(final Class<?> type) {
+
+        // Collect the rules for the class itself, and the (already merged) rules for its direct supertypes, ...
+        final List<ImmutableMap<String, ImmutableMap<String, Condition[][]>>> applicable = new ArrayList<>();
+        final ImmutableMap<String, ImmutableMap<String, Condition[][]>> own = tree.get(type.getName());
+        if (null != own) {
+            applicable.add(own);
+        }
+        final List<Class<?>> supertypes = new ArrayList<>(Arrays.asList(type.getInterfaces()));
+        if (null != type.getSuperclass()) {
+            supertypes.add(type.getSuperclass());
+        }
+        for (final Class<?> supertype : supertypes) {
+            final ImmutableMap<String, ImmutableMap<String, Condition[][]>> inherited = byClass.get(supertype);
+            if (!inherited.isEmpty()) {
+                applicable.add(inherited);
+            }
+        }
+
+        // ... and merge the alternatives (the ones inherited through several paths are included once).
+        final ImmutableMap<String, ImmutableMap<String, Condition[][]>> result;
+        if (applicable.isEmpty()) {
+            result = ImmutableMap.of();
+        } else if (1 == applicable.size()) {
+            result = applicable.get(0);
+        } else {
+            final Map<String, Map<String, Set<Condition[]>>> merged = new LinkedHashMap<>();
+            for (final ImmutableMap<String, ImmutableMap<String, Condition[][]>> rules : applicable) {
+                for (final Map.Entry<String, ImmutableMap<String, Condition[][]>> permission : rules.entrySet()) {
+                    Map<String, Set<Condition[]>> byAuthority = merged.get(permission.getKey());
+                    if (null == byAuthority) {
+                        byAuthority = new LinkedHashMap<>();
+                        merged.put(permission.getKey(), byAuthority);
+                    }
+                    for (final Map.Entry<String, Condition[][]> authority : permission.getValue().entrySet()) {
+                        Set<Condition[]> alternatives = byAuthority.get(authority.getKey());
+                        if (null == alternatives) {
+                            alternatives = new LinkedHashSet<>();
+                            byAuthority.put(authority.getKey(), alternatives);
+                        }
+                        alternatives.addAll(Arrays.asList(authority.getValue()));
+                    }
+                }
+            }
+            final ImmutableMap.Builder<String, ImmutableMap<String, Condition[][]>> byPermission =
+                ImmutableMap.builder();
+            for (final Map.Entry<String, Map<String, Set<Condition[]>>> permission : merged.entrySet()) {
+                final ImmutableMap.Builder<String, Condition[][]> byAuthority = ImmutableMap.builder();
+                for (final Map.Entry<String, Set<Condition[]>> authority : permission.getValue().entrySet()) {
+                    byAuthority.put(authority.getKey(), authority.getValue().toArray(
+                        new Condition[authority.getValue().size()][]));
+                }
+                byPermission.put(permission.getKey(), byAuthority.build());
+            }
+            result = byPermission.build();
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of rules
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Verifies if there are any rules for given target class.
+     *
+     * @param type the target class
+     * @return {@code true} if there are any rules for given class (or its supertypes), {@code false} otherwise
+     */
+    public boolean supports(final Class<?> type) {
+        return !byClass.get(type).isEmpty();
+    }
+
+    /**
+     * Verifies if there are any rules for given target type.
+     *
+     * @param targetType the target type
+     * @return {@code true} if there are any rules for given type, {@code false} otherwise
+     */
+    public boolean supports(final String targetType) {
+        return tree.containsKey(targetType);
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("size", size).add("targetTypes", tree.keySet()).toString();
+    }
+
+    /**
+     * Condition verifying the value of single target attribute.
+     */
+    private static final class Condition {
+
+        private static final Condition[] NONE = new Condition[0];
+
+        private final String attribute;
+
+        private final String expected;
+
+        private final Method getter;
+
+        private Condition(final String attribute, final Method getter, final String expected) {
+            this.attribute = attribute;
+            this.getter = getter;
+            this.expected = expected;
+        }
+
+        static Condition[] compile(final PermissionRule rule, final ClassLoader classLoader) {
+            Condition[] result = NONE;
+            if (!rule.getConditions().isEmpty()) {
+                final Class<?> type;
+                try {
+                    type = ClassUtils.forName(rule.getTargetType(), classLoader);
+                } catch (final ClassNotFoundException | LinkageError exception) {
+                    throw new IllegalArgumentException("Rule at line " + rule.getLine()
+                        + " has conditions, but its target type is unknown: " + rule.getTargetType(), exception);
+                }
+                result = new Condition[rule.getConditions().size()];
+                int index = 0;
+                for (final Map.Entry<String, String> condition : rule.getConditions().entrySet()) {
+                    final PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(type, condition.getKey());
+                    if (null == descriptor || null == descriptor.getReadMethod()) {
+                        throw new IllegalArgumentException("Rule at line " + rule.getLine()
+                            + " refers to unknown attribute '" + condition.getKey() + "' of " + type);
+                    }
+                    result[index++] = new Condition(condition.getKey(), descriptor.getReadMethod(),
+                        condition.getValue());
+                }
+            }
+            return result;
+        }
+
+        static boolean matchAll(final Condition[] conditions, final Object target) {
+            boolean result = true;
+            for (int index = 0; result && index < conditions.length; index++) {
+                result = conditions[index].matches(target);
+            }
+            return result;
+        }
+
+        boolean matches(final Object target) {
+            try {
+                return expected.equals(String.valueOf(getter.invoke(target)));
+            } catch (final IllegalAccessException | InvocationTargetException exception) {
+                throw new IllegalStateException("Unable to read attribute '" + attribute + "' of " + target,
+                    exception);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,175 @@
+package pl.ais.commons.infrastructure.security.permission.rules;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.security.core.Authentication;
+import org.springframework.util.ClassUtils;
+
+import pl.ais.commons.infrastructure.security.permission.evaluators.AbstractChainedPermissionEvaluator;
+
+/**
+ * Chained permission evaluator answering the permission checks using the {@link PermissionRules} read from the rules
+ * file.
+ *
+ * <p>
+ * Evaluator supports the targets of types for which there are any rules: target objects of given class (or its
+ * subclass), and target identifiers of given type name. Rules are compiled once, when the evaluator is initialized
+ * (see {@link #setLocation(File)}), and can be replaced at any time (see {@link #setRules(PermissionRules)}), the
+ * replacement is published at once, and the cached decisions (if there are any) are discarded. Decisions regarding the
+ * target objects are never cached if any of the rules for requested permission has conditions, as they depend on the
+ * state of the target, which can change while the target remains equal to the cached one.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class RuleBasedPermissionEvaluator extends AbstractChainedPermissionEvaluator implements BeanClassLoaderAware,
+    InitializingBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RuleBasedPermissionEvaluator.class);
+
+    private transient ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+
+    private transient File location;
+
+    private transient volatile PermissionRules rules;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet() throws BeanInitializationException {
+        if (null == rules) {
+            if (null == location) {
+                throw new BeanInitializationException("Please, provide the location of the rules file.");
+            }
+            try {
+                rules = PermissionRules.load(location, classLoader);
+            } catch (final IOException | IllegalArgumentException exception) {
+                throw new BeanInitializationException("Unable to load permission rules from " + location, exception);
+            }
+            if (LOG.isInfoEnabled()) {
+                LOG.info("Permission rules loaded from " + location + ": " + rules);
+            }
+        }
+    }
+
+    /**
+     * @return the rules currently used by this evaluator
+     */
+    public PermissionRules getRules() {
+        return rules;
+    }
+
+    /**
+     * Verifies if the decision regarding given target can be cached, which is not the case if any of the rules for
+     * given permission has conditions.
+     *
+     * @param authentication the authentication
+     * @param target the target
+     * @param permission the permission
+     * @return {@code true} if the decision can be cached, {@code false} otherwise
+     */
+    @Override
+    protected boolean isDecisionCacheable(final Authentication authentication, final Object target,
+        final Object permission) {
+        return super.isDecisionCacheable(authentication, target, permission)
+            && !((null != target) && rules.isConditional(target.getClass(), permission));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isPermissionGranted(final Authentication authentication, final Object target,
+        final Object permission) {
+        return rules.isGranted(authentication.getAuthorities(), target, permission);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isPermissionGranted(final Authentication authentication, final Serializable targetId,
+        final String targetType, final Object permission) {
+        return rules.isGranted(authentication.getAuthorities(), targetType, permission);
+    }
+
+    /**
+     * Reloads the rules from the rules file (discarding the cached decisions), the rules currently used are kept if
+     * the file is invalid.
+     *
+     * @throws IOException if the rules file cannot be read
+     * @throws IllegalArgumentException if the rules file is invalid
+     * @throws IllegalStateException if there is no rules file defined
+     */
+    public void reload() throws IOException {
+        if (null == location) {
+            throw new IllegalStateException("Please, provide the location of the rules file first.");
+        }
+        setRules(PermissionRules.load(location, classLoader));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setBeanClassLoader(final ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * @param location the rules file to load the rules from
+     */
+    public void setLocation(final File location) {
+        this.location = location;
+    }
+
+    /**
+     * Replaces the rules used by this evaluator, discarding the cached decisions (if there are any).
+     *
+     * @param rules the rules to use
+     */
+    public void setRules(final PermissionRules rules) {
+        this.rules = rules;
+        if (null != getDecisionCache()) {
+            getDecisionCache().invalidateAll();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean supportsTarget(final Authentication authentication, final Object target,
+        final Object permission) {
+        return (null != target) && rules.supports(target.getClass());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean supportsTargetType(final Authentication authentication, final Serializable targetId,
+        final String targetType, final Object permission) {
+        return rules.supports(targetType);
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("location", location).add("rules", rules).toString();
+    }
+
+}
@@ -0,0 +1,153 @@
+package pl.ais.commons.infrastructure.service;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.security.Principal;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.InitializingBean;
+
+import pl.ais.commons.application.service.PrincipalService;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Non-blocking companion of {@link PrincipalService}, unwrapping the principals on provided {@link Executor}.
+ *
+ * <p>
+ * Any executor can be used, including the one creating virtual thread per task on Java runtimes supporting them (see
+ * {@link ThreadPerTaskExecutor#virtualIfSupported(String)}).
+ * Unwrapping which doesn't finish before the deadline (see {@link #setTimeout(long)}) fails with
+ * {@link TimeoutException}.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class AsyncPrincipalService implements InitializingBean {
+
+    private transient PrincipalService delegate;
+
+    private transient Executor executor;
+
+    private transient ScheduledExecutorService scheduler;
+
+    private transient long timeout;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet() throws BeanInitializationException {
+        if (null == delegate) {
+            throw new BeanInitializationException("Please, provide the principal service.");
+        }
+        if (null == executor) {
+            throw new BeanInitializationException("Please, provide the executor.");
+        }
+        if (0 < timeout && null == scheduler) {
+            throw new BeanInitializationException("Please, provide the scheduler used for enforcing the timeout.");
+        }
+    }
+
+    /**
+     * @param delegate the principal service doing actual unwrapping
+     */
+    public void setDelegate(final PrincipalService delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @param executor the executor to be used for unwrapping
+     */
+    public void setExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param scheduler the scheduler to be used for enforcing the timeout
+     */
+    public void setScheduler(final ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Defines the time after which unfinished unwrapping fails.
+     *
+     * @param timeout the time (in milliseconds) to set, non-positive value means no timeout
+     */
+    public void setTimeout(final long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("delegate", delegate).add("timeout", timeout).toString();
+    }
+
+    /**
+     * Unwraps asynchronously given principal as given class.
+     *
+     * @param principal the principal
+     * @param asClass the class
+     * @return future result of unwrapping
+     * @see PrincipalService#unwrap(Principal, Class)
+     */
+    public <T> ListenableFuture<T> unwrap(final Principal principal, final Class<T> asClass) {
+        final SettableFuture<T> result = SettableFuture.create();
+
+        // Enforce the deadline (if any), ...
+        if (0 < timeout) {
+            final ScheduledFuture<?> deadline = scheduler.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    result.setException(new TimeoutException("Unwrapping of principal: " + principal + " into '"
+                        + asClass + "' timed out."));
+                }
+
+            }, timeout, TimeUnit.MILLISECONDS);
+            result.addListener(new Runnable() {
+
+                @Override
+                public void run() {
+                    deadline.cancel(false);
+                }
+
+            }, MoreExecutors.sameThreadExecutor());
+        }
+
+        // ... and unwrap the principal.
+        try {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (!result.isDone()) {
+                        try {
+                            result.set(delegate.unwrap(principal, asClass));
+                        } catch (final RuntimeException exception) {
+                            result.setException(exception);
+                        }
+                    }
+                }
+
+            });
+        } catch (final RejectedExecutionException exception) {
+            result.setException(exception);
+        }
+        return result;
+    }
+
+}
@@ -3,6 +3,9 @@ package pl.ais.commons.infrastructure.service;
 import java.security.Principal;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 import javax.annotation.PostConstruct;
@@ -14,42 +17,231 @@ import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.beans.factory.BeanInitializationException;
 import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.util.ClassUtils;
 
 import pl.ais.commons.application.service.PrincipalService;
 import pl.ais.commons.application.service.PrincipalTransformer;
 import pl.ais.commons.application.stereotype.ApplicationService;
+import pl.ais.commons.infrastructure.cache.AuthoritiesOnly;
+import pl.ais.commons.infrastructure.cache.NonCacheable;
+import pl.ais.commons.infrastructure.cache.ShareableResults;
+import pl.ais.commons.infrastructure.metrics.MetricsSink;
+import pl.ais.commons.infrastructure.metrics.Probe;
+import pl.ais.commons.infrastructure.registry.PrincipalRegistry;
+import pl.ais.commons.infrastructure.registry.RegisteredTransformer;
+
+import com.google.common.base.Supplier;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Iterables;
 
 /**
  * Default {@link PrincipalService} implementation.
  *
+ * <p>
+ * Principal can be unwrapped as the return type of any of the transformers, or as any of its supertypes, in the latter
+ * case the transformer which return type is the closest to the requested class is used.
+ * </p>
+ * <p>
+ * Service can optionally cache the unwrapping results per principal identity and requested class (see
+ * {@link #setCachingEnabled(boolean)}). Principals are held weakly by the cache, results of the transformers annotated
+ * with {@link NonCacheable} are never cached.
+ * </p>
+ * <p>
+ * Unless the transformers are provided explicitly, service discovers them within the owning bean factory. Transformers
+ * listed in the {@link PrincipalRegistry} generated at compile time are instantiated lazily, on first unwrapping which
+ * needs them, the other ones (or all of them, if there is no registry) are instantiated when the service is
+ * initialized.
+ * </p>
+ * <p>
+ * Service can optionally coalesce concurrent unwrapping of the same principal as the same class (see
+ * {@link #setCoalescingEnabled(boolean)}), so the transformer is called once, and all the callers receive its result
+ * (or the exception it has thrown). Callers wait for the unwrapping in flight for bounded time only (see
+ * {@link #setCoalescingTimeout(long)}), and unwrap the principal themselves once this time elapses.
+ * </p>
+ * <p>
+ * Service can be instrumented by providing the {@link MetricsSink} (see {@link #setMetricsSink(MetricsSink)}), the
+ * duration of each transformer invocation is recorded then.
+ * </p>
+ * <p>
+ * Principals can be unwrapped in bulk (see {@link #unwrapAll(Iterable, Class, Executor)}), in parallel, with the
+ * failures reported per principal.
+ * </p>
+ * <p>
+ * Transformers can be replaced at runtime (see {@link #setTransformers(Map)}), the new transformers are published at
+ * once, so the principals being unwrapped concurrently use either the previous or the new ones, never a mix of them.
+ * </p>
+ *
  * @author Warlock, AIS.PL
  * @since 1.0.3
  */
 @ApplicationService
 public class DefaultPrincipalService implements BeanFactoryAware, PrincipalService {
 
+    /**
+     * Default number of principals processed at once by single worker during bulk unwrapping.
+     */
+    public static final int DEFAULT_BATCH_CHUNK_SIZE = 64;
+
+    /**
+     * Default maximum number of principals for which the unwrapping results are cached.
+     */
+    public static final long DEFAULT_CACHE_MAXIMUM_SIZE = 10000;
+
+    /**
+     * Default time (in milliseconds) after which cached unwrapping results expire.
+     */
+    public static final long DEFAULT_CACHE_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Default maximum time (in milliseconds) for which the call waits for the identical unwrapping in flight.
+     */
+    public static final long DEFAULT_COALESCING_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
+
     private static final Logger LOG = LoggerFactory.getLogger(DefaultPrincipalService.class);
 
+    private transient int batchChunkSize = DEFAULT_BATCH_CHUNK_SIZE;
+
+    private transient Executor batchExecutor;
+
+    private transient int batchParallelism = Runtime.getRuntime().availableProcessors();
+
+    private transient long cacheMaximumSize = DEFAULT_CACHE_MAXIMUM_SIZE;
+
+    private transient long cacheTimeToLive = DEFAULT_CACHE_TIME_TO_LIVE;
+
+    private transient boolean cachingEnabled;
+
+    private transient boolean coalescingEnabled;
+
+    private transient long coalescingTimeout = DEFAULT_COALESCING_TIMEOUT;
+
+    private transient UnwrapFlights flights;
+
+    private transient MetricsSink metricsSink;
+
     private transient ListableBeanFactory owningFactory;
 
+    private transient volatile TransformerResolver resolver;
+
+    private transient UnwrapResultCache resultCache;
+
     private transient Map<Class<?>, PrincipalTransformer<?>> transformers;
 
+    /**
+     * Discovers the transformers defined within owning factory, transformers known from the {@link PrincipalRegistry}
+     * are fetched lazily (on first use), the other ones are fetched immediately. Registered transformer is fetched
+     * immediately too, if the bean registered under its name is of other class, or its class doesn't convert the
+     * principal into registered type (registry is out of date).
+     */
+    private Map<Class<?>, PrincipalTransformer<?>> discoverTransformers() {
+        final ClassLoader classLoader = (owningFactory instanceof ConfigurableBeanFactory)
+            ? ((ConfigurableBeanFactory) owningFactory).getBeanClassLoader() : ClassUtils.getDefaultClassLoader();
+        final Map<String, RegisteredTransformer> registered = new HashMap<>();
+        for (final RegisteredTransformer transformer : PrincipalRegistry.load(classLoader).getTransformers()) {
+            registered.put(transformer.getBeanName(), transformer);
+        }
+
+        // Look for the transformer beans without instantiating them (unless there is no registry at all), ...
+        final String[] beanNames = owningFactory.getBeanNamesForType(PrincipalTransformer.class, true, registered
+            .isEmpty());
+        final Map<Class<?>, PrincipalTransformer<?>> result = new HashMap<>(beanNames.length);
+        for (final String beanName : beanNames) {
+            final RegisteredTransformer transformer = registered.get(beanName);
+            PrincipalTransformer<?> lazy = null;
+            if (null != transformer) {
+                try {
+                    final Class<?> transformerClass = ClassUtils.forName(transformer.getTransformerClassName(),
+                        classLoader);
+                    final Class<?> returnType = ClassUtils.forName(transformer.getReturnTypeName(), classLoader);
+                    if (owningFactory.isTypeMatch(beanName, transformerClass) && returnType.equals(GenericTypeResolver
+                        .resolveTypeArgument(transformerClass, PrincipalTransformer.class))) {
+                        lazy = new LazyTransformer(owningFactory, beanName, transformerClass, returnType);
+                    } else if (LOG.isDebugEnabled()) {
+                        LOG.debug("Bean '" + beanName + "' doesn't match registered transformer: " + transformer
+                            + ", fetching it instead.");
+                    }
+                } catch (final ClassNotFoundException | LinkageError error) {
+                    LOG.warn("Unable to use registered transformer: " + transformer + ", fetching it instead.", error);
+                }
+            }
+
+            // ... and defer fetching the registered ones until they are needed.
+            if (null == lazy) {
+                final PrincipalTransformer<?> fetched = owningFactory.getBean(beanName, PrincipalTransformer.class);
+                result.put(fetched.getReturnType(), fetched);
+            } else {
+                result.put(lazy.getReturnType(), lazy);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Provides the statistics of unwrapping results cache.
+     *
+     * @return unwrapping results cache statistics
+     */
+    public CacheStats getCacheStats() {
+        return (null == resultCache) ? new CacheStats(0, 0, 0, 0, 0, 0) : resultCache.stats();
+    }
+
+    /**
+     * @return the number of calls which received the result of identical unwrapping in flight
+     */
+    public long getCoalescedCount() {
+        return (null == flights) ? 0 : flights.getCoalescedCount();
+    }
+
+    /**
+     * @return the number of calls which stopped waiting for identical unwrapping in flight, and unwrapped the principal
+     *         themselves
+     */
+    public long getCoalescingTimeoutCount() {
+        return (null == flights) ? 0 : flights.getTimeoutCount();
+    }
+
     /**
      * Provides possibility of automatic service initialization.
      */
-    @SuppressWarnings("rawtypes")
     @PostConstruct
     protected void initialize() {
         if (null == this.transformers) {
-            final Map<String, PrincipalTransformer> beanMapping = owningFactory
-                .getBeansOfType(PrincipalTransformer.class);
-            this.transformers = new HashMap<>(beanMapping.size());
-            for (final PrincipalTransformer<?> transformer : beanMapping.values()) {
-                transformers.put(transformer.getReturnType(), transformer);
-            }
+            this.transformers = discoverTransformers();
+            resolver = new TransformerResolver(transformers, metricsSink);
+        }
+        if (cachingEnabled) {
+            resultCache = new UnwrapResultCache(cacheMaximumSize, cacheTimeToLive);
+        }
+        if (coalescingEnabled) {
+            flights = new UnwrapFlights(coalescingTimeout);
+            flights.setWaitProbe((null == metricsSink) ? null : metricsSink.probe(MetricsSink.UNWRAP_COALESCED));
         }
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Service initialized with transformers: " + transformers);
+            LOG.debug("Service initialized with transformers: " + transformers + ", results cache: " + resultCache);
+        }
+    }
+
+    /**
+     * Discards all cached unwrapping results, should be called when the authorities (or other data the transformers
+     * depend on) change globally.
+     */
+    public void invalidate() {
+        if (null != resultCache) {
+            resultCache.invalidate();
+        }
+    }
+
+    /**
+     * Discards the unwrapping results cached for given principal, should be called when the principal logs out, or its
+     * authorities change.
+     *
+     * @param principal the principal
+     */
+    public void invalidate(final Principal principal) {
+        if (null != resultCache && null != principal) {
+            resultCache.invalidate(principal);
         }
     }
 
@@ -73,9 +265,102 @@ public class DefaultPrincipalService implements BeanFactoryAware, PrincipalServi
         }
     }
 
+    /**
+     * Defines the number of principals processed at once by single worker during bulk unwrapping.
+     *
+     * @param batchChunkSize the chunk size to set
+     */
+    public void setBatchChunkSize(final int batchChunkSize) {
+        if (0 >= batchChunkSize) {
+            throw new IllegalArgumentException("Batch chunk size has to be positive.");
+        }
+        this.batchChunkSize = batchChunkSize;
+    }
+
+    /**
+     * Defines the executor used for bulk unwrapping, if not provided, the shared {@link ForkJoinPool} is used.
+     *
+     * @param batchExecutor the executor to set
+     */
+    public void setBatchExecutor(final Executor batchExecutor) {
+        this.batchExecutor = batchExecutor;
+    }
+
+    /**
+     * Defines the maximum number of executor workers used for unwrapping single batch (number of available processors
+     * by default).
+     *
+     * @param batchParallelism the parallelism to set
+     */
+    public void setBatchParallelism(final int batchParallelism) {
+        this.batchParallelism = batchParallelism;
+    }
+
+    /**
+     * Defines the maximum number of principals for which the unwrapping results will be cached.
+     *
+     * @param cacheMaximumSize the maximum size to set
+     */
+    public void setCacheMaximumSize(final long cacheMaximumSize) {
+        this.cacheMaximumSize = cacheMaximumSize;
+    }
+
+    /**
+     * Defines the time after which cached unwrapping results expire.
+     *
+     * @param cacheTimeToLive the time (in milliseconds) to set, non-positive value means that results never expire
+     */
+    public void setCacheTimeToLive(final long cacheTimeToLive) {
+        this.cacheTimeToLive = cacheTimeToLive;
+    }
+
+    /**
+     * Determines if the unwrapping results should be cached (disabled by default).
+     *
+     * @param cachingEnabled {@code true} if results should be cached, {@code false} otherwise
+     */
+    public void setCachingEnabled(final boolean cachingEnabled) {
+        this.cachingEnabled = cachingEnabled;
+    }
+
+    /**
+     * Determines if concurrent unwrapping of the same principal as the same class should be coalesced (disabled by
+     * default).
+     *
+     * @param coalescingEnabled {@code true} if unwrapping should be coalesced, {@code false} otherwise
+     */
+    public void setCoalescingEnabled(final boolean coalescingEnabled) {
+        this.coalescingEnabled = coalescingEnabled;
+    }
+
+    /**
+     * Defines the maximum time for which the call waits for identical unwrapping in flight.
+     *
+     * @param coalescingTimeout the time (in milliseconds) to set
+     */
+    public void setCoalescingTimeout(final long coalescingTimeout) {
+        this.coalescingTimeout = coalescingTimeout;
+    }
+
+    /**
+     * Instruments this service using given sink, or disables the instrumentation if {@code null} is given.
+     *
+     * @param metricsSink the metrics sink to use
+     */
+    public void setMetricsSink(final MetricsSink metricsSink) {
+        this.metricsSink = metricsSink;
+        if (null != transformers) {
+            this.resolver = new TransformerResolver(transformers, metricsSink);
+        }
+        if (null != flights) {
+            flights.setWaitProbe((null == metricsSink) ? null : metricsSink.probe(MetricsSink.UNWRAP_COALESCED));
+        }
+    }
+
     /**
      * Determines the mapping between the type being principal representation, and the principal transformer which will
-     * be used for converting principal to this type.
+     * be used for converting principal to this type, cached unwrapping results are discarded if the service is already
+     * initialized.
      *
      * @param transformers the transformers to set
      */
@@ -83,7 +368,36 @@ public class DefaultPrincipalService implements BeanFactoryAware, PrincipalServi
         if (null == transformers) {
             throw new IllegalArgumentException("Transformer map cannot be null");
         }
-        this.transformers = new HashMap<>(transformers);
+        final Map<Class<?>, PrincipalTransformer<?>> replacement = new HashMap<>(transformers);
+        final TransformerResolver replacementResolver = new TransformerResolver(replacement, metricsSink);
+        this.transformers = replacement;
+        this.resolver = replacementResolver;
+        invalidate();
+    }
+
+    /**
+     * Applies the transformation to given principal, verifies the result, and caches it (if possible).
+     */
+    private Object transform(final Principal principal, final Class<?> asClass,
+        final TransformerResolver.Resolution resolution, final boolean cacheable) {
+        final PrincipalTransformer<?> transformer = resolution.getTransformer();
+        final Probe probe = resolution.getProbe();
+        final Object result;
+        if (null == probe) {
+            result = transformer.apply(principal);
+        } else {
+            final long start = System.nanoTime();
+            result = transformer.apply(principal);
+            probe.record(System.nanoTime() - start);
+        }
+        if (null == result) {
+            throw new IllegalArgumentException("Transformation of given principal: " + principal + " into '"
+                + asClass + "' led to null result.");
+        }
+        if (cacheable) {
+            resultCache.put(principal, asClass, result);
+        }
+        return result;
     }
 
     /**
@@ -93,21 +407,88 @@ public class DefaultPrincipalService implements BeanFactoryAware, PrincipalServi
     public <T> T unwrap(final Principal principal, final Class<T> asClass) {
 
         // Verify if we have appropriate transformer for the desired class, ...
-        final PrincipalTransformer<?> transformer = transformers.get(asClass);
+        final TransformerResolver.Resolution resolution = resolver.get(asClass);
+        final PrincipalTransformer<?> transformer = resolution.getTransformer();
         if (null == transformer) {
             throw new IllegalArgumentException("Unable to transform given principal: " + principal + " into '"
                 + asClass + "' - please provide method for transforming it.");
         }
 
-        // ... apply transformation to the principal, ...
-        final T result = (T) transformer.apply(principal);
-
-        // ... verify and return the result.
+        // ... look for the cached result, applying transformation to the principal if there is no such result.
+        final boolean cacheable = (null != resultCache) && resultCache.accepts(principal, transformer);
+        T result = cacheable ? (T) resultCache.get(principal, asClass) : null;
         if (null == result) {
-            throw new IllegalArgumentException("Transformation of given principal: " + principal + " into '" + asClass
-                + "' led to null result.");
+            if (null == flights || null == principal) {
+                result = (T) transform(principal, asClass, resolution, cacheable);
+            } else {
+                result = (T) flights.join(principal, asClass, new Supplier<Object>() {
+
+                    @Override
+                    public Object get() {
+                        return transform(principal, asClass, resolution, cacheable);
+                    }
+
+                });
+            }
         }
         return result;
     }
 
+    /**
+     * Unwraps given principals as given class in parallel, using the executor defined for bulk unwrapping.
+     *
+     * @param principals the principals to unwrap
+     * @param asClass the class
+     * @return the batch result, holding the outcome of unwrapping each principal, in the order the principals were
+     *         provided
+     * @throws InterruptedException if the calling thread has been interrupted while waiting for the batch to complete
+     * @see #unwrapAll(Iterable, Class, Executor)
+     */
+    public <T> UnwrapBatchResult<T> unwrapAll(final Iterable<? extends Principal> principals, final Class<T> asClass)
+        throws InterruptedException {
+        return unwrapAll(principals, asClass, (null == batchExecutor) ? BatchPool.INSTANCE : batchExecutor);
+    }
+
+    /**
+     * Unwraps given principals as given class in parallel, using given executor (along with the calling thread).
+     *
+     * <p>
+     * Exception thrown while unwrapping the principal is reported for this principal only (see
+     * {@link UnwrapBatchResult#getFailures()}), the remaining principals are unwrapped regardless. Results of the
+     * transformers annotated with {@link AuthoritiesOnly} are calculated once per distinct set of authorities within
+     * the batch, unless the transformer reports them as not shareable (see {@link ShareableResults}).
+     * </p>
+     *
+     * @param principals the principals to unwrap
+     * @param asClass the class
+     * @param executor the executor to use
+     * @return the batch result, holding the outcome of unwrapping each principal, in the order the principals were
+     *         provided
+     * @throws InterruptedException if the calling thread has been interrupted while waiting for the batch to complete
+     * @throws IllegalArgumentException if there is no transformer for given class
+     */
+    public <T> UnwrapBatchResult<T> unwrapAll(final Iterable<? extends Principal> principals, final Class<T> asClass,
+        final Executor executor) throws InterruptedException {
+
+        // Verify if we have appropriate transformer for the desired class (once for the whole batch), ...
+        final PrincipalTransformer<?> transformer = resolver.get(asClass).getTransformer();
+        if (null == transformer) {
+            throw new IllegalArgumentException("Unable to transform principals into '" + asClass
+                + "' - please provide method for transforming them.");
+        }
+
+        // ... and unwrap the principals.
+        return new UnwrapBatch<>(this, Iterables.toArray(principals, Principal.class), asClass, batchChunkSize,
+            UnwrapBatch.sharingOf(transformer)).run(executor, batchParallelism);
+    }
+
+    /**
+     * Holds the pool used for bulk unwrapping if no executor is provided, created on first use.
+     */
+    private static final class BatchPool {
+
+        static final ForkJoinPool INSTANCE = new ForkJoinPool();
+
+    }
+
 }
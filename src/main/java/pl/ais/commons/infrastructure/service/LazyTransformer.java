@@ -0,0 +1,120 @@
+package pl.ais.commons.infrastructure.service;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.security.Principal;
+
+import org.springframework.beans.factory.BeanFactory;
+
+import pl.ais.commons.application.service.PrincipalTransformer;
+import pl.ais.commons.infrastructure.cache.ShareableResults;
+import pl.ais.commons.infrastructure.registry.PrincipalRegistry;
+
+/**
+ * Principal transformer known from the {@link PrincipalRegistry}, fetched from the bean factory on first use.
+ *
+ * <p>
+ * Actual transformer may declare narrower return type than the registered one (the type argument of its class), it
+ * still converts the principal into registered type then, and so it is used as is.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class LazyTransformer implements PrincipalTransformer<Object>, ShareableResults<Object> {
+
+    private final String beanName;
+
+    private final BeanFactory beanFactory;
+
+    private final Class<?> returnType;
+
+    private volatile PrincipalTransformer<?> target;
+
+    private final Class<?> transformerClass;
+
+    /**
+     * Constructs new instance.
+     *
+     * @param beanFactory the bean factory to fetch the transformer from
+     * @param beanName the transformer bean name
+     * @param transformerClass the transformer class
+     * @param returnType the type to which the transformer converts the principal
+     */
+    LazyTransformer(final BeanFactory beanFactory, final String beanName, final Class<?> transformerClass,
+        final Class<?> returnType) {
+        super();
+        this.beanFactory = beanFactory;
+        this.beanName = beanName;
+        this.returnType = returnType;
+        this.transformerClass = transformerClass;
+    }
+
+    /**
+     * Provides the class of given transformer, which is the class of the actual transformer for lazy ones.
+     *
+     * @param transformer the transformer
+     * @return the class of given transformer
+     */
+    static Class<?> classOf(final PrincipalTransformer<?> transformer) {
+        return (transformer instanceof LazyTransformer) ? ((LazyTransformer) transformer).transformerClass
+            : transformer.getClass();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object apply(final Principal principal) {
+        return target().apply(principal);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Class<?> getReturnType() {
+        return returnType;
+    }
+
+    /**
+     * Verifies if given result can be shared, asking the actual transformer if it implements {@link ShareableResults}.
+     *
+     * @param result the result provided by the actual transformer
+     * @return {@code true} if given result can be shared, {@code false} otherwise
+     */
+    @Override
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    public boolean isShareable(final Object result) {
+        final PrincipalTransformer<?> actual = target();
+        return !(actual instanceof ShareableResults) || ((ShareableResults) actual).isShareable(result);
+    }
+
+    /**
+     * Provides the actual transformer, fetching it from the bean factory if needed.
+     *
+     * @throws IllegalStateException if the actual transformer doesn't convert the principal into registered type
+     */
+    private PrincipalTransformer<?> target() {
+        PrincipalTransformer<?> result = target;
+        if (null == result) {
+            result = beanFactory.getBean(beanName, PrincipalTransformer.class);
+            if (!returnType.isAssignableFrom(result.getReturnType())) {
+                throw new IllegalStateException("Transformer '" + beanName + "' converts principal into "
+                    + result.getReturnType() + ", while registered as converting it into " + returnType
+                    + " - please, rebuild the principal registry.");
+            }
+            target = result;
+        }
+        return result;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("beanName", beanName).add("initialized", null != target).toString();
+    }
+
+}
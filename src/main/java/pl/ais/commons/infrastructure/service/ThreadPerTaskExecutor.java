@@ -0,0 +1,156 @@
+package pl.ais.commons.infrastructure.service;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor running each task in new thread, virtual one on Java runtimes supporting them (Java 21 and newer).
+ *
+ * <p>
+ * Virtual threads are created reflectively, so the executor can be used (and configured) on any runtime, see
+ * {@link #virtual(String)} and {@link #virtualIfSupported(String)}. It is meant to be used with
+ * {@link AsyncPrincipalService} and {@code AsyncPermissionEvaluator}, running independent blocking tasks concurrently
+ * without the pool of platform threads. Platform threads created by the executor are daemon threads.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public final class ThreadPerTaskExecutor implements Executor {
+
+    private static final Method BUILDER_NAME;
+
+    private static final Method BUILDER_UNSTARTED;
+
+    private static final Method OF_VIRTUAL;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method unstarted = null;
+        try {
+            final Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builderType.getMethod("name", String.class);
+            unstarted = builderType.getMethod("unstarted", Runnable.class);
+        } catch (final NoSuchMethodException | ClassNotFoundException exception) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_UNSTARTED = unstarted;
+    }
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final String namePrefix;
+
+    private final boolean virtual;
+
+    private ThreadPerTaskExecutor(final String namePrefix, final boolean virtual) {
+        super();
+        this.namePrefix = String.valueOf(namePrefix);
+        this.virtual = virtual;
+    }
+
+    /**
+     * Verifies if the runtime supports virtual threads.
+     *
+     * @return {@code true} if virtual threads are supported, {@code false} otherwise
+     */
+    public static boolean isVirtualSupported() {
+        return null != OF_VIRTUAL;
+    }
+
+    /**
+     * Creates (but doesn't start) the thread running given task, virtual one if requested.
+     *
+     * @param task the task to be run
+     * @param name the thread name
+     * @param virtual {@code true} if virtual thread should be created
+     * @return the thread running given task
+     * @throws IllegalStateException if virtual thread is requested, but the runtime doesn't support them
+     */
+    public static Thread newThread(final Runnable task, final String name, final boolean virtual) {
+        final Thread result;
+        if (virtual) {
+            if (!isVirtualSupported()) {
+                throw new IllegalStateException("Virtual threads are not supported by this runtime.");
+            }
+            try {
+                final Object builder = OF_VIRTUAL.invoke(null);
+                BUILDER_NAME.invoke(builder, name);
+                result = (Thread) BUILDER_UNSTARTED.invoke(builder, task);
+            } catch (final IllegalAccessException | InvocationTargetException exception) {
+                throw new IllegalStateException("Unable to create virtual thread.", exception);
+            }
+        } else {
+            result = new Thread(task, name);
+            result.setDaemon(true);
+        }
+        return result;
+    }
+
+    /**
+     * Creates the executor running each task in new platform (daemon) thread.
+     *
+     * @param namePrefix the prefix of the thread names
+     * @return the executor
+     */
+    public static ThreadPerTaskExecutor platform(final String namePrefix) {
+        return new ThreadPerTaskExecutor(namePrefix, false);
+    }
+
+    /**
+     * Creates the executor running each task in new virtual thread.
+     *
+     * @param namePrefix the prefix of the thread names
+     * @return the executor
+     * @throws IllegalStateException if the runtime doesn't support virtual threads
+     */
+    public static ThreadPerTaskExecutor virtual(final String namePrefix) {
+        if (!isVirtualSupported()) {
+            throw new IllegalStateException("Virtual threads are not supported by this runtime.");
+        }
+        return new ThreadPerTaskExecutor(namePrefix, true);
+    }
+
+    /**
+     * Creates the executor running each task in new virtual thread, or platform (daemon) thread if the runtime
+     * doesn't support virtual threads.
+     *
+     * @param namePrefix the prefix of the thread names
+     * @return the executor
+     */
+    public static ThreadPerTaskExecutor virtualIfSupported(final String namePrefix) {
+        return new ThreadPerTaskExecutor(namePrefix, isVirtualSupported());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(final Runnable command) {
+        newThread(command, namePrefix + count.incrementAndGet(), virtual).start();
+    }
+
+    /**
+     * @return {@code true} if the executor creates virtual threads, {@code false} otherwise
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("namePrefix", namePrefix).add("virtual", virtual).toString();
+    }
+
+}
@@ -0,0 +1,146 @@
+package pl.ais.commons.infrastructure.service;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import pl.ais.commons.application.service.PrincipalTransformer;
+import pl.ais.commons.infrastructure.metrics.MetricsSink;
+import pl.ais.commons.infrastructure.metrics.Probe;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Resolves the principal transformer appropriate for the requested class.
+ *
+ * <p>
+ * Transformer registered for the requested class is used if there is any, otherwise the transformers which return type
+ * is assignable to the requested class are considered, and the one which return type is the closest to the requested
+ * class (the supertype of all the other candidates' return types) is chosen. Resolution is made once per requested
+ * class, and remembered in {@link ClassValue}, so subsequent resolutions are single lookups.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class TransformerResolver {
+
+    /**
+     * Result of the transformer resolution.
+     */
+    static final class Resolution {
+
+        private static final Resolution NONE = new Resolution(null, null, null);
+
+        private final String failure;
+
+        private final Probe probe;
+
+        private final PrincipalTransformer<?> transformer;
+
+        Resolution(final PrincipalTransformer<?> transformer, final Probe probe, final String failure) {
+            this.transformer = transformer;
+            this.probe = probe;
+            this.failure = failure;
+        }
+
+        /**
+         * @return the probe recording the transformer invocations, or {@code null} if they are not recorded
+         */
+        Probe getProbe() {
+            return probe;
+        }
+
+        /**
+         * @return the transformer, or {@code null} if there is no transformer appropriate for requested class
+         * @throws IllegalArgumentException if there is more than one transformer appropriate for requested class
+         */
+        PrincipalTransformer<?> getTransformer() {
+            if (null != failure) {
+                throw new IllegalArgumentException(failure);
+            }
+            return transformer;
+        }
+
+    }
+
+    private final ClassValue<Resolution> resolutions = new ClassValue<Resolution>() {
+
+        @Override
+        protected Resolution computeValue(final Class<?> asClass) {
+            return resolve(asClass);
+        }
+
+    };
+
+    private final MetricsSink metricsSink;
+
+    private final ImmutableMap<Class<?>, PrincipalTransformer<?>> transformers;
+
+    /**
+     * Constructs new instance.
+     *
+     * @param transformers the mapping between the type being principal representation, and the principal transformer
+     * @param metricsSink the sink providing probes recording transformer invocations (may be {@code null})
+     */
+    TransformerResolver(final Map<Class<?>, PrincipalTransformer<?>> transformers, final MetricsSink metricsSink) {
+        super();
+        this.metricsSink = metricsSink;
+        this.transformers = ImmutableMap.copyOf(transformers);
+    }
+
+    /**
+     * Resolves the transformer appropriate for given class.
+     *
+     * @param asClass the class
+     * @return the resolution
+     */
+    Resolution get(final Class<?> asClass) {
+        return (null == asClass) ? Resolution.NONE : resolutions.get(asClass);
+    }
+
+    private Resolution resolve(final Class<?> asClass) {
+        PrincipalTransformer<?> result = transformers.get(asClass);
+        String failure = null;
+        if (null == result) {
+
+            // Collect the types assignable to the requested class, ...
+            final List<Class<?>> candidates = new ArrayList<>();
+            for (final Class<?> type : transformers.keySet()) {
+                if (asClass.isAssignableFrom(type)) {
+                    candidates.add(type);
+                }
+            }
+
+            // ... and choose the one being supertype of all the others, if there is any.
+            for (final Class<?> candidate : candidates) {
+                boolean closest = true;
+                for (final Class<?> other : candidates) {
+                    closest &= candidate.isAssignableFrom(other);
+                }
+                if (closest) {
+                    result = transformers.get(candidate);
+                    break;
+                }
+            }
+            if (null == result && !candidates.isEmpty()) {
+                failure = "Unable to choose the transformer for '" + asClass + "', candidate types: " + candidates
+                    + " - please provide transformer for this class.";
+            }
+        }
+        final Probe probe = (null == result || null == metricsSink) ? null : metricsSink
+            .probe(MetricsSink.UNWRAP_PREFIX + LazyTransformer.classOf(result).getName());
+        return new Resolution(result, probe, failure);
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("transformers", transformers).toString();
+    }
+
+}
@@ -0,0 +1,218 @@
+package pl.ais.commons.infrastructure.service;
+
+import java.security.Principal;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import pl.ais.commons.application.service.PrincipalService;
+import pl.ais.commons.application.service.PrincipalTransformer;
+import pl.ais.commons.infrastructure.cache.AuthoritiesOnly;
+import pl.ais.commons.infrastructure.cache.ShareableResults;
+
+/**
+ * Unwraps the batch of principals in parallel, splitting it into chunks processed by the executor workers and the
+ * calling thread.
+ *
+ * <p>
+ * Workers claim the chunks one by one, so the batch completes even if the executor doesn't run some (or any) of the
+ * workers in time: the calling thread processes all the chunks not claimed yet. Exception thrown while unwrapping the
+ * principal is recorded for this principal only, the remaining principals are unwrapped regardless. Results of the
+ * transformers annotated with {@link AuthoritiesOnly} are shared between the principals having the same authorities
+ * within the batch, as long as the transformer reports them as shareable (see {@link ShareableResults}).
+ * </p>
+ *
+ * @param <T> the class the principals are unwrapped as
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class UnwrapBatch<T> {
+
+    private static final ClassValue<Boolean> AUTHORITIES_ONLY = new ClassValue<Boolean>() {
+
+        @Override
+        protected Boolean computeValue(final Class<?> type) {
+            return type.isAnnotationPresent(AuthoritiesOnly.class);
+        }
+
+    };
+
+    private static final ShareableResults<Object> ANY = new ShareableResults<Object>() {
+
+        @Override
+        public boolean isShareable(final Object result) {
+            return true;
+        }
+
+    };
+
+    private static final Logger LOG = LoggerFactory.getLogger(UnwrapBatch.class);
+
+    private final Class<T> asClass;
+
+    private volatile boolean cancelled;
+
+    private final int chunkCount;
+
+    private final int chunkSize;
+
+    private final CountDownLatch completed;
+
+    private volatile Error error;
+
+    private final RuntimeException[] failures;
+
+    private final AtomicInteger nextChunk = new AtomicInteger();
+
+    private final Principal[] principals;
+
+    private final Object[] results;
+
+    private final PrincipalService service;
+
+    private final ConcurrentMap<Set<GrantedAuthority>, Object> shared;
+
+    private final AtomicInteger sharedCount = new AtomicInteger();
+
+    private final ShareableResults<Object> sharing;
+
+    /**
+     * Constructs new instance.
+     *
+     * @param service the service unwrapping single principal
+     * @param principals the principals to unwrap
+     * @param asClass the class to unwrap the principals as
+     * @param chunkSize the number of principals processed at once by single worker
+     * @param sharing determines which results can be shared between principals having the same authorities
+     *        ({@code null} if none of them can be shared)
+     */
+    UnwrapBatch(final PrincipalService service, final Principal[] principals, final Class<T> asClass,
+        final int chunkSize, final ShareableResults<Object> sharing) {
+        super();
+        this.service = service;
+        this.principals = principals;
+        this.asClass = asClass;
+        this.chunkSize = chunkSize;
+        this.results = new Object[principals.length];
+        this.failures = new RuntimeException[principals.length];
+        this.chunkCount = (principals.length + chunkSize - 1) / chunkSize;
+        this.completed = new CountDownLatch(chunkCount);
+        this.sharing = sharing;
+        this.shared = (null == sharing) ? null : new ConcurrentHashMap<Set<GrantedAuthority>, Object>();
+    }
+
+    /**
+     * Determines which results of given transformer can be shared between principals having the same authorities.
+     *
+     * @param transformer the transformer
+     * @return the transformer itself if it is annotated with {@link AuthoritiesOnly} and implements
+     *         {@link ShareableResults}, policy sharing all the results if it is just annotated, {@code null} otherwise
+     */
+    @SuppressWarnings("unchecked")
+    static ShareableResults<Object> sharingOf(final PrincipalTransformer<?> transformer) {
+        ShareableResults<Object> result = null;
+        if (AUTHORITIES_ONLY.get(LazyTransformer.classOf(transformer))) {
+            result = (transformer instanceof ShareableResults) ? (ShareableResults<Object>) transformer : ANY;
+        }
+        return result;
+    }
+
+    /**
+     * Processes the chunks until there are no more chunks to claim.
+     */
+    private void drain() {
+        for (int chunk = nextChunk.getAndIncrement(); chunk < chunkCount; chunk = nextChunk.getAndIncrement()) {
+            try {
+                final int end = Math.min(principals.length, (chunk + 1) * chunkSize);
+                for (int index = chunk * chunkSize; !cancelled && index < end; index++) {
+                    try {
+                        results[index] = unwrap(principals[index]);
+                    } catch (final RuntimeException exception) {
+                        failures[index] = exception;
+                    }
+                }
+            } catch (final Error throwable) {
+                error = throwable;
+                throw throwable;
+            } finally {
+                completed.countDown();
+            }
+        }
+    }
+
+    /**
+     * Unwraps all the principals, using up to given number of executor workers (along with the calling thread).
+     *
+     * @param executor the executor to run the workers on
+     * @param parallelism the maximum number of workers to run on the executor
+     * @return the batch result
+     * @throws InterruptedException if the calling thread has been interrupted while waiting for the workers
+     */
+    UnwrapBatchResult<T> run(final Executor executor, final int parallelism) throws InterruptedException {
+
+        // Start the workers (there is no point in starting more of them than there are chunks), ...
+        final int workers = Math.min(parallelism, chunkCount - 1);
+        final Runnable worker = new Runnable() {
+
+            @Override
+            public void run() {
+                drain();
+            }
+
+        };
+        try {
+            for (int count = 0; count < workers; count++) {
+                executor.execute(worker);
+            }
+        } catch (final RejectedExecutionException exception) {
+            LOG.debug("Executor saturated, remaining chunks will be processed by the calling thread.", exception);
+        }
+
+        // ... help them, and wait until all the chunks are processed.
+        try {
+            drain();
+            completed.await();
+        } catch (final InterruptedException exception) {
+            cancelled = true;
+            throw exception;
+        }
+        if (null != error) {
+            throw error;
+        }
+        return new UnwrapBatchResult<>(results, failures, sharedCount.get());
+    }
+
+    /**
+     * Unwraps given principal, sharing the result between principals having the same authorities, if possible.
+     */
+    private Object unwrap(final Principal principal) {
+        final Object result;
+        if (null != shared && principal instanceof Authentication) {
+            final Set<GrantedAuthority> authorities = new HashSet<>(((Authentication) principal).getAuthorities());
+            final Object known = shared.get(authorities);
+            if (null == known) {
+                final Object unwrapped = service.unwrap(principal, asClass);
+                final Object previous = sharing.isShareable(unwrapped) ? shared.putIfAbsent(authorities, unwrapped)
+                    : null;
+                result = (null == previous) ? unwrapped : previous;
+            } else {
+                sharedCount.incrementAndGet();
+                result = known;
+            }
+        } else {
+            result = service.unwrap(principal, asClass);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,119 @@
+package pl.ais.commons.infrastructure.service;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Result of unwrapping the batch of principals, holding the outcome of unwrapping each of them, in the order the
+ * principals were provided.
+ *
+ * @param <T> the class the principals were unwrapped as
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public final class UnwrapBatchResult<T> {
+
+    private final RuntimeException[] failures;
+
+    private final Object[] results;
+
+    private final int sharedCount;
+
+    /**
+     * Constructs new instance.
+     *
+     * @param results the unwrapping results ({@code null} for the principals which failed to unwrap)
+     * @param failures the unwrapping failures ({@code null} for the principals which were unwrapped successfully)
+     * @param sharedCount the number of results shared between principals having the same authorities
+     */
+    UnwrapBatchResult(final Object[] results, final RuntimeException[] failures, final int sharedCount) {
+        super();
+        this.results = results;
+        this.failures = failures;
+        this.sharedCount = sharedCount;
+    }
+
+    /**
+     * Provides the result of unwrapping the principal at given position.
+     *
+     * @param index the position of the principal within the batch
+     * @return the result of unwrapping, or {@code null} if the principal failed to unwrap
+     */
+    @SuppressWarnings("unchecked")
+    public T get(final int index) {
+        return (T) results[index];
+    }
+
+    /**
+     * Provides the exception thrown while unwrapping the principal at given position.
+     *
+     * @param index the position of the principal within the batch
+     * @return the exception thrown, or {@code null} if the principal was unwrapped successfully
+     */
+    public RuntimeException getFailure(final int index) {
+        return failures[index];
+    }
+
+    /**
+     * @return the exceptions thrown while unwrapping the principals, by the position of the principal within the batch
+     */
+    public SortedMap<Integer, RuntimeException> getFailures() {
+        final SortedMap<Integer, RuntimeException> result = new TreeMap<>();
+        for (int index = 0; index < failures.length; index++) {
+            if (null != failures[index]) {
+                result.put(index, failures[index]);
+            }
+        }
+        return Collections.unmodifiableSortedMap(result);
+    }
+
+    /**
+     * @return the results of unwrapping the principals ({@code null} for the ones which failed to unwrap), in the order
+     *         the principals were provided
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getResults() {
+        return Collections.unmodifiableList(Arrays.asList((T[]) results));
+    }
+
+    /**
+     * @return the number of principals which received the result shared with other principal having the same
+     *         authorities
+     */
+    public int getSharedCount() {
+        return sharedCount;
+    }
+
+    /**
+     * @return {@code true} if all the principals were unwrapped successfully, {@code false} otherwise
+     */
+    public boolean isSuccessful() {
+        boolean result = true;
+        for (int index = 0; result && index < failures.length; index++) {
+            result = (null == failures[index]);
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of principals within the batch
+     */
+    public int size() {
+        return results.length;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("size", results.length).add("failures", getFailures().size())
+            .add("sharedCount", sharedCount).toString();
+    }
+
+}
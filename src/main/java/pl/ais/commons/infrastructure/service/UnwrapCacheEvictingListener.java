@@ -0,0 +1,51 @@
+package pl.ais.commons.infrastructure.service;
+
+import javax.annotation.Nonnull;
+
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationListener;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.session.SessionDestroyedEvent;
+
+/**
+ * Discards the unwrapping results cached by {@link DefaultPrincipalService} for the principals which sessions were
+ * destroyed (on logout, or session expiration).
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class UnwrapCacheEvictingListener implements ApplicationListener<SessionDestroyedEvent>, InitializingBean {
+
+    private transient DefaultPrincipalService principalService;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPropertiesSet() throws BeanInitializationException {
+        if (null == principalService) {
+            throw new BeanInitializationException("Please, provide the principal service.");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onApplicationEvent(final SessionDestroyedEvent event) {
+        for (final SecurityContext securityContext : event.getSecurityContexts()) {
+            principalService.invalidate(securityContext.getAuthentication());
+        }
+    }
+
+    /**
+     * Defines the principal service which cached results should be discarded.
+     *
+     * @param principalService the principal service to set
+     */
+    public void setPrincipalService(@Nonnull final DefaultPrincipalService principalService) {
+        this.principalService = principalService;
+    }
+
+}
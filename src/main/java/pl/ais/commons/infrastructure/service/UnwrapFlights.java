@@ -0,0 +1,172 @@
+package pl.ais.commons.infrastructure.service;
+
+import java.security.Principal;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.ais.commons.infrastructure.metrics.Probe;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Coalesces concurrent unwrapping of the same principal (compared by identity) as the same class into single
+ * computation.
+ *
+ * <p>
+ * First caller computes the result, the callers arriving while the computation is in flight wait for it (for bounded
+ * time), and receive its result, or the exception it has thrown. Caller which waits too long (or is interrupted)
+ * computes the result itself.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class UnwrapFlights {
+
+    /**
+     * Computation in flight.
+     */
+    private static final class Flight {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private Throwable failure;
+
+        private Object result;
+
+    }
+
+    /**
+     * Key of the computation: principal identity and requested class.
+     */
+    private static final class Key {
+
+        private final Class<?> asClass;
+
+        private final Principal principal;
+
+        Key(final Principal principal, final Class<?> asClass) {
+            this.principal = principal;
+            this.asClass = asClass;
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            return (object instanceof Key) && (principal == ((Key) object).principal)
+                && (asClass == ((Key) object).asClass);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(principal) + asClass.hashCode();
+        }
+
+    }
+
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    private final ConcurrentMap<Key, Flight> flights = new ConcurrentHashMap<>();
+
+    private final long timeout;
+
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private volatile Probe waitProbe;
+
+    /**
+     * Constructs new instance.
+     *
+     * @param timeout the maximum time (in milliseconds) to wait for the computation in flight
+     */
+    UnwrapFlights(final long timeout) {
+        super();
+        this.timeout = timeout;
+    }
+
+    private static Object outcomeOf(final Flight flight) {
+        if (flight.failure instanceof RuntimeException) {
+            throw (RuntimeException) flight.failure;
+        } else if (flight.failure instanceof Error) {
+            throw (Error) flight.failure;
+        }
+        return flight.result;
+    }
+
+    /**
+     * @return the number of calls which received the result of computation in flight
+     */
+    long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return the number of calls which stopped waiting for the computation in flight, and computed the result
+     *         themselves
+     */
+    long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Provides the result of unwrapping given principal as given class, joining the computation in flight if there is
+     * any.
+     *
+     * @param principal the principal
+     * @param asClass the requested class
+     * @param computation the computation of the result
+     * @return the result
+     */
+    Object join(final Principal principal, final Class<?> asClass, final Supplier<Object> computation) {
+        final Key key = new Key(principal, asClass);
+        final Flight flight = new Flight();
+        final Flight inFlight = flights.putIfAbsent(key, flight);
+        final Object result;
+        if (null == inFlight) {
+
+            // There is no computation in flight, compute the result, and hand it over to the waiting callers, ...
+            try {
+                flight.result = computation.get();
+            } catch (final RuntimeException | Error failure) {
+                flight.failure = failure;
+            } finally {
+                flights.remove(key, flight);
+                flight.done.countDown();
+            }
+            result = outcomeOf(flight);
+        } else {
+
+            // ... or wait for the computation in flight, computing the result if it takes too long.
+            final long start = System.nanoTime();
+            boolean completed;
+            try {
+                completed = inFlight.done.await(timeout, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                completed = false;
+            }
+            final Probe probe = waitProbe;
+            if (null != probe) {
+                probe.record(System.nanoTime() - start);
+            }
+            if (completed) {
+                coalescedCount.incrementAndGet();
+                result = outcomeOf(inFlight);
+            } else {
+                timeoutCount.incrementAndGet();
+                result = computation.get();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param waitProbe the probe recording the time spent waiting for computations in flight (may be {@code null})
+     */
+    void setWaitProbe(final Probe waitProbe) {
+        this.waitProbe = waitProbe;
+    }
+
+}
@@ -0,0 +1,141 @@
+package pl.ais.commons.infrastructure.service;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.security.Principal;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.ais.commons.application.service.PrincipalTransformer;
+import pl.ais.commons.infrastructure.cache.NonCacheable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Memoizes the results of principal unwrapping per principal identity and requested class.
+ *
+ * <p>
+ * Principals are held weakly (and compared by identity), so the cached results don't outlive the principals they were
+ * calculated for. Results of the transformers annotated with {@linkplain NonCacheable} are never cached.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class UnwrapResultCache {
+
+    private static final ClassValue<Boolean> CACHEABLE = new ClassValue<Boolean>() {
+
+        @Override
+        protected Boolean computeValue(final Class<?> type) {
+            return !type.isAnnotationPresent(NonCacheable.class);
+        }
+
+    };
+
+    private final Cache<Principal, ConcurrentMap<Class<?>, Object>> cache;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Constructs new instance.
+     *
+     * @param maximumSize maximum number of principals to cache the results for
+     * @param timeToLive the time (in milliseconds) after which cached results expire, non-positive value means that
+     *        results never expire
+     */
+    UnwrapResultCache(final long maximumSize, final long timeToLive) {
+        super();
+        final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().weakKeys().maximumSize(maximumSize);
+        if (0 < timeToLive) {
+            builder.expireAfterWrite(timeToLive, TimeUnit.MILLISECONDS);
+        }
+        this.cache = builder.recordStats().build();
+    }
+
+    /**
+     * Verifies if result of transforming given principal with given transformer can be cached.
+     *
+     * @param principal the principal
+     * @param transformer the transformer
+     * @return {@code true} if result can be cached, {@code false} otherwise
+     */
+    boolean accepts(final Principal principal, final PrincipalTransformer<?> transformer) {
+        return (null != principal) && CACHEABLE.get(LazyTransformer.classOf(transformer));
+    }
+
+    /**
+     * Provides cached result of unwrapping given principal as given class.
+     *
+     * @param principal the principal
+     * @param asClass the class
+     * @return cached result, or {@code null} if there is no such result
+     */
+    Object get(final Principal principal, final Class<?> asClass) {
+        final ConcurrentMap<Class<?>, Object> results = cache.getIfPresent(principal);
+        final Object result = (null == results) ? null : results.get(asClass);
+        if (null == result) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Discards all cached results.
+     */
+    void invalidate() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Discards all results cached for given principal.
+     *
+     * @param principal the principal
+     */
+    void invalidate(final Principal principal) {
+        cache.invalidate(principal);
+    }
+
+    /**
+     * Caches the result of unwrapping given principal as given class.
+     *
+     * @param principal the principal
+     * @param asClass the class
+     * @param result the result
+     */
+    void put(final Principal principal, final Class<?> asClass, final Object result) {
+        ConcurrentMap<Class<?>, Object> results = cache.getIfPresent(principal);
+        if (null == results) {
+            final ConcurrentMap<Class<?>, Object> created = new ConcurrentHashMap<>(4);
+            results = cache.asMap().putIfAbsent(principal, created);
+            if (null == results) {
+                results = created;
+            }
+        }
+        results.put(asClass, result);
+    }
+
+    /**
+     * @return the cache statistics
+     */
+    CacheStats stats() {
+        return new CacheStats(hitCount.get(), missCount.get(), 0, 0, 0, cache.stats().evictionCount());
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("size", cache.size()).add("stats", stats()).toString();
+    }
+
+}
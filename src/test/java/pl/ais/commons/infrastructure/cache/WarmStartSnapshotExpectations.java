@@ -0,0 +1,155 @@
+package pl.ais.commons.infrastructure.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import pl.ais.commons.infrastructure.principal.unwrapping.PrincipalToFeaturesHolderTransformer;
+import pl.ais.commons.infrastructure.security.permission.cache.PermissionDecisionCache;
+import pl.ais.commons.infrastructure.test.feature.smile.BeNiceFeature;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Verifies {@linkplain WarmStartSnapshot} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class WarmStartSnapshotExpectations {
+
+    private static final GrantedAuthority ADMIN = new SimpleGrantedAuthority("admin");
+
+    private static final GrantedAuthority USER = new SimpleGrantedAuthority("user");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static PrincipalToFeaturesHolderTransformer createTransformer(final StaticApplicationContext context,
+        final int handlerPoolSize) {
+        final PrincipalToFeaturesHolderTransformer result = new PrincipalToFeaturesHolderTransformer();
+        result.setAnonymousAuthority(new SimpleGrantedAuthority("anonymous"));
+        result.setApplicationContext(context);
+        result.setHandlerPoolSize(handlerPoolSize);
+        result.setFeaturesMap(ImmutableMap.<GrantedAuthority, Set<Class<?>>> of(USER, ImmutableSet
+            .<Class<?>> of(BeNiceFeature.class), ADMIN, ImmutableSet.<Class<?>> of(BeNiceFeature.class,
+            Runnable.class)));
+        result.afterPropertiesSet();
+        return result;
+    }
+
+    private static void unwrap(final PrincipalToFeaturesHolderTransformer transformer) {
+        transformer.apply(new TestingAuthenticationToken("john", null, ImmutableList.of(USER)));
+        transformer.apply(new TestingAuthenticationToken("jane", null, ImmutableList.of(USER, ADMIN)));
+    }
+
+    private WarmStartSnapshot createSnapshot(final PrincipalToFeaturesHolderTransformer transformer) {
+        final WarmStartSnapshot result = new WarmStartSnapshot();
+        result.setLocation(new File(folder.getRoot(), "warm-start.snapshot"));
+        result.setTransformer(transformer);
+        return result;
+    }
+
+    /**
+     * Verifies if the features holders restored from the snapshot are kept when the application context is refreshed.
+     */
+    @Test
+    public void shouldKeepRestoredHoldersWhenContextIsRefreshed() {
+        final StaticApplicationContext context = new StaticApplicationContext();
+        context.registerSingleton("niceHandler", NiceHandler.class);
+        final PrincipalToFeaturesHolderTransformer previous = createTransformer(context, 0);
+        unwrap(previous);
+        assertTrue("Snapshot should be saved", createSnapshot(previous).save());
+
+        final PrincipalToFeaturesHolderTransformer transformer = createTransformer(context, 0);
+        final WarmStartSnapshot snapshot = createSnapshot(transformer);
+        assertTrue("Snapshot should be loaded", snapshot.load());
+        assertEquals("Memoized features holders should be restored", 2, snapshot.getLoadedHolderCount());
+
+        transformer.onApplicationEvent(new ContextRefreshedEvent(context));
+        final long misses = transformer.getCacheStats().missCount();
+        unwrap(transformer);
+        assertEquals("Restored features holders should be kept when the context is refreshed", misses, transformer
+            .getCacheStats().missCount());
+    }
+
+    /**
+     * Verifies if the features holders having handlers which cannot be shared are not restored from the snapshot.
+     */
+    @Test
+    public void shouldSkipHoldersHavingHandlersNotShareable() {
+        final StaticApplicationContext singletons = new StaticApplicationContext();
+        singletons.registerSingleton("niceHandler", NiceHandler.class);
+        final PrincipalToFeaturesHolderTransformer previous = createTransformer(singletons, 0);
+        unwrap(previous);
+        assertTrue("Snapshot should be saved", createSnapshot(previous).save());
+
+        final StaticApplicationContext prototypes = new StaticApplicationContext();
+        prototypes.registerPrototype("niceHandler", NiceHandler.class);
+        final PrincipalToFeaturesHolderTransformer transformer = createTransformer(prototypes, 2);
+        final WarmStartSnapshot snapshot = createSnapshot(transformer);
+        assertTrue("Snapshot should be loaded", snapshot.load());
+
+        assertEquals("Features holders which cannot be memoized should not be counted", 0, snapshot
+            .getLoadedHolderCount());
+        assertEquals("Pooled handlers should not be leased for skipped features holders", 0, transformer
+            .getHandlerPoolStats().get(BeNiceFeature.class).getCreatedCount());
+    }
+
+    /**
+     * Verifies if the snapshot declaring the section longer than the file is ignored as a whole.
+     */
+    @Test
+    public void shouldStartColdIfSectionExceedsFile() throws IOException {
+        final PermissionDecisionCache decisionCache = new PermissionDecisionCache();
+        decisionCache.afterPropertiesSet();
+        final WarmStartSnapshot snapshot = new WarmStartSnapshot();
+        snapshot.setLocation(folder.newFile("corrupted.snapshot"));
+        snapshot.setDecisionCache(decisionCache);
+
+        for (final int length : new int[] {Integer.MAX_VALUE, -1, 1}) {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(folder.getRoot().toPath()
+                .resolve("corrupted.snapshot")))) {
+                out.writeInt(0x57534e50);
+                out.writeShort(2);
+                out.writeLong(System.currentTimeMillis());
+                out.writeByte('D');
+                out.writeInt(length);
+            }
+
+            assertFalse("Snapshot declaring invalid section length should not be loaded", snapshot.load());
+            assertTrue("Loading should finish anyway", snapshot.isLoaded());
+            assertEquals("There should be no decisions restored", 0, snapshot.getLoadedDecisionCount());
+        }
+    }
+
+    /**
+     * Handler of <em>be nice</em> feature.
+     */
+    public static final class NiceHandler implements BeNiceFeature {
+
+        @Override
+        public void smile() {
+            // Nothing to do.
+        }
+
+    }
+
+}
@@ -0,0 +1,215 @@
+package pl.ais.commons.infrastructure.load;
+
+import static com.google.common.base.Objects.toStringHelper;
+
+import java.io.File;
+import java.util.List;
+import java.util.Properties;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Configuration of the load test, read from {@code key=value} arguments (see {@link #USAGE} for the keys and their
+ * default values).
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class LoadConfiguration {
+
+    /**
+     * Describes the configuration keys, along with their default values.
+     */
+    static final String USAGE = "Usage: LoadSimulator [key=value]...\n"
+        + "  threads=8               number of threads driving the load\n"
+        + "  virtual=false           use virtual threads (requires Java runtime supporting them)\n"
+        + "  warmup=5                warm-up duration (in seconds), not included in the report\n"
+        + "  duration=30             measurement duration (in seconds)\n"
+        + "  population=100000       number of principals\n"
+        + "  authorities=50          number of distinct authorities\n"
+        + "  profiles=500            number of distinct authority sets\n"
+        + "  maxProfileSize=8        maximum number of authorities within the set\n"
+        + "  skew=1.1                Zipf skew of authority and principal distributions (0 means uniform)\n"
+        + "  churn=0.01              fraction of operations done for newly logged in principal (cache churn)\n"
+        + "  unwrapRatio=0.5         fraction of operations unwrapping the principal, remaining ones check permission\n"
+        + "  caching=true            cache the unwrapping results\n"
+        + "  coalescing=false        coalesce concurrent unwrapping of the same principal\n"
+        + "  chain=rules,acl         evaluators chained before the deny-all tail (rules, acl)\n"
+        + "  compiled=false          compile the evaluator chain\n"
+        + "  targetTypes=20          number of target types handled by each evaluator\n"
+        + "  targetIds=10000         number of target identifiers per target type\n"
+        + "  seed=42                 seed of the synthetic population\n"
+        + "  report=target/load-report.csv  report file, written as JSON if its name ends with .json";
+
+    private final int authorities;
+
+    private final boolean caching;
+
+    private final List<String> chain;
+
+    private final double churn;
+
+    private final boolean coalescing;
+
+    private final boolean compiled;
+
+    private final int duration;
+
+    private final int maxProfileSize;
+
+    private final int population;
+
+    private final int profiles;
+
+    private final File report;
+
+    private final long seed;
+
+    private final double skew;
+
+    private final int targetIds;
+
+    private final int targetTypes;
+
+    private final int threads;
+
+    private final double unwrapRatio;
+
+    private final boolean virtual;
+
+    private final int warmup;
+
+    private LoadConfiguration(final Properties properties) {
+        super();
+        authorities = Integer.parseInt(properties.getProperty("authorities", "50"));
+        caching = Boolean.parseBoolean(properties.getProperty("caching", "true"));
+        chain = ImmutableList.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(
+            properties.getProperty("chain", "rules,acl")));
+        churn = Double.parseDouble(properties.getProperty("churn", "0.01"));
+        coalescing = Boolean.parseBoolean(properties.getProperty("coalescing", "false"));
+        compiled = Boolean.parseBoolean(properties.getProperty("compiled", "false"));
+        duration = Integer.parseInt(properties.getProperty("duration", "30"));
+        maxProfileSize = Integer.parseInt(properties.getProperty("maxProfileSize", "8"));
+        population = Integer.parseInt(properties.getProperty("population", "100000"));
+        profiles = Integer.parseInt(properties.getProperty("profiles", "500"));
+        report = new File(properties.getProperty("report", "target/load-report.csv"));
+        seed = Long.parseLong(properties.getProperty("seed", "42"));
+        skew = Double.parseDouble(properties.getProperty("skew", "1.1"));
+        targetIds = Integer.parseInt(properties.getProperty("targetIds", "10000"));
+        targetTypes = Integer.parseInt(properties.getProperty("targetTypes", "20"));
+        threads = Integer.parseInt(properties.getProperty("threads", "8"));
+        unwrapRatio = Double.parseDouble(properties.getProperty("unwrapRatio", "0.5"));
+        virtual = Boolean.parseBoolean(properties.getProperty("virtual", "false"));
+        warmup = Integer.parseInt(properties.getProperty("warmup", "5"));
+    }
+
+    /**
+     * Reads the configuration from given arguments.
+     *
+     * @param args the arguments, in {@code key=value} form
+     * @return the configuration
+     * @throws IllegalArgumentException if any of the arguments is malformed
+     */
+    static LoadConfiguration parse(final String... args) {
+        final Properties properties = new Properties();
+        for (final String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (0 >= separator) {
+                throw new IllegalArgumentException("Malformed argument: " + arg + "\n" + USAGE);
+            }
+            properties.setProperty(arg.substring(0, separator).trim(), arg.substring(separator + 1).trim());
+        }
+        return new LoadConfiguration(properties);
+    }
+
+    int getAuthorities() {
+        return authorities;
+    }
+
+    List<String> getChain() {
+        return chain;
+    }
+
+    double getChurn() {
+        return churn;
+    }
+
+    int getDuration() {
+        return duration;
+    }
+
+    int getMaxProfileSize() {
+        return maxProfileSize;
+    }
+
+    int getPopulation() {
+        return population;
+    }
+
+    int getProfiles() {
+        return profiles;
+    }
+
+    File getReport() {
+        return report;
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    double getSkew() {
+        return skew;
+    }
+
+    int getTargetIds() {
+        return targetIds;
+    }
+
+    int getTargetTypes() {
+        return targetTypes;
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    double getUnwrapRatio() {
+        return unwrapRatio;
+    }
+
+    int getWarmup() {
+        return warmup;
+    }
+
+    boolean isCaching() {
+        return caching;
+    }
+
+    boolean isCoalescing() {
+        return coalescing;
+    }
+
+    boolean isCompiled() {
+        return compiled;
+    }
+
+    boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return toStringHelper(this).add("threads", threads).add("virtual", virtual).add("warmup", warmup)
+            .add("duration", duration).add("population", population).add("authorities", authorities)
+            .add("profiles", profiles).add("maxProfileSize", maxProfileSize).add("skew", skew).add("churn", churn)
+            .add("unwrapRatio", unwrapRatio).add("caching", caching).add("coalescing", coalescing)
+            .add("chain", chain).add("compiled", compiled).add("targetTypes", targetTypes)
+            .add("targetIds", targetIds).add("seed", seed).add("report", report).toString();
+    }
+
+}
@@ -0,0 +1,123 @@
+package pl.ais.commons.infrastructure.load;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import pl.ais.commons.infrastructure.metrics.LatencyHistogram;
+
+import com.google.common.base.Joiner;
+
+/**
+ * Report of the load test, written as CSV (one row per operation), or JSON (along with the configuration).
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class LoadReport {
+
+    private static final String[] COLUMNS = {"operation", "count", "throughput", "meanNanos", "p50Nanos",
+        "p99Nanos", "p999Nanos", "allocatedBytesPerOperation", "gcCount", "gcTimeMillis"};
+
+    private final LoadConfiguration configuration;
+
+    private final List<Object[]> rows = new ArrayList<>();
+
+    /**
+     * Constructs new instance.
+     *
+     * @param configuration the configuration of reported load test
+     */
+    LoadReport(final LoadConfiguration configuration) {
+        super();
+        this.configuration = configuration;
+    }
+
+    private static String quote(final Object value) {
+        return (value instanceof String) ? '"' + ((String) value).replace("\\", "\\\\").replace("\"", "\\\"") + '"'
+            : String.valueOf(value);
+    }
+
+    /**
+     * Adds the results of given operation to the report.
+     *
+     * @param operation the operation name
+     * @param latencies the latencies recorded for the operation
+     * @param seconds the measurement duration (in seconds)
+     * @param allocatedBytes the number of bytes allocated while performing the operation, or negative value if unknown
+     * @param gcCount the number of garbage collections during the measurement
+     * @param gcTime the time (in milliseconds) spent on garbage collections during the measurement
+     */
+    void add(final String operation, final LatencyHistogram latencies, final double seconds,
+        final long allocatedBytes, final long gcCount, final long gcTime) {
+        final long count = latencies.getCount();
+        rows.add(new Object[] {operation, count, Math.round(count / seconds), Math.round(latencies.getMean()),
+            latencies.getPercentile(0.5), latencies.getPercentile(0.99), latencies.getPercentile(0.999),
+            (0 > allocatedBytes || 0 == count) ? -1 : Math.round((double) allocatedBytes / count), gcCount, gcTime});
+    }
+
+    /**
+     * Prints the summary of the report.
+     *
+     * @param out the writer to print the summary to
+     */
+    void print(final PrintWriter out) {
+        out.println(String.format(Locale.ROOT, "%-12s %12s %12s %10s %10s %10s %10s %12s", "operation", "count",
+            "ops/s", "mean ns", "p50 ns", "p99 ns", "p999 ns", "bytes/op"));
+        for (final Object[] row : rows) {
+            out.println(String.format(Locale.ROOT, "%-12s %12d %12d %10d %10d %10d %10d %12d", row));
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the report into the report file, as JSON if its name ends with {@code .json}, as CSV otherwise.
+     *
+     * @throws IOException if the report cannot be written
+     */
+    void write() throws IOException {
+        final File file = configuration.getReport();
+        if (null != file.getParentFile()) {
+            Files.createDirectories(file.getParentFile().toPath());
+        }
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            final PrintWriter out = new PrintWriter(writer);
+            if (file.getName().endsWith(".json")) {
+                writeJson(out);
+            } else {
+                writeCsv(out);
+            }
+            out.flush();
+        }
+    }
+
+    private void writeCsv(final PrintWriter out) {
+        out.println(Joiner.on(',').join(COLUMNS));
+        for (final Object[] row : rows) {
+            out.println(Joiner.on(',').join(row));
+        }
+    }
+
+    private void writeJson(final PrintWriter out) {
+        out.println("{");
+        out.println("  \"configuration\": " + quote(configuration.toString()) + ",");
+        out.println("  \"results\": [");
+        for (int index = 0; index < rows.size(); index++) {
+            final StringBuilder line = new StringBuilder("    {");
+            for (int column = 0; column < COLUMNS.length; column++) {
+                line.append((0 == column) ? "" : ", ").append(quote(COLUMNS[column])).append(": ")
+                    .append(quote(rows.get(index)[column]));
+            }
+            out.println(line.append((rows.size() - 1 == index) ? "}" : "},"));
+        }
+        out.println("  ]");
+        out.println("}");
+    }
+
+}
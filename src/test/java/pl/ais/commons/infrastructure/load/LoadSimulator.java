@@ -0,0 +1,366 @@
+package pl.ais.commons.infrastructure.load;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import pl.ais.commons.application.service.PrincipalTransformer;
+import pl.ais.commons.infrastructure.cache.AuthoritiesOnly;
+import pl.ais.commons.infrastructure.metrics.LatencyHistogram;
+import pl.ais.commons.infrastructure.security.permission.acl.AclIndex;
+import pl.ais.commons.infrastructure.security.permission.acl.AclPermissionEvaluator;
+import pl.ais.commons.infrastructure.security.permission.acl.PermissionRegistry;
+import pl.ais.commons.infrastructure.security.permission.evaluators.AbstractChainedPermissionEvaluator;
+import pl.ais.commons.infrastructure.security.permission.evaluators.CompiledPermissionEvaluator;
+import pl.ais.commons.infrastructure.security.permission.evaluators.DenyAllChainedPermissionEvaluator;
+import pl.ais.commons.infrastructure.security.permission.rules.PermissionRules;
+import pl.ais.commons.infrastructure.security.permission.rules.RuleBasedPermissionEvaluator;
+import pl.ais.commons.infrastructure.service.DefaultPrincipalService;
+import pl.ais.commons.infrastructure.service.ThreadPerTaskExecutor;
+
+/**
+ * Load simulator driving {@link DefaultPrincipalService} and the chain of permission evaluators from many threads at
+ * once, using the {@link SyntheticPopulation} of principals.
+ *
+ * <p>
+ * Unlike the microbenchmarks, simulator exposes the contention (and cache churn) caused by many threads sharing the
+ * infrastructure. Each thread performs the mix of unwrapping and permission checks for randomly chosen principals,
+ * some of which log in again (getting new identity), and records the latency of each operation. Throughput, latency
+ * percentiles, and the memory allocated per operation (on runtimes supporting per-thread allocation counters,
+ * including the harness overhead) are printed, and written into CSV or JSON report. Run it with
+ * {@code mvn -Pload test-compile exec:exec -Dload.args="threads=64 virtual=true"}, or see
+ * {@link LoadConfiguration#USAGE} for the available options.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public final class LoadSimulator {
+
+    private static final String[] PERMISSIONS = {"read", "write"};
+
+    private static final int PHASE_MEASUREMENT = 1;
+
+    private static final int PHASE_STOPPED = 2;
+
+    private static final int PHASE_WARMUP = 0;
+
+    private final LoadConfiguration configuration;
+
+    private final PermissionEvaluator evaluator;
+
+    private volatile int phase = PHASE_WARMUP;
+
+    private final SyntheticPopulation population;
+
+    private final DefaultPrincipalService service;
+
+    /**
+     * Consumes the results of the operations, so they cannot be optimized away.
+     */
+    private volatile long sink;
+
+    private final String[] targetTypes;
+
+    /**
+     * Constructs new instance.
+     *
+     * @param configuration the load test configuration
+     * @throws IOException if the permission rules cannot be compiled
+     */
+    LoadSimulator(final LoadConfiguration configuration) throws IOException {
+        super();
+        this.configuration = configuration;
+        this.population = new SyntheticPopulation(configuration);
+        this.service = new LoadedPrincipalService(configuration);
+
+        // Build the evaluator chain (in reverse order), ending with the deny-all evaluator, ...
+        final List<String> types = new ArrayList<>();
+        AbstractChainedPermissionEvaluator head = new DenyAllChainedPermissionEvaluator();
+        final List<String> chain = new ArrayList<>(configuration.getChain());
+        for (int index = chain.size() - 1; 0 <= index; index--) {
+            final AbstractChainedPermissionEvaluator link = createEvaluator(chain.get(index), types);
+            link.setNextEvaluator(head);
+            head = link;
+        }
+        this.evaluator = configuration.isCompiled() ? new CompiledPermissionEvaluator(head) : head;
+
+        // ... and include the type no evaluator supports (falling through the whole chain).
+        types.add("Unsupported");
+        this.targetTypes = types.toArray(new String[types.size()]);
+    }
+
+    private static long allocatedBytes() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long result = -1;
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+            if (allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled()) {
+                result = allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return result;
+    }
+
+    private static long[] collections() {
+        final long[] result = new long[2];
+        for (final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result[0] += Math.max(0, collector.getCollectionCount());
+            result[1] += Math.max(0, collector.getCollectionTime());
+        }
+        return result;
+    }
+
+    /**
+     * Runs the load test, and writes the report.
+     *
+     * @param args the configuration, in {@code key=value} form
+     * @throws Exception if the load test fails
+     */
+    public static void main(final String... args) throws Exception {
+        if (Arrays.asList(args).contains("help")) {
+            System.out.println(LoadConfiguration.USAGE);
+        } else {
+            final LoadConfiguration configuration = LoadConfiguration.parse(args);
+            System.out.println("Simulating load: " + configuration);
+            final LoadReport report = new LoadSimulator(configuration).run();
+            report.print(new PrintWriter(System.out));
+            report.write();
+            System.out.println("Report written into " + configuration.getReport().getAbsolutePath());
+        }
+    }
+
+    private AbstractChainedPermissionEvaluator createEvaluator(final String kind, final List<String> types)
+        throws IOException {
+        final AbstractChainedPermissionEvaluator result;
+        final Random random = new Random(configuration.getSeed());
+        final SyntheticPopulation.Zipf byAuthority = new SyntheticPopulation.Zipf(population.getAuthorities().size(),
+            configuration.getSkew());
+        if ("rules".equals(kind)) {
+
+            // Grant each permission on each type to few (mostly popular) authorities, ...
+            final StringBuilder rules = new StringBuilder();
+            for (int type = 0; type < configuration.getTargetTypes(); type++) {
+                types.add("RuleTarget" + type);
+                for (final String permission : PERMISSIONS) {
+                    rules.append("RuleTarget").append(type).append(" : ").append(permission).append(" : ");
+                    for (int count = 0; count < 3; count++) {
+                        rules.append((0 == count) ? "" : ", ")
+                            .append(population.getAuthorities().get(byAuthority.next(random)).getAuthority());
+                    }
+                    rules.append('\n');
+                }
+            }
+            final RuleBasedPermissionEvaluator rulesEvaluator = new RuleBasedPermissionEvaluator();
+            rulesEvaluator.setRules(PermissionRules.parse(new StringReader(rules.toString()),
+                LoadSimulator.class.getClassLoader()));
+            result = rulesEvaluator;
+        } else if ("acl".equals(kind)) {
+
+            // ... and grant the access to each target to single authority (and the write access to some of them).
+            final PermissionRegistry registry = new PermissionRegistry();
+            registry.setPermissions(Arrays.asList(PERMISSIONS));
+            final AclIndex.Builder index = AclIndex.builder(registry);
+            for (int type = 0; type < configuration.getTargetTypes(); type++) {
+                types.add("AclTarget" + type);
+                for (int targetId = 0; targetId < configuration.getTargetIds(); targetId++) {
+                    final String authority = population.getAuthorities().get(byAuthority.next(random))
+                        .getAuthority();
+                    index.grant("AclTarget" + type, targetId, authority, PERMISSIONS[0]);
+                    if (0 == targetId % 4) {
+                        index.grant("AclTarget" + type, targetId, authority, PERMISSIONS[1]);
+                    }
+                }
+            }
+            final AclPermissionEvaluator aclEvaluator = new AclPermissionEvaluator();
+            aclEvaluator.setPermissionRegistry(registry);
+            aclEvaluator.setIndex(index.build());
+            aclEvaluator.afterPropertiesSet();
+            result = aclEvaluator;
+        } else {
+            throw new IllegalArgumentException("Unknown evaluator: " + kind + ", use 'rules' or 'acl'.");
+        }
+        return result;
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @return the report
+     * @throws InterruptedException if interrupted while waiting for the load test to finish
+     */
+    LoadReport run() throws InterruptedException {
+
+        // Start the workers, ...
+        final Worker[] workers = new Worker[configuration.getThreads()];
+        final Thread[] threads = new Thread[workers.length];
+        for (int index = 0; index < workers.length; index++) {
+            workers[index] = new Worker();
+            threads[index] = ThreadPerTaskExecutor.newThread(workers[index], "load-" + index,
+                configuration.isVirtual());
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+
+        // ... let them warm up, measure, and stop them.
+        TimeUnit.SECONDS.sleep(configuration.getWarmup());
+        final long[] collectionsBefore = collections();
+        final long start = System.nanoTime();
+        phase = PHASE_MEASUREMENT;
+        TimeUnit.SECONDS.sleep(configuration.getDuration());
+        phase = PHASE_STOPPED;
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        final long[] collectionsAfter = collections();
+
+        // Merge the results of all the workers.
+        final LatencyHistogram unwraps = new LatencyHistogram();
+        final LatencyHistogram checks = new LatencyHistogram();
+        final LatencyHistogram total = new LatencyHistogram();
+        long allocated = 0;
+        for (final Worker worker : workers) {
+            if (null != worker.failure) {
+                throw new IllegalStateException("Worker failed.", worker.failure);
+            }
+            sink += worker.sink;
+            unwraps.merge(worker.unwraps);
+            checks.merge(worker.checks);
+            total.merge(worker.unwraps);
+            total.merge(worker.checks);
+            allocated = (0 > allocated || 0 > worker.allocated) ? -1 : allocated + worker.allocated;
+        }
+        final long gcCount = collectionsAfter[0] - collectionsBefore[0];
+        final long gcTime = collectionsAfter[1] - collectionsBefore[1];
+        final LoadReport result = new LoadReport(configuration);
+        result.add("unwrap", unwraps, seconds, -1, gcCount, gcTime);
+        result.add("permission", checks, seconds, -1, gcCount, gcTime);
+        result.add("total", total, seconds, allocated, gcCount, gcTime);
+        return result;
+    }
+
+    /**
+     * Transformer digesting the authorities of the principal.
+     */
+    @AuthoritiesOnly
+    private static final class AuthoritiesDigest implements PrincipalTransformer<String> {
+
+        @Override
+        public String apply(@Nullable final Principal principal) {
+            final List<String> names = new ArrayList<>();
+            if (principal instanceof Authentication) {
+                for (final GrantedAuthority authority : ((Authentication) principal).getAuthorities()) {
+                    names.add(authority.getAuthority());
+                }
+            }
+            return String.valueOf(names);
+        }
+
+        @Override
+        public Class<String> getReturnType() {
+            return String.class;
+        }
+
+    }
+
+    /**
+     * Principal service initialized according to the load test configuration.
+     */
+    private static final class LoadedPrincipalService extends DefaultPrincipalService {
+
+        LoadedPrincipalService(final LoadConfiguration configuration) {
+            super();
+            final Map<Class<?>, PrincipalTransformer<?>> transformers = new HashMap<>();
+            transformers.put(String.class, new AuthoritiesDigest());
+            setTransformers(transformers);
+            setCachingEnabled(configuration.isCaching());
+            setCoalescingEnabled(configuration.isCoalescing());
+            initialize();
+        }
+
+    }
+
+    /**
+     * Performs the operations until stopped, recording their latency during the measurement.
+     */
+    private final class Worker implements Runnable {
+
+        private long allocated = -1;
+
+        private final LatencyHistogram checks = new LatencyHistogram();
+
+        private Throwable failure;
+
+        private long sink;
+
+        private final LatencyHistogram unwraps = new LatencyHistogram();
+
+        private void perform(final Random random, final boolean measured) {
+            final int member = random.nextInt(population.size());
+            final Authentication authentication = (random.nextDouble() < configuration.getChurn()) ? population
+                .fresh(member) : population.get(member);
+            if (random.nextDouble() < configuration.getUnwrapRatio()) {
+                final long start = System.nanoTime();
+                final String result = service.unwrap(authentication, String.class);
+                final long duration = System.nanoTime() - start;
+                sink += result.length();
+                if (measured) {
+                    unwraps.record(duration);
+                }
+            } else {
+                final String targetType = targetTypes[random.nextInt(targetTypes.length)];
+                final long targetId = random.nextInt(configuration.getTargetIds());
+                final String permission = PERMISSIONS[random.nextInt(PERMISSIONS.length)];
+                final long start = System.nanoTime();
+                final boolean result = evaluator.hasPermission(authentication, targetId, targetType, permission);
+                final long duration = System.nanoTime() - start;
+                sink += result ? 1 : 0;
+                if (measured) {
+                    checks.record(duration);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                final Random random = ThreadLocalRandom.current();
+                long allocatedBefore = -1;
+                boolean measured = false;
+                for (int current = phase; PHASE_STOPPED != current; current = phase) {
+                    if (!measured && PHASE_MEASUREMENT == current) {
+                        measured = true;
+                        allocatedBefore = allocatedBytes();
+                    }
+                    perform(random, measured);
+                }
+                final long allocatedAfter = allocatedBytes();
+                allocated = (0 > allocatedBefore || 0 > allocatedAfter) ? -1 : allocatedAfter - allocatedBefore;
+            } catch (final RuntimeException | Error exception) {
+                failure = exception;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,151 @@
+package pl.ais.commons.infrastructure.load;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * Synthetic population of {@link Authentication}s, having the authorities distributed the way they usually are in
+ * production: most of the principals share few popular authority profiles, and few of the authorities are granted to
+ * almost everyone.
+ *
+ * <p>
+ * Authority profiles (distinct sets of authorities) are drawn from Zipf distribution over the authorities, principals
+ * are assigned to the profiles using Zipf distribution over the profiles. Population is deterministic for given seed.
+ * </p>
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+final class SyntheticPopulation {
+
+    private final List<GrantedAuthority> authorities;
+
+    private final Authentication[] principals;
+
+    private final List<List<GrantedAuthority>> profiles;
+
+    /**
+     * Constructs new instance.
+     *
+     * @param configuration the load test configuration
+     */
+    SyntheticPopulation(final LoadConfiguration configuration) {
+        super();
+        final Random random = new Random(configuration.getSeed());
+
+        // Create the authorities, ...
+        authorities = new ArrayList<>(configuration.getAuthorities());
+        for (int index = 0; index < configuration.getAuthorities(); index++) {
+            authorities.add(new SimpleGrantedAuthority("ROLE_" + index));
+        }
+
+        // ... draw the profiles, ...
+        final Zipf byAuthority = new Zipf(authorities.size(), configuration.getSkew());
+        profiles = new ArrayList<>(configuration.getProfiles());
+        for (int index = 0; index < configuration.getProfiles(); index++) {
+            final int size = 1 + random.nextInt(configuration.getMaxProfileSize());
+            final Set<GrantedAuthority> profile = new LinkedHashSet<>();
+            for (int attempt = 0; profile.size() < size && attempt < 4 * size; attempt++) {
+                profile.add(authorities.get(byAuthority.next(random)));
+            }
+            profiles.add(new ArrayList<>(profile));
+        }
+
+        // ... and assign the principals to them.
+        final Zipf byProfile = new Zipf(profiles.size(), configuration.getSkew());
+        principals = new Authentication[configuration.getPopulation()];
+        for (int index = 0; index < principals.length; index++) {
+            principals[index] = authentication(index, profiles.get(byProfile.next(random)));
+        }
+    }
+
+    private static Authentication authentication(final int index, final List<GrantedAuthority> authorities) {
+        return new TestingAuthenticationToken("user" + index, null, authorities);
+    }
+
+    /**
+     * Creates new authentication (having distinct identity) of given member of the population, simulating the
+     * principal logging in again.
+     *
+     * @param index the index of population member
+     * @return created authentication
+     */
+    Authentication fresh(final int index) {
+        return authentication(index, new ArrayList<>(principals[index].getAuthorities()));
+    }
+
+    /**
+     * @param index the index of population member
+     * @return the authentication of given population member
+     */
+    Authentication get(final int index) {
+        return principals[index];
+    }
+
+    /**
+     * @return the authorities granted within the population
+     */
+    List<GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    /**
+     * @return the number of distinct authority profiles
+     */
+    int getProfileCount() {
+        return profiles.size();
+    }
+
+    /**
+     * @return the population size
+     */
+    int size() {
+        return principals.length;
+    }
+
+    /**
+     * Samples the indexes {@code 0 ... size - 1} using Zipf distribution, index {@code 0} being the most popular one.
+     */
+    static final class Zipf {
+
+        private final double[] cumulative;
+
+        /**
+         * Constructs new instance.
+         *
+         * @param size the number of indexes
+         * @param skew the skew of the distribution ({@code 0} means uniform distribution)
+         */
+        Zipf(final int size, final double skew) {
+            cumulative = new double[size];
+            double sum = 0;
+            for (int index = 0; index < size; index++) {
+                sum += 1 / Math.pow(index + 1, skew);
+                cumulative[index] = sum;
+            }
+            for (int index = 0; index < size; index++) {
+                cumulative[index] /= sum;
+            }
+        }
+
+        /**
+         * @param random the source of randomness
+         * @return next index
+         */
+        int next(final Random random) {
+            final int position = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(cumulative.length - 1, (0 <= position) ? position : -position - 1);
+        }
+
+    }
+
+}
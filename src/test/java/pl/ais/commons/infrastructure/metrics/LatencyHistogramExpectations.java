@@ -0,0 +1,110 @@
+package pl.ais.commons.infrastructure.metrics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Verifies {@linkplain LatencyHistogram} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class LatencyHistogramExpectations {
+
+    /**
+     * Verifies if the percentiles are provided as the upper bounds of the buckets containing them.
+     */
+    @Test
+    public void shouldComputePercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals("Empty histogram should provide zero percentiles", 0, histogram.getPercentile(0.99));
+        assertEquals("Empty histogram should provide zero mean", 0.0, histogram.getMean(), 0.0);
+
+        for (long duration = 1; duration <= 1000; duration++) {
+            histogram.record(duration);
+        }
+        assertEquals("Minimum should be bounded by the first non-empty bucket", 2, histogram.getPercentile(0.0));
+        assertEquals("Median should be bounded by its bucket", 512, histogram.getPercentile(0.5));
+        assertEquals("99th percentile should be bounded by its bucket", 1024, histogram.getPercentile(0.99));
+        assertEquals("Maximum should be bounded by its bucket", 1024, histogram.getPercentile(1.0));
+    }
+
+    /**
+     * Verifies if the events are counted in logarithmic buckets, and their mean duration is exact.
+     */
+    @Test
+    public void shouldCountEventsInLogarithmicBuckets() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (final long duration : new long[] {0, 1, 3, 4, 7, 1000}) {
+            histogram.record(duration);
+        }
+        histogram.record(-5);
+
+        final long[] expected = new long[Long.SIZE];
+        expected[0] = 2;
+        expected[1] = 1;
+        expected[2] = 1;
+        expected[3] = 2;
+        expected[10] = 1;
+        assertArrayEquals("Events should be counted in the buckets bounded by powers of two", expected, histogram
+            .getBuckets());
+        assertEquals("All the events should be counted", 7, histogram.getCount());
+        assertEquals("Mean should be exact (negative durations counted as zero)", 1015.0 / 7, histogram.getMean(),
+            1e-9);
+    }
+
+    /**
+     * Verifies if all the recorded events are discarded by reset.
+     */
+    @Test
+    public void shouldDiscardEventsWhenReset() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.record(Long.MAX_VALUE);
+        histogram.reset();
+
+        assertEquals("There should be no events after reset", 0, histogram.getCount());
+        assertEquals("There should be no mean after reset", 0.0, histogram.getMean(), 0.0);
+        assertEquals("There should be no percentiles after reset", 0, histogram.getPercentile(1.0));
+    }
+
+    /**
+     * Verifies if the merged histogram provides the same statistics as the histogram recording all the events.
+     */
+    @Test
+    public void shouldMergeHistograms() {
+        final LatencyHistogram all = new LatencyHistogram();
+        final LatencyHistogram even = new LatencyHistogram();
+        final LatencyHistogram odd = new LatencyHistogram();
+        for (long duration = 0; duration < 10000; duration += 7) {
+            all.record(duration);
+            (0 == duration % 2 ? even : odd).record(duration);
+        }
+        even.merge(odd);
+
+        assertArrayEquals("Merged histogram should count the events in the same buckets", all.getBuckets(), even
+            .getBuckets());
+        assertEquals("Merged histogram should provide the same mean", all.getMean(), even.getMean(), 0.0);
+        for (final double fraction : new double[] {0.0, 0.5, 0.99, 0.999, 1.0}) {
+            assertEquals("Merged histogram should provide the same percentiles", all.getPercentile(fraction), even
+                .getPercentile(fraction));
+        }
+    }
+
+    /**
+     * Verifies if the longest events are counted in the overflow bucket, having no upper bound.
+     */
+    @Test
+    public void shouldUseOverflowBucketForLongestEvents() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1L << 62);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals("Longest events should be counted in the overflow bucket", 2,
+            histogram.getBuckets()[Long.SIZE - 1]);
+        assertEquals("Overflow bucket should have no upper bound", Long.MAX_VALUE, histogram.getPercentile(0.5));
+    }
+
+}
@@ -0,0 +1,83 @@
+package pl.ais.commons.infrastructure.metrics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * Verifies {@linkplain SecurityMetrics} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class SecurityMetricsExpectations {
+
+    private static final String[] STRING_SIGNATURE = {String.class.getName()};
+
+    /**
+     * Verifies if the recorded events are exposed via platform MBean server while the metrics are registered.
+     */
+    @Test
+    public void shouldExposeProbesViaJmx() throws JMException {
+        final String objectName = "pl.ais.commons.test:type=SecurityMetrics,name=jmx";
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final SecurityMetrics metrics = new SecurityMetrics();
+        metrics.setObjectName(objectName);
+        metrics.afterPropertiesSet();
+        try {
+            metrics.probe("permission.granted").record(100);
+            metrics.probe("permission.granted").record(300);
+            metrics.probe("unwrap.String").record(50);
+
+            final ObjectName name = new ObjectName(objectName);
+            assertArrayEquals("Probe names should be exposed in alphabetical order", new String[] {
+                "permission.granted", "unwrap.String"}, (String[]) server.getAttribute(name, "ProbeNames"));
+            assertEquals("Summary of each probe should be exposed", 2, ((String[]) server.getAttribute(name,
+                "Summary")).length);
+            assertEquals("Count of events should be exposed", 2L, server.invoke(name, "getCount",
+                new Object[] {"permission.granted"}, STRING_SIGNATURE));
+            assertEquals("Mean duration should be exposed", 200.0, server.invoke(name, "getMean",
+                new Object[] {"permission.granted"}, STRING_SIGNATURE));
+            assertEquals("Percentiles should be exposed", 512L, server.invoke(name, "getPercentile", new Object[] {
+                "permission.granted", 1.0}, new String[] {String.class.getName(), double.class.getName()}));
+
+            server.invoke(name, "reset", new Object[0], new String[0]);
+            assertEquals("Events should be discarded by reset", 0L, metrics.getCount("permission.granted"));
+        } finally {
+            metrics.destroy();
+        }
+        assertFalse("Metrics should be unregistered when destroyed", server.isRegistered(new ObjectName(objectName)));
+    }
+
+    /**
+     * Verifies if the probes are kept per name, and the summary describes each of them.
+     */
+    @Test
+    public void shouldKeepHistogramPerProbe() {
+        final SecurityMetrics metrics = new SecurityMetrics();
+        final Probe probe = metrics.probe("unwrap.String");
+        assertSame("The same probe should be provided for the same name", probe, metrics.probe("unwrap.String"));
+        assertNotSame("Different probes should be provided for different names", probe, metrics.probe("unwrap.Long"));
+
+        probe.record(1000);
+        assertEquals("Events should be counted per probe", 1, metrics.getCount("unwrap.String"));
+        assertEquals("Events should be counted per probe", 0, metrics.getCount("unwrap.Long"));
+        assertEquals("Unknown probe should have no events", 0, metrics.getCount("unknown"));
+        assertArrayEquals("Unknown probe should not be registered by querying it", new String[] {"unwrap.Long",
+            "unwrap.String"}, metrics.getProbeNames());
+        assertTrue("Summary should describe the probe", metrics.getSummary()[1].startsWith(
+            "unwrap.String: count=1, mean=1000ns, p50<1024ns"));
+    }
+
+}
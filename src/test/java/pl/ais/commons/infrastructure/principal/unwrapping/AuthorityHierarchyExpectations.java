@@ -0,0 +1,85 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Verifies {@linkplain AuthorityHierarchy} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class AuthorityHierarchyExpectations {
+
+    private static void assertRejected(final String definition, final String expectedMessage) {
+        try {
+            AuthorityHierarchy.parse(definition);
+            fail("Hierarchy should be rejected: " + definition);
+        } catch (final IllegalArgumentException exception) {
+            assertTrue("Failure should describe the problem: " + expectedMessage, exception.getMessage().contains(
+                expectedMessage));
+        }
+    }
+
+    /**
+     * Verifies if the authorities reachable from each authority are computed transitively.
+     */
+    @Test
+    public void shouldComputeTransitiveClosure() {
+        final AuthorityHierarchy hierarchy = AuthorityHierarchy.parse("ROLE_ADMIN > ROLE_MANAGER > ROLE_USER\n"
+            + "ROLE_AUDITOR > ROLE_USER\r\n\n  ROLE_MANAGER > ROLE_REPORTER  ");
+
+        assertEquals("Authorities should be reachable transitively", ImmutableSet.of("ROLE_ADMIN", "ROLE_MANAGER",
+            "ROLE_USER", "ROLE_REPORTER"), hierarchy.reachableFrom("ROLE_ADMIN"));
+        assertEquals("Authorities should be reachable from each line", ImmutableSet.of("ROLE_MANAGER", "ROLE_USER",
+            "ROLE_REPORTER"), hierarchy.reachableFrom("ROLE_MANAGER"));
+        assertEquals("Authority including nothing should reach itself only", ImmutableSet.of("ROLE_USER"), hierarchy
+            .reachableFrom("ROLE_USER"));
+        assertEquals("Unknown authority should reach itself only", ImmutableSet.of("ROLE_GUEST"), hierarchy
+            .reachableFrom("ROLE_GUEST"));
+        assertEquals("Authorities including other ones should be listed", ImmutableSet.of("ROLE_ADMIN",
+            "ROLE_MANAGER", "ROLE_AUDITOR"), hierarchy.authorities());
+    }
+
+    /**
+     * Verifies if the cycles are rejected, and reported along with the authorities forming them.
+     */
+    @Test
+    public void shouldRejectCycles() {
+        assertRejected("ROLE_A > ROLE_B\nROLE_B > ROLE_C > ROLE_A", "ROLE_A > ROLE_B > ROLE_C > ROLE_A");
+        assertRejected("ROLE_X > ROLE_A > ROLE_A", "ROLE_A > ROLE_A");
+    }
+
+    /**
+     * Verifies if the malformed lines are rejected.
+     */
+    @Test
+    public void shouldRejectMalformedLines() {
+        assertRejected("ROLE_ADMIN > ROLE_USER\nROLE_MANAGER >", "ROLE_MANAGER >");
+        assertRejected("ROLE_ADMIN", "at least two authorities");
+        assertRejected("ROLE_ADMIN >> ROLE_USER", "Malformed");
+    }
+
+    /**
+     * Verifies if the authorities not separated by {@code >} start separate chains, so the whole hierarchy can be
+     * defined in single line.
+     */
+    @Test
+    public void shouldSplitChainsDefinedInSingleLine() {
+        final AuthorityHierarchy hierarchy = AuthorityHierarchy.parse("ROLE_A > ROLE_B ROLE_B > ROLE_C\tROLE_D>ROLE_C");
+
+        assertEquals("Authorities should be reachable across the chains", ImmutableSet.of("ROLE_A", "ROLE_B",
+            "ROLE_C"), hierarchy.reachableFrom("ROLE_A"));
+        assertEquals("Each chain should relate its own authorities", ImmutableSet.of("ROLE_D", "ROLE_C"), hierarchy
+            .reachableFrom("ROLE_D"));
+        assertEquals("Authority names should not contain whitespace", ImmutableSet.of("ROLE_A", "ROLE_B", "ROLE_D"),
+            hierarchy.authorities());
+        assertRejected("ROLE_A ROLE_B", "at least two authorities");
+    }
+
+}
@@ -0,0 +1,88 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import static org.junit.Assert.assertEquals;
+import static pl.ais.commons.application.feature.FeaturesHolderAssert.then;
+import static pl.ais.commons.infrastructure.principal.unwrapping.PrincipalToFeaturesHolderTransformerAssembler.given;
+import static pl.ais.commons.infrastructure.principal.unwrapping.PrincipalToFeaturesHolderTransformerAssembler.when;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import pl.ais.commons.application.feature.FeaturesHolder;
+import pl.ais.commons.infrastructure.test.feature.smile.BeNiceFeature;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Verifies {@linkplain FeatureHandlers} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class FeatureHandlersExpectations {
+
+    private static final GrantedAuthority ADMIN = new SimpleGrantedAuthority("admin");
+
+    private static final GrantedAuthority ANONYMOUS = new SimpleGrantedAuthority("anonymous");
+
+    private static final GrantedAuthority USER = new SimpleGrantedAuthority("user");
+
+    /**
+     * Verifies if the handlers are looked up in the application context once, instead of on every unwrapping.
+     */
+    @Test
+    public void shouldResolveHandlersOnceInsteadOfOnEveryRequest() {
+        final CountingApplicationContext context = new CountingApplicationContext();
+        context.registerSingleton("niceHandler", NiceHandler.class);
+        final PrincipalToFeaturesHolderTransformer transformer = new PrincipalToFeaturesHolderTransformer();
+
+        given(transformer).withAnonymousAuthority(ANONYMOUS).withApplicationContext(context)
+            .withAuthorityFeatures(USER, BeNiceFeature.class).withAuthorityFeatures(ADMIN, Runnable.class);
+
+        final PrincipalToFeaturesHolderTransformer assembled = when();
+        final int lookups = context.lookups.get();
+        final FeaturesHolder user = assembled.apply(new TestingAuthenticationToken("john", null, ImmutableList
+            .of(USER)));
+        final FeaturesHolder admin = assembled.apply(new TestingAuthenticationToken("jane", null, ImmutableList.of(
+            USER, ADMIN)));
+        assembled.apply(new TestingAuthenticationToken("jim", null, ImmutableList.of(ADMIN)));
+
+        then(user).shouldHaveFeature(BeNiceFeature.class);
+        then(admin).shouldHaveFeature(BeNiceFeature.class).shouldHaveFeature(Runnable.class);
+        assertEquals("Handlers should be looked up once per feature when transformer is initialized", 2, lookups);
+        assertEquals("Unwrapping should not look the handlers up", lookups, context.lookups.get());
+    }
+
+    /**
+     * Application context counting the lookups of beans by type.
+     */
+    private static final class CountingApplicationContext extends StaticApplicationContext {
+
+        final AtomicInteger lookups = new AtomicInteger();
+
+        @Override
+        public String[] getBeanNamesForType(@SuppressWarnings("rawtypes") final Class type) {
+            lookups.incrementAndGet();
+            return super.getBeanNamesForType(type);
+        }
+
+    }
+
+    /**
+     * Handler of <em>be nice</em> feature.
+     */
+    public static final class NiceHandler implements BeNiceFeature {
+
+        @Override
+        public void smile() {
+            // Nothing to do.
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static pl.ais.commons.application.feature.FeaturesHolderAssert.then;
+import static pl.ais.commons.infrastructure.principal.unwrapping.PrincipalToFeaturesHolderTransformerAssembler.given;
+import static pl.ais.commons.infrastructure.principal.unwrapping.PrincipalToFeaturesHolderTransformerAssembler.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import pl.ais.commons.application.feature.FeaturesHolder;
+import pl.ais.commons.infrastructure.test.feature.smile.BeNiceFeature;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Verifies {@linkplain FeaturesHolderCodec} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class FeaturesHolderCodecExpectations {
+
+    private static final GrantedAuthority ANONYMOUS = new SimpleGrantedAuthority("anonymous");
+
+    private static final GrantedAuthority USER = new SimpleGrantedAuthority("user");
+
+    private static FeaturesHolder unwrapUser() {
+        final PrincipalToFeaturesHolderTransformer transformer = new PrincipalToFeaturesHolderTransformer();
+
+        given(transformer).withAnonymousAuthority(ANONYMOUS).withAuthorityFeatures(USER, BeNiceFeature.class,
+            Runnable.class);
+
+        return when().apply(new TestingAuthenticationToken("john", null, ImmutableList.of(USER)));
+    }
+
+    /**
+     * Verifies if the encoded features holder is compact.
+     */
+    @Test
+    public void shouldEncodeFeaturesHolderCompactly() throws IOException {
+        final FeaturesHolder holder = unwrapUser();
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(holder);
+        }
+
+        assertEquals("Encoded holder should consist of version, fingerprint and single mask word", 18,
+            FeaturesHolderCodec.encode(holder).length);
+        assertTrue("Serialized holder should not exceed 128 bytes, but has " + bytes.size(), 128 >= bytes.size());
+    }
+
+    /**
+     * Verifies if the features holder survives the encoding and decoding.
+     */
+    @Test
+    public void shouldRestoreFeaturesHolderFromEncodedForm() throws InvalidObjectException {
+        final FeaturesHolder holder = unwrapUser();
+
+        final FeaturesHolder decoded = FeaturesHolderCodec.decode(FeaturesHolderCodec.encode(holder));
+
+        then(decoded).shouldHaveFeature(BeNiceFeature.class);
+        assertSame("Decoded holder should be shared with the other principals", holder, decoded);
+    }
+
+    /**
+     * Verifies if the features holder survives the Java serialization.
+     */
+    @Test
+    public void shouldRestoreFeaturesHolderFromSerializedForm() throws IOException, ClassNotFoundException {
+        final FeaturesHolder holder = unwrapUser();
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(holder);
+        }
+        final Object deserialized;
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            deserialized = input.readObject();
+        }
+
+        then((FeaturesHolder) deserialized).shouldHaveFeature(BeNiceFeature.class);
+        assertSame("Deserialized holder should be shared with the other principals", holder, deserialized);
+    }
+
+}
@@ -0,0 +1,110 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static pl.ais.commons.infrastructure.principal.unwrapping.PrincipalToFeaturesHolderTransformerAssembler.given;
+import static pl.ais.commons.infrastructure.principal.unwrapping.PrincipalToFeaturesHolderTransformerAssembler.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.Principal;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import pl.ais.commons.application.feature.FeaturesHolder;
+import pl.ais.commons.infrastructure.service.DefaultPrincipalService;
+
+/**
+ * Verifies {@linkplain FeaturesMapWatcher} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class FeaturesMapWatcherExpectations {
+
+    private static final Principal JOHN = new TestingAuthenticationToken("john", null, "user");
+
+    /**
+     * Time (in milliseconds) for which the test waits for the watcher to reload the mapping.
+     */
+    private static final long RELOAD_TIMEOUT = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void awaitVersion(final FeaturesMapWatcher watcher, final long version)
+        throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + RELOAD_TIMEOUT;
+        while (version > watcher.getVersion() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals("Changed mapping should be reloaded", version, watcher.getVersion());
+    }
+
+    private static void write(final File file, final String mapping) throws IOException {
+        Files.write(file.toPath(), mapping.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Verifies if the changed mapping is applied, and invalid one is ignored.
+     */
+    @Test
+    public void shouldApplyChangedMappingOnly() throws Exception {
+        final File file = new File(folder.getRoot(), "features.properties");
+        write(file, "user = java.lang.Runnable");
+        given(new PrincipalToFeaturesHolderTransformer()).withAnonymousAuthority(new SimpleGrantedAuthority(
+            "anonymous"));
+        final PrincipalToFeaturesHolderTransformer transformer = when();
+        final AtomicInteger invalidations = new AtomicInteger();
+        final FeaturesMapWatcher watcher = new FeaturesMapWatcher();
+        watcher.setLocation(file);
+        watcher.setPrincipalService(new DefaultPrincipalService() {
+
+            @Override
+            public void invalidate() {
+                invalidations.incrementAndGet();
+            }
+
+        });
+        watcher.setTransformer(transformer);
+        watcher.afterPropertiesSet();
+        try {
+            assertEquals("Initial mapping should be applied", 1, watcher.getVersion());
+            assertTrue("Initial mapping should be applied", transformer.apply(JOHN).hasFeature(Runnable.class));
+
+            // Change the mapping, verify if it has been applied, and the unwrapping results discarded, ...
+            write(file, "user = java.lang.Runnable, java.io.Serializable");
+            awaitVersion(watcher, 2);
+            assertTrue("Changed mapping should be applied", transformer.apply(JOHN).hasFeature(Serializable.class));
+            assertEquals("Unwrapping results should be discarded each time the mapping is applied", 2,
+                invalidations.get());
+
+            // ... break the mapping, and verify if the previous one is kept, ...
+            write(file, "user = pl.ais.commons.MissingFeature");
+            Thread.sleep(1000);
+            assertEquals("Invalid mapping should be ignored", 2, watcher.getVersion());
+            final FeaturesHolder kept = transformer.apply(JOHN);
+            assertTrue("Previous mapping should be kept", kept.hasFeature(Runnable.class) && kept.hasFeature(
+                Serializable.class));
+
+            // ... and fix it, verifying if the watcher is still watching.
+            write(file, "user = java.io.Serializable");
+            awaitVersion(watcher, 3);
+            assertFalse("Fixed mapping should be applied", transformer.apply(JOHN).hasFeature(Runnable.class));
+            assertEquals("Unwrapping results should be discarded each time the mapping is applied", 3,
+                invalidations.get());
+        } finally {
+            watcher.destroy();
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+package pl.ais.commons.infrastructure.principal.unwrapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Set;
+
+import org.junit.Test;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import pl.ais.commons.application.feature.FeaturesHolder;
+import pl.ais.commons.infrastructure.principal.unwrapping.FeatureHandlersExpectations.NiceHandler;
+import pl.ais.commons.infrastructure.test.feature.smile.BeNiceFeature;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Verifies {@linkplain HandlerPool} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class HandlerPoolExpectations {
+
+    private static final GrantedAuthority ADMIN = new SimpleGrantedAuthority("admin");
+
+    private static final GrantedAuthority USER = new SimpleGrantedAuthority("user");
+
+    private static void assertStats(final HandlerPoolStats stats, final int idleCount, final long createdCount,
+        final long reusedCount, final long recycledCount, final long discardedCount) {
+        assertEquals("Idle instances should be counted", idleCount, stats.getIdleCount());
+        assertEquals("Created instances should be counted", createdCount, stats.getCreatedCount());
+        assertEquals("Reused instances should be counted", reusedCount, stats.getReusedCount());
+        assertEquals("Recycled instances should be counted", recycledCount, stats.getRecycledCount());
+        assertEquals("Discarded instances should be counted", discardedCount, stats.getDiscardedCount());
+    }
+
+    private static StaticApplicationContext createContext() {
+        final StaticApplicationContext result = new StaticApplicationContext();
+        result.registerPrototype("recyclableHandler", RecyclableNiceHandler.class);
+        result.refresh();
+        return result;
+    }
+
+    /**
+     * Verifies if the pool is filled lazily, reuses recycled instances, and discards the ones exceeding its size.
+     */
+    @Test
+    public void shouldCreateInstancesLazily() {
+        final HandlerPool pool = new HandlerPool(createContext(), "recyclableHandler", 2, null);
+        assertStats(pool.stats(), 0, 0, 0, 0, 0);
+
+        final Object first = pool.acquire();
+        final Object second = pool.acquire();
+        final Object third = pool.acquire();
+        assertStats(pool.stats(), 0, 3, 0, 0, 0);
+
+        pool.recycle(first);
+        pool.recycle(second);
+        pool.recycle(third);
+        assertStats(pool.stats(), 2, 3, 0, 2, 1);
+        assertEquals("Instance returned to the full pool should not be reset", 0,
+            ((RecyclableNiceHandler) third).recycles);
+
+        assertSame("Recycled instance should be reused", first, pool.acquire());
+        assertStats(pool.stats(), 1, 3, 1, 2, 1);
+    }
+
+    /**
+     * Verifies if the instances are reset when recycled, and discarded if they fail to reset.
+     */
+    @Test
+    public void shouldDiscardInstancesFailingToReset() {
+        final HandlerPool pool = new HandlerPool(createContext(), "recyclableHandler", 4, null);
+        final RecyclableNiceHandler reusable = (RecyclableNiceHandler) pool.acquire();
+        final RecyclableNiceHandler rejecting = (RecyclableNiceHandler) pool.acquire();
+        rejecting.reusable = false;
+        final RecyclableNiceHandler failing = (RecyclableNiceHandler) pool.acquire();
+        failing.failure = new IllegalStateException("Unable to reset.");
+
+        pool.recycle(reusable);
+        pool.recycle(rejecting);
+        pool.recycle(failing);
+
+        assertStats(pool.stats(), 1, 3, 0, 1, 2);
+        assertEquals("Recycled instance should be reset", 1, reusable.recycles);
+        assertSame("Instance which was reset should be reused", reusable, pool.acquire());
+        assertNotSame("Instances which failed to reset should not be reused", rejecting, pool.acquire());
+    }
+
+    /**
+     * Verifies if the instances leased by the holder which became unreachable without being released are discarded,
+     * as they may still be in use.
+     */
+    @Test
+    public void shouldDiscardInstancesOfUnreleasedHolders() {
+        final HandlerPool pool = new HandlerPool(createContext(), "recyclableHandler", 2, null);
+        final HandlerLease lease = new HandlerLease(new IndexedFeaturesHolder(null, null));
+        final RecyclableNiceHandler instance = (RecyclableNiceHandler) lease.acquire(pool);
+        lease.activate();
+
+        // Simulate the holder becoming unreachable.
+        lease.enqueue();
+        HandlerLease.expunge();
+
+        assertStats(pool.stats(), 0, 1, 0, 0, 1);
+        assertEquals("Discarded instance should not be reset", 0, instance.recycles);
+        lease.release();
+        assertStats(pool.stats(), 0, 1, 0, 0, 1);
+        assertNotSame("Discarded instance should not be reused", instance, pool.acquire());
+    }
+
+    /**
+     * Verifies if the instances which are not recyclable are never returned to the pool.
+     */
+    @Test
+    public void shouldDiscardNotRecyclableInstances() {
+        final StaticApplicationContext context = new StaticApplicationContext();
+        context.registerPrototype("niceHandler", NiceHandler.class);
+        context.refresh();
+        final HandlerPool pool = new HandlerPool(context, "niceHandler", 2, null);
+        final Object instance = pool.acquire();
+        pool.recycle(instance);
+
+        assertStats(pool.stats(), 0, 1, 0, 0, 1);
+        assertNotSame("Instance which is not recyclable should not be reused", instance, pool.acquire());
+    }
+
+    /**
+     * Verifies if the pools are kept when the features mapping changes, and replaced when the context is refreshed.
+     */
+    @Test
+    public void shouldKeepPoolsUnlessContextIsRefreshed() {
+        final StaticApplicationContext context = createContext();
+        final PrincipalToFeaturesHolderTransformer transformer = new PrincipalToFeaturesHolderTransformer();
+        transformer.setAnonymousAuthority(new SimpleGrantedAuthority("anonymous"));
+        transformer.setApplicationContext(context);
+        transformer.setHandlerPoolSize(2);
+        transformer.setFeaturesMap(ImmutableMap.<GrantedAuthority, Set<Class<?>>> of(USER, ImmutableSet
+            .<Class<?>> of(BeNiceFeature.class)));
+        transformer.afterPropertiesSet();
+        assertStats(transformer.getHandlerPoolStats().get(BeNiceFeature.class), 0, 0, 0, 0, 0);
+
+        final FeaturesHolder holder = transformer.apply(new TestingAuthenticationToken("john", null, ImmutableList
+            .of(USER)));
+        transformer.release(holder);
+        assertStats(transformer.getHandlerPoolStats().get(BeNiceFeature.class), 1, 1, 0, 1, 0);
+
+        transformer.setFeaturesMap(ImmutableMap.<GrantedAuthority, Set<Class<?>>> of(USER, ImmutableSet
+            .<Class<?>> of(BeNiceFeature.class), ADMIN, ImmutableSet.<Class<?>> of(Runnable.class)));
+        assertStats(transformer.getHandlerPoolStats().get(BeNiceFeature.class), 1, 1, 0, 1, 0);
+
+        transformer.onApplicationEvent(new ContextRefreshedEvent(context));
+        assertStats(transformer.getHandlerPoolStats().get(BeNiceFeature.class), 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Recyclable handler of <em>be nice</em> feature.
+     */
+    public static final class RecyclableNiceHandler implements BeNiceFeature, RecyclableHandler {
+
+        RuntimeException failure;
+
+        int recycles;
+
+        boolean reusable = true;
+
+        @Override
+        public boolean recycle() {
+            recycles++;
+            if (null != failure) {
+                throw failure;
+            }
+            return reusable;
+        }
+
+        @Override
+        public void smile() {
+            // Nothing to do.
+        }
+
+    }
+
+}
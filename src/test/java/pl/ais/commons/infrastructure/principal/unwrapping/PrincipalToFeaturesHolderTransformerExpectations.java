@@ -1,16 +1,22 @@
 package pl.ais.commons.infrastructure.principal.unwrapping;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static pl.ais.commons.application.feature.FeaturesHolderAssert.then;
 import static pl.ais.commons.infrastructure.principal.unwrapping.PrincipalToFeaturesHolderTransformerAssembler.given;
 import static pl.ais.commons.infrastructure.principal.unwrapping.PrincipalToFeaturesHolderTransformerAssembler.when;
 
 import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
 import pl.ais.commons.application.feature.FeaturesHolder;
 import pl.ais.commons.infrastructure.test.feature.smile.BeNiceFeature;
 
+import com.google.common.collect.ImmutableList;
+
 /**
  * Verifies {@linkplain PrincipalToFeaturesHolderTransformer} expectations.
  *
@@ -21,6 +27,54 @@ public class PrincipalToFeaturesHolderTransformerExpectations {
 
     private static final GrantedAuthority ANONYMOUS = new SimpleGrantedAuthority("anonymous");
 
+    private static final GrantedAuthority USER = new SimpleGrantedAuthority("user");
+
+    /**
+     * Verifies if principals having the same authorities share the same features holder.
+     */
+    @Test
+    public void shouldShareFeaturesHolderBetweenPrincipalsHavingSameAuthorities() {
+        final PrincipalToFeaturesHolderTransformer transformer = new PrincipalToFeaturesHolderTransformer();
+
+        given(transformer).withAnonymousAuthority(ANONYMOUS).withAuthorityFeatures(USER, BeNiceFeature.class);
+
+        final PrincipalToFeaturesHolderTransformer assembled = when();
+        final FeaturesHolder first = assembled.apply(new TestingAuthenticationToken("john", null, ImmutableList
+            .of(USER)));
+        final FeaturesHolder second = assembled.apply(new TestingAuthenticationToken("jane", null, ImmutableList
+            .of(USER)));
+
+        then(first).shouldHaveFeature(BeNiceFeature.class);
+        assertSame("Features holder should be shared", first, second);
+        assertEquals("Second unwrapping should hit the cache", 1, assembled.getCacheStats().hitCount());
+    }
+
+    /**
+     * Verifies if authorities are matched by their names, regardless of {@link GrantedAuthority} implementation.
+     */
+    @Test
+    public void shouldMatchAuthoritiesByName() {
+        final PrincipalToFeaturesHolderTransformer transformer = new PrincipalToFeaturesHolderTransformer();
+
+        given(transformer).withAnonymousAuthority(ANONYMOUS).withAuthorityFeatures(USER, BeNiceFeature.class)
+            .withAuthorityFeatures(ANONYMOUS, Runnable.class);
+
+        final FeaturesHolder featuresHolder = when().apply(new TestingAuthenticationToken("john", null, ImmutableList
+            .<GrantedAuthority> of(new GrantedAuthority() {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public String getAuthority() {
+                    return "user";
+                }
+
+            })));
+
+        then(featuresHolder).shouldHaveFeature(BeNiceFeature.class);
+        assertFalse("Features of other authorities should not be available", featuresHolder.hasFeature(Runnable.class));
+    }
+
     /**
      * Verifies if anonymous features are used for not authorized user.
      */
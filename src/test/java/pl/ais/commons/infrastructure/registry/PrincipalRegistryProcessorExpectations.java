@@ -0,0 +1,116 @@
+package pl.ais.commons.infrastructure.registry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import pl.ais.commons.infrastructure.test.feature.smile.BeNiceFeature;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Verifies {@linkplain PrincipalRegistryProcessor} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class PrincipalRegistryProcessorExpectations {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static JavaFileObject source(final String className, final String code) {
+        return new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/')
+            + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+
+            @Override
+            public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+                return code;
+            }
+
+        };
+    }
+
+    /**
+     * Compiles given sources using {@link PrincipalRegistryProcessor}, and provides the directory holding the output.
+     */
+    private File compile(final JavaFileObject... sources) throws IOException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("Java compiler should be available", compiler);
+        final File result = folder.newFolder("classes");
+        final JavaCompiler.CompilationTask task = compiler.getTask(null, null, null, Arrays.asList("-classpath",
+            System.getProperty("java.class.path"), "-d", result.getPath()), null, Arrays.asList(sources));
+        task.setProcessors(Collections.singleton(new PrincipalRegistryProcessor()));
+        assertTrue("Sources should be compiled", task.call());
+        return result;
+    }
+
+    /**
+     * Verifies if the principal transformers and feature handlers are registered under their bean names, and the
+     * registry is written sorted.
+     */
+    @Test
+    public void shouldRegisterTransformersAndFeatureHandlers() throws IOException {
+        final File output = compile(
+            source("example.NameTransformer", "package example;\n"
+                + "@org.springframework.stereotype.Service(\"names\")\n"
+                + "public class NameTransformer implements pl.ais.commons.application.service.PrincipalTransformer"
+                + "<String> {\n"
+                + "    public String apply(java.security.Principal principal) { return principal.getName(); }\n"
+                + "    public Class<? extends String> getReturnType() { return String.class; }\n"
+                + "}\n"),
+            source("example.SmileHandlers", "package example;\n"
+                + "public abstract class SmileHandlers implements " + BeNiceFeature.class.getName() + " {\n"
+                + "    public static class Wide extends SmileHandlers { public void smile() { } }\n"
+                + "}\n"),
+            source("example.NiceHandler", "package example;\n"
+                + "public class NiceHandler implements " + BeNiceFeature.class.getName() + " {\n"
+                + "    public void smile() { }\n"
+                + "}\n"));
+
+        // Verify if the registry is written sorted (so the builds are reproducible), ...
+        final List<String> lines = Files.readAllLines(new File(output, PrincipalRegistry.LOCATION).toPath(),
+            StandardCharsets.ISO_8859_1);
+        final List<String> sorted = new ArrayList<>(lines.subList(1, lines.size()));
+        Collections.sort(sorted);
+        assertEquals("Registry entries should be sorted", sorted, lines.subList(1, lines.size()));
+
+        // ... and if it describes the concrete transformers and feature handlers.
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[] {output.toURI().toURL()}, null)) {
+            final PrincipalRegistry registry = PrincipalRegistry.load(classLoader);
+            assertEquals("Concrete feature handlers should be registered under default bean names", ImmutableList.of(
+                "niceHandler", "smileHandlers.Wide"), registry.getHandlerNames(BeNiceFeature.class));
+            assertEquals("Transformer should be registered", 1, registry.getTransformers().size());
+
+            final RegisteredTransformer transformer = registry.getTransformers().get(0);
+            assertEquals("Transformer should be registered under stereotype bean name", "names", transformer
+                .getBeanName());
+            assertEquals("Transformer class should be registered", "example.NameTransformer", transformer
+                .getTransformerClassName());
+            assertEquals("Transformer return type should be registered", String.class.getName(), transformer
+                .getReturnTypeName());
+        }
+    }
+
+}
@@ -0,0 +1,173 @@
+package pl.ais.commons.infrastructure.security.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Verifies {@linkplain AuditJournal} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class AuditJournalExpectations {
+
+    private static final Authentication JOHN = new TestingAuthenticationToken("john", null, "ROLE_USER");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<AuditRecord> readAll(final File directory) throws IOException {
+        final List<AuditRecord> result = new ArrayList<>();
+        for (final File segment : AuditJournalReader.segmentsOf(directory)) {
+            result.addAll(AuditJournalReader.read(segment));
+        }
+        return result;
+    }
+
+    /**
+     * Verifies if the decisions which cannot be written are counted as dropped, and don't stop the writer.
+     */
+    @Test
+    public void shouldCountDecisionsWhichCannotBeWritten() throws Exception {
+        final File directory = folder.newFolder("unwritable");
+        final AuditJournal journal = new AuditJournal();
+        journal.setDirectory(directory);
+        journal.setSegmentSize(JournalFormat.HEADER_SIZE + JournalFormat.MAX_RECORD_SIZE);
+        journal.afterPropertiesSet();
+
+        // Remove the directory, so the journal cannot roll over to the next segment.
+        for (final File file : directory.listFiles()) {
+            assertTrue("Segment should be removed", file.delete());
+        }
+        assertTrue("Directory should be removed", directory.delete());
+
+        final char[] padding = new char[JournalFormat.MAX_FIELD_LENGTH];
+        Arrays.fill(padding, 'a');
+        final String longField = new String(padding);
+        for (int index = 0; index < 5; index++) {
+            journal.recordDecision(String.class, JOHN, longField, longField, longField, false);
+        }
+        journal.destroy();
+
+        assertEquals("Decision fitting the current segment should be written", 1, journal.getWrittenCount());
+        assertEquals("Decisions which cannot be written should be counted as dropped", 4, journal.getDroppedCount());
+    }
+
+    /**
+     * Verifies if the decisions read from the journal are the ones written into it, in the same order.
+     */
+    @Test
+    public void shouldReadDecisionsWritten() throws Exception {
+        final File directory = folder.newFolder("journal");
+        final AuditJournal journal = new AuditJournal();
+        journal.setAuditingGrants(true);
+        journal.setDirectory(directory);
+        journal.setSegmentSize(JournalFormat.HEADER_SIZE + JournalFormat.MAX_RECORD_SIZE);
+        journal.afterPropertiesSet();
+
+        final char[] padding = new char[JournalFormat.MAX_FIELD_LENGTH - 1];
+        Arrays.fill(padding, 'a');
+        final String longPermission = new String(padding) + "\u017C\u017C";
+        journal.recordDecision(String.class, JOHN, 1L, "Document", "read", true);
+        journal.recordDecision(Integer.class, JOHN, "Report", null, longPermission, false);
+        journal.recordDecision(Long.class, null, null, null, null, false);
+        journal.destroy();
+
+        final List<AuditRecord> records = readAll(directory);
+        assertEquals("All the decisions should be written", 3, records.size());
+        assertEquals("Decisions should be counted as written", 3, journal.getWrittenCount());
+
+        final AuditRecord first = records.get(0);
+        assertTrue("Grant should be read as such", first.isGranted());
+        assertEquals("Evaluator should be read", String.class.getName(), first.getEvaluator());
+        assertEquals("Principal should be read", "john", first.getPrincipal());
+        assertEquals("Target type should be read", "Document", first.getTargetType());
+        assertEquals("Target should be read", "1", first.getTarget());
+        assertEquals("Permission should be read", "read", first.getPermission());
+
+        final AuditRecord second = records.get(1);
+        assertFalse("Denial should be read as such", second.isGranted());
+        assertEquals("Missing target type should be read as target class", String.class.getName(),
+            second.getTargetType());
+        assertEquals("Long field should be truncated on the character boundary", new String(padding),
+            second.getPermission());
+
+        final AuditRecord third = records.get(2);
+        assertEquals("Evaluator should be read", Long.class.getName(), third.getEvaluator());
+        assertNull("Missing principal should be read as such", third.getPrincipal());
+        assertNull("Missing target should be read as such", third.getTarget());
+    }
+
+    /**
+     * Verifies if the target objects are recorded as their class name and identifier, without formatting them.
+     */
+    @Test
+    public void shouldRecordTargetObjectsByIdentifier() throws Exception {
+        final File directory = folder.newFolder("targets");
+        final AuditJournal journal = new AuditJournal();
+        journal.setDirectory(directory);
+        journal.afterPropertiesSet();
+
+        journal.recordDecision(String.class, JOHN, new Entity(42L), null, "read", false);
+        journal.recordDecision(String.class, JOHN, new Opaque(), null, "read", false);
+        journal.destroy();
+
+        final List<AuditRecord> records = readAll(directory);
+        assertEquals("All the decisions should be written", 2, records.size());
+        assertEquals("Target class should be read as target type", Entity.class.getName(), records.get(0)
+            .getTargetType());
+        assertEquals("Target identifier should be read as target", "42", records.get(0).getTarget());
+        assertEquals("Target class should be read as target type", Opaque.class.getName(), records.get(1)
+            .getTargetType());
+        assertNull("Target not having identifier should be read as missing", records.get(1).getTarget());
+    }
+
+    /**
+     * Target object having identifier, which shouldn't be formatted.
+     */
+    public static final class Entity {
+
+        private final Long id;
+
+        Entity(final Long id) {
+            this.id = id;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            throw new IllegalStateException("Target object should not be formatted.");
+        }
+
+    }
+
+    /**
+     * Target object not having identifier, which shouldn't be formatted.
+     */
+    public static final class Opaque {
+
+        @Override
+        public String toString() {
+            throw new IllegalStateException("Target object should not be formatted.");
+        }
+
+    }
+
+}
@@ -0,0 +1,57 @@
+package pl.ais.commons.infrastructure.security.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Verifies {@linkplain AuditRingBuffer} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class AuditRingBufferExpectations {
+
+    /**
+     * Verifies if the events published while the buffer is full are dropped and counted.
+     */
+    @Test
+    public void shouldCountEventsDroppedWhenFull() {
+        final AuditRingBuffer buffer = new AuditRingBuffer(2);
+
+        assertTrue("Event should be published", buffer.offer(Object.class, null, 1L, "Document", "read", false));
+        assertTrue("Event should be published", buffer.offer(Object.class, null, 2L, "Document", "read", false));
+        assertFalse("Event should be dropped", buffer.offer(Object.class, null, 3L, "Document", "read", false));
+        assertEquals("Dropped event should be counted", 1, buffer.getDroppedCount());
+
+        final AuditEvent event = new AuditEvent();
+        assertTrue("Oldest event should be consumed", buffer.poll(event));
+        assertEquals("Oldest event should be consumed first", 1L, event.target);
+        assertTrue("Event should be published once the slot is released", buffer.offer(Object.class, null, 4L,
+            "Document", "read", false));
+        assertEquals("Published event should not be counted as dropped", 1, buffer.getDroppedCount());
+    }
+
+    /**
+     * Verifies if the events are consumed in the order they have been published.
+     */
+    @Test
+    public void shouldProvideEventsInPublicationOrder() {
+        final AuditRingBuffer buffer = new AuditRingBuffer(4);
+        final AuditEvent event = new AuditEvent();
+        for (long round = 0; round < 3; round++) {
+            for (long target = 0; target < 4; target++) {
+                buffer.offer(Object.class, null, round * 4 + target, "Document", "read", false);
+            }
+            for (long target = 0; target < 4; target++) {
+                assertTrue("Published event should be consumed", buffer.poll(event));
+                assertEquals("Events should be consumed in publication order", round * 4 + target, event.target);
+            }
+            assertTrue("Buffer should be empty once all the events are consumed", buffer.isEmpty());
+        }
+        assertEquals("No event should be dropped", 0, buffer.getDroppedCount());
+    }
+
+}
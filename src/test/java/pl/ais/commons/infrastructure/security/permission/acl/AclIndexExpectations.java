@@ -0,0 +1,165 @@
+package pl.ais.commons.infrastructure.security.permission.acl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Verifies {@linkplain AclIndex} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class AclIndexExpectations {
+
+    private static final List<GrantedAuthority> ADMIN = AuthorityUtils.createAuthorityList("ROLE_ADMIN");
+
+    private static final List<GrantedAuthority> EDITOR = AuthorityUtils.createAuthorityList("ROLE_EDITOR");
+
+    private static final List<GrantedAuthority> EDITOR_AND_USER = AuthorityUtils.createAuthorityList("ROLE_EDITOR",
+        "ROLE_USER");
+
+    private static final List<GrantedAuthority> USER = AuthorityUtils.createAuthorityList("ROLE_USER");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static AclIndex createIndex(final PermissionRegistry permissions) {
+        final AclIndex.Builder builder = AclIndex.builder(permissions);
+        for (long targetId = 0; targetId < 100; targetId++) {
+            builder.grant("Document", targetId, "ROLE_USER", "read");
+            if (0 == targetId % 2) {
+                builder.grant("Document", targetId, "ROLE_EDITOR", "write");
+            }
+            if (0 == targetId % 3) {
+                builder.grant("Folder", targetId, "ROLE_EDITOR", "read").grant("Folder", targetId, "ROLE_EDITOR",
+                    "write");
+            }
+        }
+        return builder.grant("Document", 7L, "ROLE_ADMIN", "delete").grant("Document", 7L, "ROLE_ADMIN", "read")
+            .build();
+    }
+
+    private static PermissionRegistry createPermissions(final String... names) {
+        final PermissionRegistry result = new PermissionRegistry();
+        result.setPermissions(ImmutableList.copyOf(names));
+        return result;
+    }
+
+    /**
+     * Verifies if the permissions granted for all the given authorities are combined.
+     */
+    @Test
+    public void shouldCombinePermissionsGrantedForAllAuthorities() {
+        final PermissionRegistry permissions = createPermissions("read", "write", "delete");
+        final AclIndex index = createIndex(permissions);
+        final int document = index.typeId("Document");
+        final int read = permissions.maskOf("read");
+        final int write = permissions.maskOf("write");
+
+        assertEquals("Permissions of single authority should be provided", read, index.grantedMask(document, 1L,
+            USER));
+        assertEquals("Permissions of all the authorities should be combined", read | write, index.grantedMask(
+            document, 2L, EDITOR_AND_USER));
+        assertEquals("Permissions granted several times should be combined", read | permissions.maskOf("delete"),
+            index.grantedMask(document, 7L, ADMIN));
+        assertEquals("There should be no permissions for unknown authority", 0, index.grantedMask(document, 2L,
+            AuthorityUtils.createAuthorityList("ROLE_GUEST")));
+        assertEquals("There should be no permissions for unknown target", 0, index.grantedMask(document, 100L,
+            EDITOR_AND_USER));
+        assertEquals("Unknown target type should not be interned", -1, index.typeId("Report"));
+        assertEquals("There should be no permissions for unknown target type", 0, index.grantedMask(-1, 1L,
+            EDITOR_AND_USER));
+    }
+
+    /**
+     * Verifies if the index loaded from the snapshot grants the same permissions as the saved one.
+     */
+    @Test
+    public void shouldLoadSavedIndex() throws IOException {
+        final PermissionRegistry permissions = createPermissions("read", "write", "delete");
+        final AclIndex saved = createIndex(permissions);
+        final File snapshot = folder.newFile("acl.snapshot");
+        saved.save(snapshot);
+
+        final AclIndex loaded = AclIndex.load(snapshot, createPermissions("read", "write", "delete"));
+        assertEquals("Loaded index should contain all the targets", saved.size(), loaded.size());
+        for (final String type : ImmutableList.of("Document", "Folder")) {
+            assertEquals("Target types should be interned the same way", saved.typeId(type), loaded.typeId(type));
+            for (long targetId = 0; targetId <= 100; targetId++) {
+                for (final Collection<GrantedAuthority> authorities : ImmutableList.of(ADMIN, EDITOR, USER,
+                    EDITOR_AND_USER)) {
+                    assertEquals("Loaded index should grant the same permissions", saved.grantedMask(saved
+                        .typeId(type), targetId, authorities), loaded.grantedMask(loaded.typeId(type), targetId,
+                        authorities));
+                }
+            }
+        }
+    }
+
+    /**
+     * Verifies if the snapshot built with other permissions is rejected.
+     */
+    @Test
+    public void shouldRejectSnapshotBuiltWithOtherPermissions() throws IOException {
+        final File snapshot = folder.newFile("acl.snapshot");
+        createIndex(createPermissions("read", "write", "delete")).save(snapshot);
+
+        try {
+            AclIndex.load(snapshot, createPermissions("write", "read", "delete"));
+            fail("Snapshot built with other permissions should be rejected");
+        } catch (final IOException exception) {
+            assertTrue("Failure should list the permissions", exception.getMessage().contains("[read, write, delete]"));
+        }
+    }
+
+    /**
+     * Verifies if the truncated snapshot is rejected.
+     */
+    @Test
+    public void shouldRejectTruncatedSnapshot() throws IOException {
+        final File snapshot = folder.newFile("acl.snapshot");
+        createIndex(createPermissions("read", "write", "delete")).save(snapshot);
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+            file.setLength(file.length() / 2);
+        }
+
+        try {
+            AclIndex.load(snapshot, createPermissions("read", "write", "delete"));
+            fail("Truncated snapshot should be rejected");
+        } catch (final IOException exception) {
+            assertTrue("Failure should name the snapshot", exception.getMessage().contains(snapshot.getName()));
+        }
+    }
+
+    /**
+     * Verifies if the snapshot is replaced as a whole, without leaving the temporary file behind.
+     */
+    @Test
+    public void shouldReplaceSnapshotAsWhole() throws IOException {
+        final PermissionRegistry permissions = createPermissions("read", "write", "delete");
+        final File snapshot = folder.newFile("acl.snapshot");
+        createIndex(permissions).save(snapshot);
+        AclIndex.builder(permissions).grant("Document", 1L, "ROLE_USER", "read").build().save(snapshot);
+
+        assertEquals("Snapshot should be replaced", 1, AclIndex.load(snapshot, permissions).size());
+        assertArrayEquals("Temporary file should not be left behind", new String[] {"acl.snapshot"}, folder.getRoot()
+            .list());
+    }
+
+}
@@ -0,0 +1,46 @@
+package pl.ais.commons.infrastructure.security.permission.acl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import pl.ais.commons.infrastructure.security.permission.cache.PermissionDecisionCache;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Verifies {@linkplain AclPermissionEvaluator} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class AclPermissionEvaluatorExpectations {
+
+    private static final Authentication JOHN = new TestingAuthenticationToken("john", null, "ROLE_USER");
+
+    /**
+     * Verifies if the decisions cached according to the replaced index are discarded.
+     */
+    @Test
+    public void shouldDiscardCachedDecisionsWhenIndexIsReplaced() {
+        final PermissionRegistry permissions = new PermissionRegistry();
+        permissions.setPermissions(ImmutableList.of("read", "write"));
+        final PermissionDecisionCache cache = new PermissionDecisionCache();
+        cache.afterPropertiesSet();
+        final AclPermissionEvaluator evaluator = new AclPermissionEvaluator();
+        evaluator.setPermissionRegistry(permissions);
+        evaluator.setDecisionCache(cache);
+        evaluator.setIndex(AclIndex.builder(permissions).grant("Document", 1L, "ROLE_USER", "read").build());
+        evaluator.afterPropertiesSet();
+        assertTrue("Permission should be granted according to the index", evaluator.hasPermission(JOHN, 1L,
+            "Document", "read"));
+
+        evaluator.setIndex(AclIndex.builder(permissions).grant("Document", 2L, "ROLE_USER", "read").build());
+        assertFalse("Permission revoked by the replacement index should not be granted", evaluator.hasPermission(
+            JOHN, 1L, "Document", "read"));
+    }
+
+}
@@ -0,0 +1,184 @@
+package pl.ais.commons.infrastructure.security.permission.async;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import pl.ais.commons.infrastructure.service.ThreadPerTaskExecutor;
+
+/**
+ * Verifies {@linkplain AsyncPermissionEvaluator} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class AsyncPermissionEvaluatorExpectations {
+
+    private static final Authentication JOHN = new TestingAuthenticationToken("john", null);
+
+    private static AsyncPermissionEvaluator createEvaluator(final PermissionEvaluator evaluator,
+        final Executor executor) {
+        final AsyncPermissionEvaluator result = new AsyncPermissionEvaluator();
+        result.setEvaluator(evaluator);
+        result.setExecutor(executor);
+        return result;
+    }
+
+    /**
+     * Verifies if the permission check failing with an exception results in denial.
+     */
+    @Test
+    public void shouldDenyIfCheckFails() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final AsyncPermissionEvaluator evaluator = createEvaluator(new EvenPermissionEvaluator() {
+
+                @Override
+                public boolean hasPermission(final Authentication authentication, final Object target,
+                    final Object permission) {
+                    throw new IllegalStateException("Permission check failed.");
+                }
+
+            }, executor);
+            evaluator.afterPropertiesSet();
+
+            assertFalse("Failed permission check should result in denial", evaluator.hasPermission(JOHN, 2L, "read")
+                .get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verifies if the permission check which cannot be scheduled results in default decision.
+     */
+    @Test
+    public void shouldDenyIfCheckIsRejected() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        final AsyncPermissionEvaluator evaluator = createEvaluator(new EvenPermissionEvaluator(), executor);
+        evaluator.afterPropertiesSet();
+
+        assertFalse("Rejected permission check should result in denial", evaluator.hasPermission(JOHN, 2L, "read")
+            .get(5, TimeUnit.SECONDS));
+        evaluator.setDefaultDecision(true);
+        assertTrue("Rejected permission check should result in default decision", evaluator.hasPermission(JOHN, 1L,
+            "read").get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Verifies if the permission check which doesn't finish before the deadline results in denial, even if it grants
+     * the permission later.
+     */
+    @Test
+    public void shouldDenyIfCheckTimesOut() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final AsyncPermissionEvaluator evaluator = createEvaluator(new EvenPermissionEvaluator() {
+
+                @Override
+                public boolean hasPermission(final Authentication authentication, final Serializable targetId,
+                    final String targetType, final Object permission) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (final InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                    }
+                    finished.countDown();
+                    return true;
+                }
+
+            }, executor);
+            evaluator.setScheduler(scheduler);
+            evaluator.setTimeout(50);
+            evaluator.afterPropertiesSet();
+
+            final Boolean decision = evaluator.hasPermission(JOHN, 2L, "Document", "read").get(5, TimeUnit.SECONDS);
+            release.countDown();
+            assertTrue("Permission check should finish eventually", finished.await(5, TimeUnit.SECONDS));
+            assertFalse("Unfinished permission check should result in denial", decision);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Verifies if the permission checks for the whole page run concurrently, and their decisions are provided in the
+     * order of the checks.
+     */
+    @Test
+    public void shouldRunPageChecksConcurrently() throws Exception {
+        final int pageSize = 8;
+        final CountDownLatch running = new CountDownLatch(pageSize);
+        final AsyncPermissionEvaluator evaluator = createEvaluator(new EvenPermissionEvaluator() {
+
+            @Override
+            public boolean hasPermission(final Authentication authentication, final Object target,
+                final Object permission) {
+
+                // Each check waits for all the other ones, so the page is checked only if they run concurrently.
+                running.countDown();
+                try {
+                    running.await(5, TimeUnit.SECONDS);
+                } catch (final InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.hasPermission(authentication, target, permission);
+            }
+
+        }, ThreadPerTaskExecutor.virtualIfSupported("permission-check-"));
+        evaluator.afterPropertiesSet();
+
+        final List<PermissionCheck> checks = new ArrayList<>();
+        for (long target = 0; target < pageSize; target++) {
+            checks.add(PermissionCheck.of(target, "read"));
+        }
+        final List<Boolean> decisions = evaluator.hasPermissions(JOHN, checks).get(5, TimeUnit.SECONDS);
+
+        assertEquals("All the checks should run concurrently", 0, running.getCount());
+        for (int index = 0; index < pageSize; index++) {
+            assertEquals("Decisions should be provided in the order of the checks", 0 == index % 2, decisions.get(
+                index));
+        }
+    }
+
+    /**
+     * Permission evaluator granting the permissions for the targets having even identifiers.
+     */
+    private static class EvenPermissionEvaluator implements PermissionEvaluator {
+
+        @Override
+        public boolean hasPermission(final Authentication authentication, final Object target,
+            final Object permission) {
+            return 0 == ((Long) target) % 2;
+        }
+
+        @Override
+        public boolean hasPermission(final Authentication authentication, final Serializable targetId,
+            final String targetType, final Object permission) {
+            return 0 == ((Long) targetId) % 2;
+        }
+
+    }
+
+}
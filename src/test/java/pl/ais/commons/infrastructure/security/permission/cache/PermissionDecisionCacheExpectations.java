@@ -0,0 +1,191 @@
+package pl.ais.commons.infrastructure.security.permission.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Verifies {@linkplain PermissionDecisionCache} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class PermissionDecisionCacheExpectations {
+
+    private static final Authentication JANE = new TestingAuthenticationToken("jane", null, "ROLE_USER");
+
+    private static final Authentication JOHN = new TestingAuthenticationToken("john", null, "ROLE_USER");
+
+    private static PermissionDecisionCache createCache() {
+        final PermissionDecisionCache result = new PermissionDecisionCache();
+        result.afterPropertiesSet();
+        return result;
+    }
+
+    private static PermissionDecisionCache createCache(final long timeToLive) {
+        final PermissionDecisionCache result = new PermissionDecisionCache();
+        result.setGrantTimeToLive(timeToLive);
+        result.setDenialTimeToLive(timeToLive);
+        result.afterPropertiesSet();
+        return result;
+    }
+
+    private static byte[] snapshotOf(final PermissionDecisionCache cache) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(result)) {
+            cache.writeSnapshot(out);
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Verifies if the cached decisions are provided, and the hits and misses are counted.
+     */
+    @Test
+    public void shouldCountHitsAndMisses() {
+        final PermissionDecisionCache cache = createCache();
+        final DecisionKey granted = cache.keyFor(JOHN, "Document", 1L, "read");
+        final DecisionKey denied = cache.keyFor(JOHN, "Document", 1L, "write");
+
+        assertNull("There should be no decision initially", cache.get(granted));
+        cache.put(granted, true);
+        cache.put(denied, false);
+
+        assertEquals("Grant should be cached", Boolean.TRUE, cache.get(granted));
+        assertEquals("Denial should be cached", Boolean.FALSE, cache.get(denied));
+        assertEquals("Hits should be counted", 2, cache.getStats().hitCount());
+        assertEquals("Misses should be counted", 1, cache.getStats().missCount());
+    }
+
+    /**
+     * Verifies if the decision found current after an unrelated invalidation is still discarded when its own scope
+     * is invalidated later.
+     */
+    @Test
+    public void shouldDiscardDecisionInvalidatedAfterVerification() {
+        final PermissionDecisionCache cache = createCache();
+        final DecisionKey key = cache.keyFor(JOHN, "Document", 1L, "read");
+        cache.put(key, true);
+
+        cache.invalidateTarget("Document", 2L);
+        assertEquals("Decision should survive unrelated invalidation", Boolean.TRUE, cache.get(key));
+        assertEquals("Verified decision should be provided again", Boolean.TRUE, cache.get(key));
+
+        cache.invalidateUser("john");
+        assertNull("Decision should be discarded once its scope is invalidated", cache.get(key));
+    }
+
+    /**
+     * Verifies if all the decisions regarding invalidated target are discarded.
+     */
+    @Test
+    public void shouldDiscardDecisionsRegardingInvalidatedTarget() {
+        final PermissionDecisionCache cache = createCache();
+        final DecisionKey first = cache.keyFor(JOHN, "Document", 1L, "read");
+        final DecisionKey second = cache.keyFor(JANE, "Document", 1L, "write");
+        final DecisionKey other = cache.keyFor(JOHN, "Document", 2L, "read");
+        final DecisionKey otherType = cache.keyFor(JOHN, "Folder", 1L, "read");
+        cache.put(first, true);
+        cache.put(second, false);
+        cache.put(other, true);
+        cache.put(otherType, true);
+
+        cache.invalidateTarget("Document", 1L);
+
+        assertNull("Decision regarding invalidated target should be discarded", cache.get(first));
+        assertNull("Decision regarding invalidated target should be discarded", cache.get(second));
+        assertEquals("Decision regarding other target should be kept", Boolean.TRUE, cache.get(other));
+        assertEquals("Decision regarding other target type should be kept", Boolean.TRUE, cache.get(otherType));
+
+        cache.invalidateTargetType("Document");
+
+        assertNull("Decision regarding invalidated target type should be discarded", cache.get(other));
+        assertEquals("Decision regarding other target type should be kept", Boolean.TRUE, cache.get(otherType));
+    }
+
+    /**
+     * Verifies if all the decisions regarding invalidated user are discarded.
+     */
+    @Test
+    public void shouldDiscardDecisionsRegardingInvalidatedUser() {
+        final PermissionDecisionCache cache = createCache();
+        final DecisionKey johns = cache.keyFor(JOHN, "Document", 1L, "read");
+        final DecisionKey janes = cache.keyFor(JANE, "Document", 1L, "read");
+        cache.put(johns, true);
+        cache.put(janes, true);
+
+        cache.invalidateUser("john");
+
+        assertNull("Decision regarding invalidated user should be discarded", cache.get(johns));
+        assertEquals("Decision regarding other user should be kept", Boolean.TRUE, cache.get(janes));
+
+        cache.put(johns, false);
+        assertEquals("Decision made after invalidation should be cached", Boolean.FALSE, cache.get(johns));
+    }
+
+    /**
+     * Verifies if the decisions restored from the snapshot are discarded once their time to live, counted from the
+     * moment they were made, elapses.
+     */
+    @Test
+    public void shouldKeepRestoredDecisionsForRemainingTimeToLive() throws IOException, InterruptedException {
+        final PermissionDecisionCache source = createCache(2000);
+        final DecisionKey granted = source.keyFor(JOHN, "Document", 1L, "read");
+        final DecisionKey denied = source.keyFor(JOHN, "Document", 1L, "write");
+        source.put(granted, true);
+        source.put(denied, false);
+        Thread.sleep(300);
+        final byte[] snapshot = snapshotOf(source);
+
+        // Verify if the decisions which would be older than their time to live are not restored, ...
+        final PermissionDecisionCache stale = createCache(2000);
+        assertEquals("Decisions older than their time to live should not be restored", 0, stale.readSnapshot(
+            new DataInputStream(new ByteArrayInputStream(snapshot)), 1800));
+
+        // ... and if the restored decisions expire once their remaining time to live elapses.
+        final PermissionDecisionCache restored = createCache(2000);
+        assertEquals("Decisions younger than their time to live should be restored", 2, restored.readSnapshot(
+            new DataInputStream(new ByteArrayInputStream(snapshot)), 1000));
+        assertEquals("Restored grant should be provided", Boolean.TRUE, restored.get(granted));
+        assertEquals("Restored denial should be provided", Boolean.FALSE, restored.get(denied));
+        Thread.sleep(1000);
+        assertNull("Restored grant should expire with its remaining time to live", restored.get(granted));
+        assertNull("Restored denial should expire with its remaining time to live", restored.get(denied));
+    }
+
+    /**
+     * Verifies if the decision made concurrently with the invalidation is not cached.
+     */
+    @Test
+    public void shouldNotCacheDecisionMadeBeforeInvalidation() {
+        final PermissionDecisionCache cache = createCache();
+        final DecisionKey key = cache.keyFor(JOHN, "Document", 1L, "read");
+
+        final long generation = cache.getGeneration();
+        cache.invalidateTarget("Document", 1L);
+        cache.put(key, true, generation);
+
+        assertNull("Decision made before the invalidation should not be cached", cache.get(key));
+    }
+
+    /**
+     * Verifies if the authority part of the decision key is built once per authentication.
+     */
+    @Test
+    public void shouldReuseAuthoritiesOfAuthentication() {
+        final PermissionDecisionCache cache = createCache();
+        assertSame("Authorities should be reused for the same authentication", cache.keyFor(JOHN, "Document", 1L,
+            "read").getAuthorities(), cache.keyFor(JOHN, "Folder", 2L, "write").getAuthorities());
+    }
+
+}
@@ -0,0 +1,264 @@
+package pl.ais.commons.infrastructure.security.permission.evaluators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import pl.ais.commons.infrastructure.metrics.MetricsSink;
+import pl.ais.commons.infrastructure.metrics.SecurityMetrics;
+import pl.ais.commons.infrastructure.security.permission.cache.PermissionDecisionCache;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Verifies {@linkplain AbstractChainedPermissionEvaluator} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class AbstractChainedPermissionEvaluatorExpectations {
+
+    private static final Authentication JOHN = new TestingAuthenticationToken("john", null, "ROLE_USER");
+
+    private static final List<Long> TARGET_IDS = ImmutableList.of(7L, 4L, 2L, 9L, 8L, 3L, 6L, 12L, 5L);
+
+    /**
+     * Creates the chain verifying even targets (granting the multiples of 4) first, and the other targets (granting
+     * the multiples of 3) next.
+     */
+    private static ModuloEvaluator createChain(final PermissionDecisionCache cache) {
+        final ModuloEvaluator result = new ModuloEvaluator(true, 4);
+        final ModuloEvaluator next = new ModuloEvaluator(false, 3);
+        result.setNextEvaluator(next);
+        result.setDecisionCache(cache);
+        next.setDecisionCache(cache);
+        return result;
+    }
+
+    private static BitSet expectedGrants() {
+        final BitSet result = new BitSet();
+        for (int index = 0; index < TARGET_IDS.size(); index++) {
+            final long targetId = TARGET_IDS.get(index);
+            result.set(index, (0 == targetId % 2) ? (0 == targetId % 4) : (0 == targetId % 3));
+        }
+        return result;
+    }
+
+    /**
+     * Verifies if the decision made concurrently with the invalidation of its target is not cached.
+     */
+    @Test
+    public void shouldNotCacheDecisionRevokedWhileBeingMade() throws Exception {
+        final PermissionDecisionCache cache = new PermissionDecisionCache();
+        cache.afterPropertiesSet();
+        final BlockingEvaluator evaluator = new BlockingEvaluator();
+        evaluator.setDecisionCache(cache);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+
+            // Start making the decision, revoke the permission while it is being made, ...
+            final Future<Boolean> decision = executor.submit(new Callable<Boolean>() {
+
+                @Override
+                public Boolean call() {
+                    return evaluator.hasPermission(JOHN, 1L, "Document", "read");
+                }
+
+            });
+            assertTrue("Decision should be started", evaluator.started.await(5, TimeUnit.SECONDS));
+            evaluator.granted = false;
+            cache.invalidateTarget("Document", 1L);
+            evaluator.release.countDown();
+            assertTrue("Decision made before revocation should be granted", decision.get(5, TimeUnit.SECONDS));
+
+            // ... and verify if the revoked grant is not served from the cache.
+            assertFalse("Revoked permission should be denied", evaluator.hasPermission(JOHN, 1L, "Document", "read"));
+            assertEquals("Decision should be made again", 2, evaluator.decisions.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verifies if the decisions made in batch, and the targets falling through the whole chain are recorded.
+     */
+    @Test
+    public void shouldRecordBulkDecisions() {
+        final SecurityMetrics metrics = new SecurityMetrics();
+        final ModuloEvaluator evaluator = new ModuloEvaluator(true, 4);
+        evaluator.setMetricsSink(metrics);
+        final String prefix = MetricsSink.PERMISSION_PREFIX + ModuloEvaluator.class.getName();
+
+        evaluator.hasPermissions(JOHN, TARGET_IDS, "Document", "read");
+        assertEquals("Grants made in batch should be recorded", 3, metrics.getCount(prefix + ".granted"));
+        assertEquals("Denials made in batch should be recorded", 2, metrics.getCount(prefix + ".denied"));
+        assertEquals("Targets falling through the chain should be recorded", 4, metrics
+            .getCount(MetricsSink.DENIED_BY_FALLTHROUGH));
+
+        evaluator.hasPermissions(JOHN, (Collection<?>) TARGET_IDS, "read");
+        assertEquals("Grants made in batch should be recorded", 6, metrics.getCount(prefix + ".granted"));
+        assertEquals("Targets falling through the chain should be recorded", 8, metrics
+            .getCount(MetricsSink.DENIED_BY_FALLTHROUGH));
+    }
+
+    /**
+     * Verifies if the decisions regarding the targets are reported in the order of given targets, regardless of the
+     * evaluator making them.
+     */
+    @Test
+    public void shouldReportBulkDecisionsInTargetsOrder() {
+        final ModuloEvaluator evaluator = createChain(null);
+
+        assertEquals("Decisions should be reported in the order of target identifiers", expectedGrants(), evaluator
+            .hasPermissions(JOHN, TARGET_IDS, "Document", "read"));
+        assertEquals("Decisions should be reported in the order of targets", expectedGrants(), evaluator
+            .hasPermissions(JOHN, (Collection<?>) TARGET_IDS, "read"));
+        assertEquals("Each evaluator should verify its targets in single batch per call", 2, evaluator.batches.get());
+        assertEquals("Each evaluator should verify its targets in single batch per call", 2,
+            ((ModuloEvaluator) evaluator.getNextEvaluator()).batches.get());
+    }
+
+    /**
+     * Verifies if the cached decisions are merged with the ones being made, in the order of given targets.
+     */
+    @Test
+    public void shouldReportBulkDecisionsInTargetsOrderUsingCache() {
+        final PermissionDecisionCache cache = new PermissionDecisionCache();
+        cache.afterPropertiesSet();
+        final ModuloEvaluator evaluator = createChain(cache);
+        evaluator.hasPermission(JOHN, 4L, "Document", "read");
+        evaluator.hasPermission(JOHN, 9L, "Document", "read");
+        evaluator.hasPermission(JOHN, 7L, "Document", "read");
+
+        assertEquals("Decisions should be reported in the order of target identifiers", expectedGrants(), evaluator
+            .hasPermissions(JOHN, TARGET_IDS, "Document", "read"));
+        assertEquals("Cached decisions should not be made again", TARGET_IDS.size(), evaluator.decisions.get()
+            + ((ModuloEvaluator) evaluator.getNextEvaluator()).decisions.get());
+    }
+
+    /**
+     * Evaluator supporting either even, or odd targets, and granting the permissions regarding the multiples of given
+     * divisor.
+     */
+    private static final class ModuloEvaluator extends AbstractChainedPermissionEvaluator {
+
+        final AtomicInteger batches = new AtomicInteger();
+
+        final AtomicInteger decisions = new AtomicInteger();
+
+        private final long divisor;
+
+        private final boolean even;
+
+        ModuloEvaluator(final boolean even, final long divisor) {
+            this.even = even;
+            this.divisor = divisor;
+        }
+
+        @Override
+        protected boolean isPermissionGranted(final Authentication authentication, final Object target,
+            final Object permission) {
+            decisions.incrementAndGet();
+            return 0 == (Long) target % divisor;
+        }
+
+        @Override
+        protected boolean isPermissionGranted(final Authentication authentication, final Serializable targetId,
+            final String targetType, final Object permission) {
+            decisions.incrementAndGet();
+            return 0 == (Long) targetId % divisor;
+        }
+
+        @Override
+        protected BitSet isPermissionGrantedInBatch(final Authentication authentication, final List<?> targets,
+            final Object permission) {
+            batches.incrementAndGet();
+            return super.isPermissionGrantedInBatch(authentication, targets, permission);
+        }
+
+        @Override
+        protected BitSet isPermissionGrantedInBatch(final Authentication authentication,
+            final List<? extends Serializable> targetIds, final String targetType, final Object permission) {
+            batches.incrementAndGet();
+            return super.isPermissionGrantedInBatch(authentication, targetIds, targetType, permission);
+        }
+
+        @Override
+        protected boolean supportsTarget(final Authentication authentication, final Object target,
+            final Object permission) {
+            return !even || 0 == (Long) target % 2;
+        }
+
+        @Override
+        protected boolean supportsTargetType(final Authentication authentication, final Serializable targetId,
+            final String targetType, final Object permission) {
+            return !even || 0 == (Long) targetId % 2;
+        }
+
+    }
+
+    /**
+     * Evaluator granting the permissions once released.
+     */
+    private static final class BlockingEvaluator extends AbstractChainedPermissionEvaluator {
+
+        final AtomicInteger decisions = new AtomicInteger();
+
+        volatile boolean granted = true;
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final CountDownLatch started = new CountDownLatch(1);
+
+        @Override
+        protected boolean isPermissionGranted(final Authentication authentication, final Object target,
+            final Object permission) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected boolean isPermissionGranted(final Authentication authentication, final Serializable targetId,
+            final String targetType, final Object permission) {
+            final boolean result = granted;
+            decisions.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            return result;
+        }
+
+        @Override
+        protected boolean supportsTarget(final Authentication authentication, final Object target,
+            final Object permission) {
+            return false;
+        }
+
+        @Override
+        protected boolean supportsTargetType(final Authentication authentication, final Serializable targetId,
+            final String targetType, final Object permission) {
+            return true;
+        }
+
+    }
+
+}
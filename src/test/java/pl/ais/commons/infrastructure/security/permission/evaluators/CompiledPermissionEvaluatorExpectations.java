@@ -0,0 +1,111 @@
+package pl.ais.commons.infrastructure.security.permission.evaluators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import pl.ais.commons.infrastructure.metrics.MetricsSink;
+import pl.ais.commons.infrastructure.metrics.SecurityMetrics;
+
+/**
+ * Verifies {@linkplain CompiledPermissionEvaluator} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class CompiledPermissionEvaluatorExpectations {
+
+    private static final Authentication JOHN = new TestingAuthenticationToken("john", null, "ROLE_USER");
+
+    private static CompiledPermissionEvaluator compile() {
+        final GrantingEvaluator granting = new GrantingEvaluator();
+        granting.setNextEvaluator(new DenyAllChainedPermissionEvaluator());
+        return new CompiledPermissionEvaluator(granting);
+    }
+
+    /**
+     * Verifies if the permission checks regarding declared target type are dispatched to the declaring evaluator.
+     */
+    @Test
+    public void shouldDispatchDeclaredTypeToDeclaringEvaluator() {
+        final CompiledPermissionEvaluator evaluator = compile();
+
+        assertTrue("Declared type should be dispatched to declaring evaluator", evaluator.hasPermission(JOHN, 1L,
+            "Document", "read"));
+        assertTrue("Type named 'null' should be dispatched to declaring evaluator", evaluator.hasPermission(JOHN, 1L,
+            "null", "read"));
+    }
+
+    /**
+     * Verifies if the permission checks regarding other (or missing) target type fall through the chain.
+     */
+    @Test
+    public void shouldDispatchOtherTypesThroughChain() {
+        final CompiledPermissionEvaluator evaluator = compile();
+
+        assertFalse("Missing type should not share the dispatch with type named 'null'", evaluator.hasPermission(JOHN,
+            1L, null, "read"));
+        for (int index = 0; index < 100; index++) {
+            assertFalse("Other types should fall through the chain", evaluator.hasPermission(JOHN, 1L, "Type"
+                + index, "read"));
+        }
+    }
+
+    /**
+     * Verifies if the permission checks falling through the whole compiled chain are recorded.
+     */
+    @Test
+    public void shouldRecordFallthrough() {
+        final SecurityMetrics metrics = new SecurityMetrics();
+        final GrantingEvaluator granting = new GrantingEvaluator();
+        granting.setMetricsSink(metrics);
+        final CompiledPermissionEvaluator evaluator = new CompiledPermissionEvaluator(granting);
+
+        assertTrue("Declared type should be dispatched to declaring evaluator", evaluator.hasPermission(JOHN, 1L,
+            "Document", "read"));
+        assertFalse("Other types should fall through the chain", evaluator.hasPermission(JOHN, 1L, "Folder", "read"));
+        assertFalse("Unsupported targets should fall through the chain", evaluator.hasPermission(JOHN, "Document",
+            "read"));
+        assertEquals("Permission checks falling through the chain should be recorded", 2, metrics
+            .getCount(MetricsSink.DENIED_BY_FALLTHROUGH));
+    }
+
+    /**
+     * Evaluator granting all the permissions regarding declared target types.
+     */
+    @SupportedTargets(types = {"Document", "null"})
+    private static final class GrantingEvaluator extends AbstractChainedPermissionEvaluator {
+
+        @Override
+        protected boolean isPermissionGranted(final Authentication authentication, final Object target,
+            final Object permission) {
+            return true;
+        }
+
+        @Override
+        protected boolean isPermissionGranted(final Authentication authentication, final Serializable targetId,
+            final String targetType, final Object permission) {
+            return true;
+        }
+
+        @Override
+        protected boolean supportsTarget(final Authentication authentication, final Object target,
+            final Object permission) {
+            return false;
+        }
+
+        @Override
+        protected boolean supportsTargetType(final Authentication authentication, final Serializable targetId,
+            final String targetType, final Object permission) {
+            return "Document".equals(targetType) || "null".equals(targetType);
+        }
+
+    }
+
+}
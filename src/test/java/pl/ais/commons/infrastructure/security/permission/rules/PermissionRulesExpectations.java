@@ -0,0 +1,174 @@
+package pl.ais.commons.infrastructure.security.permission.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+/**
+ * Verifies {@linkplain PermissionRules} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class PermissionRulesExpectations {
+
+    private static final List<GrantedAuthority> ACCOUNTANT = AuthorityUtils.createAuthorityList("ROLE_ACCOUNTANT");
+
+    private static final List<GrantedAuthority> ADMIN = AuthorityUtils.createAuthorityList("ROLE_ADMIN");
+
+    private static final List<GrantedAuthority> MANAGER = AuthorityUtils.createAuthorityList("ROLE_MANAGER");
+
+    private static final List<GrantedAuthority> USER = AuthorityUtils.createAuthorityList("ROLE_USER");
+
+    private static void assertRejected(final String rules, final String expectedMessage) throws IOException {
+        try {
+            parse(rules);
+            fail("Rules should be rejected: " + rules);
+        } catch (final IllegalArgumentException exception) {
+            assertTrue("Failure should describe the problem: " + expectedMessage, exception.getMessage().contains(
+                expectedMessage));
+        }
+    }
+
+    private static PermissionRules parse(final String rules) throws IOException {
+        return PermissionRules.parse(new StringReader(rules), PermissionRulesExpectations.class.getClassLoader());
+    }
+
+    /**
+     * Verifies if the permissions are granted only if all the conditions of any rule match the target.
+     */
+    @Test
+    public void shouldMatchConditions() throws IOException {
+        final PermissionRules rules = parse(Invoice.class.getName() + " : approve : ROLE_MANAGER : status=DRAFT, "
+            + "archived=false\n" + Invoice.class.getName() + " : approve : ROLE_MANAGER : status=SENT, archived=true");
+
+        assertTrue("Permission should be granted if all the conditions match", rules.isGranted(MANAGER, new Invoice(
+            "DRAFT", false), "approve"));
+        assertTrue("Permission should be granted if all the conditions of alternative rule match", rules.isGranted(
+            MANAGER, new Invoice("SENT", true), "approve"));
+        assertFalse("Permission should not be granted if any of the conditions doesn't match", rules.isGranted(
+            MANAGER, new Invoice("DRAFT", true), "approve"));
+        assertFalse("Permission should not be granted to other authorities", rules.isGranted(USER, new Invoice(
+            "DRAFT", false), "approve"));
+        assertFalse("Rules having conditions should not match the targets identified by type name", rules.isGranted(
+            MANAGER, Invoice.class.getName(), "approve"));
+    }
+
+    /**
+     * Verifies if the rules for the target class are merged with the rules for all its supertypes.
+     */
+    @Test
+    public void shouldMergeRulesOfSupertypes() throws IOException {
+        final PermissionRules rules = parse("# Rules for all the supertypes of the invoice.\n"
+            + Document.class.getName() + " : read : ROLE_USER\n"
+            + Archivable.class.getName() + " : delete : ROLE_ADMIN : archived=true\n"
+            + Invoice.class.getName() + " : read : ROLE_ACCOUNTANT\n"
+            + Invoice.class.getName() + " : delete : ROLE_ADMIN : status=DRAFT\n");
+        final Invoice invoice = new Invoice("SENT", true);
+
+        assertTrue("Rules for the superclass should apply", rules.isGranted(USER, invoice, "read"));
+        assertTrue("Rules for the class itself should apply", rules.isGranted(ACCOUNTANT, invoice, "read"));
+        assertFalse("Rules for the subclass should not apply to the superclass", rules.isGranted(ACCOUNTANT,
+            new Document(), "read"));
+        assertTrue("Rules for the interface should apply", rules.isGranted(ADMIN, invoice, "delete"));
+        assertTrue("Rules for the class itself should be alternatives to the inherited ones", rules.isGranted(ADMIN,
+            new Invoice("DRAFT", false), "delete"));
+        assertFalse("Permission should not be granted if none of merged rules matches", rules.isGranted(ADMIN,
+            new Invoice("SENT", false), "delete"));
+        assertTrue("Class should be supported if there are rules for its supertypes", rules.supports(
+            SpecialInvoice.class));
+        assertFalse("Class should not be supported if there are no rules for it", rules.supports(String.class));
+    }
+
+    /**
+     * Verifies if the rules having conditions referring to unknown target type or attribute are rejected.
+     */
+    @Test
+    public void shouldRejectConditionsReferringToUnknownAttributes() throws IOException {
+        assertRejected(Invoice.class.getName() + " : approve : ROLE_MANAGER : amount=0", "unknown attribute 'amount'");
+        assertRejected("com.example.Unknown : approve : ROLE_MANAGER : status=DRAFT", "target type is unknown");
+    }
+
+    /**
+     * Verifies if the rules overlapping with other ones (and so never changing the decision) are rejected.
+     */
+    @Test
+    public void shouldRejectUnreachableRules() throws IOException {
+        final String invoice = Invoice.class.getName();
+        assertRejected(invoice + " : approve : ROLE_MANAGER : status=DRAFT\n" + invoice
+            + " : approve : ROLE_ADMIN, ROLE_MANAGER : status=DRAFT", "Rule at line 2 is unreachable, rule at line 1"
+            + " already grants 'approve' on '" + invoice + "' to 'ROLE_MANAGER' under the same conditions.");
+        assertRejected(invoice + " : approve : ROLE_MANAGER\n\n" + invoice
+            + " : approve : ROLE_MANAGER : status=DRAFT", "Rule at line 3 is unreachable, rule at line 1");
+        assertRejected(invoice + " : approve : ROLE_MANAGER : status=DRAFT, archived=false\n" + invoice
+            + " : approve : ROLE_MANAGER : status=DRAFT", "Rule at line 1 is unreachable, rule at line 2 already "
+            + "grants 'approve' on '" + invoice + "' to 'ROLE_MANAGER' under fewer conditions.");
+
+        // Verify if the rules differing in conditions, permission or authority are accepted.
+        assertEquals("Rules not overlapping should be accepted", 4, parse(invoice
+            + " : approve : ROLE_MANAGER : status=DRAFT\n" + invoice + " : approve : ROLE_MANAGER : status=SENT\n"
+            + invoice + " : approve : ROLE_ADMIN\n" + invoice + " : read : ROLE_MANAGER").size());
+    }
+
+    /**
+     * Target interface.
+     */
+    public interface Archivable {
+
+        boolean isArchived();
+
+    }
+
+    /**
+     * Target class.
+     */
+    public static class Document {
+
+    }
+
+    /**
+     * Target subclass having attributes.
+     */
+    public static class Invoice extends Document implements Archivable {
+
+        private final boolean archived;
+
+        private final String status;
+
+        Invoice(final String status, final boolean archived) {
+            this.status = status;
+            this.archived = archived;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        @Override
+        public boolean isArchived() {
+            return archived;
+        }
+
+    }
+
+    /**
+     * Target subclass not having its own rules.
+     */
+    public static class SpecialInvoice extends Invoice {
+
+        SpecialInvoice() {
+            super("DRAFT", false);
+        }
+
+    }
+
+}
@@ -0,0 +1,114 @@
+package pl.ais.commons.infrastructure.security.permission.rules;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import pl.ais.commons.infrastructure.security.permission.cache.PermissionDecisionCache;
+
+/**
+ * Verifies {@linkplain RuleBasedPermissionEvaluator} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class RuleBasedPermissionEvaluatorExpectations {
+
+    private static final Authentication JOHN = new TestingAuthenticationToken("john", null, "ROLE_MANAGER");
+
+    private static RuleBasedPermissionEvaluator createEvaluator(final String rules) throws IOException {
+        final PermissionDecisionCache cache = new PermissionDecisionCache();
+        cache.setCachingObjectTargets(true);
+        cache.afterPropertiesSet();
+        final RuleBasedPermissionEvaluator result = new RuleBasedPermissionEvaluator();
+        result.setDecisionCache(cache);
+        result.setRules(parse(rules));
+        result.afterPropertiesSet();
+        return result;
+    }
+
+    private static PermissionRules parse(final String rules) throws IOException {
+        return PermissionRules.parse(new StringReader(rules), RuleBasedPermissionEvaluatorExpectations.class
+            .getClassLoader());
+    }
+
+    /**
+     * Verifies if the decisions cached according to the replaced rules are discarded.
+     */
+    @Test
+    public void shouldDiscardCachedDecisionsWhenRulesAreReplaced() throws IOException {
+        final RuleBasedPermissionEvaluator evaluator = createEvaluator(Order.class.getName()
+            + " : approve : ROLE_MANAGER");
+        assertTrue("Permission should be granted according to the rules", evaluator.hasPermission(JOHN, 1L, Order.class
+            .getName(), "approve"));
+        assertTrue("Permission should be granted on target object according to the rules", evaluator.hasPermission(
+            JOHN, new Order(1L, "DRAFT"), "approve"));
+
+        evaluator.setRules(parse(Order.class.getName() + " : approve : ROLE_ADMIN"));
+        assertFalse("Permission revoked by the replacement rules should not be granted", evaluator.hasPermission(JOHN,
+            1L, Order.class.getName(), "approve"));
+        assertFalse("Permission on target object revoked by the replacement rules should not be granted", evaluator
+            .hasPermission(JOHN, new Order(1L, "DRAFT"), "approve"));
+    }
+
+    /**
+     * Verifies if the decisions made by the rules having conditions are not cached, as they depend on the state of the
+     * target, which can change while the target remains equal to the one for which the decision was made.
+     */
+    @Test
+    public void shouldNotCacheDecisionsDependingOnTargetState() throws IOException {
+        final RuleBasedPermissionEvaluator evaluator = createEvaluator(Order.class.getName()
+            + " : approve : ROLE_MANAGER : status=DRAFT");
+        final Order order = new Order(1L, "DRAFT");
+        assertTrue("Permission should be granted if the conditions match", evaluator.hasPermission(JOHN, order,
+            "approve"));
+
+        order.status = "SENT";
+        assertFalse("Permission should not be granted once the target no longer matches the conditions", evaluator
+            .hasPermission(JOHN, order, "approve"));
+        assertFalse("Permission should not be granted in batch once the target no longer matches the conditions",
+            evaluator.hasPermissions(JOHN, Collections.singletonList(order), "approve").get(0));
+    }
+
+    /**
+     * Target having attributes, equal to other targets having the same identifier.
+     */
+    public static final class Order {
+
+        private final Long id;
+
+        String status;
+
+        Order(final Long id, final String status) {
+            this.id = id;
+            this.status = status;
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            return (object instanceof Order) && id.equals(((Order) object).id);
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+
+    }
+
+}
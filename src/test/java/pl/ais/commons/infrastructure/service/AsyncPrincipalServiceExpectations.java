@@ -0,0 +1,145 @@
+package pl.ais.commons.infrastructure.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.security.Principal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+
+import pl.ais.commons.application.service.PrincipalService;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Verifies {@linkplain AsyncPrincipalService} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class AsyncPrincipalServiceExpectations {
+
+    private static final Principal JOHN = new TestingAuthenticationToken("john", null);
+
+    private static AsyncPrincipalService createService(final PrincipalService delegate, final Executor executor) {
+        final AsyncPrincipalService result = new AsyncPrincipalService();
+        result.setDelegate(delegate);
+        result.setExecutor(executor);
+        return result;
+    }
+
+    private static Throwable failureOf(final ListenableFuture<?> future) throws InterruptedException,
+        TimeoutException {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Unwrapping should fail");
+            return null;
+        } catch (final ExecutionException exception) {
+            return exception.getCause();
+        }
+    }
+
+    /**
+     * Verifies if the unwrapping which cannot be scheduled fails with {@link RejectedExecutionException}.
+     */
+    @Test
+    public void shouldPropagateRejection() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        final AsyncPrincipalService service = createService(new NamePrincipalService(), executor);
+        service.afterPropertiesSet();
+
+        assertTrue("Rejection should be propagated", failureOf(service.unwrap(JOHN, String.class))
+            instanceof RejectedExecutionException);
+    }
+
+    /**
+     * Verifies if the unwrapping failure is propagated through the future result.
+     */
+    @Test
+    public void shouldPropagateUnwrappingFailure() throws Exception {
+        final IllegalStateException failure = new IllegalStateException("Unwrapping failed.");
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final AsyncPrincipalService service = createService(new PrincipalService() {
+
+                @Override
+                public <T> T unwrap(final Principal principal, final Class<T> asClass) {
+                    throw failure;
+                }
+
+            }, executor);
+            service.afterPropertiesSet();
+
+            assertSame("Unwrapping failure should be propagated", failure, failureOf(service.unwrap(JOHN,
+                String.class)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verifies if the unwrapping which doesn't finish before the deadline fails with {@link TimeoutException}.
+     */
+    @Test
+    public void shouldTimeOutUnfinishedUnwrapping() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final AsyncPrincipalService service = createService(new NamePrincipalService() {
+
+                @Override
+                public <T> T unwrap(final Principal principal, final Class<T> asClass) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (final InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return super.unwrap(principal, asClass);
+                }
+
+            }, executor);
+            service.setScheduler(scheduler);
+            service.setTimeout(50);
+            service.afterPropertiesSet();
+
+            final ListenableFuture<String> unwrapped = service.unwrap(JOHN, String.class);
+            assertTrue("Unfinished unwrapping should time out", failureOf(unwrapped) instanceof TimeoutException);
+            release.countDown();
+
+            service.setTimeout(0);
+            assertEquals("Unwrapping finished in time should succeed", "john", service.unwrap(JOHN, String.class)
+                .get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Principal service unwrapping the principals as their names.
+     */
+    private static class NamePrincipalService implements PrincipalService {
+
+        @Override
+        public <T> T unwrap(final Principal principal, final Class<T> asClass) {
+            return asClass.cast(principal.getName());
+        }
+
+    }
+
+}
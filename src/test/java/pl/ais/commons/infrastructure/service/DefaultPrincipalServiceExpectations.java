@@ -0,0 +1,144 @@
+package pl.ais.commons.infrastructure.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.Principal;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+
+import pl.ais.commons.application.service.PrincipalTransformer;
+import pl.ais.commons.infrastructure.registry.PrincipalRegistry;
+
+/**
+ * Verifies {@linkplain DefaultPrincipalService} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class DefaultPrincipalServiceExpectations {
+
+    private static final Principal JOHN = new TestingAuthenticationToken("john", null);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Creates the bean factory loading the beans using class loader which sees given registry entries.
+     */
+    private DefaultListableBeanFactory createFactory(final String... registryEntries) throws IOException {
+        final File registry = new File(folder.getRoot(), PrincipalRegistry.LOCATION);
+        assertTrue("Registry directory should be created", registry.getParentFile().mkdirs());
+        Files.write(registry.toPath(), Arrays.asList(registryEntries), StandardCharsets.ISO_8859_1);
+
+        final DefaultListableBeanFactory result = new DefaultListableBeanFactory();
+        result.setBeanClassLoader(new URLClassLoader(new URL[] {folder.getRoot().toURI().toURL()}, getClass()
+            .getClassLoader()));
+        return result;
+    }
+
+    private static DefaultPrincipalService createService(final DefaultListableBeanFactory factory) {
+        final DefaultPrincipalService result = new DefaultPrincipalService();
+        result.setBeanFactory(factory);
+        result.initialize();
+        return result;
+    }
+
+    /**
+     * Verifies if the bean registered under transformer name, but being of other class, is fetched and used as is.
+     */
+    @Test
+    public void shouldFetchBeanNotMatchingRegisteredTransformer() throws IOException {
+        final DefaultListableBeanFactory factory = createFactory(PrincipalRegistry.TRANSFORMER_PREFIX
+            + "nameTransformer=" + NameTransformer.class.getName() + "," + String.class.getName());
+        factory.registerBeanDefinition("nameTransformer", new RootBeanDefinition(LengthTransformer.class));
+        final DefaultPrincipalService service = createService(factory);
+
+        assertEquals("Bean should be used as transformer into its own return type", Integer.valueOf(4), service
+            .unwrap(JOHN, Integer.class));
+    }
+
+    /**
+     * Verifies if the registered transformer is fetched on first use, and used even if it declares narrower return
+     * type than the registered one.
+     */
+    @Test
+    public void shouldFetchRegisteredTransformerLazily() throws IOException {
+        final DefaultListableBeanFactory factory = createFactory(PrincipalRegistry.TRANSFORMER_PREFIX
+            + "narrowingTransformer=" + NarrowingTransformer.class.getName() + "," + CharSequence.class.getName());
+        factory.registerBeanDefinition("narrowingTransformer", new RootBeanDefinition(NarrowingTransformer.class));
+        final DefaultPrincipalService service = createService(factory);
+        assertFalse("Registered transformer should not be fetched when the service is initialized", factory
+            .containsSingleton("narrowingTransformer"));
+
+        assertEquals("Transformer declaring narrower return type should be used", "john", service.unwrap(JOHN,
+            CharSequence.class));
+        assertTrue("Registered transformer should be fetched on first use", factory.containsSingleton(
+            "narrowingTransformer"));
+    }
+
+    /**
+     * Transformer converting the principal into the length of its name.
+     */
+    public static final class LengthTransformer implements PrincipalTransformer<Integer> {
+
+        @Override
+        public Integer apply(final Principal principal) {
+            return principal.getName().length();
+        }
+
+        @Override
+        public Class<? extends Integer> getReturnType() {
+            return Integer.class;
+        }
+
+    }
+
+    /**
+     * Transformer converting the principal into its name.
+     */
+    public static final class NameTransformer implements PrincipalTransformer<String> {
+
+        @Override
+        public String apply(final Principal principal) {
+            return principal.getName();
+        }
+
+        @Override
+        public Class<? extends String> getReturnType() {
+            return String.class;
+        }
+
+    }
+
+    /**
+     * Transformer converting the principal into character sequence, declaring narrower return type.
+     */
+    public static final class NarrowingTransformer implements PrincipalTransformer<CharSequence> {
+
+        @Override
+        public CharSequence apply(final Principal principal) {
+            return principal.getName();
+        }
+
+        @Override
+        public Class<? extends CharSequence> getReturnType() {
+            return String.class;
+        }
+
+    }
+
+}
@@ -0,0 +1,115 @@
+package pl.ais.commons.infrastructure.service;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.security.Principal;
+
+import org.junit.Test;
+
+import pl.ais.commons.application.service.PrincipalTransformer;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Verifies {@linkplain TransformerResolver} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class TransformerResolverExpectations {
+
+    private static final PrincipalTransformer<?> CHAR_SEQUENCE = new TypeTransformer<>(CharSequence.class);
+
+    private static final PrincipalTransformer<?> STRING = new TypeTransformer<>(String.class);
+
+    private static final PrincipalTransformer<?> STRING_BUILDER = new TypeTransformer<>(StringBuilder.class);
+
+    private static TransformerResolver resolverOf(final PrincipalTransformer<?>... transformers) {
+        final ImmutableMap.Builder<Class<?>, PrincipalTransformer<?>> builder = ImmutableMap.builder();
+        for (final PrincipalTransformer<?> transformer : transformers) {
+            builder.put(transformer.getReturnType(), transformer);
+        }
+        return new TransformerResolver(builder.build(), null);
+    }
+
+    /**
+     * Verifies if the transformer which return type is the closest to the requested class is chosen.
+     */
+    @Test
+    public void shouldChooseClosestCompatibleTransformer() {
+        final TransformerResolver resolver = resolverOf(STRING, CHAR_SEQUENCE);
+
+        assertSame("Transformer returning supertype of all the candidates should be chosen", CHAR_SEQUENCE, resolver
+            .get(Object.class).getTransformer());
+        assertSame("The only compatible transformer should be chosen", STRING, resolver.get(Comparable.class)
+            .getTransformer());
+    }
+
+    /**
+     * Verifies if the transformer registered for the requested class is preferred.
+     */
+    @Test
+    public void shouldPreferTransformerRegisteredForRequestedClass() {
+        final TransformerResolver resolver = resolverOf(STRING, CHAR_SEQUENCE, STRING_BUILDER);
+
+        assertSame("Transformer registered for requested class should be chosen", CHAR_SEQUENCE, resolver.get(
+            CharSequence.class).getTransformer());
+        assertSame("Transformer registered for requested class should be chosen", STRING, resolver.get(String.class)
+            .getTransformer());
+    }
+
+    /**
+     * Verifies if there is no transformer for the class not compatible with any of them.
+     */
+    @Test
+    public void shouldProvideNoTransformerForIncompatibleClass() {
+        final TransformerResolver resolver = resolverOf(STRING, STRING_BUILDER);
+
+        assertNull("There should be no transformer for incompatible class", resolver.get(Integer.class)
+            .getTransformer());
+        assertNull("There should be no transformer for missing class", resolver.get(null).getTransformer());
+    }
+
+    /**
+     * Verifies if ambiguous resolution is reported.
+     */
+    @Test
+    public void shouldRejectAmbiguousResolution() {
+        final TransformerResolver resolver = resolverOf(STRING, STRING_BUILDER);
+
+        try {
+            resolver.get(CharSequence.class).getTransformer();
+            fail("Ambiguous resolution should be reported");
+        } catch (final IllegalArgumentException exception) {
+            assertTrue("Failure should list the candidates", exception.getMessage().contains(
+                String.class.getName()) && exception.getMessage().contains(StringBuilder.class.getName()));
+        }
+    }
+
+    /**
+     * Transformer declaring given return type.
+     */
+    private static final class TypeTransformer<T> implements PrincipalTransformer<T> {
+
+        private final Class<T> returnType;
+
+        TypeTransformer(final Class<T> returnType) {
+            this.returnType = returnType;
+        }
+
+        @Override
+        public T apply(final Principal principal) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Class<? extends T> getReturnType() {
+            return returnType;
+        }
+
+    }
+
+}
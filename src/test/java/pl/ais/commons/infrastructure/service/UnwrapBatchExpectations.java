@@ -0,0 +1,197 @@
+package pl.ais.commons.infrastructure.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import pl.ais.commons.application.feature.FeaturesHolder;
+import pl.ais.commons.application.service.PrincipalService;
+import pl.ais.commons.infrastructure.cache.ShareableResults;
+import pl.ais.commons.infrastructure.principal.unwrapping.FeatureHandlersExpectations.NiceHandler;
+import pl.ais.commons.infrastructure.principal.unwrapping.PrincipalToFeaturesHolderTransformer;
+import pl.ais.commons.infrastructure.test.feature.smile.BeNiceFeature;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Verifies {@linkplain UnwrapBatch} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class UnwrapBatchExpectations {
+
+    private static final int BATCH_SIZE = 100;
+
+    private static Principal[] createPrincipals() {
+        final Principal[] result = new Principal[BATCH_SIZE];
+        for (int index = 0; index < result.length; index++) {
+            result[index] = new TestingAuthenticationToken("user" + index, null, (0 == index % 2) ? "ROLE_USER"
+                : "ROLE_ADMIN");
+        }
+        return result;
+    }
+
+    /**
+     * Verifies if the results are provided in the order of the principals, regardless of the worker unwrapping them.
+     */
+    @Test
+    public void shouldKeepPrincipalsOrder() throws InterruptedException {
+        final Principal[] principals = createPrincipals();
+        final List<String> expected = new ArrayList<>();
+        for (final Principal principal : principals) {
+            expected.add(principal.getName());
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final UnwrapBatchResult<String> result = new UnwrapBatch<>(new NamePrincipalService(), principals,
+                String.class, 3, null).run(executor, 4);
+
+            assertEquals("Results should be provided in the order of the principals", expected, result.getResults());
+            assertTrue("Batch should be successful", result.isSuccessful());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Verify if the batch completes even if the executor rejects the workers.
+        final ExecutorService rejecting = Executors.newSingleThreadExecutor();
+        rejecting.shutdown();
+        assertEquals("Results should be provided by the calling thread", expected, new UnwrapBatch<>(
+            new NamePrincipalService(), principals, String.class, 3, null).run(rejecting, 4).getResults());
+    }
+
+    /**
+     * Verifies if the features holders holding prototype handlers are not shared between the principals, even if they
+     * have the same authorities.
+     */
+    @Test
+    public void shouldNotShareFeaturesHoldersHoldingPrototypeHandlers() throws InterruptedException {
+        final StaticApplicationContext context = new StaticApplicationContext();
+        context.registerPrototype("niceHandler", NiceHandler.class);
+        context.refresh();
+        final PrincipalToFeaturesHolderTransformer transformer = new PrincipalToFeaturesHolderTransformer();
+        transformer.setAnonymousAuthority(new SimpleGrantedAuthority("anonymous"));
+        transformer.setApplicationContext(context);
+        transformer.setFeaturesMap(ImmutableMap.<GrantedAuthority, Set<Class<?>>> of(new SimpleGrantedAuthority(
+            "ROLE_USER"), ImmutableSet.<Class<?>> of(BeNiceFeature.class)));
+        transformer.afterPropertiesSet();
+        final PrincipalService service = new PrincipalService() {
+
+            @Override
+            public <T> T unwrap(final Principal principal, final Class<T> asClass) {
+                return asClass.cast(transformer.apply(principal));
+            }
+
+        };
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+
+        final UnwrapBatchResult<FeaturesHolder> result = new UnwrapBatch<>(service, createPrincipals(),
+            FeaturesHolder.class, 3, UnwrapBatch.sharingOf(transformer)).run(executor, 0);
+
+        assertEquals("Only features holders without prototype handlers should be shared", BATCH_SIZE / 2 - 1, result
+            .getSharedCount());
+        assertSame("Features holder without prototype handlers should be shared", result.get(1), result.get(3));
+        assertNotSame("Each principal should get its own handler instance", result.get(0).getFeature(
+            BeNiceFeature.class), result.get(2).getFeature(BeNiceFeature.class));
+    }
+
+    /**
+     * Verifies if the failures are recorded for the principals which failed to unwrap only.
+     */
+    @Test
+    public void shouldRecordFailuresPerPrincipal() throws InterruptedException {
+        final Principal[] principals = createPrincipals();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final UnwrapBatchResult<String> result = new UnwrapBatch<>(new NamePrincipalService() {
+
+                @Override
+                public <T> T unwrap(final Principal principal, final Class<T> asClass) {
+                    if (principal.getName().endsWith("7")) {
+                        throw new IllegalStateException(principal.getName());
+                    }
+                    return super.unwrap(principal, asClass);
+                }
+
+            }, principals, String.class, 3, null).run(executor, 4);
+
+            assertFalse("Batch should not be successful", result.isSuccessful());
+            assertEquals("Failures should be recorded for failed principals only", 10, result.getFailures().size());
+            for (int index = 0; index < principals.length; index++) {
+                if (7 == index % 10) {
+                    assertEquals("Failure should be recorded for the principal", "user" + index, result.getFailure(
+                        index).getMessage());
+                    assertNull("There should be no result for failed principal", result.get(index));
+                } else {
+                    assertNull("There should be no failure for other principals", result.getFailure(index));
+                    assertEquals("Other principals should be unwrapped", "user" + index, result.get(index));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verifies if the results are shared between the principals having the same authorities, if possible.
+     */
+    @Test
+    public void shouldShareResultsBetweenPrincipalsHavingSameAuthorities() throws InterruptedException {
+        final NamePrincipalService service = new NamePrincipalService();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+
+        // Run the batch in the calling thread only, so the principals are unwrapped in order.
+        final UnwrapBatchResult<String> result = new UnwrapBatch<>(service, createPrincipals(), String.class, 3,
+            new ShareableResults<Object>() {
+
+                @Override
+                public boolean isShareable(final Object result) {
+                    return true;
+                }
+
+            }).run(executor, 0);
+
+        assertEquals("Principals should be unwrapped once per distinct authorities", 2, service.unwrapped.get());
+        assertEquals("Remaining principals should receive shared results", BATCH_SIZE - 2, result.getSharedCount());
+        for (int index = 2; index < BATCH_SIZE; index++) {
+            assertSame("Result should be shared between principals having the same authorities", result.get(index
+                % 2), result.get(index));
+        }
+    }
+
+    /**
+     * Principal service unwrapping the principals as their names.
+     */
+    private static class NamePrincipalService implements PrincipalService {
+
+        final AtomicInteger unwrapped = new AtomicInteger();
+
+        @Override
+        public <T> T unwrap(final Principal principal, final Class<T> asClass) {
+            unwrapped.incrementAndGet();
+            return asClass.cast(principal.getName());
+        }
+
+    }
+
+}
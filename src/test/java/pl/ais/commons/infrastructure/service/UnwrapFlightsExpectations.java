@@ -0,0 +1,180 @@
+package pl.ais.commons.infrastructure.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.security.Principal;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Verifies {@linkplain UnwrapFlights} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class UnwrapFlightsExpectations {
+
+    private static final Principal JOHN = new TestingAuthenticationToken("john", null);
+
+    /**
+     * Starts joining the flight in new thread.
+     */
+    private static FutureTask<Object> join(final UnwrapFlights flights, final Supplier<Object> computation) {
+        final FutureTask<Object> result = new FutureTask<>(new Callable<Object>() {
+
+            @Override
+            public Object call() {
+                return flights.join(JOHN, String.class, computation);
+            }
+
+        });
+        new Thread(result).start();
+        return result;
+    }
+
+    /**
+     * Starts joining the flight in new thread, and waits until the thread waits for the computation in flight.
+     */
+    private static FutureTask<Object> joinWaiting(final UnwrapFlights flights, final Supplier<Object> computation)
+        throws InterruptedException {
+        final FutureTask<Object> result = new FutureTask<>(new Callable<Object>() {
+
+            @Override
+            public Object call() {
+                return flights.join(JOHN, String.class, computation);
+            }
+
+        });
+        final Thread thread = new Thread(result);
+        thread.start();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (Thread.State.TIMED_WAITING != thread.getState() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals("Caller should wait for the computation in flight", Thread.State.TIMED_WAITING, thread
+            .getState());
+        return result;
+    }
+
+    /**
+     * Verifies if the caller which waits too long for the computation in flight computes the result itself.
+     */
+    @Test
+    public void shouldComputeResultAfterTimeout() throws Exception {
+        final UnwrapFlights flights = new UnwrapFlights(50);
+        final BlockingComputation leading = new BlockingComputation("leader", null);
+        final FutureTask<Object> leader = join(flights, leading);
+        try {
+            assertTrue("Computation should be started", leading.started.await(5, TimeUnit.SECONDS));
+
+            final BlockingComputation following = new BlockingComputation("follower", null);
+            following.release.countDown();
+            assertEquals("Caller waiting too long should compute the result itself", "follower", flights.join(JOHN,
+                String.class, following));
+            assertEquals("Timeout should be counted", 1, flights.getTimeoutCount());
+            assertEquals("Caller waiting too long should not be counted as coalesced", 0, flights
+                .getCoalescedCount());
+        } finally {
+            leading.release.countDown();
+        }
+        assertEquals("Leader should compute its result", "leader", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Verifies if the failure of the computation in flight is propagated to the waiting callers.
+     */
+    @Test
+    public void shouldShareFailureOfComputationInFlight() throws Exception {
+        final UnwrapFlights flights = new UnwrapFlights(5000);
+        final IllegalStateException failure = new IllegalStateException("Unwrapping failed.");
+        final BlockingComputation leading = new BlockingComputation("leader", failure);
+        final FutureTask<Object> leader = join(flights, leading);
+        assertTrue("Computation should be started", leading.started.await(5, TimeUnit.SECONDS));
+        final BlockingComputation following = new BlockingComputation("follower", null);
+        final FutureTask<Object> follower = joinWaiting(flights, following);
+        leading.release.countDown();
+
+        for (final FutureTask<Object> caller : ImmutableList.of(leader, follower)) {
+            try {
+                caller.get(5, TimeUnit.SECONDS);
+                fail("Failure of the computation should be propagated");
+            } catch (final ExecutionException exception) {
+                assertSame("Failure of the computation should be propagated", failure, exception.getCause());
+            }
+        }
+        assertEquals("Waiting caller should not compute the result", 0, following.computations.get());
+        assertEquals("Waiting caller should be counted as coalesced", 1, flights.getCoalescedCount());
+    }
+
+    /**
+     * Verifies if the result of the computation in flight is shared with the waiting callers.
+     */
+    @Test
+    public void shouldShareResultOfComputationInFlight() throws Exception {
+        final UnwrapFlights flights = new UnwrapFlights(5000);
+        final BlockingComputation leading = new BlockingComputation("leader", null);
+        final FutureTask<Object> leader = join(flights, leading);
+        assertTrue("Computation should be started", leading.started.await(5, TimeUnit.SECONDS));
+        final BlockingComputation following = new BlockingComputation("follower", null);
+        final FutureTask<Object> follower = joinWaiting(flights, following);
+        leading.release.countDown();
+
+        assertEquals("Leader should compute the result", "leader", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("Waiting caller should receive the result of computation in flight", "leader", follower.get(5,
+            TimeUnit.SECONDS));
+        assertEquals("Waiting caller should not compute the result", 0, following.computations.get());
+        assertEquals("Waiting caller should be counted as coalesced", 1, flights.getCoalescedCount());
+        assertEquals("There should be no timeouts", 0, flights.getTimeoutCount());
+    }
+
+    /**
+     * Computation providing given result (or failing with given exception) once released.
+     */
+    private static final class BlockingComputation implements Supplier<Object> {
+
+        final AtomicInteger computations = new AtomicInteger();
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final CountDownLatch started = new CountDownLatch(1);
+
+        private final RuntimeException failure;
+
+        private final Object result;
+
+        BlockingComputation(final Object result, final RuntimeException failure) {
+            this.result = result;
+            this.failure = failure;
+        }
+
+        @Override
+        public Object get() {
+            computations.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            if (null != failure) {
+                throw failure;
+            }
+            return result;
+        }
+
+    }
+
+}
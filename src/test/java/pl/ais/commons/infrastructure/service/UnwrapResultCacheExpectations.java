@@ -0,0 +1,132 @@
+package pl.ais.commons.infrastructure.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.Principal;
+
+import org.junit.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+
+import pl.ais.commons.application.service.PrincipalTransformer;
+import pl.ais.commons.infrastructure.cache.NonCacheable;
+
+/**
+ * Verifies {@linkplain UnwrapResultCache} expectations.
+ *
+ * @author Warlock, AIS.PL
+ * @since 1.0.3
+ */
+public class UnwrapResultCacheExpectations {
+
+    /**
+     * Verifies if the results are cached per principal identity and requested class.
+     */
+    @Test
+    public void shouldCacheResultsPerPrincipalIdentity() {
+        final UnwrapResultCache cache = new UnwrapResultCache(10, 0);
+        final Principal principal = new TestingAuthenticationToken("john", null);
+        final Principal twin = new TestingAuthenticationToken("john", null);
+
+        cache.put(principal, String.class, "john");
+
+        assertEquals("Cached result should be provided", "john", cache.get(principal, String.class));
+        assertNull("Result should not be provided for other class", cache.get(principal, CharSequence.class));
+        assertNull("Result should not be provided for equal principal", cache.get(twin, String.class));
+        assertEquals("Hits should be counted", 1, cache.stats().hitCount());
+        assertEquals("Misses should be counted", 2, cache.stats().missCount());
+    }
+
+    /**
+     * Verifies if invalidated results are discarded.
+     */
+    @Test
+    public void shouldDiscardInvalidatedResults() {
+        final UnwrapResultCache cache = new UnwrapResultCache(10, 0);
+        final Principal first = new TestingAuthenticationToken("john", null);
+        final Principal second = new TestingAuthenticationToken("jane", null);
+        cache.put(first, String.class, "john");
+        cache.put(second, String.class, "jane");
+
+        cache.invalidate(first);
+        assertNull("Invalidated principal should be discarded", cache.get(first, String.class));
+        assertEquals("Other principals should be kept", "jane", cache.get(second, String.class));
+
+        cache.invalidate();
+        assertNull("All principals should be discarded", cache.get(second, String.class));
+    }
+
+    /**
+     * Verifies if the least recently used principal is evicted once the cache is full.
+     */
+    @Test
+    public void shouldEvictPrincipalsExceedingMaximumSize() {
+        final UnwrapResultCache cache = new UnwrapResultCache(1, 0);
+        final Principal first = new TestingAuthenticationToken("john", null);
+        final Principal second = new TestingAuthenticationToken("jane", null);
+
+        cache.put(first, String.class, "john");
+        cache.put(second, String.class, "jane");
+
+        assertNull("First principal should be evicted", cache.get(first, String.class));
+        assertEquals("Second principal should be cached", "jane", cache.get(second, String.class));
+        assertEquals("Eviction should be counted", 1, cache.stats().evictionCount());
+    }
+
+    /**
+     * Verifies if the results expire once their time to live passes.
+     */
+    @Test
+    public void shouldExpireResultsAfterTimeToLive() throws InterruptedException {
+        final UnwrapResultCache cache = new UnwrapResultCache(10, 50);
+        final Principal principal = new TestingAuthenticationToken("john", null);
+
+        cache.put(principal, String.class, "john");
+        assertEquals("Fresh result should be provided", "john", cache.get(principal, String.class));
+        Thread.sleep(150);
+
+        assertNull("Expired result should not be provided", cache.get(principal, String.class));
+    }
+
+    /**
+     * Verifies if the results of transformers annotated with {@link NonCacheable} are not cached.
+     */
+    @Test
+    public void shouldNotAcceptNonCacheableTransformers() {
+        final UnwrapResultCache cache = new UnwrapResultCache(10, 0);
+        final Principal principal = new TestingAuthenticationToken("john", null);
+
+        assertTrue("Results of regular transformer should be cached", cache.accepts(principal, new NameTransformer()));
+        assertFalse("Results of non-cacheable transformer should not be cached",
+            cache.accepts(principal, new VolatileNameTransformer()));
+        assertFalse("Results for missing principal should not be cached", cache.accepts(null, new NameTransformer()));
+    }
+
+    /**
+     * Transformer providing the principal name.
+     */
+    static class NameTransformer implements PrincipalTransformer<String> {
+
+        @Override
+        public String apply(final Principal principal) {
+            return principal.getName();
+        }
+
+        @Override
+        public Class<? extends String> getReturnType() {
+            return String.class;
+        }
+
+    }
+
+    /**
+     * Transformer which results should never be cached.
+     */
+    @NonCacheable
+    static class VolatileNameTransformer extends NameTransformer {
+
+    }
+
+}